@@ -0,0 +1,79 @@
+package com.tileshifter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the classic sliding board: tile moves, shuffles, the solvability check and win detection
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleBoardBenchmark {
+    @Param({"4", "8", "16"})
+    public int size;
+    
+    private PuzzleBoard board;
+    private List<Tile> tiles;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new PuzzleBoard(true, size);
+        board.initializeBoard();
+        
+        // Non-empty tiles in row-major order, as passed to isSolvable by shuffleBoard
+        tiles = new ArrayList<>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                Tile tile = board.getTile(x, y);
+                if (!tile.isEmpty()) {
+                    tiles.add(tile);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Slides the tile next to the empty space back and forth along its row
+     */
+    @Benchmark
+    public boolean moveTile() {
+        int emptyX = board.getEmptyX();
+        int x = emptyX > 0 ? emptyX - 1 : emptyX + 1;
+        return board.moveTile(x, board.getEmptyY());
+    }
+    
+    @Benchmark
+    public PuzzleBoard shuffleBoard() {
+        board.shuffleBoard();
+        return board;
+    }
+    
+    @Benchmark
+    public boolean isSolvable() {
+        return board.isSolvable(tiles);
+    }
+    
+    @Benchmark
+    public boolean checkWinCondition() {
+        board.checkWinCondition();
+        return board.isWon();
+    }
+}
@@ -0,0 +1,51 @@
+package com.tileshifter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the Rotate board: single 2x2 rotations and full shuffles
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotatePuzzleBoardBenchmark {
+    @Param({"4", "8", "16"})
+    public int size;
+    
+    private RotatePuzzleBoard board;
+    private int subBoardIndex;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new RotatePuzzleBoard(size);
+        board.initializeBoard();
+    }
+    
+    @Benchmark
+    public boolean rotateSubBoard() {
+        subBoardIndex = subBoardIndex + 1 == board.getSubBoardCount() ? 0 : subBoardIndex + 1;
+        return board.rotateSubBoard(subBoardIndex);
+    }
+    
+    @Benchmark
+    public PuzzleBoard shuffleBoard() {
+        board.shuffleBoard();
+        return board;
+    }
+}
@@ -0,0 +1,62 @@
+package com.tileshifter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the Shift board: single row/column shifts and full shuffles
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShiftPuzzleBoardBenchmark {
+    @Param({"4", "8", "16"})
+    public int size;
+    
+    private ShiftPuzzleBoard board;
+    private int index;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new ShiftPuzzleBoard(size);
+        board.initializeBoard();
+    }
+    
+    @Benchmark
+    public boolean shiftRowLeft() {
+        board.shiftRowLeft(nextIndex());
+        return board.isWon();
+    }
+    
+    @Benchmark
+    public boolean shiftColumnUp() {
+        board.shiftColumnUp(nextIndex());
+        return board.isWon();
+    }
+    
+    @Benchmark
+    public PuzzleBoard shuffleBoard() {
+        board.shuffleBoard();
+        return board;
+    }
+    
+    private int nextIndex() {
+        index = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,330 @@
+package com.tileshifter.benchmarks;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tileshifter.BoardBatch;
+import com.tileshifter.PuzzleBoard;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.RotatePuzzleBoard;
+import com.tileshifter.ShiftPuzzleBoard;
+import com.tileshifter.net.Session;
+import com.tileshifter.solver.DifficultyEstimator;
+
+/**
+ * Checks {@link BoardBatch} against the boards the game plays on and times it against moving boards one by one
+ *
+ * - Classic, Shift and Rotate 4x4: packed and unpacked batches take the same random moves, including ones off the
+ *   board and unknown ones, as {@link PuzzleBoard}, {@link ShiftPuzzleBoard} and {@link RotatePuzzleBoard}. After
+ *   every step each board's state, win flag, accepted moves and Manhattan distance must agree.
+ * - Other modes and sizes, including 3x3 rotations and 5x5 boards that are never packed: packed and unpacked
+ *   batches must agree with each other and with {@link PuzzleMode} applied to a state array.
+ * - Timing: many boards take random moves, one per board per step, as {@link Session}s, as an unpacked batch and
+ *   as a packed batch, and the packed batch also takes the same move on every board.
+ *
+ * Usage: BoardBatchCheck [--boards 200] [--steps 300] [--batch 65536] [--batchSteps 200]
+ */
+public class BoardBatchCheck {
+    private int boards = 200;
+    private int steps = 300;
+    private int batch = 65536;
+    private int batchSteps = 200;
+    private int failures;
+    
+    public static void main(String[] args) {
+        BoardBatchCheck check = new BoardBatchCheck();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--boards": check.boards = Integer.parseInt(args[i + 1]); break;
+                case "--steps": check.steps = Integer.parseInt(args[i + 1]); break;
+                case "--batch": check.batch = Integer.parseInt(args[i + 1]); break;
+                case "--batchSteps": check.batchSteps = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        check.checkBoards(PuzzleModes.classic(4));
+        check.checkBoards(PuzzleModes.shift(4));
+        check.checkBoards(PuzzleModes.rotate(4));
+        check.checkModes(PuzzleModes.classic(3));
+        check.checkModes(PuzzleModes.shift(3));
+        check.checkModes(PuzzleModes.counterRotate(4));
+        check.checkModes(PuzzleModes.rotate3x3(4));
+        check.checkModes(PuzzleModes.diagonalShift(4));
+        check.checkModes(PuzzleModes.classic(5));
+        check.checkModes(PuzzleModes.shift(5));
+        check.time(PuzzleModes.classic(4));
+        check.time(PuzzleModes.shift(4));
+        check.time(PuzzleModes.rotate(4));
+        System.out.println(check.failures == 0 ? "OK" : "FAILED: " + check.failures + " failed checks");
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+    
+    private void checkBoards(PuzzleMode mode) {
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        BoardBatch packed = new BoardBatch(mode, boards, true);
+        BoardBatch unpacked = new BoardBatch(mode, boards, false);
+        PuzzleBoard[] reference = new PuzzleBoard[boards];
+        int[] rejected = new int[boards];
+        Random random = new Random(1);
+        byte[] state = new byte[mode.getCellCount()];
+        for (int i = 0; i < boards; i++) {
+            mode.shuffle(random, state, 0);
+            for (int cell = 0; i % 8 == 0 && cell < state.length; cell++) {
+                state[cell] = (byte) cell; // Some boards start solved, so the win flags are checked both ways
+            }
+            packed.add(state, 0);
+            unpacked.add(state, 0);
+            reference[i] = newBoard(mode);
+            reference[i].initializeBoard();
+            reference[i].setState(state);
+        }
+        
+        int[] moves = new int[boards];
+        byte[] expected = new byte[state.length];
+        int solved = 0;
+        for (int step = 0; step < steps; step++) {
+            // Every other step moves all boards the same way
+            boolean same = step % 2 == 1;
+            int sameMove = randomMove(mode, random);
+            for (int i = 0; i < boards; i++) {
+                moves[i] = same ? sameMove : randomMove(mode, random);
+                boolean moved = moveBoard(mode, reference[i], moves[i]);
+                rejected[i] += moved || moves[i] == BoardBatch.NO_MOVE ? 0 : 1;
+            }
+            if (same) {
+                packed.moveAll(sameMove);
+                unpacked.moveAll(sameMove);
+            } else {
+                packed.move(moves, 0);
+                unpacked.move(moves, 0);
+            }
+            for (int i = 0; i < boards; i++) {
+                reference[i].getState(expected);
+                for (BoardBatch boardBatch : new BoardBatch[] {packed, unpacked}) {
+                    String name = mode.getName() + (boardBatch.isPacked() ? " packed" : " unpacked") + " board " + i
+                        + " after step " + step;
+                    boardBatch.getState(i, state, 0);
+                    expect(Arrays.equals(state, expected), name + ": " + Arrays.toString(state) + ", the board has "
+                        + Arrays.toString(expected));
+                    expect(boardBatch.isSolved(i) == reference[i].isWon(), name + " disagrees on the win");
+                    expect(boardBatch.manhattanDistance(i) == estimator.manhattanDistance(expected, 0),
+                        name + " has the wrong Manhattan distance");
+                    expect(boardBatch.getRejectedCount(i) == rejected[i], name + " rejected "
+                        + boardBatch.getRejectedCount(i) + " moves, the board " + rejected[i]);
+                }
+                solved += reference[i].isWon() ? 1 : 0;
+            }
+        }
+        boolean[] flags = new boolean[boards];
+        expect(packed.solved(flags, 0) == unpacked.solved(flags, 0), mode.getName() + " solved counts differ");
+        System.out.printf(Locale.ROOT, "%-8s %dx%d: %,d boards, %,d steps, packed and unpacked match the boards, "
+            + "%,d solved board steps%n", mode.getName(), mode.getSize(), mode.getSize(), boards, steps, solved);
+    }
+    
+    private static PuzzleBoard newBoard(PuzzleMode mode) {
+        switch (mode.getName()) {
+            case "Classic": return new PuzzleBoard(true, mode.getSize());
+            case "Shift": return new ShiftPuzzleBoard(mode.getSize());
+            case "Rotate": return new RotatePuzzleBoard(mode.getSize());
+            default: throw new IllegalArgumentException("No board class for " + mode.getName());
+        }
+    }
+    
+    /**
+     * Makes a move through the board's own methods, as the game screen does
+     * @return Whether the board took it
+     */
+    private static boolean moveBoard(PuzzleMode mode, PuzzleBoard board, int move) {
+        if (board instanceof ShiftPuzzleBoard || board instanceof RotatePuzzleBoard) {
+            if (move < 0 || move >= mode.getGeneratorCount()) {
+                return false;
+            }
+            if (board instanceof RotatePuzzleBoard) {
+                return ((RotatePuzzleBoard) board).rotateSubBoard(move);
+            }
+            ShiftPuzzleBoard shiftBoard = (ShiftPuzzleBoard) board;
+            String[] words = mode.getGenerator(move).getName().split(" ");
+            int index = Integer.parseInt(words[1]);
+            switch (words[0] + " " + words[2]) {
+                case "column up": shiftBoard.shiftColumnUp(index); break;
+                case "column down": shiftBoard.shiftColumnDown(index); break;
+                case "row left": shiftBoard.shiftRowLeft(index); break;
+                case "row right": shiftBoard.shiftRowRight(index); break;
+                default: throw new IllegalStateException("Unknown shift: " + mode.getGenerator(move).getName());
+            }
+            return true;
+        }
+        if (move < PuzzleMode.UP || move > PuzzleMode.RIGHT) {
+            return false;
+        }
+        // The blank moving in a direction is the tile on that side sliding into it
+        int x = board.getEmptyX() + (move == PuzzleMode.LEFT ? -1 : move == PuzzleMode.RIGHT ? 1 : 0);
+        int y = board.getEmptyY() + (move == PuzzleMode.UP ? -1 : move == PuzzleMode.DOWN ? 1 : 0);
+        return board.moveTile(x, y);
+    }
+    
+    /**
+     * Modes without a board class of their own, compared with {@link PuzzleMode} on state arrays
+     */
+    private void checkModes(PuzzleMode mode) {
+        int cells = mode.getCellCount();
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        BoardBatch unpacked = new BoardBatch(mode, boards, false);
+        BoardBatch packed = cells <= BoardBatch.MAX_PACKED_CELLS ? new BoardBatch(mode, boards, true) : null;
+        byte[] reference = new byte[boards * cells];
+        int[] blankCells = new int[boards];
+        Random random = new Random(2);
+        for (int i = 0; i < boards; i++) {
+            mode.shuffle(random, reference, i * cells);
+            unpacked.add(reference, i * cells);
+            if (packed != null) {
+                packed.add(reference, i * cells);
+            }
+            for (int cell = 0; mode.hasBlank() && cell < cells; cell++) {
+                if ((reference[i * cells + cell] & 0xFF) == cells - 1) {
+                    blankCells[i] = cell;
+                }
+            }
+        }
+        
+        int[] moves = new int[boards];
+        byte[] state = new byte[cells];
+        for (int step = 0; step < steps; step++) {
+            boolean same = step % 2 == 1;
+            int sameMove = randomMove(mode, random);
+            for (int i = 0; i < boards; i++) {
+                int move = same ? sameMove : randomMove(mode, random);
+                moves[i] = move;
+                if (mode.hasBlank()) {
+                    if (move >= PuzzleMode.UP && move <= PuzzleMode.RIGHT
+                        && mode.getBlankNeighbor(blankCells[i], move) >= 0) {
+                        blankCells[i] = mode.moveBlank(reference, i * cells, blankCells[i], move);
+                    }
+                } else if (move >= 0 && move < mode.getGeneratorCount()) {
+                    mode.apply(reference, i * cells, move);
+                }
+            }
+            for (BoardBatch boardBatch : new BoardBatch[] {packed, unpacked}) {
+                if (boardBatch == null) {
+                    continue;
+                }
+                if (same) {
+                    boardBatch.moveAll(sameMove);
+                } else {
+                    boardBatch.move(moves, 0);
+                }
+                for (int i = 0; i < boards; i++) {
+                    String name = mode.getName() + " " + mode.getSize() + "x" + mode.getSize()
+                        + (boardBatch.isPacked() ? " packed" : " unpacked") + " board " + i + " after step " + step;
+                    boardBatch.getState(i, state, 0);
+                    boolean equal = true;
+                    for (int cell = 0; cell < cells; cell++) {
+                        equal &= state[cell] == reference[i * cells + cell];
+                    }
+                    expect(equal, name + " differs from the mode's moves");
+                    expect(boardBatch.isSolved(i) == mode.isSolved(reference, i * cells), name
+                        + " disagrees on the win");
+                    expect(boardBatch.manhattanDistance(i) == estimator.manhattanDistance(reference, i * cells),
+                        name + " has the wrong Manhattan distance");
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-14s %dx%d: %,d boards, %,d steps, %s%n", mode.getName(), mode.getSize(),
+            mode.getSize(), boards, steps, packed == null ? "unpacked only, matches" : "packed and unpacked match");
+    }
+    
+    private void time(PuzzleMode mode) {
+        Random random = new Random(3);
+        BoardBatch packed = new BoardBatch(mode, batch, true);
+        packed.shuffle(new Random(4), batch);
+        BoardBatch unpacked = new BoardBatch(mode, batch, false);
+        unpacked.shuffle(new Random(4), batch);
+        Session[] sessions = new Session[batch];
+        for (int i = 0; i < batch; i++) {
+            sessions[i] = new Session(0, mode, i);
+        }
+        int[] moves = new int[batch * batchSteps];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = validMove(mode, random);
+        }
+        int[] sameMoves = new int[batchSteps];
+        for (int i = 0; i < sameMoves.length; i++) {
+            sameMoves[i] = validMove(mode, random);
+        }
+        boolean[] flags = new boolean[batch];
+        int[] sums = new int[batch];
+        long sink = 0;
+        double sessionRate = 0;
+        double unpackedRate = 0;
+        double packedRate = 0;
+        double sameRate = 0;
+        double checkRate = 0;
+        // The first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int step = 0; step < batchSteps; step++) {
+                for (int i = 0; i < batch; i++) {
+                    sink += sessions[i].move(moves[step * batch + i]);
+                }
+            }
+            sessionRate = rate(batch * (long) batchSteps, start);
+            start = System.nanoTime();
+            for (int step = 0; step < batchSteps; step++) {
+                unpacked.move(moves, step * batch);
+            }
+            unpackedRate = rate(batch * (long) batchSteps, start);
+            start = System.nanoTime();
+            for (int step = 0; step < batchSteps; step++) {
+                packed.move(moves, step * batch);
+            }
+            packedRate = rate(batch * (long) batchSteps, start);
+            start = System.nanoTime();
+            for (int step = 0; step < batchSteps; step++) {
+                packed.moveAll(sameMoves[step]);
+            }
+            sameRate = rate(batch * (long) batchSteps, start);
+            start = System.nanoTime();
+            for (int step = 0; step < batchSteps / 10; step++) {
+                sink += packed.solved(flags, 0);
+                packed.manhattanDistances(sums, 0);
+                sink += sums[step];
+            }
+            checkRate = rate(batch * (long) (batchSteps / 10), start);
+        }
+        System.out.printf(Locale.ROOT, "%-8s %dx%d: %,d boards, millions of moves per second: sessions %.0f, "
+            + "unpacked %.0f, packed %.0f, packed same move %.0f; %.0f million solved and Manhattan checks per second"
+            + " (%d)%n", mode.getName(), mode.getSize(), mode.getSize(), batch, sessionRate, unpackedRate, packedRate,
+            sameRate, checkRate, sink & 1);
+    }
+    
+    private static double rate(long operations, long start) {
+        return operations * 1e3 / Math.max(1, System.nanoTime() - start);
+    }
+    
+    /**
+     * @return A move, a quarter of the time one the boards must reject or {@link BoardBatch#NO_MOVE}
+     */
+    private static int randomMove(PuzzleMode mode, Random random) {
+        int moves = mode.hasBlank() ? 4 : mode.getGeneratorCount();
+        if (random.nextInt(4) == 0) {
+            int[] odd = {BoardBatch.NO_MOVE, -2, moves, moves + 7, Integer.MAX_VALUE};
+            return odd[random.nextInt(odd.length)];
+        }
+        return random.nextInt(moves);
+    }
+    
+    private static int validMove(PuzzleMode mode, Random random) {
+        return random.nextInt(mode.hasBlank() ? 4 : mode.getGeneratorCount());
+    }
+    
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            if (failures < 10) {
+                System.out.println("Check failed: " + message);
+            }
+            failures++;
+        }
+    }
+}
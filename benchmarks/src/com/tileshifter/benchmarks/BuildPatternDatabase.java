@@ -0,0 +1,79 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.solver.PatternDatabaseBuilder;
+
+/**
+ * Builds one additive pattern database for the classic sliding puzzle with {@link PatternDatabaseBuilder}
+ *
+ * Running it again with the same work directory after an interruption resumes the build. The memory budget
+ * accepts a plain byte count or a k, m or g suffix.
+ *
+ * Usage: BuildPatternDatabase --size 5 --tiles 0,1,2,5,6,7 --out file.pdb [--work dir] [--memory 24g] [--threads n]
+ */
+public class BuildPatternDatabase {
+    public static void main(String[] args) throws IOException {
+        int size = 0;
+        int[] tiles = null;
+        File output = null;
+        File work = null;
+        long memory = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                case "--tiles": tiles = parseTiles(args[i + 1]); break;
+                case "--out": output = new File(args[i + 1]); break;
+                case "--work": work = new File(args[i + 1]); break;
+                case "--memory": memory = parseBytes(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (size == 0 || tiles == null || output == null) {
+            throw new IllegalArgumentException("--size, --tiles and --out are required");
+        }
+        if (work == null) {
+            work = new File(output.getPath() + ".work");
+        }
+        
+        final long start = System.nanoTime();
+        PatternDatabaseBuilder builder = new PatternDatabaseBuilder(PuzzleModes.classic(size), tiles, work)
+            .setThreads(threads)
+            .setListener(new PatternDatabaseBuilder.Listener() {
+                @Override
+                public void levelCompleted(int level, long states, long totalStates) {
+                    System.out.println(String.format(Locale.ROOT, "level %3d: %,15d states, %,15d total, %6.0f s",
+                        level, states, totalStates, (System.nanoTime() - start) / 1e9));
+                }
+            });
+        if (memory > 0) {
+            builder.setMemoryBudget(memory);
+        }
+        builder.build(output);
+        System.out.println(String.format(Locale.ROOT, "Wrote %s in %.0f s", output.getPath(),
+            (System.nanoTime() - start) / 1e9));
+    }
+    
+    private static int[] parseTiles(String list) {
+        String[] fields = list.split(",");
+        int[] tiles = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            tiles[i] = Integer.parseInt(fields[i].trim());
+        }
+        return tiles;
+    }
+    
+    private static long parseBytes(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        int shift = lower.endsWith("g") ? 30 : lower.endsWith("m") ? 20 : lower.endsWith("k") ? 10 : 0;
+        if (shift > 0) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        return Long.parseLong(lower) << shift;
+    }
+}
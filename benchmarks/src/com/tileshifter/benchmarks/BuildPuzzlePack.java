@@ -0,0 +1,309 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.assets.GameAssets;
+import com.tileshifter.net.Session;
+import com.tileshifter.pack.PuzzlePack;
+import com.tileshifter.pack.PuzzlePackWriter;
+import com.tileshifter.server.ServerModes;
+import com.tileshifter.solver.BeamSearchSolver;
+import com.tileshifter.solver.CachingSolver;
+import com.tileshifter.solver.ConstructiveSolver;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+import com.tileshifter.solver.SolutionCache;
+import com.tileshifter.solver.Solver;
+
+/**
+ * Builds the game's {@link PuzzlePack} from the images folder, then reads it back, checks every puzzle's solution
+ * and times the lookups the game makes
+ *
+ * Images are decoded once here and stored as raw pixels, scaled to at most --image-size and to a multiple of every
+ * board size so the tiles slice evenly; thumbnails are scaled to fit {@link PuzzlePackWriter#THUMBNAIL_SIZE}.
+ * For each mode and size, --puzzles boards are shuffled like the game shuffles them and solved: optimally where
+ * IDA* can (3x3 and smaller), which also grades them exactly, otherwise with the constructive or beam search solver
+ * and graded by the {@link DifficultyEstimator}. The first --days of them become the daily puzzles from --from on.
+ * Solvers go through a {@link SolutionCache} per mode and size in --cache, so rebuilding with the same seed, or
+ * running into positions solved before, does not search again; pass --cache none to always search.
+ *
+ * Usage: BuildPuzzlePack [--images assets/images] [--out assets/puzzles.pack] [--modes classic,shift,rotate]
+ * [--sizes 3,4] [--puzzles 500] [--days 366] [--from 2026-01-01] [--image-size 1024] [--seed 1]
+ * [--cache build/solution-cache]
+ */
+public class BuildPuzzlePack {
+    private static final int BEAM_WIDTH = 256;
+    private static final long BEAM_BUDGET_MILLIS = 200;
+    private static final int CACHE_SLOTS = 1 << 18;
+    
+    public static void main(String[] args) throws IOException {
+        File images = new File("assets/images");
+        File output = new File("assets/puzzles.pack");
+        String modeList = "classic,shift,rotate";
+        int[] sizes = {3, 4};
+        int puzzles = 500;
+        int days = 366;
+        LocalDate from = LocalDate.of(2026, 1, 1);
+        int imageSize = 1024;
+        long seed = 1;
+        File cache = new File("build/solution-cache");
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--images": images = new File(args[i + 1]); break;
+                case "--out": output = new File(args[i + 1]); break;
+                case "--modes": modeList = args[i + 1]; break;
+                case "--sizes": sizes = parseInts(args[i + 1]); break;
+                case "--puzzles": puzzles = Integer.parseInt(args[i + 1]); break;
+                case "--days": days = Integer.parseInt(args[i + 1]); break;
+                case "--from": from = LocalDate.parse(args[i + 1]); break;
+                case "--image-size": imageSize = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--cache": cache = "none".equals(args[i + 1]) ? null : new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (days > puzzles) {
+            throw new IllegalArgumentException("--days must not exceed --puzzles");
+        }
+        GdxNativesLoader.load(); // Pixmaps decode with the native gdx2d library
+        
+        long start = System.nanoTime();
+        PuzzlePackWriter writer = new PuzzlePackWriter();
+        int multiple = 1;
+        for (int size : sizes) {
+            multiple = multiple / gcd(multiple, size) * size;
+        }
+        addImages(writer, images, imageSize, multiple);
+        
+        int firstDay = (int) from.toEpochDay();
+        for (String name : modeList.split(",")) {
+            GameMode gameMode = GameMode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            for (int size : sizes) {
+                if (ServerModes.supports(gameMode.ordinal(), size)) {
+                    addPuzzles(writer, gameMode, size, puzzles, days, firstDay, new Random(seed), cache);
+                }
+            }
+        }
+        writer.write(output);
+        System.out.printf(Locale.ROOT, "Wrote %s, %,d bytes, in %.1f s%n", output.getPath(), output.length(),
+            (System.nanoTime() - start) / 1e9);
+        check(output, sizes, firstDay);
+    }
+    
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+    
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+    
+    private static void addImages(PuzzlePackWriter writer, File directory, int imageSize, int multiple) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException(directory.getPath() + " is not a directory");
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!lower.endsWith(".jpg") && !lower.endsWith(".jpeg")) {
+                continue;
+            }
+            Pixmap source = new Pixmap(new FileHandle(file));
+            try {
+                float scale = Math.min(1f, (float) imageSize / Math.max(source.getWidth(), source.getHeight()));
+                int width = Math.max(multiple, Math.round(source.getWidth() * scale) / multiple * multiple);
+                int height = Math.max(multiple, Math.round(source.getHeight() * scale) / multiple * multiple);
+                byte[] pixels = scaledPixels(source, width, height);
+                if (name.equalsIgnoreCase(GameAssets.LOGO_IMAGE)) {
+                    writer.addImage(name, width, height, pixels);
+                } else {
+                    float thumbnailScale = (float) PuzzlePackWriter.THUMBNAIL_SIZE
+                        / Math.max(source.getWidth(), source.getHeight());
+                    int thumbnailWidth = Math.max(1, Math.round(source.getWidth() * thumbnailScale));
+                    int thumbnailHeight = Math.max(1, Math.round(source.getHeight() * thumbnailScale));
+                    writer.addPuzzleImage(name, width, height, pixels, thumbnailWidth, thumbnailHeight,
+                        scaledPixels(source, thumbnailWidth, thumbnailHeight));
+                }
+                System.out.printf(Locale.ROOT, "%-40s %4dx%-4d -> %4dx%d%n", name, source.getWidth(),
+                    source.getHeight(), width, height);
+            } finally {
+                source.dispose();
+            }
+        }
+    }
+    
+    /**
+     * @return The image scaled to the size with bilinear filtering, as RGB888 rows top to bottom
+     */
+    private static byte[] scaledPixels(Pixmap source, int width, int height) {
+        Pixmap scaled = new Pixmap(width, height, Pixmap.Format.RGB888);
+        try {
+            scaled.setBlending(Pixmap.Blending.None);
+            scaled.setFilter(Pixmap.Filter.BiLinear);
+            scaled.drawPixmap(source, 0, 0, source.getWidth(), source.getHeight(), 0, 0, width, height);
+            byte[] pixels = new byte[width * height * 3];
+            ByteBuffer buffer = scaled.getPixels();
+            buffer.position(0);
+            buffer.get(pixels);
+            buffer.position(0);
+            return pixels;
+        } finally {
+            scaled.dispose();
+        }
+    }
+    
+    private static void addPuzzles(PuzzlePackWriter writer, GameMode gameMode, int size, int count, int days,
+                                   int firstDay, Random random, File cacheDirectory) throws IOException {
+        long start = System.nanoTime();
+        PuzzleMode mode = ServerModes.get(gameMode.ordinal(), size);
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        boolean optimal = mode.getCellCount() <= 9;
+        Solver solver;
+        if (optimal) {
+            solver = new IdaStarSolver(mode, estimator);
+        } else if (mode.hasBlank()) {
+            solver = new ConstructiveSolver(mode);
+        } else {
+            solver = new BeamSearchSolver(mode, estimator).setBeamWidth(BEAM_WIDTH).setTimeBudget(BEAM_BUDGET_MILLIS);
+        }
+        SolutionCache cache = null;
+        if (cacheDirectory != null) {
+            cacheDirectory.mkdirs();
+            cache = SolutionCache.open(new File(cacheDirectory, gameMode.name().toLowerCase(Locale.ROOT) + "-" + size
+                + ".cache"), mode, CACHE_SLOTS);
+            solver = new CachingSolver(solver, cache);
+        }
+        byte[] state = new byte[mode.getCellCount()];
+        long solutionMoves = 0;
+        int minDifficulty = Integer.MAX_VALUE;
+        int maxDifficulty = 0;
+        for (int i = 0; i < count; i++) {
+            int length;
+            do {
+                mode.shuffle(random, state, 0);
+                length = solver.solve(state, 0, Long.MAX_VALUE);
+            } while (length <= 0); // Solved draws on tiny boards, or no solution within the budget
+            int difficulty = optimal ? length : Math.round(estimator.estimateMoves(state, 0));
+            writer.addPuzzle(gameMode, size, difficulty, i < days ? firstDay + i : PuzzlePack.NO_DAY, state,
+                solver.getSolution(), length);
+            solutionMoves += length;
+            minDifficulty = Math.min(minDifficulty, difficulty);
+            maxDifficulty = Math.max(maxDifficulty, difficulty);
+        }
+        String cacheStats = "";
+        if (cache != null) {
+            cache.flush();
+            cacheStats = String.format(Locale.ROOT, ", %,d cache hits, %,d stores", cache.getHitCount(),
+                cache.getStoreCount());
+        }
+        System.out.printf(Locale.ROOT, "%-8s %dx%d: %,d puzzles, difficulty %d to %d, %.1f solution moves on average, "
+            + "%.1f s%s%n", gameMode.name().toLowerCase(Locale.ROOT), size, size, count, minDifficulty, maxDifficulty,
+            solutionMoves / (double) count, (System.nanoTime() - start) / 1e9, cacheStats);
+    }
+    
+    /**
+     * Replays every stored solution and times the pack's lookups
+     */
+    private static void check(File file, int[] sizes, int firstDay) throws IOException {
+        long start = System.nanoTime();
+        PuzzlePack pack = PuzzlePack.open(file);
+        long openNanos = System.nanoTime() - start;
+        
+        int[] solution = new int[0];
+        int failures = 0;
+        for (int puzzle = 0; puzzle < pack.getPuzzleCount(); puzzle++) {
+            GameMode gameMode = pack.getGameMode(puzzle);
+            int size = pack.getSize(puzzle);
+            PuzzleMode mode = ServerModes.get(gameMode.ordinal(), size);
+            byte[] state = new byte[size * size];
+            pack.getState(puzzle, state, 0);
+            Session session = new Session(gameMode.ordinal(), mode, 0);
+            session.setState(state, 0, 0);
+            if (pack.getSolutionLength(puzzle) > solution.length) {
+                solution = new int[pack.getSolutionLength(puzzle)];
+            }
+            int length = pack.getSolution(puzzle, solution);
+            for (int i = 0; i < length; i++) {
+                session.move(solution[i]);
+            }
+            if (!session.isSolved() || (puzzle > 0 && pack.getGameMode(puzzle - 1) == gameMode
+                && pack.getSize(puzzle - 1) == size && pack.getDifficulty(puzzle - 1) > pack.getDifficulty(puzzle))) {
+                failures++;
+            }
+        }
+        
+        // Lookups the game makes: a random puzzle of some difficulty, and a daily puzzle
+        Random random = new Random(7);
+        int lookups = 200000;
+        int found = 0;
+        long lookupStart = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            GameMode gameMode = GameMode.values()[random.nextInt(GameMode.values().length)];
+            int size = sizes[random.nextInt(sizes.length)];
+            int wantedDay = firstDay + random.nextInt(400);
+            int daily = pack.findByDay(gameMode, size, wantedDay);
+            int difficulty = random.nextInt(100);
+            int puzzle = pack.findByDifficulty(gameMode, size, difficulty);
+            if (daily >= 0) {
+                found++;
+                if (pack.getDay(daily) != wantedDay || pack.getGameMode(daily) != gameMode
+                    || pack.getSize(daily) != size) {
+                    failures++;
+                }
+            }
+            if (puzzle < pack.endOf(gameMode, size)) {
+                found++;
+                if (pack.getDifficulty(puzzle) < difficulty || pack.getGameMode(puzzle) != gameMode
+                    || pack.getSize(puzzle) != size) {
+                    failures++;
+                }
+            }
+        }
+        double lookupNanos = (System.nanoTime() - lookupStart) / (2.0 * lookups);
+        
+        long imageNanos = 0;
+        for (int image = 0; image < pack.getImageCount(); image++) {
+            long imageStart = System.nanoTime();
+            Pixmap pixmap = new Pixmap(pack.getImageWidth(image), pack.getImageHeight(image), Pixmap.Format.RGB888);
+            pack.readImagePixels(image, pixmap.getPixels());
+            imageNanos += System.nanoTime() - imageStart;
+            pixmap.dispose();
+        }
+        System.out.printf(Locale.ROOT, "Opened in %.2f ms; %,d puzzles, %,d daily; %.0f ns per lookup (%,d hits); "
+            + "%.2f ms per image copy; %d failed checks%n", openNanos / 1e6, pack.getPuzzleCount(),
+            countDaily(pack), lookupNanos, found, imageNanos / 1e6 / Math.max(1, pack.getImageCount()), failures);
+        if (failures > 0) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+    
+    private static int countDaily(PuzzlePack pack) {
+        int daily = 0;
+        for (int puzzle = 0; puzzle < pack.getPuzzleCount(); puzzle++) {
+            if (pack.getDay(puzzle) != PuzzlePack.NO_DAY) {
+                daily++;
+            }
+        }
+        return daily;
+    }
+}
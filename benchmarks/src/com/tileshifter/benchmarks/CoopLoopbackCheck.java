@@ -0,0 +1,265 @@
+package com.tileshifter.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.GeneratorPuzzleBoard;
+import com.tileshifter.PuzzleBoard;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.CoopClient;
+import com.tileshifter.net.Session;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+
+/**
+ * Plays a co-op game with several {@link CoopClient}s on a {@link GameServer} over loopback. Every client keeps a
+ * headless board the way the game screen does: its own moves are applied to it directly, and the others' moves
+ * only through {@link PuzzleBoard#setCells} with the cells the client reports. All clients make random moves at
+ * the given rate for a while, then one of them solves the board. Checks that every client's confirmed board,
+ * predicted board and headless board agree after the random play, and that everyone sees the board solved.
+ *
+ * Usage: CoopLoopbackCheck [--mode classic|shift] [--size 3] [--players 4] [--rate 10] [--seconds 5]
+ */
+public class CoopLoopbackCheck {
+    private static final long TIMEOUT_MILLIS = 60000;
+    
+    /**
+     * A client with the board it shows
+     */
+    private static final class Player implements CoopClient.Listener {
+        final int number;
+        final CoopClient client;
+        PuzzleBoard board;
+        int solvedBy = -1;
+        String failure;
+        long changes;
+        long changedCells;
+        long changeNanos;
+        
+        Player(int number, CoopClient client) {
+            this.number = number;
+            this.client = client;
+        }
+        
+        @Override
+        public void started(PuzzleMode mode, byte[] state, int playerIndex, int playerCount) {
+            board = mode.hasBlank() ? new PuzzleBoard(true, mode.getSize()) : new GeneratorPuzzleBoard(mode);
+            board.initializeBoard();
+            board.setState(state);
+        }
+        
+        @Override
+        public void boardChanged(byte[] state, int[] cells, int count) {
+            long start = System.nanoTime();
+            board.setCells(state, cells, count);
+            changeNanos += System.nanoTime() - start;
+            changes++;
+            changedCells += count;
+        }
+        
+        @Override
+        public void solved(int player) {
+            solvedBy = player;
+        }
+        
+        @Override
+        public void failed(String reason) {
+            failure = reason;
+        }
+        
+        /**
+         * Makes a move on the client and, if it takes it, on the shown board
+         */
+        boolean move(int move) {
+            if (!client.move(move)) {
+                return false;
+            }
+            if (!(board instanceof GeneratorPuzzleBoard)) {
+                int x = board.getEmptyX();
+                int y = board.getEmptyY();
+                switch (move) {
+                    case PuzzleMode.UP: y--; break;
+                    case PuzzleMode.DOWN: y++; break;
+                    case PuzzleMode.LEFT: x--; break;
+                    default: x++; break;
+                }
+                board.moveTile(x, y);
+            } else {
+                ((GeneratorPuzzleBoard) board).applyMove(move);
+            }
+            return true;
+        }
+        
+        boolean showsPrediction(byte[] scratch) {
+            board.getState(scratch);
+            return client.getPredicted().hasState(scratch, 0);
+        }
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        GameMode gameMode = GameMode.CLASSIC;
+        int size = 3;
+        int playerCount = 4;
+        double rate = 10;
+        int seconds = 5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--mode": gameMode = GameMode.valueOf(args[i + 1].toUpperCase(Locale.ROOT)); break;
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                case "--players": playerCount = Integer.parseInt(args[i + 1]); break;
+                case "--rate": rate = Double.parseDouble(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0)).start();
+        Player[] players = new Player[playerCount];
+        try {
+            for (int i = 0; i < playerCount; i++) {
+                players[i] = new Player(i, new CoopClient("127.0.0.1", server.getPort(), gameMode, size,
+                    playerCount));
+                players[i].client.start();
+            }
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!allStarted(players)) {
+                step(deadline, players);
+            }
+            PuzzleMode mode = players[0].client.getPredicted().getMode();
+            
+            // Random play: each player moves at the rate on average, on its own random schedule
+            Random random = new Random(42);
+            long[] nextMove = new long[playerCount];
+            long start = System.nanoTime();
+            long end = start + seconds * 1000000000L;
+            int moveChoices = mode.hasBlank() ? 4 : mode.getGeneratorCount();
+            long attempted = 0;
+            long made = 0;
+            while (System.nanoTime() < end) {
+                long now = System.nanoTime();
+                for (int i = 0; i < playerCount; i++) {
+                    if (now >= nextMove[i]) {
+                        attempted++;
+                        if (players[i].move(random.nextInt(moveChoices))) {
+                            made++;
+                        }
+                        nextMove[i] = now + (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+                    }
+                }
+                step(deadline, players);
+            }
+            settle(deadline, players);
+            
+            boolean ok = true;
+            byte[] reference = new byte[mode.getCellCount()];
+            byte[] scratch = new byte[mode.getCellCount()];
+            players[0].client.getConfirmed().getState(reference, 0);
+            long confirmedMoves = players[0].client.getConfirmed().getMoveCount();
+            for (Player player : players) {
+                CoopClient client = player.client;
+                boolean agrees = client.getConfirmed().hasState(reference, 0)
+                    && client.getPredicted().hasState(reference, 0) && player.showsPrediction(scratch);
+                ok &= agrees && player.failure == null;
+                System.out.printf(Locale.ROOT, "Player %d: %,d own and %,d other moves, %d rebuilds, "
+                    + "%.1f cells changed per rebuild, %.2f us per board update, %d bytes sent, board %s%n",
+                    client.getPlayerIndex(), client.getConfirmed().getMoveCount() - client.getOtherMoveCount(),
+                    client.getOtherMoveCount(), client.getRebuildCount(),
+                    player.changedCells / (double) Math.max(1, player.changes),
+                    player.changeNanos / 1000.0 / Math.max(1, player.changes), client.getBytesSent(),
+                    agrees ? "agrees" : "DIFFERS");
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%s %dx%d, %d players: %,d of %,d attempted moves predicted, %,d applied "
+                + "on the shared board, %.1f moves/s%n", gameMode, size, size, playerCount, made, attempted,
+                confirmedMoves, confirmedMoves / elapsed);
+            
+            // One player solves the board from the agreed state while the others watch
+            Session confirmed = players[0].client.getConfirmed();
+            int solverIndex = -1;
+            if (!confirmed.isSolved()) {
+                IdaStarSolver search = new IdaStarSolver(mode, new DifficultyEstimator(mode));
+                int length = search.solve(reference, 0, Long.MAX_VALUE);
+                if (length < 0) {
+                    throw new IllegalStateException("No solution found for " + Arrays.toString(reference));
+                }
+                Player solver = players[playerCount - 1];
+                solverIndex = solver.client.getPlayerIndex();
+                int played = 0;
+                while (!allSolved(players)) {
+                    if (played < length && solver.move(search.getSolution()[played])) {
+                        played++;
+                    }
+                    step(deadline, players);
+                }
+                System.out.printf(Locale.ROOT, "Player %d solved it in %d moves%n", solverIndex, length);
+            }
+            for (Player player : players) {
+                ok &= player.solvedBy >= 0 && (solverIndex < 0 || player.solvedBy == solverIndex)
+                    && player.board.isWon() && player.showsPrediction(scratch);
+            }
+            if (!ok) {
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+            System.out.println("OK");
+        } finally {
+            for (Player player : players) {
+                if (player != null) {
+                    player.client.close();
+                }
+            }
+            server.close();
+        }
+    }
+    
+    private static boolean allStarted(Player[] players) {
+        for (Player player : players) {
+            if (player.board == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean allSolved(Player[] players) {
+        for (Player player : players) {
+            if (player.solvedBy < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Waits until every move was sent and came back, and the server had a tick to spare
+     */
+    private static void settle(long deadline, Player[] players) throws InterruptedException {
+        long quietUntil = System.currentTimeMillis() + 4 * GameServer.TICK_MILLIS;
+        while (System.currentTimeMillis() < quietUntil) {
+            step(deadline, players);
+            for (Player player : players) {
+                if (player.client.getPendingMoveCount() > 0) {
+                    quietUntil = System.currentTimeMillis() + 4 * GameServer.TICK_MILLIS;
+                }
+            }
+        }
+    }
+    
+    private static void step(long deadline, Player[] players) throws InterruptedException {
+        for (Player player : players) {
+            player.client.update(player);
+            if (player.failure != null) {
+                throw new IllegalStateException("Player " + player.number + " failed: " + player.failure);
+            }
+        }
+        if (System.currentTimeMillis() > deadline) {
+            throw new IllegalStateException("Co-op game did not finish in time");
+        }
+        Thread.sleep(5); // About a frame at 200 fps
+    }
+}
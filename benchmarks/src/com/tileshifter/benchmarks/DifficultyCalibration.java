@@ -0,0 +1,275 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.badlogic.gdx.utils.JsonWriter;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.perm.PermutationRanker;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+
+/**
+ * Calibrates {@link DifficultyEstimator} against exact solution lengths and reports how well it predicts them
+ *
+ * 3x3 boards are solved exhaustively by breadth-first search from the goal, so their sample is every reachable
+ * state. 4x4 boards are too large for that; their sample is random-walk scrambles solved optimally with
+ * {@link IdaStarSolver}, which skews towards shorter solutions than uniformly random states. For every data set
+ * it fits exact ~ slope * lowerBound + intercept by least squares and reports the correlation and error of both
+ * the raw lower bound and the calibrated estimate, plus the estimator's cost per state.
+ *
+ * Usage: DifficultyCalibration [--samples n] [--seed s] [--out results.json]
+ */
+public class DifficultyCalibration {
+    private static final long NODE_LIMIT = 50000000L;
+    
+    private int samples = 200;
+    private long seed = 1;
+    private File outputFile = new File("benchmarks/build/reports/difficulty/results.json");
+    
+    public static void main(String[] args) throws IOException {
+        DifficultyCalibration calibration = new DifficultyCalibration();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--samples": calibration.samples = Integer.parseInt(args[i + 1]); break;
+                case "--seed": calibration.seed = Long.parseLong(args[i + 1]); break;
+                case "--out": calibration.outputFile = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        calibration.run();
+    }
+    
+    private void run() throws IOException {
+        List<DataSet> dataSets = new ArrayList<>();
+        dataSets.add(exhaustive(PuzzleModes.classic(3)));
+        dataSets.add(exhaustive(PuzzleModes.shift(3)));
+        dataSets.add(scrambled(PuzzleModes.classic(4), 20, 70));
+        dataSets.add(scrambled(PuzzleModes.shift(4), 1, 9));
+        dataSets.add(scrambled(PuzzleModes.rotate(4), 1, 11));
+        
+        System.out.println(String.format(Locale.ROOT, "%-10s %4s %7s %7s %8s %8s %8s %8s %8s %8s",
+            "mode", "size", "states", "exact", "r(bound)", "r(est)", "mae(bnd)", "mae(est)", "slope", "ns/state"));
+        for (DataSet data : dataSets) {
+            data.fit();
+            System.out.println(String.format(Locale.ROOT, "%-10s %4d %7d %7.2f %8.3f %8.3f %8.2f %8.2f %8.3f %8.1f",
+                data.mode.getName(), data.mode.getSize(), data.count, data.meanExact, data.boundCorrelation,
+                data.estimateCorrelation, data.boundError, data.estimateError, data.slope, data.nanosPerState));
+        }
+        System.out.println();
+        System.out.println("Calibration table for DifficultyEstimator:");
+        for (DataSet data : dataSets) {
+            System.out.println(String.format(Locale.ROOT, "        {\"%s\", %d, %.3ff, %.3ff},", data.mode.getName(),
+                data.mode.getSize(), data.slope, data.intercept));
+        }
+        writeJson(dataSets);
+    }
+    
+    /**
+     * Every reachable state of a 3x3 board with its exact distance, by breadth-first search from the goal
+     */
+    private DataSet exhaustive(PuzzleMode mode) {
+        int cells = mode.getCellCount();
+        PermutationRanker ranker = PermutationRanker.full(cells);
+        byte[] distances = new byte[(int) ranker.getRankCount()];
+        java.util.Arrays.fill(distances, (byte) -1);
+        int[] queue = new int[distances.length];
+        byte[] state = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            state[cell] = (byte) cell;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = (int) ranker.rank(state, 0);
+        distances[queue[0]] = 0;
+        while (head < tail) {
+            int rank = queue[head++];
+            int moves = mode.hasBlank() ? 4 : mode.getGeneratorCount();
+            for (int move = 0; move < moves; move++) {
+                ranker.unrank(rank, state, 0);
+                if (mode.hasBlank()) {
+                    if (mode.moveBlank(state, 0, indexOf(state, cells - 1), move) < 0) {
+                        continue;
+                    }
+                } else {
+                    mode.apply(state, 0, move);
+                }
+                int next = (int) ranker.rank(state, 0);
+                if (distances[next] < 0) {
+                    distances[next] = (byte) (distances[rank] + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        
+        DataSet data = new DataSet(mode, tail);
+        for (int i = 0; i < tail; i++) {
+            ranker.unrank(queue[i], state, 0);
+            data.add(state, distances[queue[i]]);
+        }
+        return data;
+    }
+    
+    /**
+     * Random-walk scrambles of the given lengths, solved optimally
+     */
+    private DataSet scrambled(PuzzleMode mode, int minMoves, int maxMoves) {
+        Random random = new Random(seed);
+        int cells = mode.getCellCount();
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        IdaStarSolver solver = new IdaStarSolver(mode, estimator);
+        DataSet data = new DataSet(mode, samples);
+        byte[] state = new byte[cells];
+        int skipped = 0;
+        while (data.count < samples) {
+            // Walks never undo their previous move, so their length says more about the solution length
+            SolverCorpus.randomWalk(mode, random, minMoves + random.nextInt(maxMoves - minMoves + 1), state);
+            int length = solver.solve(state, 0, NODE_LIMIT);
+            if (length < 0) {
+                skipped++;
+                continue;
+            }
+            data.add(state, length);
+        }
+        if (skipped > 0) {
+            System.out.println(mode.getName() + " " + mode.getSize() + "x" + mode.getSize() + ": skipped " + skipped
+                + " scrambles over the node limit");
+        }
+        return data;
+    }
+    
+    private static int indexOf(byte[] state, int tile) {
+        for (int cell = 0; cell < state.length; cell++) {
+            if (state[cell] == tile) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+    
+    private void writeJson(List<DataSet> dataSets) throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new FileWriter(outputFile)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.setOutputType(JsonWriter.OutputType.json);
+            json.array();
+            for (DataSet data : dataSets) {
+                json.object()
+                    .set("mode", data.mode.getName())
+                    .set("size", data.mode.getSize())
+                    .set("states", data.count)
+                    .set("meanExactMoves", data.meanExact)
+                    .set("boundCorrelation", data.boundCorrelation)
+                    .set("estimateCorrelation", data.estimateCorrelation)
+                    .set("boundMeanAbsoluteError", data.boundError)
+                    .set("estimateMeanAbsoluteError", data.estimateError)
+                    .set("slope", data.slope)
+                    .set("intercept", data.intercept)
+                    .set("nanosPerState", data.nanosPerState)
+                    .pop();
+            }
+            json.pop();
+            json.flush();
+        }
+        System.out.println("Results written to " + outputFile.getPath());
+    }
+    
+    /**
+     * States with their exact solution length and the estimator's lower bound
+     */
+    private static class DataSet {
+        final PuzzleMode mode;
+        final DifficultyEstimator estimator;
+        final byte[] states;
+        final int[] exact;
+        final int[] bounds;
+        int count;
+        double meanExact, slope, intercept, boundCorrelation, estimateCorrelation, boundError, estimateError;
+        double nanosPerState;
+        
+        DataSet(PuzzleMode mode, int capacity) {
+            this.mode = mode;
+            this.estimator = new DifficultyEstimator(mode);
+            states = new byte[capacity * mode.getCellCount()];
+            exact = new int[capacity];
+            bounds = new int[capacity];
+        }
+        
+        void add(byte[] state, int length) {
+            System.arraycopy(state, 0, states, count * state.length, state.length);
+            exact[count] = length;
+            bounds[count] = estimator.lowerBound(state, 0);
+            if (bounds[count] > length) {
+                throw new IllegalStateException(mode.getName() + ": lower bound " + bounds[count]
+                    + " exceeds the exact length " + length);
+            }
+            count++;
+        }
+        
+        void fit() {
+            double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+            for (int i = 0; i < count; i++) {
+                sumX += bounds[i];
+                sumY += exact[i];
+                sumXX += (double) bounds[i] * bounds[i];
+                sumXY += (double) bounds[i] * exact[i];
+            }
+            meanExact = sumY / count;
+            double variance = sumXX - sumX * sumX / count;
+            slope = variance > 0 ? (sumXY - sumX * sumY / count) / variance : 1;
+            intercept = meanExact - slope * sumX / count;
+            
+            // The estimator clamps the fit to at least the bound, so score the fit the same way
+            double[] estimates = new double[count];
+            double[] boundValues = new double[count];
+            for (int i = 0; i < count; i++) {
+                boundValues[i] = bounds[i];
+                estimates[i] = bounds[i] == 0 ? 0 : Math.max(bounds[i], slope * bounds[i] + intercept);
+                boundError += Math.abs(exact[i] - bounds[i]);
+                estimateError += Math.abs(exact[i] - estimates[i]);
+            }
+            boundError /= count;
+            estimateError /= count;
+            boundCorrelation = correlation(boundValues);
+            estimateCorrelation = correlation(estimates);
+            
+            int cells = mode.getCellCount();
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int repeat = 0; repeat < 5; repeat++) {
+                for (int i = 0; i < count; i++) {
+                    checksum += estimator.lowerBound(states, i * cells);
+                }
+            }
+            nanosPerState = (System.nanoTime() - start) / (5.0 * count);
+            if (checksum < 0) {
+                throw new IllegalStateException();
+            }
+        }
+        
+        private double correlation(double[] values) {
+            double meanValue = 0;
+            for (int i = 0; i < count; i++) {
+                meanValue += values[i];
+            }
+            meanValue /= count;
+            double covariance = 0, varianceValue = 0, varianceExact = 0;
+            for (int i = 0; i < count; i++) {
+                covariance += (values[i] - meanValue) * (exact[i] - meanExact);
+                varianceValue += (values[i] - meanValue) * (values[i] - meanValue);
+                varianceExact += (exact[i] - meanExact) * (exact[i] - meanExact);
+            }
+            return covariance / Math.sqrt(varianceValue * varianceExact);
+        }
+    }
+}
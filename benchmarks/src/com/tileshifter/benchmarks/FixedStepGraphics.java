@@ -0,0 +1,36 @@
+package com.tileshifter.benchmarks;
+
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import com.badlogic.gdx.graphics.GL20;
+
+/**
+ * Headless graphics with a fixed window size and a fixed 60 Hz frame step, so every run animates identically
+ */
+public class FixedStepGraphics extends MockGraphics {
+    private final int width, height;
+    private final GL20 gl;
+    
+    public FixedStepGraphics(int width, int height, GL20 gl) {
+        this.width = width;
+        this.height = height;
+        this.gl = gl;
+    }
+    
+    @Override
+    public GL20 getGL20() { return gl; }
+    
+    @Override
+    public int getWidth() { return width; }
+    
+    @Override
+    public int getHeight() { return height; }
+    
+    @Override
+    public int getBackBufferWidth() { return width; }
+    
+    @Override
+    public int getBackBufferHeight() { return height; }
+    
+    @Override
+    public float getDeltaTime() { return 1f / 60f; }
+}
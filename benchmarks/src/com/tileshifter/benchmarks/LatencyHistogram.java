@@ -0,0 +1,106 @@
+package com.tileshifter.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with HdrHistogram's log-linear layout: values are counted in microseconds, exactly below
+ * {@value #SUB_BUCKETS} and in {@value #SUB_BUCKETS} / 2 equal steps per power of two above, so every value is
+ * kept to within 1/64 (about two significant digits) up to more than an hour, in a few thousand counters. Any number
+ * of threads may record at once without locks; {@link #drainTo} moves the counts out for interval reports.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_SHIFT = 36; // Up to 2^43 microseconds
+    private static final int BUCKETS = SUB_BUCKETS + MAX_SHIFT * HALF;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    
+    /**
+     * Counts a latency; negative values count as 0
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos / 1000)));
+    }
+    
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = Math.min(63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1), MAX_SHIFT);
+        long sub = Math.min(micros >>> shift, SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (sub - HALF);
+    }
+    
+    /**
+     * @return The highest value, in microseconds, that is counted in the bucket
+     */
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * Moves every count into the target, leaving this histogram empty; counts recorded meanwhile end up in one of
+     * the two
+     */
+    void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count > 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+    }
+    
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+    
+    long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+    
+    /**
+     * @param percentile 0 to 100
+     * @return The value at or below which the given share of the counts lie, in nanoseconds, or 0 if empty
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return highestValueAt(i) * 1000;
+            }
+        }
+        return highestValueAt(BUCKETS - 1) * 1000;
+    }
+    
+    long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValueAt(i) * 1000;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,757 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.leaderboard.Ranking;
+import com.tileshifter.leaderboard.ReplayVerifier;
+import com.tileshifter.leaderboard.Submission;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+
+/**
+ * Checks {@link Leaderboard}, its {@link ReplayVerifier} and log, and the server's leaderboard requests, and times
+ * submissions and queries
+ *
+ * - Verifier: random solutions of classic, shift and rotate boards must pass, and mutated ones must get the same
+ *   verdict as a plain replay; starts of the wrong parity must fail.
+ * - Seeds: solutions of boards shuffled from a seed must pass under that seed and fail under others, and seeded
+ *   submissions must survive the log.
+ * - Rankings: many submissions by many players on a few boards are compared with a sorted model, with every solve
+ *   ranked and with only each player's best, before and after the leaderboard is rebuilt from its log.
+ * - Concurrency: threads submit while another queries; reopening the log must number the entries as they were.
+ * - Recovery: logs with a cut-off, corrupted or garbage tail must reopen with the intact records and take new ones.
+ * - Server: named players solve games over loopback, which must not start from the seed they ask for, then ask
+ *   for their rank and the leaderboard.
+ *
+ * Usage: LeaderboardCheck [--entries 300000] [--players 20000] [--dir build/leaderboard-check]
+ */
+public class LeaderboardCheck {
+    private static final int VERIFY_SOLUTIONS = 2000;
+    private static final int SOLUTION_POOL = 4000;
+    private static final int QUERIES = 20000;
+    private static final int SEEDS = 200;
+    private static final int SUBMITTERS = 4;
+    private static final int CONCURRENT_SUBMISSIONS = 5000; // Per submitter
+    private static final String[] IMAGES = {"Mytholore.jpg", "sunset.png", ""};
+    
+    private int entries = 300000;
+    private int players = 20000;
+    private File directory = new File("build/leaderboard-check");
+    private int failures;
+    
+    public static void main(String[] args) throws Exception {
+        LeaderboardCheck check = new LeaderboardCheck();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--entries": check.entries = Integer.parseInt(args[i + 1]); break;
+                case "--players": check.players = Integer.parseInt(args[i + 1]); break;
+                case "--dir": check.directory = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        check.directory.mkdirs();
+        check.checkVerifier(GameMode.CLASSIC, 3);
+        check.checkVerifier(GameMode.CLASSIC, 4);
+        check.checkVerifier(GameMode.CLASSIC, 12); // Tile ids past 127
+        check.checkVerifier(GameMode.SHIFT, 3);
+        check.checkVerifier(GameMode.ROTATE, 4);
+        check.checkSeeds();
+        check.checkRankings(false);
+        check.checkRankings(true);
+        check.checkConcurrency();
+        check.checkRecovery();
+        check.checkServer();
+        System.out.println(check.failures == 0 ? "OK" : "FAILED: " + check.failures + " failed checks");
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+    
+    private void checkVerifier(GameMode gameMode, int size) {
+        PuzzleMode mode = PuzzleModes.of(gameMode, size);
+        ReplayVerifier verifier = new ReplayVerifier(mode);
+        Random random = new Random(size * 31 + gameMode.ordinal());
+        byte[] start = new byte[mode.getCellCount()];
+        long nanos = 0;
+        long moveCount = 0;
+        int mismatches = 0;
+        for (int i = 0; i < VERIFY_SOLUTIONS; i++) {
+            byte[] moves = solution(mode, random, 20 + random.nextInt(400), start);
+            long begin = System.nanoTime();
+            boolean valid = verifier.verify(start, moves, moves.length);
+            nanos += System.nanoTime() - begin;
+            moveCount += moves.length;
+            expect(valid, mode.getName() + " solution of " + moves.length + " moves rejected");
+            
+            expect(!verifier.verify(start, moves, moves.length - 1), mode.getName() + " accepted a solution without"
+                + " its last move");
+            byte[] extended = Arrays.copyOf(moves, moves.length + 1);
+            expect(!verifier.verify(start, extended, extended.length), mode.getName() + " accepted moves after the"
+                + " solve");
+            byte[] mutated = moves.clone();
+            int moveValues = mode.hasBlank() ? PuzzleMode.RIGHT + 3 : mode.getGeneratorCount() + 2; // Some illegal
+            mutated[random.nextInt(mutated.length)] = (byte) random.nextInt(moveValues);
+            if (verifier.verify(start, mutated, mutated.length) != replays(mode, start, mutated)) {
+                mismatches++;
+            }
+        }
+        expect(mismatches == 0, mode.getName() + ": " + mismatches + " mutated solutions judged unlike a replay");
+        if (mode.hasBlank()) {
+            // Swapping two tiles flips the parity, so no moves can solve the board
+            byte[] moves = solution(mode, random, 50, start);
+            int first = (start[0] & 0xFF) == start.length - 1 ? 1 : 0;
+            int second = (start[first + 1] & 0xFF) == start.length - 1 ? first + 2 : first + 1;
+            byte swap = start[first];
+            start[first] = start[second];
+            start[second] = swap;
+            expect(!verifier.verify(start, moves, moves.length), mode.getName() + " accepted an unsolvable start");
+        }
+        System.out.println(String.format(Locale.ROOT, "%s %dx%d: verified %,d solutions, %.1f us each (%.0f ns per"
+            + " move)", mode.getName(), size, size, VERIFY_SOLUTIONS, nanos / 1000.0 / VERIFY_SOLUTIONS, (double) nanos / moveCount));
+    }
+    
+    /**
+     * Solves classic 3x3 boards shuffled from seeds and submits each under its own seed and the next one
+     */
+    private void checkSeeds() throws IOException {
+        File file = new File(directory, "seeded.log");
+        file.delete();
+        PuzzleMode mode = PuzzleModes.classic(3);
+        ReplayVerifier verifier = new ReplayVerifier(mode);
+        byte[] start = new byte[mode.getCellCount()];
+        byte[] other = new byte[mode.getCellCount()];
+        int accepted = 0;
+        try (Leaderboard leaderboard = Leaderboard.open(file, false, false)) {
+            for (long seed = 0; seed < SEEDS; seed++) {
+                ReplayVerifier.shuffle(mode, seed, start);
+                ReplayVerifier.shuffle(mode, seed + 1, other);
+                byte[] moves = optimalSolution(mode, start);
+                expect(verifier.verify(seed, moves, moves.length), "Solution of seed " + seed + " rejected");
+                expect(verifier.verify(seed + 1, moves, moves.length) == Arrays.equals(start, other),
+                    "Solution of seed " + seed + " judged wrongly under seed " + (seed + 1));
+                
+                int entry = leaderboard.submit(new Submission("", GameMode.CLASSIC, 3, "seeded", 1000,
+                    System.currentTimeMillis(), seed, moves));
+                expect(entry == accepted++, "Seeded submission " + seed + " got entry " + entry);
+                int forged = leaderboard.submit(new Submission("", GameMode.CLASSIC, 3, "forged", 1000,
+                    System.currentTimeMillis(), seed + 1, moves));
+                if (forged != Leaderboard.REJECTED) {
+                    accepted++;
+                    expect(Arrays.equals(start, other), "Submission under the wrong seed " + (seed + 1) + " accepted");
+                }
+            }
+        }
+        try (Leaderboard reopened = Leaderboard.open(file, false, false)) {
+            expect(reopened.getRecoveredCount() == accepted && reopened.getDroppedBytes() == 0,
+                "Seeded log reopened with " + reopened.getRecoveredCount() + " of " + accepted + " submissions");
+        }
+        System.out.println(String.format(Locale.ROOT, "Seeds: %d seeded solutions verified and logged", SEEDS));
+    }
+    
+    /**
+     * Submits random solves of classic 3x3 boards, one per image, and compares every kind of query with a model
+     */
+    private void checkRankings(boolean bestPerPlayer) throws IOException {
+        String name = bestPerPlayer ? "best per player" : "every solve";
+        File file = new File(directory, bestPerPlayer ? "best.log" : "all.log");
+        file.delete();
+        PuzzleMode mode = PuzzleModes.classic(3);
+        Random random = new Random(bestPerPlayer ? 2 : 1);
+        byte[][] starts = new byte[SOLUTION_POOL][mode.getCellCount()];
+        byte[][] solutions = new byte[SOLUTION_POOL][];
+        for (int i = 0; i < SOLUTION_POOL; i++) {
+            solutions[i] = solution(mode, random, 1 + random.nextInt(80), starts[i]);
+        }
+        
+        Map<String, Model> models = new HashMap<>();
+        for (String image : IMAGES) {
+            models.put(image, new Model(bestPerPlayer));
+        }
+        long nanos;
+        try (Leaderboard leaderboard = Leaderboard.open(file, bestPerPlayer, false)) {
+            long begin = System.nanoTime();
+            if (!submit(leaderboard, models, starts, solutions, random, 0, entries)) {
+                return;
+            }
+            nanos = System.nanoTime() - begin;
+            compare(name, leaderboard, models, random);
+            timeQueries(name, leaderboard, random);
+        }
+        System.out.println(String.format(Locale.ROOT, "%s: %,d submissions by %,d players, %.2f us each,"
+            + " log %,d KB", name, entries, players, nanos / 1000.0 / entries, file.length() / 1024));
+        
+        long begin = System.nanoTime();
+        try (Leaderboard reopened = Leaderboard.open(file, bestPerPlayer, false)) {
+            long reopenNanos = System.nanoTime() - begin;
+            expect(reopened.getRecoveredCount() == entries && reopened.getDroppedBytes() == 0, name + ": reopened with "
+                + reopened.getRecoveredCount() + " entries, dropped " + reopened.getDroppedBytes() + " bytes");
+            compare(name + " reopened", reopened, models, random);
+            // The rebuilt indexes must take new entries like inserted ones
+            if (submit(reopened, models, starts, solutions, random, entries, entries / 10)) {
+                compare(name + " reopened and added to", reopened, models, random);
+            }
+            System.out.println(String.format(Locale.ROOT, "%s: rebuilt from the log in %,d ms", name,
+                reopenNanos / 1000000));
+        }
+    }
+    
+    /**
+     * Submits random solves, numbered from first on, to the leaderboard and the models
+     * @return Whether every submission got the expected entry number
+     */
+    private boolean submit(Leaderboard leaderboard, Map<String, Model> models, byte[][] starts, byte[][] solutions,
+                           Random random, int first, int count) throws IOException {
+        for (int i = first; i < first + count; i++) {
+            int solution = random.nextInt(SOLUTION_POOL);
+            int player = random.nextInt(players);
+            String image = IMAGES[random.nextInt(IMAGES.length)];
+            // Few distinct times, so ties are common
+            int millis = 1000 + random.nextInt(5000) * 10;
+            int entry = leaderboard.submit(new Submission(image, GameMode.CLASSIC, 3, "p" + player, millis, i,
+                starts[solution], solutions[solution]));
+            if (entry != i) {
+                expect(false, "Submission " + i + " became entry " + entry);
+                return false;
+            }
+            models.get(image).add(player, millis, solutions[solution].length, entry);
+        }
+        return true;
+    }
+    
+    private void compare(String name, Leaderboard leaderboard, Map<String, Model> models, Random random) {
+        int[] found = new int[Protocol.MAX_LEADERBOARD_ENTRIES];
+        for (String image : IMAGES) {
+            Model model = models.get(image);
+            for (Ranking ranking : Ranking.values()) {
+                long[] sorted = model.sorted(ranking);
+                String board = name + " \"" + image + "\" by " + ranking;
+                int entryCount = leaderboard.getEntryCount(image, GameMode.CLASSIC, 3, ranking);
+                expect(entryCount == sorted.length, board + ": " + entryCount + " entries, expected " + sorted.length);
+                for (int q = 0; q < 200; q++) {
+                    int from = q == 0 ? 0 : random.nextInt(sorted.length + 5);
+                    int count = leaderboard.getTop(image, GameMode.CLASSIC, 3, ranking, from, found, found.length);
+                    int expected = Math.max(0, Math.min(found.length, sorted.length - from));
+                    boolean same = count == expected;
+                    for (int i = 0; same && i < count; i++) {
+                        same = found[i] == (int) sorted[from + i];
+                    }
+                    expect(same, board + ": top from rank " + from + " differs");
+                    
+                    int player = random.nextInt(players);
+                    int best = model.best(player, ranking);
+                    int rank = leaderboard.getRank(image, GameMode.CLASSIC, 3, ranking, "p" + player);
+                    int expectedRank = best < 0 ? -1 : Arrays.binarySearch(sorted, model.key(best, ranking));
+                    expect(rank == expectedRank, board + ": p" + player + " ranked " + rank + ", expected "
+                        + expectedRank);
+                    
+                    int value = random.nextInt(ranking == Ranking.TIME ? 60000 : 100);
+                    int upTo = Arrays.binarySearch(sorted, ((long) value + 1) << 32);
+                    upTo = upTo < 0 ? -upTo - 1 : upTo;
+                    expect(leaderboard.countUpTo(image, GameMode.CLASSIC, 3, ranking, value) == upTo,
+                        board + ": count up to " + value + " differs");
+                }
+            }
+        }
+    }
+    
+    private void timeQueries(String name, Leaderboard leaderboard, Random random) {
+        int[] found = new int[Protocol.MAX_LEADERBOARD_ENTRIES];
+        int size = leaderboard.getEntryCount(IMAGES[0], GameMode.CLASSIC, 3, Ranking.TIME);
+        int sink = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink += leaderboard.getTop(IMAGES[0], GameMode.CLASSIC, 3, Ranking.TIME, random.nextInt(size), found,
+                found.length);
+        }
+        long topNanos = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink += leaderboard.getRank(IMAGES[0], GameMode.CLASSIC, 3, Ranking.MOVES, "p" + random.nextInt(players));
+        }
+        long rankNanos = System.nanoTime() - begin;
+        System.out.println(String.format(Locale.ROOT, "%s: %,d ranked, top 10 from any rank %.2f us,"
+            + " player rank %.2f us (%d)", name, size, topNanos / 1000.0 / QUERIES, rankNanos / 1000.0 / QUERIES,
+            sink & 1));
+    }
+    
+    /**
+     * Submits from several threads to a leaderboard of every solve while the main thread queries it, then checks
+     * that the rebuilt leaderboard gives every entry the same number, i.e. that entries were numbered in log order
+     */
+    private void checkConcurrency() throws Exception {
+        File file = new File(directory, "concurrent.log");
+        file.delete();
+        final PuzzleMode mode = PuzzleModes.classic(3);
+        final Leaderboard leaderboard = Leaderboard.open(file, false, false);
+        final AtomicInteger failed = new AtomicInteger();
+        Thread[] submitters = new Thread[SUBMITTERS];
+        long begin = System.nanoTime();
+        for (int t = 0; t < SUBMITTERS; t++) {
+            final int thread = t;
+            submitters[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(thread);
+                    byte[] start = new byte[mode.getCellCount()];
+                    try {
+                        for (int i = 0; i < CONCURRENT_SUBMISSIONS; i++) {
+                            byte[] moves = solution(mode, random, 1 + random.nextInt(80), start);
+                            if (leaderboard.submit(new Submission("", GameMode.CLASSIC, 3, "t" + thread,
+                                1000 + random.nextInt(100000), i, start.clone(), moves)) == Leaderboard.REJECTED) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+            submitters[t].start();
+        }
+        int[] top = new int[10];
+        long queries = 0;
+        boolean running = true;
+        while (running) {
+            leaderboard.getTop("", GameMode.CLASSIC, 3, Ranking.TIME, 0, top, top.length);
+            queries++;
+            running = false;
+            for (Thread submitter : submitters) {
+                running |= submitter.isAlive();
+            }
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        int total = SUBMITTERS * CONCURRENT_SUBMISSIONS;
+        expect(failed.get() == 0, failed.get() + " concurrent submissions failed");
+        expect(leaderboard.getTotalEntryCount() == total, "Concurrent submissions made "
+            + leaderboard.getTotalEntryCount() + " entries of " + total);
+        String[] entryPlayers = new String[total];
+        int[] entryMillis = new int[total];
+        for (int entry = 0; entry < leaderboard.getTotalEntryCount() && entry < total; entry++) {
+            entryPlayers[entry] = leaderboard.getPlayer(entry);
+            entryMillis[entry] = leaderboard.getMillis(entry);
+        }
+        leaderboard.close();
+        
+        int renumbered = 0;
+        try (Leaderboard reopened = Leaderboard.open(file, false, false)) {
+            for (int entry = 0; entry < reopened.getTotalEntryCount() && entry < total; entry++) {
+                if (!reopened.getPlayer(entry).equals(entryPlayers[entry])
+                    || reopened.getMillis(entry) != entryMillis[entry]) {
+                    renumbered++;
+                }
+            }
+        }
+        expect(renumbered == 0, renumbered + " entries numbered differently after reopening");
+        System.out.println(String.format(Locale.ROOT, "Concurrency: %,d submissions from %d threads in %,d ms, %,d"
+            + " queries meanwhile", total, SUBMITTERS, nanos / 1000000, queries));
+    }
+    
+    private void checkRecovery() throws IOException {
+        File file = new File(directory, "recovery.log");
+        PuzzleMode mode = PuzzleModes.classic(3);
+        Random random = new Random(3);
+        int count = 50;
+        
+        // A cut-off last record
+        writeLog(file, mode, random, count);
+        truncate(file, file.length() - 5);
+        expectReopen(file, "cut-off", count - 1, true);
+        append(file, mode, random);
+        expectReopen(file, "appended after a cut-off", count, false);
+        
+        // A corrupted last record
+        writeLog(file, mode, random, count);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(file.length() - 3);
+            int value = raw.read();
+            raw.seek(file.length() - 3);
+            raw.write(value ^ 0x10);
+        }
+        expectReopen(file, "corrupted", count - 1, true);
+        
+        // Garbage after the last record, e.g. a record header written without its payload
+        writeLog(file, mode, random, count);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(file.length());
+            raw.writeInt(1 << 30);
+            raw.writeInt(12345);
+        }
+        expectReopen(file, "garbage tail", count, true);
+        append(file, mode, random);
+        expectReopen(file, "appended after garbage", count + 1, false);
+        
+        // Not a leaderboard log at all
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(0);
+            raw.writeInt(0x12345678);
+        }
+        boolean rejected = false;
+        try {
+            Leaderboard.open(file, false, false).close();
+        } catch (IOException e) {
+            rejected = true;
+        }
+        expect(rejected, "Opened a file with the wrong magic");
+        System.out.println("Recovery: cut-off, corrupted and garbage tails dropped");
+    }
+    
+    private static void writeLog(File file, PuzzleMode mode, Random random, int count) throws IOException {
+        file.delete();
+        for (int i = 0; i < count; i++) {
+            append(file, mode, random);
+        }
+    }
+    
+    private static void append(File file, PuzzleMode mode, Random random) throws IOException {
+        byte[] start = new byte[mode.getCellCount()];
+        byte[] moves = solution(mode, random, 30, start);
+        try (Leaderboard leaderboard = Leaderboard.open(file, false, false)) {
+            leaderboard.submit(new Submission("", GameMode.CLASSIC, 3, "recovery", 1000 + random.nextInt(1000),
+                System.currentTimeMillis(), start, moves));
+        }
+    }
+    
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(length);
+        }
+    }
+    
+    private void expectReopen(File file, String name, int records, boolean damaged) throws IOException {
+        try (Leaderboard leaderboard = Leaderboard.open(file, false, false)) {
+            expect(leaderboard.getRecoveredCount() == records && (leaderboard.getDroppedBytes() > 0) == damaged,
+                name + " log reopened with " + leaderboard.getRecoveredCount() + " records and "
+                + leaderboard.getDroppedBytes() + " dropped bytes, expected " + records);
+            expect(leaderboard.getEntryCount("", GameMode.CLASSIC, 3, Ranking.TIME) == records,
+                name + " log ranked " + leaderboard.getEntryCount("", GameMode.CLASSIC, 3, Ranking.TIME) + " solves");
+        }
+    }
+    
+    /**
+     * Two named players solve classic 3x3 games over loopback, one with a detour, and an unnamed one solves one too;
+     * only the named solves may be ranked, by move count. Every game asks for the same seed, which the server must
+     * ignore for ranked games.
+     */
+    private void checkServer() throws IOException {
+        File file = new File(directory, "server.log");
+        file.delete();
+        PuzzleMode mode = PuzzleModes.classic(3);
+        long seed = 42;
+        byte[] requested = new byte[mode.getCellCount()];
+        ReplayVerifier.shuffle(mode, seed, requested);
+        
+        Leaderboard leaderboard = Leaderboard.open(file, true, true);
+        try (GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0))) {
+            server.setLeaderboard(leaderboard);
+            server.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            long begin = System.nanoTime();
+            int bobMoves = play(mode, address, "bob", seed, requested, true);
+            int aliceMoves = play(mode, address, "alice", seed, requested, false);
+            play(mode, address, null, seed, requested, false);
+            long nanos = System.nanoTime() - begin;
+            boolean aliceFirst = aliceMoves < bobMoves; // Bob solved first, so he wins a tie
+            
+            try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                socket.setTcpNoDelay(true);
+                OutputStream output = socket.getOutputStream();
+                InputStream input = socket.getInputStream();
+                byte[] buffer = new byte[512];
+                int end = Protocol.writeSetName(buffer, 0, "alice");
+                end = Protocol.writeGetRank(buffer, end, GameMode.CLASSIC.ordinal(), 3, Ranking.MOVES.ordinal());
+                end = Protocol.writeGetLeaderboard(buffer, end, GameMode.CLASSIC.ordinal(), 3, Ranking.MOVES.ordinal(),
+                    0, 200);
+                output.write(buffer, 0, end);
+                
+                readFully(input, buffer, Protocol.RANK_LENGTH);
+                expect((buffer[0] & 0xFF) == Protocol.RANK && Protocol.readInt(buffer, 2) == (aliceFirst ? 0 : 1)
+                    && Protocol.readInt(buffer, 6) == 2 && Protocol.readInt(buffer, 14) == aliceMoves,
+                    "alice's rank reply: rank " + Protocol.readInt(buffer, 2) + " of " + Protocol.readInt(buffer, 6)
+                    + ", " + Protocol.readInt(buffer, 14) + " moves");
+                readFully(input, buffer, Protocol.LEADERBOARD_HEADER_LENGTH);
+                int count = buffer[12] & 0xFF;
+                expect((buffer[0] & 0xFF) == Protocol.LEADERBOARD && count == 2 && Protocol.readInt(buffer, 4) == 2,
+                    "Leaderboard reply with " + count + " of " + Protocol.readInt(buffer, 4) + " entries");
+                readFully(input, buffer, count * Protocol.LEADERBOARD_ENTRY_LENGTH);
+                String first = Protocol.readName(buffer, 8);
+                String second = Protocol.readName(buffer, Protocol.LEADERBOARD_ENTRY_LENGTH + 8);
+                int firstMoves = Protocol.readInt(buffer, 4);
+                int secondMoves = Protocol.readInt(buffer, Protocol.LEADERBOARD_ENTRY_LENGTH + 4);
+                expect(first.equals(aliceFirst ? "alice" : "bob") && second.equals(aliceFirst ? "bob" : "alice")
+                    && firstMoves == Math.min(aliceMoves, bobMoves) && secondMoves == Math.max(aliceMoves, bobMoves),
+                    "Leaderboard by moves: " + first + " " + firstMoves + ", " + second + " " + secondMoves);
+            }
+            System.out.println(String.format(Locale.ROOT, "Server: 3 games of %d and %d moves solved and synced in"
+                + " %,d ms", aliceMoves, bobMoves, nanos / 1000000));
+        } finally {
+            leaderboard.close();
+        }
+        try (Leaderboard reopened = Leaderboard.open(file, true, false)) {
+            expect(reopened.getRecoveredCount() == 2, "Server log holds " + reopened.getRecoveredCount() + " solves");
+        }
+    }
+    
+    /**
+     * Starts a game on the server, solves the board it replies with and expects the last move to solve it
+     * @param name Player name, or null to play unnamed
+     * @param requested The board the seed shuffles to, which a ranked game must not start from
+     * @return The number of moves played
+     */
+    private int play(PuzzleMode mode, InetSocketAddress address, String name, long seed, byte[] requested,
+                     boolean withDetour) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+            byte[] buffer = new byte[512];
+            int end = name == null ? 0 : Protocol.writeSetName(buffer, 0, name);
+            end = Protocol.writeNewGame(buffer, end, GameMode.CLASSIC.ordinal(), 3, seed);
+            output.write(buffer, 0, end);
+            readFully(input, buffer, Protocol.STATE_HEADER_LENGTH + mode.getCellCount());
+            byte[] start = Arrays.copyOfRange(buffer, Protocol.STATE_HEADER_LENGTH,
+                Protocol.STATE_HEADER_LENGTH + mode.getCellCount());
+            expect(!Arrays.equals(start, requested), (name == null ? "Unnamed player" : name) + "'s game started"
+                + " from the requested seed");
+            byte[] moves = optimalSolution(mode, start);
+            if (withDetour) {
+                moves = detour(mode, start, moves);
+            }
+            
+            buffer = new byte[2 * moves.length];
+            end = 0;
+            for (byte move : moves) {
+                end = Protocol.writeMove(buffer, end, move);
+            }
+            output.write(buffer, 0, end);
+            readFully(input, buffer, 2 * moves.length);
+            int last = buffer[2 * moves.length - 1] & 0xFF;
+            expect(last == Protocol.SOLVED, (name == null ? "Unnamed player" : name) + "'s last move replied " + last);
+            return moves.length;
+        }
+    }
+    
+    private static byte[] optimalSolution(PuzzleMode mode, byte[] start) {
+        IdaStarSolver solver = new IdaStarSolver(mode, new DifficultyEstimator(mode));
+        int length = solver.solve(start, 0, Long.MAX_VALUE);
+        byte[] moves = new byte[length];
+        for (int i = 0; i < length; i++) {
+            moves[i] = (byte) solver.getSolution()[i];
+        }
+        return moves;
+    }
+    
+    /**
+     * @return The moves with one blank move and its undo put in front
+     */
+    private static byte[] detour(PuzzleMode mode, byte[] start, byte[] moves) {
+        int blankCell = 0;
+        while ((start[blankCell] & 0xFF) != start.length - 1) {
+            blankCell++;
+        }
+        int direction = 0;
+        while (mode.getBlankNeighbor(blankCell, direction) < 0) {
+            direction++;
+        }
+        byte[] detour = new byte[moves.length + 2];
+        detour[0] = (byte) direction;
+        detour[1] = (byte) (direction ^ 1); // UP and DOWN, LEFT and RIGHT undo each other
+        System.arraycopy(moves, 0, detour, 2, moves.length);
+        return detour;
+    }
+    
+    /**
+     * Walks randomly away from the solved board and writes where it ends to start
+     * @return Moves that solve start: the walk undone, cut off where it first reaches the solved board
+     */
+    private static byte[] solution(PuzzleMode mode, Random random, int walkLength, byte[] start) {
+        while (true) {
+            byte[] state = start;
+            for (int cell = 0; cell < state.length; cell++) {
+                state[cell] = (byte) cell;
+            }
+            int blankCell = state.length - 1;
+            List<Integer> undo = new ArrayList<>();
+            for (int i = 0; i < walkLength; i++) {
+                if (mode.hasBlank()) {
+                    int direction = random.nextInt(4);
+                    if (mode.getBlankNeighbor(blankCell, direction) < 0) {
+                        continue;
+                    }
+                    blankCell = mode.moveBlank(state, 0, blankCell, direction);
+                    undo.add(direction ^ 1);
+                } else {
+                    int generator = random.nextInt(mode.getGeneratorCount());
+                    mode.apply(state, 0, generator);
+                    int inverse = mode.getInverse(generator);
+                    if (inverse >= 0) {
+                        undo.add(inverse);
+                    } else {
+                        for (int k = order(mode, generator) - 1; k > 0; k--) {
+                            undo.add(generator);
+                        }
+                    }
+                }
+            }
+            byte[] moves = new byte[undo.size()];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = (byte) (int) undo.get(moves.length - 1 - i);
+            }
+            int solvedAfter = firstSolved(mode, state, moves);
+            if (solvedAfter > 0) {
+                return Arrays.copyOf(moves, solvedAfter);
+            }
+        }
+    }
+    
+    private static int order(PuzzleMode mode, int generator) {
+        byte[] state = new byte[mode.getCellCount()];
+        for (int cell = 0; cell < state.length; cell++) {
+            state[cell] = (byte) cell;
+        }
+        int order = 0;
+        do {
+            mode.apply(state, 0, generator);
+            order++;
+        } while (!mode.isSolved(state, 0));
+        return order;
+    }
+    
+    /**
+     * @return The number of moves after which the board is first solved, 0 if it starts solved, or -1 if it never is
+     * or a move is illegal
+     */
+    private static int firstSolved(PuzzleMode mode, byte[] start, byte[] moves) {
+        byte[] state = start.clone();
+        int blankCell = -1;
+        for (int cell = 0; mode.hasBlank() && cell < state.length; cell++) {
+            if ((state[cell] & 0xFF) == state.length - 1) {
+                blankCell = cell;
+            }
+        }
+        for (int i = 0; i < moves.length; i++) {
+            if (mode.isSolved(state, 0)) {
+                return i;
+            }
+            int move = moves[i] & 0xFF;
+            if (mode.hasBlank()) {
+                if (move > PuzzleMode.RIGHT || mode.getBlankNeighbor(blankCell, move) < 0) {
+                    return -1;
+                }
+                blankCell = mode.moveBlank(state, 0, blankCell, move);
+            } else {
+                if (move >= mode.getGeneratorCount()) {
+                    return -1;
+                }
+                mode.apply(state, 0, move);
+            }
+        }
+        return mode.isSolved(state, 0) ? moves.length : -1;
+    }
+    
+    /**
+     * @return Whether the moves solve the board with the last one, by replaying them
+     */
+    private static boolean replays(PuzzleMode mode, byte[] start, byte[] moves) {
+        return moves.length > 0 && firstSolved(mode, start, moves) == moves.length;
+    }
+    
+    private static void readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = input.read(buffer, offset, length - offset);
+            if (count < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            offset += count;
+        }
+    }
+    
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            if (failures < 10) {
+                System.out.println("Check failed: " + message);
+            }
+            failures++;
+        }
+    }
+    
+    /**
+     * The rankings of one board as plain lists, sorted when queried
+     */
+    private static final class Model {
+        final boolean bestPerPlayer;
+        final List<int[]> solves = new ArrayList<>(); // Entry, millis, moves
+        final Map<Integer, int[]> bests = new HashMap<>(); // Player to best entry per ranking
+        final Map<Integer, int[]> byEntry = new HashMap<>();
+        
+        Model(boolean bestPerPlayer) {
+            this.bestPerPlayer = bestPerPlayer;
+        }
+        
+        void add(int player, int millis, int moves, int entry) {
+            int[] solve = {entry, millis, moves};
+            solves.add(solve);
+            byEntry.put(entry, solve);
+            int[] best = bests.get(player);
+            if (best == null) {
+                best = new int[] {-1, -1};
+                bests.put(player, best);
+            }
+            for (Ranking ranking : Ranking.values()) {
+                int current = best[ranking.ordinal()];
+                if (current < 0 || key(entry, ranking) < key(current, ranking)) {
+                    best[ranking.ordinal()] = entry;
+                }
+            }
+        }
+        
+        long key(int entry, Ranking ranking) {
+            int[] solve = byEntry.get(entry);
+            return (long) ranking.valueOf(solve[1], solve[2]) << 32 | entry;
+        }
+        
+        int best(int player, Ranking ranking) {
+            int[] best = bests.get(player);
+            return best == null ? -1 : best[ranking.ordinal()];
+        }
+        
+        long[] sorted(Ranking ranking) {
+            long[] keys;
+            if (bestPerPlayer) {
+                keys = new long[bests.size()];
+                int i = 0;
+                for (int[] best : bests.values()) {
+                    keys[i++] = key(best[ranking.ordinal()], ranking);
+                }
+            } else {
+                keys = new long[solves.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = key(solves.get(i)[0], ranking);
+                }
+            }
+            Arrays.sort(keys);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.tileshifter.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.server.ServerModes;
+import com.tileshifter.server.VirtualThreads;
+import com.tileshifter.solver.BeamSearchSolver;
+import com.tileshifter.solver.ConstructiveSolver;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.Solver;
+
+/**
+ * Simulates a population of players against a game server over loopback, to size servers. Every player has its
+ * own connection and (virtual) thread, plays one game mode, and thinks for an exponentially distributed time
+ * before each move. Solving players work through a solver's solution of each board; the others make random moves
+ * that do not undo the previous one and give up on a board after a while. Each player replays its moves on its
+ * own {@link Session}, so every reply is checked against the expected result.
+ *
+ * Latency is measured per move from when the player meant to send it, i.e. after its think time, to the reply; a
+ * player that is held up by a slow reply sends its next move late, and that delay counts too, so a stalled server
+ * cannot hide behind the players it stalls. The time from the actual send is reported separately. Both are kept in
+ * {@link LatencyHistogram}s, per game mode, and only after the ramp-up.
+ *
+ * Without --server, a {@link GameServer} is started in this JVM; give --server host:port to load one started with
+ * ServerMain, which keeps the server's CPU use apart from the players'. Connections come from several loopback
+ * addresses like {@link ServerLoadTest}'s, and need ulimit -n above the player count, twice that in one JVM.
+ *
+ * Usage: PlayerLoadGenerator [--players 10000] [--modes classic,shift,rotate] [--size 4] [--think 500]
+ * [--solvers 0.5] [--abandon 200] [--ramp 10] [--seconds 30] [--timeout 10000] [--server host:port]
+ */
+public class PlayerLoadGenerator {
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    
+    private int players = 10000;
+    private GameMode[] modes = GameMode.values();
+    private int size = 4;
+    private double thinkMillis = 500;
+    private double solverShare = 0.5;
+    private int abandonMoves = 200;
+    private int rampSeconds = 10;
+    private int seconds = 30;
+    private int timeoutMillis = 10000;
+    private InetSocketAddress serverAddress;
+    
+    private volatile boolean running = true;
+    private volatile long measureStart = Long.MAX_VALUE; // Until the ramp-up is over
+    private final AtomicInteger connected = new AtomicInteger();
+    private LatencyHistogram[] responseTimes; // Per mode, from the intended send
+    private LatencyHistogram[] serviceTimes; // Per mode, from the actual send
+    private final LatencyHistogram interval = new LatencyHistogram(); // All modes, drained every second
+    private LongAdder[] moves; // Per mode, after the ramp-up
+    private final LongAdder allMoves = new LongAdder();
+    private final LongAdder gamesSolved = new LongAdder();
+    private final LongAdder gamesAbandoned = new LongAdder();
+    private final LongAdder connectErrors = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+    private final LongAdder desyncs = new LongAdder();
+    // Per mode, filled before the players start; solvers are not thread-safe, so players borrow them
+    private final List<ConcurrentLinkedQueue<Solver>> solvers = new ArrayList<>();
+    
+    public static void main(String[] args) throws Exception {
+        PlayerLoadGenerator generator = new PlayerLoadGenerator();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--players": generator.players = Integer.parseInt(args[i + 1]); break;
+                case "--modes": generator.modes = parseModes(args[i + 1]); break;
+                case "--size": generator.size = Integer.parseInt(args[i + 1]); break;
+                case "--think": generator.thinkMillis = Double.parseDouble(args[i + 1]); break;
+                case "--solvers": generator.solverShare = Double.parseDouble(args[i + 1]); break;
+                case "--abandon": generator.abandonMoves = Integer.parseInt(args[i + 1]); break;
+                case "--ramp": generator.rampSeconds = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": generator.seconds = Integer.parseInt(args[i + 1]); break;
+                case "--timeout": generator.timeoutMillis = Integer.parseInt(args[i + 1]); break;
+                case "--server": generator.serverAddress = parseAddress(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        for (GameMode mode : generator.modes) {
+            if (!ServerModes.supports(mode.ordinal(), generator.size)) {
+                throw new IllegalArgumentException(mode + " does not support size " + generator.size);
+            }
+        }
+        generator.run();
+    }
+    
+    private static GameMode[] parseModes(String list) {
+        String[] names = list.split(",");
+        GameMode[] modes = new GameMode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            modes[i] = GameMode.valueOf(names[i].trim().toUpperCase(Locale.ROOT));
+        }
+        return modes;
+    }
+    
+    private static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("--server must be host:port, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+    
+    private void run() throws Exception {
+        int modeCount = GameMode.values().length;
+        responseTimes = new LatencyHistogram[modeCount];
+        serviceTimes = new LatencyHistogram[modeCount];
+        moves = new LongAdder[modeCount];
+        for (int i = 0; i < modeCount; i++) {
+            responseTimes[i] = new LatencyHistogram();
+            serviceTimes[i] = new LatencyHistogram();
+            moves[i] = new LongAdder();
+            solvers.add(new ConcurrentLinkedQueue<Solver>());
+        }
+        System.out.printf(Locale.ROOT, "%,d players on %s threads, %d processors; %s %dx%d; think time %.0f ms; "
+            + "%.0f%% solving%n", players, VirtualThreads.isAvailable() ? "virtual" : "platform",
+            Runtime.getRuntime().availableProcessors(), modeNames(), size, size, thinkMillis, solverShare * 100);
+        
+        GameServer server = null;
+        InetSocketAddress address = serverAddress;
+        if (address == null) {
+            server = new GameServer(new InetSocketAddress("127.0.0.1", 0)).start();
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        }
+        try {
+            drive(address);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+    
+    private String modeNames() {
+        StringBuilder names = new StringBuilder();
+        for (GameMode mode : modes) {
+            names.append(names.length() == 0 ? "" : ", ").append(mode.name().toLowerCase(Locale.ROOT));
+        }
+        return names.toString();
+    }
+    
+    private void drive(final InetSocketAddress address) throws InterruptedException {
+        final long start = System.nanoTime();
+        final long rampNanos = TimeUnit.SECONDS.toNanos(rampSeconds);
+        final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("simulated-player-");
+        // Starting platform threads can take longer than the ramp-up, so this thread keeps reporting meanwhile
+        final CountDownLatch spawned = new CountDownLatch(1);
+        Thread spawner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int p = 0; p < players; p++) {
+                    final int player = p;
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Spread the connects over the ramp-up
+                            parkUntil(start + rampNanos * player / players);
+                            play(address, player);
+                        }
+                    });
+                }
+                spawned.countDown();
+            }
+        }, "player-spawner");
+        spawner.start();
+        
+        // Measures once the ramp-up is over and every player runs
+        long end = Long.MAX_VALUE;
+        long lastMoves = 0;
+        long lastErrors = 0;
+        for (long next = start + 1000000000L; next <= end; next += 1000000000L) {
+            parkUntil(next);
+            if (end == Long.MAX_VALUE && next >= start + rampNanos && spawned.getCount() == 0) {
+                measureStart = next;
+                end = next + TimeUnit.SECONDS.toNanos(seconds);
+            }
+            long moveCount = allMoves.sum();
+            long errors = errorCount();
+            LatencyHistogram second = new LatencyHistogram();
+            interval.drainTo(second);
+            System.out.printf(Locale.ROOT, "%3ds %s %,7d connected %,9d moves/s  p50 %7.2f ms  p99 %7.2f ms  "
+                + "max %8.2f ms  %,d errors%n", (next - start) / 1000000000L, next <= measureStart ? "ramp" : "    ",
+                connected.get(), moveCount - lastMoves, second.getValueAtPercentile(50) / 1e6,
+                second.getValueAtPercentile(99) / 1e6, second.getMax() / 1e6, errors - lastErrors);
+            lastMoves = moveCount;
+            lastErrors = errors;
+        }
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(timeoutMillis + 10000L, TimeUnit.MILLISECONDS)) {
+            System.out.println("Some players did not stop in time");
+        }
+        report();
+    }
+    
+    private void report() {
+        long totalMoves = 0;
+        LatencyHistogram allResponses = new LatencyHistogram();
+        LatencyHistogram allService = new LatencyHistogram();
+        System.out.println("Latency per move after the ramp-up, from the intended send (from the actual send):");
+        for (GameMode mode : modes) {
+            int index = mode.ordinal();
+            totalMoves += moves[index].sum();
+            allResponses.add(responseTimes[index]);
+            allService.add(serviceTimes[index]);
+            printLatency(mode.name().toLowerCase(Locale.ROOT), responseTimes[index], serviceTimes[index]);
+        }
+        printLatency("all", allResponses, allService);
+        long errors = errorCount();
+        System.out.printf(Locale.ROOT, "%,d moves in %d s = %,.0f moves/s%n", totalMoves, seconds,
+            totalMoves / (double) seconds);
+        System.out.printf(Locale.ROOT, "Whole run: %,d moves, %,d boards solved, %,d abandoned; errors: %,d connect, "
+            + "%,d I/O, %,d timeouts, %,d protocol, %,d desync, %.4f%% of requests%n", allMoves.sum(),
+            gamesSolved.sum(), gamesAbandoned.sum(), connectErrors.sum(), ioErrors.sum(), timeouts.sum(),
+            protocolErrors.sum(), desyncs.sum(), 100.0 * errors / Math.max(1, allMoves.sum() + errors));
+    }
+    
+    private static void printLatency(String name, LatencyHistogram response, LatencyHistogram service) {
+        System.out.printf(Locale.ROOT, "  %-8s %,10d moves  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n", name,
+            response.getCount(), millis(response, service, 50), millis(response, service, 90),
+            millis(response, service, 99), millis(response, service, 99.9), millis(response, service, 100));
+    }
+    
+    private static String millis(LatencyHistogram response, LatencyHistogram service, double percentile) {
+        return String.format(Locale.ROOT, "%.2f (%.2f) ms", response.getValueAtPercentile(percentile) / 1e6,
+            service.getValueAtPercentile(percentile) / 1e6);
+    }
+    
+    private long errorCount() {
+        return connectErrors.sum() + ioErrors.sum() + timeouts.sum() + protocolErrors.sum() + desyncs.sum();
+    }
+    
+    /**
+     * Plays games until the run ends, reconnecting after errors
+     */
+    private void play(InetSocketAddress address, int player) {
+        GameMode gameMode = modes[player % modes.length];
+        Random random = new Random(player);
+        // Every mode gets its share of solvers, whatever the player count
+        boolean solving = (player / modes.length + 0.5) * solverShare % 1 < solverShare;
+        SimulatedPlayer simulated = new SimulatedPlayer(gameMode, ServerModes.get(gameMode.ordinal(), size),
+            solving, random);
+        while (running) {
+            Socket socket = new Socket();
+            try {
+                socket.bind(new InetSocketAddress("127.0.0." + (2 + player / CONNECTIONS_PER_ADDRESS), 0));
+                socket.connect(address, timeoutMillis);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeoutMillis);
+            } catch (IOException e) {
+                connectErrors.increment();
+                close(socket);
+                parkUntil(System.nanoTime() + RECONNECT_DELAY_NANOS);
+                continue;
+            }
+            connected.incrementAndGet();
+            try {
+                simulated.play(socket.getInputStream(), socket.getOutputStream());
+            } catch (SocketTimeoutException e) {
+                timeouts.increment();
+            } catch (IOException e) {
+                if (running) {
+                    ioErrors.increment();
+                }
+            } catch (IllegalStateException e) {
+                protocolErrors.increment();
+            } finally {
+                connected.decrementAndGet();
+                close(socket);
+            }
+            if (running) {
+                parkUntil(System.nanoTime() + RECONNECT_DELAY_NANOS);
+            }
+        }
+    }
+    
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Parks until the given {@link System#nanoTime()}, or returns at once if it passed
+     */
+    private static void parkUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+    
+    private Solver borrowSolver(GameMode gameMode, PuzzleMode mode) {
+        Solver solver = solvers.get(gameMode.ordinal()).poll();
+        if (solver != null) {
+            return solver;
+        }
+        if (mode.hasBlank()) {
+            return new ConstructiveSolver(mode);
+        }
+        // A quick, rough solution is what a player would find too; it takes CPU from the players' side
+        return new BeamSearchSolver(mode, new DifficultyEstimator(mode)).setBeamWidth(16).setTimeBudget(20)
+            .setThreads(1);
+    }
+    
+    private void returnSolver(GameMode gameMode, Solver solver) {
+        solvers.get(gameMode.ordinal()).add(solver);
+    }
+    
+    /**
+     * One player's games on one connection at a time
+     */
+    private final class SimulatedPlayer {
+        private final GameMode gameMode;
+        private final PuzzleMode mode;
+        private final boolean solving;
+        private final Random random;
+        private final int moveChoices;
+        private final byte[] request = new byte[Protocol.NEW_GAME_LENGTH];
+        private final byte[] reply;
+        private int[] solution = new int[0];
+        
+        SimulatedPlayer(GameMode gameMode, PuzzleMode mode, boolean solving, Random random) {
+            this.gameMode = gameMode;
+            this.mode = mode;
+            this.solving = solving;
+            this.random = random;
+            moveChoices = mode.hasBlank() ? 4 : mode.getGeneratorCount();
+            reply = new byte[Protocol.STATE_HEADER_LENGTH + mode.getCellCount()];
+        }
+        
+        void play(InputStream input, OutputStream output) throws IOException {
+            int modeIndex = gameMode.ordinal();
+            long intended;
+            while (running) {
+                long seed = random.nextLong();
+                output.write(request, 0, Protocol.writeNewGame(request, 0, modeIndex, size, seed));
+                readFully(input, reply, Protocol.STATE_HEADER_LENGTH + mode.getCellCount());
+                if (reply[0] != (byte) Protocol.STATE) {
+                    throw new IllegalStateException("Expected a state reply, got opcode " + (reply[0] & 0xFF));
+                }
+                Session session = new Session(modeIndex, mode, seed);
+                if (!session.hasState(reply, Protocol.STATE_HEADER_LENGTH)) {
+                    if (serverAddress == null) {
+                        desyncs.increment();
+                        continue;
+                    }
+                    // A server with a leaderboard picks its own seed; play the board it sent
+                    session.setState(reply, Protocol.STATE_HEADER_LENGTH, 0);
+                }
+                int planned = solving ? plan(session) : -1;
+                // Looking at a new board, or solving it, is the player's time, not the server's
+                intended = System.nanoTime();
+                int previous = -1;
+                for (int made = 0; running; made++) {
+                    if (planned < 0 && made == abandonMoves) {
+                        gamesAbandoned.increment();
+                        break;
+                    }
+                    if (planned >= 0 && made == planned) {
+                        desyncs.increment(); // The solution should have solved it
+                        break;
+                    }
+                    intended = think(intended);
+                    if (!running) {
+                        return;
+                    }
+                    int move;
+                    int expected;
+                    if (planned >= 0) {
+                        move = solution[made];
+                        expected = session.move(move);
+                    } else {
+                        do {
+                            move = random.nextInt(moveChoices);
+                        } while (move == undoOf(previous) || (expected = session.move(move)) == Protocol.REJECTED);
+                        previous = move;
+                    }
+                    int length = Protocol.writeMove(request, 0, move);
+                    long sent = System.nanoTime();
+                    output.write(request, 0, length);
+                    readFully(input, reply, 2);
+                    long received = System.nanoTime();
+                    if (reply[0] != (byte) Protocol.MOVED) {
+                        throw new IllegalStateException("Expected a move reply, got opcode " + (reply[0] & 0xFF));
+                    }
+                    interval.record(received - intended);
+                    allMoves.increment();
+                    if (received >= measureStart) {
+                        responseTimes[modeIndex].record(received - intended);
+                        serviceTimes[modeIndex].record(received - sent);
+                        moves[modeIndex].increment();
+                    }
+                    if (reply[1] != expected) {
+                        desyncs.increment();
+                        break;
+                    }
+                    if (expected == Protocol.SOLVED) {
+                        gamesSolved.increment();
+                        break;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Solves the board with a borrowed solver
+         * @return The solution's length, or -1 to play randomly if none was found
+         */
+        private int plan(Session session) {
+            byte[] state = new byte[mode.getCellCount()];
+            session.getState(state, 0);
+            Solver solver = borrowSolver(gameMode, mode);
+            try {
+                int length = solver.solve(state, 0, Long.MAX_VALUE);
+                if (length > solution.length) {
+                    solution = new int[length];
+                }
+                if (length > 0) {
+                    System.arraycopy(solver.getSolution(), 0, solution, 0, length);
+                }
+                return length;
+            } finally {
+                returnSolver(gameMode, solver);
+            }
+        }
+        
+        private int undoOf(int move) {
+            if (move < 0) {
+                return -1;
+            }
+            return mode.hasBlank() ? move ^ 1 : mode.getInverse(move); // UP and DOWN, LEFT and RIGHT pair up
+        }
+        
+        /**
+         * Waits out an exponentially distributed think time after the previous intended send, or not at all if a
+         * slow reply already used it up
+         * @return When the next move is meant to be sent
+         */
+        private long think(long previous) {
+            if (thinkMillis <= 0) {
+                return System.nanoTime();
+            }
+            long intended = previous + (long) (-Math.log(1 - random.nextDouble()) * thinkMillis * 1e6);
+            parkUntil(intended);
+            return intended;
+        }
+    }
+    
+    private static void readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        for (int offset = 0; offset < length; ) {
+            int count = input.read(buffer, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.tileshifter.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.RaceClient;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+
+/**
+ * Races two {@link RaceClient}s against each other on a {@link GameServer} over loopback: one solves the board
+ * with a solver, the other keeps making random moves, also after it lost, so some of its predicted moves are
+ * rejected and rolled back. Checks that every client's predicted board ends up equal to the server's and reports
+ * the bytes sent per move.
+ *
+ * Usage: RaceLoopbackCheck [--mode classic|shift] [--size 3]
+ */
+public class RaceLoopbackCheck {
+    private static final long TIMEOUT_MILLIS = 30000;
+    
+    /**
+     * Records a client's race events
+     */
+    private static final class Player implements RaceClient.Listener {
+        final String name;
+        RaceClient client;
+        boolean started;
+        int winner = -1;
+        int progressMessages;
+        String failure;
+        
+        Player(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public void raceStarted(PuzzleMode mode, byte[] state, int playerIndex, int playerCount) {
+            started = true;
+        }
+        
+        @Override
+        public void predictionCorrected(byte[] state) {
+            // Counted by the client
+        }
+        
+        @Override
+        public void progress(int player, int flags, int moveCount, int misplaced) {
+            progressMessages++;
+        }
+        
+        @Override
+        public void raceOver(int winner) {
+            this.winner = winner;
+        }
+        
+        @Override
+        public void failed(String reason) {
+            failure = reason;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        GameMode gameMode = GameMode.CLASSIC;
+        int size = 3;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--mode": gameMode = GameMode.valueOf(args[i + 1].toUpperCase(Locale.ROOT)); break;
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0)).start();
+        Player solver = new Player("solver");
+        Player random = new Player("random");
+        try {
+            for (Player player : new Player[] {solver, random}) {
+                player.client = new RaceClient("127.0.0.1", server.getPort(), gameMode, size, 2, player);
+                player.client.start();
+            }
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!solver.started || !random.started) {
+                step(deadline, solver, random);
+            }
+            
+            PuzzleMode mode = solver.client.getPredicted().getMode();
+            byte[] state = new byte[mode.getCellCount()];
+            solver.client.getPredicted().getState(state, 0);
+            IdaStarSolver search = new IdaStarSolver(mode, new DifficultyEstimator(mode));
+            int length = search.solve(state, 0, Long.MAX_VALUE);
+            if (length < 0) {
+                throw new IllegalStateException("No solution found for " + Arrays.toString(state));
+            }
+            System.out.printf(Locale.ROOT, "%s %dx%d race, solution of %d moves%n", gameMode, size, size, length);
+            
+            // The solver plays a move per frame; the random player two, and keeps going until it hears who won
+            Random moves = new Random(42);
+            int played = 0;
+            int randomMoves = 0;
+            while (random.winner < 0 || solver.winner < 0) {
+                if (played < length && solver.client.move(search.getSolution()[played])) {
+                    played++;
+                }
+                for (int i = 0; i < 2; i++) {
+                    if (random.client.move(moves.nextInt(mode.hasBlank() ? 4 : mode.getGeneratorCount()))) {
+                        randomMoves++;
+                    }
+                }
+                step(deadline, solver, random);
+            }
+            
+            // Let the last acknowledgements arrive, then ask for the authoritative boards
+            for (Player player : new Player[] {solver, random}) {
+                player.client.requestState();
+            }
+            long settle = System.currentTimeMillis() + 4 * RaceClient.TICK_MILLIS;
+            while (System.currentTimeMillis() < settle || solver.client.getPendingMoveCount() > 0
+                || random.client.getPendingMoveCount() > 0) {
+                step(deadline, solver, random);
+            }
+            
+            boolean ok = solver.winner == 0 || solver.winner == 1;
+            for (Player player : new Player[] {solver, random}) {
+                RaceClient client = player.client;
+                byte[] predicted = new byte[mode.getCellCount()];
+                client.getPredicted().getState(predicted, 0);
+                boolean matches = client.getConfirmed().hasState(predicted, 0);
+                ok &= matches && player.winner == solver.winner && player.failure == null;
+                System.out.printf(Locale.ROOT,
+                    "%-6s player %d: %d moves, %d bytes sent, %d rollbacks, %d progress entries, board %s%n",
+                    player.name, client.getPlayerIndex(), client.getConfirmed().getMoveCount(),
+                    client.getBytesSent(), client.getCorrectionCount(), player.progressMessages,
+                    matches ? "matches the server" : "DIFFERS from the server");
+            }
+            ok &= solver.winner == solver.client.getPlayerIndex() && solver.client.getConfirmed().isSolved();
+            System.out.printf(Locale.ROOT, "Random player attempted %d moves; winner: player %d%n", randomMoves,
+                solver.winner);
+            System.out.printf(Locale.ROOT, "Solver sent %.2f bytes per move%n",
+                solver.client.getBytesSent() / (double) Math.max(1, played));
+            if (!ok) {
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+            System.out.println("OK");
+        } finally {
+            for (Player player : new Player[] {solver, random}) {
+                if (player.client != null) {
+                    player.client.close();
+                }
+            }
+            server.close();
+        }
+    }
+    
+    private static void step(long deadline, Player... players) throws InterruptedException {
+        for (Player player : players) {
+            player.client.update();
+            if (player.failure != null) {
+                throw new IllegalStateException(player.name + " failed: " + player.failure);
+            }
+        }
+        if (System.currentTimeMillis() > deadline) {
+            throw new IllegalStateException("Race did not finish in time");
+        }
+        Thread.sleep(5); // About a frame at 200 fps
+    }
+}
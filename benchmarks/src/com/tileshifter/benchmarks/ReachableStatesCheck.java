@@ -0,0 +1,101 @@
+package com.tileshifter.benchmarks;
+
+import java.util.Random;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.perm.ReachableStates;
+import com.tileshifter.solver.ConstructiveSolver;
+
+/**
+ * Checks {@link ReachableStates} on every board size up to 16x16, including the ones from 12x12 on whose tile ids
+ * no longer fit a signed byte
+ *
+ * - The solved board is reachable.
+ * - Shuffled boards are reachable and stay reachable after any move; Classic boards are also solved by
+ *   {@link ConstructiveSolver}, which reads tile ids on its own.
+ * - Swapping two tiles, which flips the parity, makes a shuffled Classic board unreachable.
+ *
+ * Usage: ReachableStatesCheck [--boards 20] [--maxSize 16]
+ */
+public class ReachableStatesCheck {
+    private int boards = 20;
+    private int maxSize = 16;
+    private int failures;
+    
+    public static void main(String[] args) {
+        ReachableStatesCheck check = new ReachableStatesCheck();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--boards": check.boards = Integer.parseInt(args[i + 1]); break;
+                case "--maxSize": check.maxSize = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        for (int size = 2; size <= check.maxSize; size++) {
+            check.checkMode(PuzzleModes.classic(size));
+            check.checkMode(PuzzleModes.shift(size));
+            if (size % 2 == 0) {
+                check.checkMode(PuzzleModes.rotate(size));
+            }
+        }
+        System.out.println(check.failures == 0 ? "OK" : "FAILED: " + check.failures + " failed checks");
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+    
+    private void checkMode(PuzzleMode mode) {
+        String name = mode.getName() + " " + mode.getSize() + "x" + mode.getSize();
+        ReachableStates reachable = mode.getReachableStates();
+        if (!reachable.isCharacterized()) {
+            return;
+        }
+        int cells = mode.getCellCount();
+        byte[] state = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            state[cell] = (byte) cell;
+        }
+        expect(reachable.isReachable(state, 0), name + " solved board is not reachable");
+        
+        ConstructiveSolver solver = mode.hasBlank() ? new ConstructiveSolver(mode) : null;
+        Random random = new Random(mode.getSize());
+        for (int i = 0; i < boards; i++) {
+            mode.shuffle(random, state, 0);
+            expect(reachable.isReachable(state, 0), name + " shuffled board " + i + " is not reachable");
+            if (solver != null) {
+                expect(solver.solve(state, 0, 0) >= 0, name + " shuffled board " + i + " is not solvable");
+                int blankCell = 0;
+                while ((state[blankCell] & 0xFF) != cells - 1) {
+                    blankCell++;
+                }
+                int direction = random.nextInt(4);
+                mode.moveBlank(state, 0, blankCell, direction);
+                expect(reachable.isReachable(state, 0), name + " board " + i + " is not reachable after a move");
+                
+                // Swap two tiles away from the blank
+                int first = 0;
+                int second = 0;
+                while (first == second || (state[first] & 0xFF) == cells - 1
+                    || (state[second] & 0xFF) == cells - 1) {
+                    first = random.nextInt(cells);
+                    second = random.nextInt(cells);
+                }
+                byte tile = state[first];
+                state[first] = state[second];
+                state[second] = tile;
+                expect(!reachable.isReachable(state, 0), name + " board " + i + " is reachable with two tiles swapped");
+            } else {
+                mode.apply(state, 0, random.nextInt(mode.getGeneratorCount()));
+                expect(reachable.isReachable(state, 0), name + " board " + i + " is not reachable after a move");
+            }
+        }
+    }
+    
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            if (failures < 10) {
+                System.out.println("Check failed: " + message);
+            }
+            failures++;
+        }
+    }
+}
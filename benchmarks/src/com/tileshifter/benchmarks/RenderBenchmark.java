@@ -0,0 +1,300 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.tileshifter.GameMode;
+import com.tileshifter.TileShiftGame;
+import com.tileshifter.screens.GameScreen;
+import com.tileshifter.screens.ImageSelectionScreen;
+import com.tileshifter.screens.ModeSelectionScreen;
+
+/**
+ * Measures the CPU cost of rendering each screen on the libGDX headless backend, without a display or GPU.
+ * 
+ * Every screen is driven by a scripted pointer for a fixed number of frames at a fixed 60 Hz step.
+ * GL calls go to {@link CountingGL20}, so the reported time is the game's own work per frame
+ * (layout, batching, input handling, board updates) plus draw call and texture bind counts.
+ * 
+ * Usage: RenderBenchmark [--frames N] [--warmup N] [--sizes 4,6,8] [--image name.jpg] [--out results.json]
+ */
+public class RenderBenchmark implements ApplicationListener {
+    private static final String[] SCREEN_NAMES = {"ModeSelectionScreen", "ImageSelectionScreen", "GameScreen"};
+    
+    private int frames = 600;
+    private int warmupFrames = 120;
+    private int[] boardSizes = {4, 6, 8};
+    private String imageName = "Dagda_album_cover.jpg";
+    private File outputFile = new File("benchmarks/build/reports/render/results.json");
+    
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Throwable failure;
+    
+    private final CountingGL20 gl = new CountingGL20();
+    private final ScriptedInput input = new ScriptedInput();
+    private final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private TileShiftGame game;
+    
+    public static void main(String[] args) throws InterruptedException {
+        RenderBenchmark benchmark = new RenderBenchmark();
+        benchmark.parseArguments(args);
+        
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1; // Frames are driven by the benchmark itself
+        new HeadlessApplication(benchmark, config);
+        
+        benchmark.finished.await();
+        if (benchmark.failure != null) {
+            benchmark.failure.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+    
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length - 1; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--frames": frames = Integer.parseInt(value); break;
+                case "--warmup": warmupFrames = Integer.parseInt(value); break;
+                case "--image": imageName = value; break;
+                case "--out": outputFile = new File(value); break;
+                case "--sizes":
+                    String[] parts = value.split(",");
+                    boardSizes = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        boardSizes[j] = Integer.parseInt(parts[j].trim());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+    
+    @Override
+    public void create() {
+        try {
+            Gdx.graphics = new FixedStepGraphics(TileShiftGame.VIRTUAL_WIDTH, TileShiftGame.VIRTUAL_HEIGHT, gl);
+            Gdx.gl = gl;
+            Gdx.gl20 = gl;
+            Gdx.input = input;
+            ShaderProgram.pedantic = false; // The counting GL reports no active uniforms
+            
+            game = new TileShiftGame();
+            game.create();
+            game.finishLoading(); // Skip the splash screen; startup is measured by StartupBenchmark
+            game.resize(TileShiftGame.VIRTUAL_WIDTH, TileShiftGame.VIRTUAL_HEIGHT);
+            
+            List<FrameStats> results = new ArrayList<>();
+            results.add(run(SCREEN_NAMES[0], null, 0, false));
+            results.add(run(SCREEN_NAMES[1], GameMode.CLASSIC, 0, false));
+            for (GameMode mode : GameMode.values()) {
+                for (int size : boardSizes) {
+                    if (mode == GameMode.ROTATE && size % 2 != 0) {
+                        continue; // Rotate mode only supports even sizes
+                    }
+                    results.add(run(SCREEN_NAMES[2], mode, size, true));
+                }
+            }
+            
+            printTable(results);
+            writeJson(results);
+            game.getScreen().dispose();
+            game.dispose();
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            Gdx.app.exit();
+            finished.countDown();
+        }
+    }
+    
+    private Screen createScreen(String screenName, GameMode mode, int size) {
+        if (screenName.equals(SCREEN_NAMES[0])) {
+            return new ModeSelectionScreen(game);
+        } else if (screenName.equals(SCREEN_NAMES[1])) {
+            return new ImageSelectionScreen(game, mode);
+        }
+        return new GameScreen(game, imageName, mode, size);
+    }
+    
+    /**
+     * Renders one screen for the warmup and measured frames
+     * @param allowTouches whether the script clicks; selection screens only get hover movement so they don't switch screens
+     */
+    private FrameStats run(String screenName, GameMode mode, int size, boolean allowTouches) {
+        Screen previous = game.getScreen();
+        game.setScreen(createScreen(screenName, mode, size));
+        if (previous != null) {
+            previous.dispose();
+        }
+        
+        Random random = new Random(42);
+        HeadlessApplication app = (HeadlessApplication) Gdx.app;
+        long threadId = Thread.currentThread().getId();
+        FrameStats stats = new FrameStats(screenName, mode, size, frames);
+        
+        for (int frame = 0; frame < warmupFrames + frames; frame++) {
+            scriptPointer(frame, random, allowTouches);
+            
+            long drawCallsBefore = gl.drawCalls;
+            long textureBindsBefore = gl.textureBinds;
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            
+            game.render();
+            app.executeRunnables();
+            
+            long frameNanos = System.nanoTime() - start;
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (frame >= warmupFrames) {
+                stats.record(frame - warmupFrames, frameNanos,
+                    gl.drawCalls - drawCallsBefore, gl.textureBinds - textureBindsBefore, allocated);
+            }
+        }
+        return stats;
+    }
+    
+    /**
+     * Sweeps the pointer across the screen and, when allowed, clicks a random spot below the top button row every 10th frame
+     */
+    private void scriptPointer(int frame, Random random, boolean allowTouches) {
+        float worldX, worldY;
+        boolean touched = allowTouches && frame % 10 == 0;
+        if (touched) {
+            worldX = random.nextFloat() * TileShiftGame.VIRTUAL_WIDTH;
+            worldY = random.nextFloat() * 500f;
+        } else {
+            worldX = 400f + 350f * (float) Math.sin(frame * 0.05);
+            worldY = 300f + 260f * (float) Math.sin(frame * 0.037);
+        }
+        // Screen coordinates have their origin at the top-left
+        input.setPointer((int) worldX, (int) (TileShiftGame.VIRTUAL_HEIGHT - worldY), touched);
+    }
+    
+    private void printTable(List<FrameStats> results) {
+        System.out.println(String.format(Locale.ROOT, "%-22s %-8s %4s %9s %9s %9s %9s %9s %12s",
+            "screen", "mode", "size", "p50 ms", "p99 ms", "max ms", "draws/f", "binds/f", "alloc B/f"));
+        for (FrameStats stats : results) {
+            System.out.println(String.format(Locale.ROOT, "%-22s %-8s %4s %9.3f %9.3f %9.3f %9.1f %9.1f %12.0f",
+                stats.screen, stats.mode == null ? "-" : stats.mode.name(), stats.size == 0 ? "-" : String.valueOf(stats.size),
+                stats.percentileMillis(0.50), stats.percentileMillis(0.99), stats.percentileMillis(1.0),
+                FrameStats.mean(stats.drawCalls), FrameStats.mean(stats.textureBinds), FrameStats.mean(stats.allocatedBytes)));
+        }
+    }
+    
+    private void writeJson(List<FrameStats> results) throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new FileWriter(outputFile)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.setOutputType(JsonWriter.OutputType.json);
+            json.array();
+            for (FrameStats stats : results) {
+                json.object()
+                    .set("screen", stats.screen)
+                    .set("mode", stats.mode == null ? null : stats.mode.name())
+                    .set("boardSize", stats.size)
+                    .set("frames", frames)
+                    .set("p50Millis", stats.percentileMillis(0.50))
+                    .set("p99Millis", stats.percentileMillis(0.99))
+                    .set("maxMillis", stats.percentileMillis(1.0))
+                    .set("drawCallsPerFrame", FrameStats.mean(stats.drawCalls))
+                    .set("textureBindsPerFrame", FrameStats.mean(stats.textureBinds))
+                    .set("allocatedBytesPerFrame", FrameStats.mean(stats.allocatedBytes))
+                    .pop();
+            }
+            json.pop();
+            json.flush();
+        }
+        System.out.println("Results written to " + outputFile.getPath());
+    }
+    
+    @Override
+    public void resize(int width, int height) {
+    }
+    
+    @Override
+    public void render() {
+    }
+    
+    @Override
+    public void pause() {
+    }
+    
+    @Override
+    public void resume() {
+    }
+    
+    @Override
+    public void dispose() {
+    }
+    
+    /**
+     * Per-frame measurements of one screen run
+     */
+    private static class FrameStats {
+        final String screen;
+        final GameMode mode;
+        final int size;
+        final long[] frameNanos;
+        final long[] drawCalls;
+        final long[] textureBinds;
+        final long[] allocatedBytes;
+        private long[] sortedNanos;
+        
+        FrameStats(String screen, GameMode mode, int size, int frames) {
+            this.screen = screen;
+            this.mode = mode;
+            this.size = size;
+            frameNanos = new long[frames];
+            drawCalls = new long[frames];
+            textureBinds = new long[frames];
+            allocatedBytes = new long[frames];
+        }
+        
+        void record(int frame, long nanos, long draws, long binds, long allocated) {
+            frameNanos[frame] = nanos;
+            drawCalls[frame] = draws;
+            textureBinds[frame] = binds;
+            allocatedBytes[frame] = allocated;
+        }
+        
+        double percentileMillis(double percentile) {
+            if (sortedNanos == null) {
+                sortedNanos = frameNanos.clone();
+                Arrays.sort(sortedNanos);
+            }
+            int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+        }
+        
+        static double mean(long[] values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return values.length == 0 ? 0 : (double) sum / values.length;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.tileshifter.benchmarks;
+
+import com.badlogic.gdx.backends.headless.mock.input.MockInput;
+
+/**
+ * Headless input whose pointer position and touches are set by the benchmark script each frame
+ */
+public class ScriptedInput extends MockInput {
+    private int x, y;
+    private boolean touched;
+    
+    /**
+     * Moves the pointer to the given screen coordinates (origin top-left, like real input)
+     * @param touched true if the pointer was pressed during this frame
+     */
+    public void setPointer(int x, int y, boolean touched) {
+        this.x = x;
+        this.y = y;
+        this.touched = touched;
+    }
+    
+    @Override
+    public int getX() { return x; }
+    
+    @Override
+    public int getX(int pointer) { return pointer == 0 ? x : 0; }
+    
+    @Override
+    public int getY() { return y; }
+    
+    @Override
+    public int getY(int pointer) { return pointer == 0 ? y : 0; }
+    
+    @Override
+    public boolean isTouched() { return touched; }
+    
+    @Override
+    public boolean isTouched(int pointer) { return pointer == 0 && touched; }
+    
+    @Override
+    public boolean justTouched() { return touched; }
+}
@@ -0,0 +1,200 @@
+package com.tileshifter.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.server.ServerModes;
+import com.tileshifter.server.VirtualThreads;
+
+/**
+ * Starts a {@link GameServer} on loopback, parks a number of idle sessions on it and then has active players
+ * send random moves as fast as the server answers them, cycling through the game modes. Reports the heap used per
+ * idle session (client and server side together, as both run in this JVM) and the moves per second handled.
+ *
+ * Each loopback connection uses a file descriptor at both ends, so raise the limit (ulimit -n) to a little over
+ * twice the session count. Idle connections come from several loopback addresses, as one address only has about
+ * 28k ephemeral ports.
+ *
+ * Usage: ServerLoadTest [--idle 100000] [--players 256] [--seconds 10] [--size 4] [--batch 16]
+ */
+public class ServerLoadTest {
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+    private static final int MODE_COUNT = GameMode.values().length;
+    
+    private int idle = 100000;
+    private int players = 256;
+    private int seconds = 10;
+    private int size = 4;
+    private int batch = 16;
+    
+    public static void main(String[] args) throws Exception {
+        ServerLoadTest test = new ServerLoadTest();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--idle": test.idle = Integer.parseInt(args[i + 1]); break;
+                case "--players": test.players = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": test.seconds = Integer.parseInt(args[i + 1]); break;
+                case "--size": test.size = Integer.parseInt(args[i + 1]); break;
+                case "--batch": test.batch = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            if (!ServerModes.supports(mode, test.size)) {
+                throw new IllegalArgumentException("Every mode must support size " + test.size);
+            }
+        }
+        test.run();
+    }
+    
+    private void run() throws Exception {
+        System.out.println("Connections run on " + (VirtualThreads.isAvailable() ? "virtual" : "platform")
+            + " threads, " + Runtime.getRuntime().availableProcessors() + " processors");
+        try (GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0)).start()) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            List<Socket> idleSockets = openIdleSessions(server, address);
+            try {
+                playMoves(server, address);
+            } finally {
+                for (Socket socket : idleSockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+    
+    private List<Socket> openIdleSessions(GameServer server, InetSocketAddress address) throws IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long start = System.nanoTime();
+        
+        List<Socket> sockets = new ArrayList<>(idle);
+        byte[] buffer = new byte[Protocol.STATE_HEADER_LENGTH + size * size];
+        for (int i = 0; i < idle; i++) {
+            Socket socket = new Socket();
+            socket.bind(new InetSocketAddress("127.0.0." + (2 + i / CONNECTIONS_PER_ADDRESS), 0));
+            socket.connect(address);
+            sockets.add(socket);
+            int length = Protocol.writeNewGame(buffer, 0, i % MODE_COUNT, size, i);
+            socket.getOutputStream().write(buffer, 0, length);
+            readFully(socket.getInputStream(), buffer, Protocol.STATE_HEADER_LENGTH + size * size);
+            if (buffer[0] != (byte) Protocol.STATE) {
+                throw new IllegalStateException("Expected a state reply, got opcode " + (buffer[0] & 0xFF));
+            }
+        }
+        
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        System.out.println(String.format(Locale.ROOT,
+            "Opened %,d idle sessions in %.1f s; server reports %,d sessions; heap %,.0f bytes per session",
+            idle, (System.nanoTime() - start) / 1e9, server.getSessionCount(),
+            idle > 0 ? (heapAfter - heapBefore) / (double) idle : 0.0));
+        return sockets;
+    }
+    
+    private void playMoves(GameServer server, final InetSocketAddress address) throws InterruptedException {
+        final LongAdder batches = new LongAdder();
+        final LongAdder roundTripNanos = new LongAdder();
+        final AtomicLong failures = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long movesBefore = server.getMoveCount() + server.getRejectedMoveCount();
+        long start = System.nanoTime();
+        
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("load-player-");
+        for (int p = 0; p < players; p++) {
+            final int player = p;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        play(address, player, deadline, batches, roundTripNanos);
+                    } catch (IOException | RuntimeException e) {
+                        if (failures.getAndIncrement() == 0) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long moves = server.getMoveCount() + server.getRejectedMoveCount() - movesBefore;
+        System.out.println(String.format(Locale.ROOT,
+            "%,d players: %,d moves in %.1f s = %,.0f moves/s, %.0f us per batch of %d, %,d rejected, %d failed",
+            players, moves, elapsed, moves / elapsed, roundTripNanos.sum() / 1e3 / Math.max(1, batches.sum()),
+            batch, server.getRejectedMoveCount(), failures.get()));
+    }
+    
+    /**
+     * Sends batches of random moves for one player until the deadline, starting a new game whenever one is solved
+     */
+    private void play(InetSocketAddress address, int player, long deadline, LongAdder batches,
+                      LongAdder roundTripNanos) throws IOException {
+        int mode = player % MODE_COUNT;
+        PuzzleMode puzzleMode = ServerModes.get(mode, size);
+        int moveCount = puzzleMode.hasBlank() ? 4 : puzzleMode.getGeneratorCount();
+        Random random = new Random(player);
+        byte[] requests = new byte[Math.max(2 * batch, Protocol.NEW_GAME_LENGTH)];
+        byte[] replies = new byte[Math.max(2 * batch, Protocol.STATE_HEADER_LENGTH + size * size)];
+        
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setTcpNoDelay(true);
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+            boolean solved = true;
+            while (System.nanoTime() < deadline) {
+                if (solved) {
+                    output.write(requests, 0, Protocol.writeNewGame(requests, 0, mode, size, random.nextLong()));
+                    readFully(input, replies, Protocol.STATE_HEADER_LENGTH + size * size);
+                    solved = false;
+                }
+                for (int i = 0; i < batch; i++) {
+                    requests[2 * i] = (byte) Protocol.MOVE;
+                    requests[2 * i + 1] = (byte) random.nextInt(moveCount);
+                }
+                long sent = System.nanoTime();
+                output.write(requests, 0, 2 * batch);
+                readFully(input, replies, 2 * batch);
+                roundTripNanos.add(System.nanoTime() - sent);
+                batches.increment();
+                for (int i = 0; i < batch; i++) {
+                    if (replies[2 * i] != (byte) Protocol.MOVED) {
+                        throw new IllegalStateException("Expected a move reply, got opcode " + (replies[2 * i] & 0xFF));
+                    }
+                    solved |= replies[2 * i + 1] == Protocol.SOLVED;
+                }
+            }
+        }
+    }
+    
+    private static void readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        for (int offset = 0; offset < length; ) {
+            int count = input.read(buffer, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.solver.BeamSearchSolver;
+import com.tileshifter.solver.CachingSolver;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+import com.tileshifter.solver.SolutionCache;
+
+/**
+ * Checks {@link SolutionCache} and {@link CachingSolver} and times cached solves against searching
+ *
+ * - Classic and shift 3x3: random positions are solved with IDA* with and without the cache, and every cached
+ *   solution must replay and be exactly as long. The cache is then reopened from its file and must answer the same
+ *   positions without searching.
+ * - Rotate 4x4: beam search solutions, which are not optimal, must replay when read back from the cache.
+ * - Reader threads look up positions with known distances while one thread stores new ones; every hit must be right.
+ * - A cache much smaller than the positions stored must evict and still answer every hit correctly.
+ *
+ * Usage: SolutionCacheCheck [--positions 2000] [--readers 3] [--dir build/solution-cache-check]
+ */
+public class SolutionCacheCheck {
+    private int positions = 2000;
+    private int readers = 3;
+    private File directory = new File("build/solution-cache-check");
+    private int failures;
+    
+    public static void main(String[] args) throws Exception {
+        SolutionCacheCheck check = new SolutionCacheCheck();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--positions": check.positions = Integer.parseInt(args[i + 1]); break;
+                case "--readers": check.readers = Integer.parseInt(args[i + 1]); break;
+                case "--dir": check.directory = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        check.directory.mkdirs();
+        check.checkOptimal(PuzzleModes.classic(3));
+        check.checkOptimal(PuzzleModes.shift(3));
+        check.checkReplays(PuzzleModes.rotate(4));
+        check.checkConcurrent(PuzzleModes.classic(3));
+        check.checkEviction(PuzzleModes.classic(3));
+        System.out.println(check.failures == 0 ? "OK" : "FAILED: " + check.failures + " failed checks");
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+    
+    private void checkOptimal(PuzzleMode mode) throws IOException {
+        File file = cacheFile(mode, "optimal");
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        IdaStarSolver plain = new IdaStarSolver(mode, estimator);
+        CachingSolver cached = new CachingSolver(new IdaStarSolver(mode, estimator),
+            SolutionCache.open(file, mode, 1 << 16));
+        byte[][] states = shuffled(mode, positions, 1);
+        int[] lengths = new int[positions];
+        
+        long plainNanos = 0;
+        long firstNanos = 0;
+        long start;
+        for (int i = 0; i < positions; i++) {
+            start = System.nanoTime();
+            lengths[i] = plain.solve(states[i], 0, Long.MAX_VALUE);
+            plainNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            int length = cached.solve(states[i], 0, Long.MAX_VALUE);
+            firstNanos += System.nanoTime() - start;
+            expect(length == lengths[i], mode.getName() + " solution of " + length + " moves, optimum "
+                + lengths[i]);
+            expect(replays(mode, states[i], cached.getSolution(), length), mode.getName() + " solution does not replay");
+        }
+        cached.getCache().flush();
+        
+        // A new instance reads the entries back from the file
+        CachingSolver reopened = new CachingSolver(new IdaStarSolver(mode, estimator),
+            SolutionCache.open(file, mode, 1 << 16));
+        long nodes = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < positions; i++) {
+            int length = reopened.solve(states[i], 0, Long.MAX_VALUE);
+            nodes += reopened.getNodeCount();
+            expect(length == lengths[i] && replays(mode, states[i], reopened.getSolution(), length),
+                mode.getName() + " reopened cache gave a wrong solution");
+        }
+        long cachedNanos = System.nanoTime() - start;
+        expect(nodes == 0, mode.getName() + " searched " + nodes + " nodes with every position cached");
+        
+        SolutionCache cache = reopened.getCache();
+        int lookups = 200000;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            cache.lookup(states[i % positions], 0);
+        }
+        long lookupNanos = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "%-8s %dx%d: %,d positions, IDA* %.1f us, first cached pass %.1f us, reopened "
+            + "cache %.1f us per solve, %.0f ns per lookup, %,d entries stored, %,d KB file%n", mode.getName(), mode.getSize(),
+            mode.getSize(), positions, plainNanos / 1e3 / positions, firstNanos / 1e3 / positions,
+            cachedNanos / 1e3 / positions, lookupNanos / (double) lookups, cached.getCache().getStoreCount(),
+            file.length() / 1024);
+    }
+    
+    private void checkReplays(PuzzleMode mode) throws IOException {
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        CachingSolver cached = new CachingSolver(new BeamSearchSolver(mode, estimator).setBeamWidth(64)
+            .setTimeBudget(100), SolutionCache.open(cacheFile(mode, "replay"), mode, 1 << 16));
+        int count = Math.max(1, positions / 10);
+        byte[][] states = shuffled(mode, count, 2);
+        boolean[] solved = new boolean[count];
+        int solvedCount = 0;
+        int cachedMoves = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                if (pass == 1 && !solved[i]) {
+                    continue; // The beam search found nothing within its budget
+                }
+                int length = cached.solve(states[i], 0, Long.MAX_VALUE);
+                if (pass == 0) {
+                    solved[i] = length >= 0;
+                    solvedCount += solved[i] ? 1 : 0;
+                } else {
+                    cachedMoves += cached.getCachedMoveCount();
+                    expect(cached.getNodeCount() == 0, mode.getName() + " searched a position solved before");
+                }
+                expect(length < 0 || replays(mode, states[i], cached.getSolution(), length),
+                    mode.getName() + " cached solution does not replay");
+            }
+        }
+        expect(solvedCount > count / 2, "Beam search solved only " + solvedCount + " of " + count + " positions");
+        System.out.printf(Locale.ROOT, "%-8s %dx%d: %,d of %,d positions solved by beam search, all replay, %,d moves "
+            + "read back from the cache, %,d evictions%n", mode.getName(), mode.getSize(), mode.getSize(), solvedCount,
+            count, cachedMoves, cached.getCache().getEvictionCount());
+    }
+    
+    /**
+     * Readers look up stored positions while a writer stores new ones; every hit must carry the optimal distance
+     */
+    private void checkConcurrent(final PuzzleMode mode) throws Exception {
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        final SolutionCache cache = SolutionCache.open(cacheFile(mode, "concurrent"), mode, 1 << 16);
+        final CachingSolver writer = new CachingSolver(new IdaStarSolver(mode, estimator), cache);
+        final byte[][] known = shuffled(mode, positions / 2, 3);
+        final int[] distances = new int[known.length];
+        for (int i = 0; i < known.length; i++) {
+            distances[i] = writer.solve(known[i], 0, Long.MAX_VALUE);
+        }
+        final byte[][] fresh = shuffled(mode, positions, 4);
+        final AtomicInteger wrong = new AtomicInteger();
+        final AtomicLong lookups = new AtomicLong();
+        final boolean[] done = new boolean[1];
+        Thread[] threads = new Thread[readers];
+        for (int t = 0; t < readers; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    while (!isDone(done)) {
+                        int i = random.nextInt(known.length);
+                        int entry = cache.lookup(known[i], 0);
+                        lookups.incrementAndGet();
+                        if (distances[i] > 0 && (entry == SolutionCache.MISS
+                            || SolutionCache.getDistance(entry) != distances[i])) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            }, "cache-reader-" + t);
+            threads[t].start();
+        }
+        long start = System.nanoTime();
+        for (byte[] state : fresh) {
+            writer.solve(state, 0, Long.MAX_VALUE);
+        }
+        long writeNanos = System.nanoTime() - start;
+        synchronized (done) {
+            done[0] = true;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        expect(wrong.get() == 0, wrong.get() + " lookups alongside stores were wrong");
+        System.out.printf(Locale.ROOT, "Concurrent: %d readers made %,d lookups while %,d positions were solved and "
+            + "stored in %.1f s, %d wrong%n", readers, lookups.get(), fresh.length, writeNanos / 1e9, wrong.get());
+    }
+    
+    private static boolean isDone(boolean[] done) {
+        synchronized (done) {
+            return done[0];
+        }
+    }
+    
+    private void checkEviction(PuzzleMode mode) throws IOException {
+        DifficultyEstimator estimator = new DifficultyEstimator(mode);
+        File file = cacheFile(mode, "eviction");
+        CachingSolver cached = new CachingSolver(new IdaStarSolver(mode, estimator),
+            SolutionCache.open(file, mode, 256));
+        IdaStarSolver plain = new IdaStarSolver(mode, estimator);
+        byte[][] states = shuffled(mode, positions, 5);
+        for (byte[] state : states) {
+            int length = cached.solve(state, 0, Long.MAX_VALUE);
+            expect(length == plain.solve(state, 0, Long.MAX_VALUE), "Solution with a full cache is not optimal");
+        }
+        SolutionCache cache = cached.getCache();
+        expect(cache.getEvictionCount() > 0, "A full cache did not evict");
+        System.out.printf(Locale.ROOT, "Eviction: %d slots, %,d stores, %,d evictions, %,d KB file%n",
+            cache.getSlotCount(), cache.getStoreCount(), cache.getEvictionCount(), file.length() / 1024);
+    }
+    
+    private File cacheFile(PuzzleMode mode, String name) {
+        File file = new File(directory, mode.getName().toLowerCase(Locale.ROOT) + "-" + mode.getSize() + "-" + name
+            + ".cache");
+        file.delete();
+        return file;
+    }
+    
+    private static byte[][] shuffled(PuzzleMode mode, int count, long seed) {
+        Random random = new Random(seed);
+        byte[][] states = new byte[count][mode.getCellCount()];
+        for (byte[] state : states) {
+            mode.shuffle(random, state, 0);
+        }
+        return states;
+    }
+    
+    private static boolean replays(PuzzleMode mode, byte[] start, int[] moves, int length) {
+        byte[] state = start.clone();
+        int blankCell = -1;
+        for (int cell = 0; mode.hasBlank() && cell < state.length; cell++) {
+            if ((state[cell] & 0xFF) == state.length - 1) {
+                blankCell = cell;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (mode.hasBlank()) {
+                blankCell = mode.moveBlank(state, 0, blankCell, moves[i]);
+                if (blankCell < 0) {
+                    return false;
+                }
+            } else {
+                mode.apply(state, 0, moves[i]);
+            }
+        }
+        return mode.isSolved(state, 0);
+    }
+    
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            if (failures < 10) {
+                System.out.println("Check failed: " + message);
+            }
+            failures++;
+        }
+    }
+}
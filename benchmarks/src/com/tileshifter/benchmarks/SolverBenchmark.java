@@ -0,0 +1,324 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.badlogic.gdx.utils.JsonWriter;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.solver.BeamSearchSolver;
+import com.tileshifter.solver.ConstructiveSolver;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+import com.tileshifter.solver.Solver;
+
+/**
+ * Runs every solver on every set of the {@link SolverCorpus} and reports search throughput and solution quality
+ *
+ * For each solver and set it reports positions solved within the node limit, nodes expanded, nodes per second,
+ * mean solution length, its mean ratio to the {@link DifficultyEstimator} lower bound and, where the corpus knows
+ * the optimum, the mean excess over it. Memory is reported as bytes allocated by the solving thread and as the
+ * peak heap in use. Every solution is replayed and checked, and solutions shorter than a known optimum, or of
+ * another length for an optimal solver, are counted as invalid too; the run exits with status 1 if there are any.
+ *
+ * Usage: SolverBenchmark [--corpus dir] [--nodes limit] [--sets regex] [--solvers regex] [--out results.json]
+ */
+public class SolverBenchmark {
+    /**
+     * Creates a solver for a mode, or returns null if the solver does not support it
+     */
+    interface SolverFactory {
+        String getName();
+        
+        Solver create(PuzzleMode mode);
+    }
+    
+    /** Every solver in the project; add new solvers here */
+    private static final SolverFactory[] SOLVERS = {
+        new SolverFactory() {
+            @Override
+            public String getName() {
+                return "IDA*";
+            }
+            
+            @Override
+            public Solver create(PuzzleMode mode) {
+                return new IdaStarSolver(mode, new DifficultyEstimator(mode));
+            }
+        },
+        new SolverFactory() {
+            @Override
+            public String getName() {
+                return "Constructive";
+            }
+            
+            @Override
+            public Solver create(PuzzleMode mode) {
+                return mode.hasBlank() ? new ConstructiveSolver(mode) : null;
+            }
+        },
+        new SolverFactory() {
+            @Override
+            public String getName() {
+                return "Beam";
+            }
+            
+            @Override
+            public Solver create(PuzzleMode mode) {
+                return mode.hasBlank() ? null : new BeamSearchSolver(mode, new DifficultyEstimator(mode))
+                    .setTimeBudget(2000);
+            }
+        },
+    };
+    
+    private File corpusDirectory = SolverCorpus.DEFAULT_DIRECTORY;
+    private long nodeLimit = 10000000L;
+    private Pattern setFilter = Pattern.compile(".*");
+    private Pattern solverFilter = Pattern.compile(".*");
+    private File outputFile = new File("benchmarks/build/reports/solvers/results.json");
+    
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    public static void main(String[] args) throws IOException {
+        SolverBenchmark benchmark = new SolverBenchmark();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--corpus": benchmark.corpusDirectory = new File(args[i + 1]); break;
+                case "--nodes": benchmark.nodeLimit = Long.parseLong(args[i + 1]); break;
+                case "--sets": benchmark.setFilter = Pattern.compile(args[i + 1]); break;
+                case "--solvers": benchmark.solverFilter = Pattern.compile(args[i + 1]); break;
+                case "--out": benchmark.outputFile = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+    
+    private boolean run() throws IOException {
+        List<Run> runs = new ArrayList<>();
+        boolean allValid = true;
+        System.out.println(String.format(Locale.ROOT, "%-12s %-26s %7s %12s %10s %8s %7s %6s %10s %10s",
+            "solver", "set", "solved", "nodes", "nodes/s", "length", "excess", "/bound", "alloc/pos", "peak heap"));
+        for (SolverCorpus.InstanceSet set : SolverCorpus.loadAll(corpusDirectory)) {
+            if (!setFilter.matcher(set.name).find()) {
+                continue;
+            }
+            for (SolverFactory factory : SOLVERS) {
+                if (!solverFilter.matcher(factory.getName()).find()) {
+                    continue;
+                }
+                Solver solver = factory.create(set.mode);
+                if (solver == null) {
+                    continue;
+                }
+                Run run = solve(solver, set);
+                allValid &= run.invalid == 0;
+                runs.add(run);
+                System.out.println(String.format(Locale.ROOT, "%-12s %-26s %3d/%-3d %12d %10.0f %8.2f %7s %6.2f %10s %10s",
+                    run.solver, run.set, run.solved, run.results.size(), run.nodes, run.nodesPerSecond(),
+                    run.meanLength(), run.excessCount > 0 ? String.format(Locale.ROOT, "%.2f", run.meanExcess()) : "-",
+                    run.meanOverBound(),
+                    formatBytes(run.allocatedBytes / run.results.size()), formatBytes(run.peakHeapBytes)));
+            }
+        }
+        writeJson(runs);
+        if (!allValid) {
+            System.out.println("Some solutions did not solve their position");
+        }
+        return allValid;
+    }
+    
+    private Run solve(Solver solver, SolverCorpus.InstanceSet set) {
+        Run run = new Run(solver.getName(), set.name);
+        DifficultyEstimator estimator = new DifficultyEstimator(set.mode);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long threadId = Thread.currentThread().getId();
+        for (SolverCorpus.Instance instance : set.instances) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            int length = solver.solve(instance.state, 0, nodeLimit);
+            long nanos = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            
+            Result result = new Result(instance, length, solver.getNodeCount(), nanos, allocated);
+            result.lowerBound = estimator.lowerBound(instance.state, 0);
+            if (length >= 0) {
+                result.valid = isSolution(set.mode, instance.state, solver.getSolution(), length);
+                run.solved++;
+                run.lengthSum += length;
+                run.overBoundSum += result.lowerBound > 0 ? (double) length / result.lowerBound : 1;
+                if (instance.optimalLength >= 0) {
+                    run.excessSum += length - instance.optimalLength;
+                    run.excessCount++;
+                    if (length < instance.optimalLength || solver.isOptimal() && length != instance.optimalLength) {
+                        result.valid = false;
+                        System.out.println(solver.getName() + ": " + length + " moves for " + set.name + " "
+                            + instance.name + ", whose optimum is " + instance.optimalLength);
+                    }
+                }
+                if (!result.valid) {
+                    run.invalid++;
+                    System.out.println(solver.getName() + ": invalid solution for " + set.name + " " + instance.name);
+                }
+            }
+            run.nodes += result.nodes;
+            run.nanos += nanos;
+            run.allocatedBytes += allocated;
+            run.results.add(result);
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                run.peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return run;
+    }
+    
+    /**
+     * Replays a solution on a copy of the position
+     */
+    static boolean isSolution(PuzzleMode mode, byte[] start, int[] moves, int length) {
+        int cells = mode.getCellCount();
+        byte[] state = start.clone();
+        int blankCell = -1;
+        for (int cell = 0; cell < cells; cell++) {
+            if (state[cell] == cells - 1) {
+                blankCell = cell;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (mode.hasBlank()) {
+                blankCell = mode.moveBlank(state, 0, blankCell, moves[i]);
+                if (blankCell < 0) {
+                    return false;
+                }
+            } else {
+                mode.apply(state, 0, moves[i]);
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            if (state[cell] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void writeJson(List<Run> runs) throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new FileWriter(outputFile)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.setOutputType(JsonWriter.OutputType.json);
+            json.object().set("nodeLimit", nodeLimit).array("runs");
+            for (Run run : runs) {
+                json.object()
+                    .set("solver", run.solver)
+                    .set("set", run.set)
+                    .set("positions", run.results.size())
+                    .set("solved", run.solved)
+                    .set("invalid", run.invalid)
+                    .set("nodes", run.nodes)
+                    .set("millis", run.nanos / 1000000.0)
+                    .set("nodesPerSecond", run.nodesPerSecond())
+                    .set("meanLength", run.meanLength())
+                    .set("meanExcessOverOptimal", run.excessCount > 0 ? run.meanExcess() : -1)
+                    .set("meanLengthOverBound", run.meanOverBound())
+                    .set("allocatedBytes", run.allocatedBytes)
+                    .set("peakHeapBytes", run.peakHeapBytes)
+                    .array("positions");
+                for (Result result : run.results) {
+                    json.object()
+                        .set("name", result.instance.name)
+                        .set("length", result.length)
+                        .set("optimalLength", result.instance.optimalLength)
+                        .set("lowerBound", result.lowerBound)
+                        .set("nodes", result.nodes)
+                        .set("millis", result.nanos / 1000000.0)
+                        .set("allocatedBytes", result.allocatedBytes)
+                        .set("valid", result.valid)
+                        .pop();
+                }
+                json.pop().pop();
+            }
+            json.pop().pop();
+            json.flush();
+        }
+        System.out.println("Results written to " + outputFile.getPath());
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+    
+    /**
+     * One solver on one set
+     */
+    private static class Run {
+        final String solver;
+        final String set;
+        final List<Result> results = new ArrayList<>();
+        int solved, invalid, excessCount;
+        long nodes, nanos, lengthSum, excessSum, allocatedBytes, peakHeapBytes;
+        double overBoundSum;
+        
+        Run(String solver, String set) {
+            this.solver = solver;
+            this.set = set;
+        }
+        
+        double nodesPerSecond() {
+            return nanos > 0 ? nodes * 1e9 / nanos : 0;
+        }
+        
+        double meanLength() {
+            return solved > 0 ? (double) lengthSum / solved : 0;
+        }
+        
+        double meanExcess() {
+            return (double) excessSum / excessCount;
+        }
+        
+        /**
+         * @return Mean solution length over the {@link DifficultyEstimator} lower bound, which caps how far from
+         * optimal the solutions are where the optimum is unknown
+         */
+        double meanOverBound() {
+            return solved > 0 ? overBoundSum / solved : 0;
+        }
+    }
+    
+    private static class Result {
+        final SolverCorpus.Instance instance;
+        final int length;
+        final long nodes;
+        final long nanos;
+        final long allocatedBytes;
+        int lowerBound;
+        boolean valid;
+        
+        Result(SolverCorpus.Instance instance, int length, long nodes, long nanos, long allocatedBytes) {
+            this.instance = instance;
+            this.length = length;
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.tileshifter.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+import com.tileshifter.solver.DifficultyEstimator;
+import com.tileshifter.solver.IdaStarSolver;
+
+/**
+ * Reference positions for comparing solvers, checked in under benchmarks/corpus
+ *
+ * Each file is one set of positions for one mode and size:
+ * <pre>
+ * # comment
+ * mode Classic
+ * size 4
+ * format korf            (optional, see below)
+ * &lt;name&gt; &lt;optimal length or -&gt; &lt;tile per cell, row by row&gt;
+ * </pre>
+ * Tiles are ids as in {@link com.tileshifter.PuzzleBoard#getState(byte[])}, with the blank as the last id. With
+ * "format korf" tiles are written the way the 15-puzzle literature does, with 0 for the blank and the goal
+ * 0 1 2 ... 15; they are turned 180 degrees on loading, which maps that goal onto ours without changing any
+ * solution length, so published instance sets can be added as they are, like Korf's 100 in classic-4x4-korf100.
+ *
+ * Running this class regenerates the seeded sets and leaves published ones alone: uniformly random positions and random walks that never undo
+ * their previous move. Optimal lengths are filled in where IDA* finds them within a node limit.
+ *
+ * Usage: SolverCorpus [--dir benchmarks/corpus] [--nodes limit]
+ */
+public class SolverCorpus {
+    public static final File DEFAULT_DIRECTORY = new File("benchmarks/corpus");
+    
+    /**
+     * One position of a set
+     */
+    public static class Instance {
+        public final String name;
+        public final int optimalLength; // -1 if unknown
+        public final byte[] state;
+        
+        Instance(String name, int optimalLength, byte[] state) {
+            this.name = name;
+            this.optimalLength = optimalLength;
+            this.state = state;
+        }
+    }
+    
+    /**
+     * The positions of one corpus file
+     */
+    public static class InstanceSet {
+        public final String name;
+        public final PuzzleMode mode;
+        public final List<Instance> instances = new ArrayList<>();
+        
+        InstanceSet(String name, PuzzleMode mode) {
+            this.name = name;
+            this.mode = mode;
+        }
+    }
+    
+    public static List<InstanceSet> loadAll(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("No corpus directory at " + directory.getPath());
+        }
+        Arrays.sort(files);
+        List<InstanceSet> sets = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(".txt")) {
+                sets.add(load(file));
+            }
+        }
+        return sets;
+    }
+    
+    public static InstanceSet load(File file) throws IOException {
+        String setName = file.getName().substring(0, file.getName().length() - ".txt".length());
+        String modeName = null;
+        int size = 0;
+        boolean korf = false;
+        InstanceSet set = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("mode ")) {
+                    modeName = line.substring(5).trim();
+                } else if (line.startsWith("size ")) {
+                    size = Integer.parseInt(line.substring(5).trim());
+                } else if (line.equals("format korf")) {
+                    korf = true;
+                } else {
+                    if (set == null) {
+                        if (modeName == null || size == 0) {
+                            throw new IOException(file.getPath() + ": mode and size must come before the positions");
+                        }
+                        set = new InstanceSet(setName, PuzzleModes.named(modeName, size));
+                    }
+                    set.instances.add(parseInstance(line, size, korf, file.getPath() + ":" + lineNumber));
+                }
+            }
+        }
+        if (set == null) {
+            throw new IOException(file.getPath() + " has no positions");
+        }
+        return set;
+    }
+    
+    private static Instance parseInstance(String line, int size, boolean korf, String where) throws IOException {
+        String[] fields = line.split("\\s+");
+        int cells = size * size;
+        if (fields.length != cells + 2) {
+            throw new IOException(where + ": expected a name, an optimal length and " + cells + " tiles");
+        }
+        int optimal = fields[1].equals("-") ? -1 : Integer.parseInt(fields[1]);
+        byte[] state = new byte[cells];
+        boolean[] seen = new boolean[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = Integer.parseInt(fields[cell + 2]);
+            if (tile < 0 || tile >= cells || seen[tile]) {
+                throw new IOException(where + ": tiles are not a permutation of 0.." + (cells - 1));
+            }
+            seen[tile] = true;
+            if (korf) {
+                state[cells - 1 - cell] = (byte) (cells - 1 - tile);
+            } else {
+                state[cell] = (byte) tile;
+            }
+        }
+        return new Instance(fields[0], optimal, state);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        File directory = DEFAULT_DIRECTORY;
+        long nodeLimit = 20000000L;
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--dir": directory = new File(args[i + 1]); break;
+                case "--nodes": nodeLimit = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        directory.mkdirs();
+        
+        long seed = 36001;
+        generate(directory, PuzzleModes.classic(3), "random", 50, 0, seed++, nodeLimit);
+        generate(directory, PuzzleModes.classic(4), "walk30", 25, 30, seed++, nodeLimit);
+        generate(directory, PuzzleModes.classic(4), "walk60", 25, 60, seed++, nodeLimit);
+        generate(directory, PuzzleModes.classic(4), "random", 25, 0, seed++, nodeLimit);
+        generate(directory, PuzzleModes.classic(5), "random", 10, 0, seed++, 0);
+        generate(directory, PuzzleModes.shift(4), "walk4", 25, 4, seed++, nodeLimit);
+        generate(directory, PuzzleModes.shift(4), "walk8", 25, 8, seed++, nodeLimit);
+        generate(directory, PuzzleModes.shift(4), "walk12", 25, 12, seed++, nodeLimit);
+        generate(directory, PuzzleModes.shift(6), "random", 10, 0, seed++, 0);
+        generate(directory, PuzzleModes.rotate(4), "walk6", 25, 6, seed++, nodeLimit);
+        generate(directory, PuzzleModes.rotate(4), "walk10", 25, 10, seed++, nodeLimit);
+        generate(directory, PuzzleModes.rotate(6), "random", 10, 0, seed++, 0);
+    }
+    
+    /**
+     * Writes a set of random positions; walkLength 0 means uniformly random reachable positions
+     */
+    private static void generate(File directory, PuzzleMode mode, String kind, int count, int walkLength, long seed,
+                                 long nodeLimit) throws IOException {
+        int size = mode.getSize();
+        int cells = mode.getCellCount();
+        String setName = mode.getName().toLowerCase(Locale.ROOT).replace(' ', '-') + "-" + size + "x" + size + "-" + kind;
+        Random random = new Random(seed);
+        IdaStarSolver solver = new IdaStarSolver(mode, new DifficultyEstimator(mode));
+        byte[] state = new byte[cells];
+        
+        try (PrintWriter writer = new PrintWriter(new FileWriter(new File(directory, setName + ".txt")))) {
+            writer.println("# " + mode.getName() + " " + size + "x" + size + ": " + count + (walkLength == 0
+                ? " uniformly random reachable positions"
+                : " random walks of " + walkLength + " moves that never undo the previous move") + ", seed " + seed);
+            writer.println("# Generated by SolverCorpus; optimal lengths are from IDA* where it finished within "
+                + nodeLimit + " nodes");
+            writer.println("mode " + mode.getName());
+            writer.println("size " + size);
+            for (int i = 0; i < count; i++) {
+                if (walkLength == 0) {
+                    mode.getReachableStates().sample(random, state, 0);
+                } else {
+                    randomWalk(mode, random, walkLength, state);
+                }
+                int optimal = nodeLimit > 0 ? solver.solve(state, 0, nodeLimit) : -1;
+                StringBuilder line = new StringBuilder();
+                line.append(String.format(Locale.ROOT, "%s-%02d %s", kind, i + 1,
+                    optimal >= 0 ? Integer.toString(optimal) : "-"));
+                for (int cell = 0; cell < cells; cell++) {
+                    line.append(' ').append(state[cell]);
+                }
+                writer.println(line);
+            }
+        }
+        System.out.println("Wrote " + setName);
+    }
+    
+    /**
+     * Writes the end of a random walk from the solved state that never undoes its previous move
+     */
+    static void randomWalk(PuzzleMode mode, Random random, int length, byte[] state) {
+        int cells = mode.getCellCount();
+        for (int cell = 0; cell < cells; cell++) {
+            state[cell] = (byte) cell;
+        }
+        int blankCell = cells - 1;
+        int previous = -1;
+        for (int i = 0; i < length; i++) {
+            if (mode.hasBlank()) {
+                int direction;
+                int target;
+                do {
+                    direction = random.nextInt(4);
+                    target = mode.getBlankNeighbor(blankCell, direction);
+                } while (target < 0 || (previous >= 0 && direction == (previous ^ 1)));
+                mode.moveBlank(state, 0, blankCell, direction);
+                blankCell = target;
+                previous = direction;
+            } else {
+                int move;
+                do {
+                    move = random.nextInt(mode.getGeneratorCount());
+                } while (previous >= 0 && move == mode.getInverse(previous));
+                mode.apply(state, 0, move);
+                previous = move;
+            }
+        }
+    }
+}
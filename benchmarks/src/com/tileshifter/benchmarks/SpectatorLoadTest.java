@@ -0,0 +1,343 @@
+package com.tileshifter.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.RaceClient;
+import com.tileshifter.net.Session;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.server.ServerModes;
+import com.tileshifter.server.VirtualThreads;
+
+/**
+ * Fans one race player's board out to many spectators on a {@link GameServer} over loopback. The player makes
+ * random moves every tick; spectators replay the streamed moves on their own copy of the board and check every
+ * keyframe that follows without a gap against it. Some spectators stall for the first half of the run with a tiny
+ * receive buffer, so the server drops their frames and resyncs them with keyframes. At the end every spectator's
+ * board must equal the player's.
+ *
+ * All spectators are served by one selector thread, so the client side costs little next to the server.
+ *
+ * Usage: SpectatorLoadTest [--spectators 1000] [--slow 50] [--seconds 10] [--moves 100] [--mode classic]
+ * [--size 4] [--sndbuf 8192]
+ */
+public class SpectatorLoadTest {
+    private static final int SLOW_RECEIVE_BUFFER = 1024;
+    
+    /**
+     * One spectator connection and its copy of the watched board
+     */
+    private static final class Viewer {
+        final SocketChannel channel;
+        final boolean slow;
+        final ByteBuffer in = ByteBuffer.allocate(16384);
+        Session board;
+        int lastSequence = -1;
+        long frames;
+        long bytes;
+        int keyframes; // In place of a tick's moves, once a second
+        int resyncs; // After frames were dropped
+        int mismatches;
+        boolean ended;
+        
+        Viewer(SocketChannel channel, boolean slow) {
+            this.channel = channel;
+            this.slow = slow;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int spectatorCount = 1000;
+        int slowCount = 50;
+        int seconds = 10;
+        int movesPerTick = 100;
+        GameMode gameMode = GameMode.CLASSIC;
+        int size = 4;
+        int sendBuffer = 8192;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--spectators": spectatorCount = Integer.parseInt(args[i + 1]); break;
+                case "--slow": slowCount = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "--moves": movesPerTick = Integer.parseInt(args[i + 1]); break;
+                case "--mode": gameMode = GameMode.valueOf(args[i + 1].toUpperCase(Locale.ROOT)); break;
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                case "--sndbuf": sendBuffer = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        System.out.println("Connections run on " + (VirtualThreads.isAvailable() ? "virtual" : "platform")
+            + " threads, " + Runtime.getRuntime().availableProcessors() + " processors");
+        
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0));
+        server.setSendBufferSize(sendBuffer);
+        server.start();
+        final PuzzleMode mode = ServerModes.get(gameMode.ordinal(), size);
+        final RaceClient player = new RaceClient("127.0.0.1", server.getPort(), gameMode, size, 1,
+            new RaceClient.Listener() {
+                @Override
+                public void raceStarted(PuzzleMode raceMode, byte[] state, int playerIndex, int playerCount) {
+                }
+                
+                @Override
+                public void predictionCorrected(byte[] state) {
+                }
+                
+                @Override
+                public void progress(int index, int flags, int moveCount, int misplaced) {
+                }
+                
+                @Override
+                public void raceOver(int winner) {
+                }
+                
+                @Override
+                public void failed(String reason) {
+                    throw new IllegalStateException("Player failed: " + reason);
+                }
+            });
+        Selector selector = Selector.open();
+        List<Viewer> viewers = new ArrayList<>();
+        try {
+            player.start();
+            while (!player.isRunning()) {
+                player.update();
+                Thread.sleep(5);
+            }
+            
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            long connectStart = System.nanoTime();
+            byte[] request = new byte[Protocol.SPECTATE_LENGTH];
+            Protocol.writeSpectate(request, 0, player.getRaceId(), 0);
+            for (int i = 0; i < spectatorCount; i++) {
+                boolean slow = i < slowCount;
+                SocketChannel channel = SocketChannel.open();
+                if (slow) {
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, SLOW_RECEIVE_BUFFER);
+                }
+                channel.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+                channel.write(ByteBuffer.wrap(request));
+                channel.configureBlocking(false);
+                Viewer viewer = new Viewer(channel, slow);
+                viewer.board = new Session(gameMode.ordinal(), mode, 0);
+                channel.register(selector, slow ? 0 : SelectionKey.OP_READ, viewer);
+                viewers.add(viewer);
+            }
+            System.gc();
+            long heapPerSpectator = (memory.getHeapMemoryUsage().getUsed() - heapBefore) / Math.max(1, spectatorCount);
+            System.out.printf(Locale.ROOT, "%,d spectators (%,d stalling) connected in %.1f s; "
+                + "heap %,d bytes per spectator, both ends%n", spectatorCount, slowCount,
+                (System.nanoTime() - connectStart) / 1e9, heapPerSpectator);
+            
+            Thread mover = startMoving(player, mode, movesPerTick);
+            long start = System.nanoTime();
+            long resume = start + seconds * 500000000L;
+            long end = start + seconds * 1000000000L;
+            boolean resumed = false;
+            while (System.nanoTime() < end) {
+                if (!resumed && System.nanoTime() >= resume) {
+                    for (SelectionKey key : selector.keys()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    resumed = true;
+                }
+                poll(selector);
+            }
+            long watchNanos = System.nanoTime() - start;
+            mover.interrupt();
+            mover.join();
+            
+            // Let the last moves be acknowledged, so the player's confirmed board is the server's
+            while (player.getPendingMoveCount() > 0) {
+                player.update();
+                poll(selector);
+            }
+            byte[] finalState = new byte[mode.getCellCount()];
+            player.getConfirmed().getState(finalState, 0);
+            player.close(); // The race ends once its only player left, which ends the streams
+            long drainEnd = System.nanoTime() + 5000000000L;
+            while (!allEnded(viewers) && System.nanoTime() < drainEnd) {
+                poll(selector);
+            }
+            
+            report(viewers, finalState, watchNanos, player.getConfirmed().getMoveCount());
+        } finally {
+            player.close();
+            for (Viewer viewer : viewers) {
+                viewer.channel.close();
+            }
+            selector.close();
+            server.close();
+        }
+    }
+    
+    /**
+     * Makes random moves on a thread of its own, as many per tick as asked for
+     */
+    private static Thread startMoving(final RaceClient player, final PuzzleMode mode, final int movesPerTick) {
+        Thread mover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                int moveCount = mode.hasBlank() ? 4 : mode.getGeneratorCount();
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        for (int made = 0; made < movesPerTick; ) {
+                            if (player.move(random.nextInt(moveCount))) {
+                                made++;
+                            }
+                        }
+                        player.update();
+                        Thread.sleep(RaceClient.TICK_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    // Done
+                }
+            }
+        }, "spectator-load-player");
+        mover.start();
+        return mover;
+    }
+    
+    private static void poll(Selector selector) throws IOException {
+        selector.select(10);
+        for (SelectionKey key : selector.selectedKeys()) {
+            Viewer viewer = (Viewer) key.attachment();
+            int count = viewer.channel.read(viewer.in);
+            if (count < 0) {
+                key.cancel();
+                continue;
+            }
+            viewer.bytes += count;
+            parse(viewer);
+        }
+        selector.selectedKeys().clear();
+    }
+    
+    private static void parse(Viewer viewer) {
+        ByteBuffer in = viewer.in;
+        byte[] buffer = in.array();
+        int start = 0;
+        int end = in.position();
+        while (true) {
+            int length = Protocol.replyLength(buffer, start, end - start);
+            if (length <= 0 || end - start < length) {
+                if (length < 0) {
+                    throw new IllegalStateException("Unknown message " + (buffer[start] & 0xFF));
+                }
+                break;
+            }
+            handle(viewer, buffer, start);
+            start += length;
+        }
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        in.position(end - start);
+    }
+    
+    private static void handle(Viewer viewer, byte[] buffer, int offset) {
+        switch (buffer[offset] & 0xFF) {
+            case Protocol.SPECTATE_STATE: {
+                int sequence = Protocol.readInt(buffer, offset + 3);
+                int cells = offset + Protocol.SPECTATE_STATE_HEADER_LENGTH;
+                if (viewer.lastSequence >= 0) {
+                    if (sequence == viewer.lastSequence) {
+                        // Nothing was skipped, so the keyframe must show the board as replayed
+                        if (!viewer.board.hasState(buffer, cells)) {
+                            viewer.mismatches++;
+                        }
+                    } else if (sequence == viewer.lastSequence + 1) {
+                        viewer.keyframes++;
+                    } else {
+                        viewer.resyncs++;
+                    }
+                }
+                viewer.board.setState(buffer, cells, Protocol.readInt(buffer, offset + 7));
+                viewer.lastSequence = sequence;
+                viewer.frames++;
+                break;
+            }
+            case Protocol.SPECTATE_MOVES: {
+                int sequence = Protocol.readInt(buffer, offset + 1);
+                if (sequence != viewer.lastSequence + 1) {
+                    viewer.mismatches++;
+                }
+                int count = Protocol.readShort(buffer, offset + 5);
+                for (int i = 0; i < count; i++) {
+                    if (viewer.board.move(buffer[offset + Protocol.SPECTATE_MOVES_HEADER_LENGTH + i] & 0xFF)
+                        == Protocol.REJECTED) {
+                        viewer.mismatches++;
+                    }
+                }
+                viewer.lastSequence = sequence;
+                viewer.frames++;
+                break;
+            }
+            case Protocol.SPECTATE_END:
+                viewer.ended = true;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected message " + (buffer[offset] & 0xFF));
+        }
+    }
+    
+    private static boolean allEnded(List<Viewer> viewers) {
+        for (Viewer viewer : viewers) {
+            if (!viewer.ended) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void report(List<Viewer> viewers, byte[] finalState, long watchNanos, int playerMoves) {
+        long frames = 0;
+        long bytes = 0;
+        int keyframes = 0;
+        int fastResyncs = 0;
+        int slowResyncs = 0;
+        int mismatches = 0;
+        int ended = 0;
+        int matching = 0;
+        for (Viewer viewer : viewers) {
+            frames += viewer.frames;
+            bytes += viewer.bytes;
+            mismatches += viewer.mismatches;
+            keyframes += viewer.keyframes;
+            if (viewer.slow) {
+                slowResyncs += viewer.resyncs;
+            } else {
+                fastResyncs += viewer.resyncs;
+            }
+            if (viewer.ended) {
+                ended++;
+            }
+            if (viewer.board.hasState(finalState, 0)) {
+                matching++;
+            }
+        }
+        double watchSeconds = watchNanos / 1e9;
+        System.out.printf(Locale.ROOT, "Player made %,d moves; spectators received %,d frames (%,.0f/s), %.1f MB "
+            + "(%,.0f bytes/s each)%n", playerMoves, frames, frames / watchSeconds, bytes / 1e6,
+            bytes / watchSeconds / Math.max(1, viewers.size()));
+        System.out.printf(Locale.ROOT, "%,d periodic keyframes; resyncs after dropped frames: %,d for stalling "
+            + "spectators, %,d for the others; %,d mismatches%n", keyframes, slowResyncs, fastResyncs, mismatches);
+        System.out.printf(Locale.ROOT, "%,d of %,d streams ended, %,d boards match the player's%n", ended,
+            viewers.size(), matching);
+    }
+}
@@ -0,0 +1,165 @@
+package com.tileshifter.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.tileshifter.TileShiftGame;
+import com.tileshifter.screens.ModeSelectionScreen;
+
+/**
+ * Measures cold start on the headless backend and fails when it exceeds the startup budget
+ * 
+ * The game is created in a fresh JVM and rendered at 60 Hz, as on desktop, until the mode selection
+ * screen is shown. Reports the time to the first frame (the splash screen), the time until the menu
+ * is usable, and the longest frame while assets were uploading. Exits with status 1 when the menu
+ * takes longer than {@link TileShiftGame#STARTUP_BUDGET_MILLIS} (or --budget) after create().
+ * 
+ * Usage: StartupBenchmark [--budget ms] [--out results.json]
+ */
+public class StartupBenchmark implements ApplicationListener {
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    private static final long TIMEOUT_MILLIS = 30000;
+    
+    private long budgetMillis = TileShiftGame.STARTUP_BUDGET_MILLIS;
+    private File outputFile = new File("benchmarks/build/reports/startup/results.json");
+    
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Throwable failure;
+    private volatile boolean overBudget;
+    
+    public static void main(String[] args) throws InterruptedException {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--budget": benchmark.budgetMillis = Long.parseLong(args[i + 1]); break;
+                case "--out": benchmark.outputFile = new File(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1; // Frames are driven by the benchmark itself
+        new HeadlessApplication(benchmark, config);
+        
+        benchmark.finished.await();
+        if (benchmark.failure != null) {
+            benchmark.failure.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(benchmark.overBudget ? 1 : 0);
+    }
+    
+    @Override
+    public void create() {
+        try {
+            CountingGL20 gl = new CountingGL20();
+            Gdx.graphics = new FixedStepGraphics(TileShiftGame.VIRTUAL_WIDTH, TileShiftGame.VIRTUAL_HEIGHT, gl);
+            Gdx.gl = gl;
+            Gdx.gl20 = gl;
+            Gdx.input = new ScriptedInput();
+            ShaderProgram.pedantic = false; // The counting GL reports no active uniforms
+            
+            long jvmUptimeAtCreate = ManagementFactory.getRuntimeMXBean().getUptime();
+            TileShiftGame game = new TileShiftGame();
+            game.create();
+            game.resize(TileShiftGame.VIRTUAL_WIDTH, TileShiftGame.VIRTUAL_HEIGHT);
+            
+            HeadlessApplication app = (HeadlessApplication) Gdx.app;
+            long start = System.nanoTime();
+            long nextFrame = start;
+            long longestFrameNanos = 0;
+            int frames = 0;
+            while (!(game.getScreen() instanceof ModeSelectionScreen)) {
+                if ((System.nanoTime() - start) / 1000000L > TIMEOUT_MILLIS) {
+                    throw new IllegalStateException("Menu not shown after " + TIMEOUT_MILLIS + " ms");
+                }
+                long frameStart = System.nanoTime();
+                app.executeRunnables();
+                game.render();
+                longestFrameNanos = Math.max(longestFrameNanos, System.nanoTime() - frameStart);
+                frames++;
+                
+                // Pace frames like the desktop launcher's 60 FPS cap
+                nextFrame += FRAME_NANOS;
+                long sleepNanos = nextFrame - System.nanoTime();
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+                }
+            }
+            long jvmUptimeAtMenu = ManagementFactory.getRuntimeMXBean().getUptime();
+            
+            long startupMillis = game.getStartupMillis();
+            overBudget = startupMillis > budgetMillis;
+            System.out.println(String.format(Locale.ROOT,
+                "first frame %d ms, menu ready %d ms (budget %d ms) after %d frames, longest loading frame %.2f ms",
+                game.getFirstFrameMillis(), startupMillis, budgetMillis, frames, longestFrameNanos / 1000000.0));
+            System.out.println(String.format(Locale.ROOT,
+                "JVM uptime: %d ms at create(), %d ms at menu", jvmUptimeAtCreate, jvmUptimeAtMenu));
+            System.out.println(overBudget ? "FAILED: startup is over budget" : "OK: startup is within budget");
+            
+            writeJson(game, frames, longestFrameNanos, jvmUptimeAtCreate, jvmUptimeAtMenu);
+            game.getScreen().dispose();
+            game.dispose();
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            Gdx.app.exit();
+            finished.countDown();
+        }
+    }
+    
+    private void writeJson(TileShiftGame game, int frames, long longestFrameNanos,
+                           long jvmUptimeAtCreate, long jvmUptimeAtMenu) throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new FileWriter(outputFile)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.setOutputType(JsonWriter.OutputType.json);
+            json.object()
+                .set("firstFrameMillis", game.getFirstFrameMillis())
+                .set("startupMillis", game.getStartupMillis())
+                .set("budgetMillis", budgetMillis)
+                .set("withinBudget", !overBudget)
+                .set("loadingFrames", frames)
+                .set("longestLoadingFrameMillis", longestFrameNanos / 1000000.0)
+                .set("jvmUptimeAtCreateMillis", jvmUptimeAtCreate)
+                .set("jvmUptimeAtMenuMillis", jvmUptimeAtMenu)
+                .pop();
+            json.flush();
+        }
+        System.out.println("Results written to " + outputFile.getPath());
+    }
+    
+    @Override
+    public void resize(int width, int height) {
+    }
+    
+    @Override
+    public void render() {
+    }
+    
+    @Override
+    public void pause() {
+    }
+    
+    @Override
+    public void resume() {
+    }
+    
+    @Override
+    public void dispose() {
+    }
+}
@@ -0,0 +1,65 @@
+package com.tileshifter.perm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Benchmarks for mapping random reachable states to their canonical representative
+ * Scores are per state; SHIFT 8x8 has 1024 transforms to compare
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardSymmetriesBenchmark {
+    private static final int STATES = 1024;
+    
+    @Param({"Classic", "Rotate", "Shift"})
+    public String modeName;
+    
+    @Param({"4", "8"})
+    public int size;
+    
+    private BoardSymmetries symmetries;
+    private byte[] states;
+    private final byte[] canonical = new byte[64];
+    private int cells;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        PuzzleMode mode = PuzzleModes.named(modeName, size);
+        symmetries = mode.getSymmetries();
+        cells = mode.getCellCount();
+        states = new byte[STATES * cells];
+        Random random = new Random(42);
+        for (int i = 0; i < STATES; i++) {
+            mode.getReachableStates().sample(random, states, i * cells);
+        }
+    }
+    
+    @Benchmark
+    public int canonicalize() {
+        int offset = next * cells;
+        next = (next + 1) & (STATES - 1);
+        return symmetries.canonicalize(states, offset, canonical, 0);
+    }
+}
@@ -0,0 +1,70 @@
+package com.tileshifter.perm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tileshifter.GeneratorPuzzleBoard;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Benchmarks for applying a long SHIFT scramble to a board move by move versus composed into one permutation
+ * Scores are per scramble
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveSequenceBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int moves;
+    
+    private final PuzzleMode mode = PuzzleModes.shift(4);
+    private GeneratorPuzzleBoard board;
+    private int[] scramble;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new GeneratorPuzzleBoard(mode);
+        board.initializeBoard();
+        Random random = new Random(42);
+        scramble = new int[moves];
+        for (int i = 0; i < moves; i++) {
+            scramble[i] = random.nextInt(mode.getGeneratorCount());
+        }
+    }
+    
+    @Benchmark
+    public boolean applyMoveByMove() {
+        for (int move : scramble) {
+            board.applyGenerator(mode.getGenerator(move));
+        }
+        return board.isWon();
+    }
+    
+    @Benchmark
+    public boolean applyComposed() {
+        board.applySequence(mode.sequence(scramble, 0, scramble.length));
+        return board.isWon();
+    }
+    
+    @Benchmark
+    public MoveSequence repeatByPower() {
+        return mode.sequence(scramble, 0, 16).power(moves);
+    }
+}
@@ -0,0 +1,104 @@
+package com.tileshifter.perm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for ranking and unranking 4x4 board states in bulk, as a table builder would
+ * Scores are per state
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationRankerBenchmark {
+    private static final int BATCH = 4096;
+    private static final int CELLS = 16;
+    
+    private final PermutationRanker fullRanker = PermutationRanker.full(CELLS);
+    private final PermutationRanker patternRanker = PermutationRanker.partial(CELLS, 6);
+    private final SolvableStateRanker classicRanker = new SolvableStateRanker(4);
+    
+    private long[] fullRanks;
+    private long[] classicRanks;
+    private long[] patternRanks;
+    private byte[] fullStates;
+    private byte[] classicStates;
+    private byte[] patternStates;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        fullRanks = new long[BATCH];
+        classicRanks = new long[BATCH];
+        patternRanks = new long[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            fullRanks[i] = (random.nextLong() >>> 1) % fullRanker.getRankCount();
+            classicRanks[i] = (random.nextLong() >>> 1) % classicRanker.getRankCount();
+            patternRanks[i] = (random.nextLong() >>> 1) % patternRanker.getRankCount();
+        }
+        fullStates = new byte[BATCH * CELLS];
+        classicStates = new byte[BATCH * CELLS];
+        patternStates = new byte[BATCH * patternRanker.getLength()];
+        fullRanker.unrankAll(fullRanks, 0, fullStates, 0, BATCH);
+        classicRanker.unrankAll(classicRanks, 0, classicStates, 0, BATCH);
+        patternRanker.unrankAll(patternRanks, 0, patternStates, 0, BATCH);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] rankFull() {
+        fullRanker.rankAll(fullStates, 0, fullRanks, 0, BATCH);
+        return fullRanks;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] unrankFull() {
+        fullRanker.unrankAll(fullRanks, 0, fullStates, 0, BATCH);
+        return fullStates;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] rankClassic() {
+        classicRanker.rankAll(classicStates, 0, classicRanks, 0, BATCH);
+        return classicRanks;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] unrankClassic() {
+        classicRanker.unrankAll(classicRanks, 0, classicStates, 0, BATCH);
+        return classicStates;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] rankPattern() {
+        patternRanker.rankAll(patternStates, 0, patternRanks, 0, BATCH);
+        return patternRanks;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] unrankPattern() {
+        patternRanker.unrankAll(patternRanks, 0, patternStates, 0, BATCH);
+        return patternStates;
+    }
+}
@@ -0,0 +1,79 @@
+package com.tileshifter.solver;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Benchmarks for solving uniformly random classic boards with {@link ConstructiveSolver}
+ * Scores are per board
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructiveSolverBenchmark {
+    private static final int BATCH = 16;
+    
+    @Param({"8", "16", "32"})
+    public int size;
+    
+    private ConstructiveSolver solver;
+    private int[] states;
+    private int cells;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        solver = new ConstructiveSolver(PuzzleModes.classic(size));
+        cells = size * size;
+        states = new int[BATCH * cells];
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH; i++) {
+            int offset = i * cells;
+            for (int cell = 0; cell < cells; cell++) {
+                states[offset + cell] = cell;
+            }
+            for (int cell = cells - 1; cell > 0; cell--) {
+                int other = random.nextInt(cell + 1);
+                int tile = states[offset + cell];
+                states[offset + cell] = states[offset + other];
+                states[offset + other] = tile;
+            }
+            if (solver.solve(states, offset) < 0) {
+                // Swapping two tiles other than the blank makes the other half of the states solvable
+                int first = states[offset] == cells - 1 ? 1 : 0;
+                int second = states[offset + first + 1] == cells - 1 ? first + 2 : first + 1;
+                int tile = states[offset + first];
+                states[offset + first] = states[offset + second];
+                states[offset + second] = tile;
+            }
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int solve() {
+        int total = 0;
+        for (int i = 0; i < BATCH; i++) {
+            total += solver.solve(states, i * cells);
+        }
+        return total;
+    }
+}
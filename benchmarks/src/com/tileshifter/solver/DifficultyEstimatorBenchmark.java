@@ -0,0 +1,68 @@
+package com.tileshifter.solver;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Benchmarks for estimating the difficulty of uniformly random states of each mode
+ * Scores are per state
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DifficultyEstimatorBenchmark {
+    private static final int BATCH = 1024;
+    
+    @Param({"classic", "shift", "rotate"})
+    public String mode;
+    
+    @Param({"4", "8"})
+    public int size;
+    
+    private DifficultyEstimator estimator;
+    private byte[] states;
+    private int cells;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        PuzzleMode puzzleMode = mode.equals("classic") ? PuzzleModes.classic(size)
+            : mode.equals("shift") ? PuzzleModes.shift(size) : PuzzleModes.rotate(size);
+        estimator = new DifficultyEstimator(puzzleMode);
+        cells = puzzleMode.getCellCount();
+        states = new byte[BATCH * cells];
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH; i++) {
+            puzzleMode.getReachableStates().sample(random, states, i * cells);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public float estimate() {
+        float total = 0;
+        for (int i = 0; i < BATCH; i++) {
+            total += estimator.estimateMoves(states, i * cells);
+        }
+        return total;
+    }
+}
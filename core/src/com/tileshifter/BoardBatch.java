@@ -0,0 +1,431 @@
+package com.tileshifter;
+
+import com.tileshifter.perm.PermutationGenerator;
+import java.util.Random;
+
+/**
+ * Many boards of one {@link PuzzleMode}, moved together, e.g. to validate a batch of replays or to walk many
+ * generated puzzles at once
+ *
+ * Boards of up to 16 cells are packed one per long, with the tile id of cell c in bits 4c to 4c + 3, and kept in
+ * one array. A generator then moves all of a board's tiles with a few mask-and-shift terms, one per distance that
+ * tiles travel (two for a row or column shift, four for a 2x2 rotation), and a blank move is one xor. The solved
+ * check is one comparison and the Manhattan distance sum is one table lookup per two cells. No loop touches a
+ * single tile, and {@link #moveAll(int)} is the same few long operations on every array element, which the JIT can
+ * unroll and vectorize. Larger boards, or batches built with packed set to false, keep a byte per cell and move
+ * them with {@link PuzzleMode} instead.
+ *
+ * Moves follow {@link com.tileshifter.net.Session}: the direction the blank moves in for modes with a blank,
+ * otherwise a generator index. A move off the board or an unknown one leaves the board unchanged and is counted
+ * as rejected, as {@link PuzzleBoard#moveTile} and {@link GeneratorPuzzleBoard#applyMove} refuse it. Unlike a
+ * session, a solved board still accepts moves. States are tile ids per cell as in
+ * {@link PuzzleBoard#getState(byte[])}.
+ *
+ * Not thread-safe; threads can each own a batch, or work on disjoint board ranges without adding boards.
+ */
+public final class BoardBatch {
+    /** Boards with at most this many cells are packed into one long each */
+    public static final int MAX_PACKED_CELLS = 16;
+    /** Move for boards that sit out a step, e.g. replays that have already ended; not counted as rejected */
+    public static final int NO_MOVE = -1;
+    
+    private final PuzzleMode mode;
+    private final int capacity;
+    private final int cells;
+    private final int blankTile; // -1 without a blank
+    private final boolean packed;
+    private final long[] words; // Packed boards
+    private final byte[] states; // Unpacked boards, cells bytes each
+    private final int[] blankCells;
+    private final int[] blankTargets; // [blank cell * 4 + direction]: the blank's next cell, -1 at the edge
+    private final int[] rejected;
+    private int count;
+    
+    // Packed generators: generator g keeps the cells in keepMasks[g] and moves terms termStarts[g] until
+    // termStarts[g + 1], each taking the cells in termMasks[t] left by leftShifts[t] or right by rightShifts[t] bits
+    private final long[] keepMasks;
+    private final int[] termStarts;
+    private final long[] termMasks;
+    private final int[] leftShifts;
+    private final int[] rightShifts;
+    private final long solvedWord;
+    private final byte[] pairDistances; // [byte index << 8 | byte value]: distance sum of the byte's two cells
+    private final int pairCount;
+    private final byte[] distances; // [cell * cells + tile], for unpacked boards
+    
+    /**
+     * Packs the boards if they have at most {@link #MAX_PACKED_CELLS} cells
+     * @param capacity Most boards the batch holds
+     */
+    public BoardBatch(PuzzleMode mode, int capacity) {
+        this(mode, capacity, mode.getCellCount() <= MAX_PACKED_CELLS);
+    }
+    
+    /**
+     * @param packed false keeps a byte per cell even for small boards, e.g. to compare both layouts
+     * @throws IllegalArgumentException if packed is set for boards of more than {@link #MAX_PACKED_CELLS} cells
+     */
+    public BoardBatch(PuzzleMode mode, int capacity, boolean packed) {
+        cells = mode.getCellCount();
+        if (packed && cells > MAX_PACKED_CELLS) {
+            throw new IllegalArgumentException("Only boards of up to " + MAX_PACKED_CELLS + " cells can be packed, "
+                + mode.getName() + " has " + cells);
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative, got " + capacity);
+        }
+        this.mode = mode;
+        this.capacity = capacity;
+        this.packed = packed;
+        blankTile = mode.hasBlank() ? cells - 1 : -1;
+        words = packed ? new long[capacity] : null;
+        states = packed ? null : new byte[capacity * cells];
+        blankCells = new int[mode.hasBlank() ? capacity : 0];
+        blankTargets = new int[mode.hasBlank() ? cells * 4 : 0];
+        for (int i = 0; i < blankTargets.length; i++) {
+            blankTargets[i] = mode.getBlankNeighbor(i / 4, i % 4);
+        }
+        rejected = new int[capacity];
+        
+        int size = mode.getSize();
+        distances = new byte[cells * cells];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int tile = 0; tile < cells; tile++) {
+                if (tile != blankTile) {
+                    distances[cell * cells + tile] = (byte) (Math.abs(cell % size - tile % size)
+                        + Math.abs(cell / size - tile / size));
+                }
+            }
+        }
+        
+        int generators = mode.getGeneratorCount();
+        keepMasks = new long[packed ? generators : 0];
+        termStarts = new int[packed ? generators + 1 : 0];
+        long[] masks = new long[packed ? generators * cells : 0];
+        int[] shifts = new int[masks.length];
+        int terms = 0;
+        for (int g = 0; packed && g < generators; g++) {
+            termStarts[g] = terms;
+            PermutationGenerator generator = mode.getGenerator(g);
+            long keep = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                int shift = 4 * (generator.getDestination(cell) - cell);
+                if (shift == 0) {
+                    keep |= 0xFL << 4 * cell;
+                    continue;
+                }
+                int term = termStarts[g];
+                while (term < terms && shifts[term] != shift) {
+                    term++;
+                }
+                if (term == terms) {
+                    shifts[terms++] = shift;
+                }
+                masks[term] |= 0xFL << 4 * cell;
+            }
+            keepMasks[g] = keep;
+        }
+        if (packed) {
+            termStarts[generators] = terms;
+        }
+        termMasks = new long[terms];
+        leftShifts = new int[terms];
+        rightShifts = new int[terms];
+        for (int t = 0; t < terms; t++) {
+            termMasks[t] = masks[t];
+            leftShifts[t] = Math.max(0, shifts[t]);
+            rightShifts[t] = Math.max(0, -shifts[t]);
+        }
+        
+        long solved = 0;
+        for (int cell = 0; packed && cell < cells; cell++) {
+            solved |= (long) cell << 4 * cell;
+        }
+        solvedWord = solved;
+        pairCount = packed ? (cells + 1) / 2 : 0;
+        pairDistances = new byte[pairCount << 8];
+        for (int pair = 0; pair < pairCount; pair++) {
+            for (int value = 0; value < 256; value++) {
+                pairDistances[pair << 8 | value] = (byte) (cellDistance(2 * pair, value & 0xF)
+                    + cellDistance(2 * pair + 1, value >>> 4));
+            }
+        }
+    }
+    
+    private int cellDistance(int cell, int tile) {
+        return cell < cells && tile < cells ? distances[cell * cells + tile] : 0;
+    }
+    
+    public PuzzleMode getMode() { return mode; }
+    public int getCapacity() { return capacity; }
+    public boolean isPacked() { return packed; }
+    
+    /**
+     * @return Boards in the batch; moves and checks cover boards 0 to getCount() - 1
+     */
+    public int getCount() { return count; }
+    
+    /**
+     * Drops every board
+     */
+    public void clear() {
+        count = 0;
+    }
+    
+    /**
+     * Adds a board in the given state
+     * @return Its index
+     * @throws IllegalStateException if the batch is full
+     */
+    public int add(byte[] state, int offset) {
+        if (count == capacity) {
+            throw new IllegalStateException("The batch already holds " + capacity + " boards");
+        }
+        setState(count, state, offset);
+        return count++;
+    }
+    
+    /**
+     * Fills the batch with boards {@link PuzzleMode#shuffle shuffled} from the given random, in the same order a
+     * single board would draw them
+     */
+    public void shuffle(Random random, int boards) {
+        byte[] state = new byte[cells];
+        clear();
+        for (int i = 0; i < boards; i++) {
+            mode.shuffle(random, state, 0);
+            add(state, 0);
+        }
+    }
+    
+    /**
+     * Replaces a board's state and clears its rejected move count
+     */
+    public void setState(int board, byte[] state, int offset) {
+        if (packed) {
+            long word = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                word |= (long) (state[offset + cell] & 0xF) << 4 * cell;
+            }
+            words[board] = word;
+        } else {
+            System.arraycopy(state, offset, states, board * cells, cells);
+        }
+        for (int cell = 0; blankTile >= 0 && cell < cells; cell++) {
+            if ((state[offset + cell] & 0xFF) == blankTile) {
+                blankCells[board] = cell;
+            }
+        }
+        rejected[board] = 0;
+    }
+    
+    /**
+     * Writes a board's state in the format of {@link PuzzleBoard#getState(byte[])}
+     */
+    public void getState(int board, byte[] state, int offset) {
+        if (packed) {
+            long word = words[board];
+            for (int cell = 0; cell < cells; cell++) {
+                state[offset + cell] = (byte) (word >>> 4 * cell & 0xF);
+            }
+        } else {
+            System.arraycopy(states, board * cells, state, offset, cells);
+        }
+    }
+    
+    /**
+     * @return Moves the board refused since its state was set
+     */
+    public int getRejectedCount(int board) {
+        return rejected[board];
+    }
+    
+    /**
+     * Applies one move to one board
+     * @return Whether the move was applied; {@link #NO_MOVE} returns false without counting as rejected
+     */
+    public boolean move(int board, int move) {
+        if (move == NO_MOVE) {
+            return false;
+        }
+        if (blankTile >= 0) {
+            return moveBlank(board, move);
+        }
+        if (move < 0 || move >= mode.getGeneratorCount()) {
+            rejected[board]++;
+            return false;
+        }
+        if (packed) {
+            words[board] = permute(words[board], move);
+        } else {
+            mode.apply(states, board * cells, move);
+        }
+        return true;
+    }
+    
+    /**
+     * Applies moves[offset + i] to board i, for every board, e.g. one step of many replays
+     */
+    public void move(int[] moves, int offset) {
+        if (!packed) {
+            for (int board = 0; board < count; board++) {
+                move(board, moves[offset + board]);
+            }
+            return;
+        }
+        if (blankTile >= 0) {
+            for (int board = 0; board < count; board++) {
+                int move = moves[offset + board];
+                int blankCell = blankCells[board];
+                int target = move >= PuzzleMode.UP && move <= PuzzleMode.RIGHT
+                    ? blankTargets[blankCell * 4 + move] : -1;
+                if (target >= 0) {
+                    long word = words[board];
+                    long difference = (word >>> 4 * target ^ blankTile) & 0xF;
+                    words[board] = word ^ (difference << 4 * blankCell | difference << 4 * target);
+                    blankCells[board] = target;
+                } else if (move != NO_MOVE) {
+                    rejected[board]++;
+                }
+            }
+            return;
+        }
+        int generators = mode.getGeneratorCount();
+        for (int board = 0; board < count; board++) {
+            int move = moves[offset + board];
+            if (move >= 0 && move < generators) {
+                words[board] = permute(words[board], move);
+            } else if (move != NO_MOVE) {
+                rejected[board]++;
+            }
+        }
+    }
+    
+    /**
+     * Applies the same move to every board
+     */
+    public void moveAll(int move) {
+        if (blankTile >= 0 || !packed || move < 0 || move >= mode.getGeneratorCount()) {
+            for (int board = 0; board < count; board++) {
+                move(board, move);
+            }
+            return;
+        }
+        int start = termStarts[move];
+        int terms = termStarts[move + 1] - start;
+        long[] words = this.words;
+        if (terms > 4) {
+            for (int board = 0; board < count; board++) {
+                words[board] = permute(words[board], move);
+            }
+            return;
+        }
+        // Row and column shifts have two terms and 2x2 rotations four; unused terms get an empty mask. The terms
+        // are then fixed for the whole loop, which is the same few long operations on every element.
+        long keep = keepMasks[move];
+        long mask0 = terms > 0 ? termMasks[start] : 0, mask1 = terms > 1 ? termMasks[start + 1] : 0;
+        long mask2 = terms > 2 ? termMasks[start + 2] : 0, mask3 = terms > 3 ? termMasks[start + 3] : 0;
+        int left0 = term(leftShifts, start, terms, 0), right0 = term(rightShifts, start, terms, 0);
+        int left1 = term(leftShifts, start, terms, 1), right1 = term(rightShifts, start, terms, 1);
+        int left2 = term(leftShifts, start, terms, 2), right2 = term(rightShifts, start, terms, 2);
+        int left3 = term(leftShifts, start, terms, 3), right3 = term(rightShifts, start, terms, 3);
+        for (int board = 0; board < count; board++) {
+            long word = words[board];
+            words[board] = word & keep
+                | (word & mask0) << left0 >>> right0
+                | (word & mask1) << left1 >>> right1
+                | (word & mask2) << left2 >>> right2
+                | (word & mask3) << left3 >>> right3;
+        }
+    }
+    
+    private static int term(int[] shifts, int start, int terms, int index) {
+        return index < terms ? shifts[start + index] : 0;
+    }
+    
+    private long permute(long word, int generator) {
+        long result = word & keepMasks[generator];
+        for (int t = termStarts[generator]; t < termStarts[generator + 1]; t++) {
+            result |= (word & termMasks[t]) << leftShifts[t] >>> rightShifts[t];
+        }
+        return result;
+    }
+    
+    private boolean moveBlank(int board, int direction) {
+        int blankCell = blankCells[board];
+        int target = direction >= PuzzleMode.UP && direction <= PuzzleMode.RIGHT
+            ? blankTargets[blankCell * 4 + direction] : -1;
+        if (target < 0) {
+            rejected[board]++;
+            return false;
+        }
+        if (packed) {
+            // The blank's nibble takes the tile and the tile's nibble takes the blank: xor both with their difference
+            long word = words[board];
+            long difference = (word >>> 4 * target ^ blankTile) & 0xF;
+            words[board] = word ^ (difference << 4 * blankCell | difference << 4 * target);
+        } else {
+            mode.moveBlank(states, board * cells, blankCell, direction);
+        }
+        blankCells[board] = target;
+        return true;
+    }
+    
+    /**
+     * @return Whether every tile of the board is in its own cell, which is when {@link PuzzleBoard#isWon()} holds
+     */
+    public boolean isSolved(int board) {
+        return packed ? words[board] == solvedWord : mode.isSolved(states, board * cells);
+    }
+    
+    /**
+     * Writes whether each board is solved
+     * @return How many are
+     */
+    public int solved(boolean[] flags, int offset) {
+        int solved = 0;
+        if (packed) {
+            for (int board = 0; board < count; board++) {
+                boolean flag = words[board] == solvedWord;
+                flags[offset + board] = flag;
+                solved += flag ? 1 : 0;
+            }
+        } else {
+            for (int board = 0; board < count; board++) {
+                flags[offset + board] = mode.isSolved(states, board * cells);
+                solved += flags[offset + board] ? 1 : 0;
+            }
+        }
+        return solved;
+    }
+    
+    /**
+     * @return The sum over the board's tiles, other than the blank, of their horizontal and vertical distances
+     * from their own cells, as {@link com.tileshifter.solver.DifficultyEstimator#manhattanDistance} counts it
+     */
+    public int manhattanDistance(int board) {
+        if (packed) {
+            long word = words[board];
+            int sum = 0;
+            for (int pair = 0; pair < pairCount; pair++) {
+                sum += pairDistances[pair << 8 | (int) (word >>> 8 * pair) & 0xFF];
+            }
+            return sum;
+        }
+        int sum = 0;
+        int offset = board * cells;
+        for (int cell = 0; cell < cells; cell++) {
+            sum += distances[cell * cells + (states[offset + cell] & 0xFF)];
+        }
+        return sum;
+    }
+    
+    /**
+     * Writes the {@link #manhattanDistance(int)} of every board
+     */
+    public void manhattanDistances(int[] sums, int offset) {
+        for (int board = 0; board < count; board++) {
+            sums[offset + board] = manhattanDistance(board);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.tileshifter;
+
+import com.tileshifter.perm.MoveSequence;
+import com.tileshifter.perm.PermutationGenerator;
+import com.tileshifter.perm.ReachableStates;
+import com.tileshifter.telemetry.TelemetryEvent;
+
+/**
+ * Board for any {@link PuzzleMode} without a blank: every move is one of the mode's permutation generators,
+ * and shuffling applies random generators so the result is always solvable
+ */
+public class GeneratorPuzzleBoard extends PuzzleBoard {
+    protected final PuzzleMode mode;
+    
+    public GeneratorPuzzleBoard(PuzzleMode mode) {
+        super(false, mode.getSize()); // Generator modes have no empty tile
+        if (mode.hasBlank()) {
+            throw new IllegalArgumentException(mode.getName() + " has a blank; use PuzzleBoard for sliding modes");
+        }
+        this.mode = mode;
+    }
+    
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    /**
+     * Applies the mode's generator with the given index as a player move
+     * @return true if the index is valid
+     */
+    public boolean applyMove(int generatorIndex) {
+        if (generatorIndex < 0 || generatorIndex >= mode.getGeneratorCount()) {
+            return false;
+        }
+        applyGenerator(mode.getGenerator(generatorIndex));
+        recordMove(TelemetryEvent.GENERATOR_MOVE, generatorIndex);
+        return true;
+    }
+    
+    /**
+     * Shuffle the board to a uniformly random reachable state. Modes whose reachable states could not be
+     * characterized fall back to random moves, composed into one permutation so the tiles are only moved once.
+     */
+    @Override
+    protected void shuffleBoard() {
+        ReachableStates reachable = mode.getReachableStates();
+        if (reachable.isCharacterized()) {
+            byte[] state = new byte[size * size];
+            // Draw again if the draw happens to be the solved board, unless the mode can hardly reach anything else
+            for (int attempt = 0; attempt < 8; attempt++) {
+                reachable.sample(random, state, 0);
+                if (!isSolvedState(state)) {
+                    break;
+                }
+            }
+            setState(state);
+        } else {
+            int moves = getShuffleMoveCount();
+            MoveSequence scramble = new MoveSequence(size);
+            for (int i = 0; i < moves; i++) {
+                scramble.then(mode.getGenerator(random.nextInt(mode.getGeneratorCount())));
+            }
+            applySequence(scramble);
+        }
+        
+        isWon = false;
+    }
+    
+    private static boolean isSolvedState(byte[] state) {
+        for (int cell = 0; cell < state.length; cell++) {
+            if ((state[cell] & 0xFF) != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return How many random moves a shuffle makes when the mode's reachable states are not characterized
+     */
+    protected int getShuffleMoveCount() {
+        return 50 + random.nextInt(51);
+    }
+    
+    /**
+     * Generator modes are shuffled to reachable states, so every shuffle is solvable
+     */
+    @Override
+    protected boolean isSolvable(java.util.List<Tile> tiles) {
+        return true;
+    }
+    
+    /**
+     * Tiles only move through the mode's generators
+     */
+    @Override
+    public boolean moveTile(int x, int y) {
+        return false;
+    }
+    
+    /**
+     * Looks up a generator of this board's mode by name, for subclasses that expose named moves
+     */
+    protected PermutationGenerator generatorNamed(String name) {
+        return mode.getGenerator(mode.indexOf(name));
+    }
+}
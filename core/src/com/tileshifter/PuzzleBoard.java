@@ -2,6 +2,10 @@ package com.tileshifter;
 
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.tileshifter.perm.MoveSequence;
+import com.tileshifter.perm.PermutationGenerator;
+import com.tileshifter.telemetry.TelemetryEvent;
+import com.tileshifter.telemetry.TelemetryRecorder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -17,32 +21,54 @@ public class PuzzleBoard {
     protected Tile[][] board; // Changed to protected for subclass access
     protected int emptyX, emptyY; // Position of empty space (protected for subclasses)
     protected boolean isWon = false; // Protected for subclasses
+    protected int misplacedTiles; // Image tiles not in their correct cell; kept up to date by moves
     protected Random random; // Protected for subclasses
     protected boolean hasEmptyTile; // Flag to indicate if the board has an empty tile
+    protected final int size; // Number of tiles per row and column
+    private TelemetryRecorder telemetry; // Optional; receives player moves but not shuffle moves
+    private boolean shuffling = false;
+    private int animatingTiles; // Tiles still animating after the last update, so recording a move needs no scan
+    private Tile[] cellScratch; // Tiles by id for setState and setCells, allocated on first use
     
     public PuzzleBoard() {
         this(true); // Default to classic mode with an empty tile
     }
 
     public PuzzleBoard(boolean hasEmptyTile) {
+        this(hasEmptyTile, BOARD_SIZE);
+    }
+
+    public PuzzleBoard(boolean hasEmptyTile, int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("Board size must be at least 2, got " + size);
+        }
         this.hasEmptyTile = hasEmptyTile;
-        board = new Tile[BOARD_SIZE][BOARD_SIZE];
+        this.size = size;
+        board = new Tile[size][size];
         random = new Random();
     }
     
     /**
-     * Initialize the board with an image split into 4x4 tiles
+     * Initialize the board with an image split into size x size tiles
      */
     public void initializeBoard(Texture texture) {
-        int tileWidth = texture.getWidth() / BOARD_SIZE;
-        int tileHeight = texture.getHeight() / BOARD_SIZE;
+        initializeBoard(texture, true);
+    }
+    
+    /**
+     * Initialize the board with an image split into size x size tiles
+     * @param shuffle false to leave the tiles solved, for a board whose first state is set with {@link #setState}
+     */
+    public void initializeBoard(Texture texture, boolean shuffle) {
+        int tileWidth = texture.getWidth() / size;
+        int tileHeight = texture.getHeight() / size;
         
         int tileId = 0;
         
         // Create tiles from texture regions
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
-                if (hasEmptyTile && x == BOARD_SIZE - 1 && y == BOARD_SIZE - 1) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (hasEmptyTile && x == size - 1 && y == size - 1) {
                     // Last position is empty only if hasEmptyTile is true
                     board[x][y] = new Tile(x, y); // Create an empty tile
                     emptyX = x;
@@ -56,7 +82,31 @@ public class PuzzleBoard {
             }
         }
         
-        // Shuffle the board
+        if (shuffle) {
+            shuffleBoard();
+        } else {
+            checkWinCondition();
+        }
+    }
+    
+    /**
+     * Initialize the board without an image, e.g. for benchmarks or headless rule checks.
+     * Tiles have no texture region and must not be drawn.
+     */
+    public void initializeBoard() {
+        int tileId = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (hasEmptyTile && x == size - 1 && y == size - 1) {
+                    board[x][y] = new Tile(x, y);
+                    emptyX = x;
+                    emptyY = y;
+                } else {
+                    board[x][y] = new Tile(null, x, y, tileId++);
+                }
+            }
+        }
+        
         shuffleBoard();
     }
     
@@ -66,8 +116,8 @@ public class PuzzleBoard {
     protected void shuffleBoard() {
         // Create a list of all tiles (all 16 if no empty tile, 15 if one empty tile)
         List<Tile> tiles = new ArrayList<>();
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 if (!hasEmptyTile || !board[x][y].isEmpty()) {
                     tiles.add(board[x][y]);
                 }
@@ -87,8 +137,8 @@ public class PuzzleBoard {
         
         // Place shuffled tiles back on board
         int tileIndex = 0;
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 if (hasEmptyTile && x == emptyX && y == emptyY) {
                     continue; // Skip empty position if present
                 }
@@ -99,6 +149,7 @@ public class PuzzleBoard {
             }
         }
         
+        checkWinCondition(); // Recount misplaced tiles for the incremental win checks of later moves
         isWon = false;
     }
     
@@ -118,8 +169,8 @@ public class PuzzleBoard {
                 Tile tile1 = tiles.get(i);
                 Tile tile2 = tiles.get(j);
                 
-                int pos1 = tile1.getCorrectY() * BOARD_SIZE + tile1.getCorrectX();
-                int pos2 = tile2.getCorrectY() * BOARD_SIZE + tile2.getCorrectX();
+                int pos1 = tile1.getCorrectY() * size + tile1.getCorrectX();
+                int pos2 = tile2.getCorrectY() * size + tile2.getCorrectX();
                 
                 if (pos1 > pos2) {
                     inversions++;
@@ -127,9 +178,12 @@ public class PuzzleBoard {
             }
         }
         
-        // For 4x4 grid, puzzle is solvable if:
-        // Grid width is even and (inversion count + row of empty space) is odd
-        int emptyRowFromBottom = BOARD_SIZE - emptyY;
+        // Odd grid width: solvable if the inversion count is even
+        if (size % 2 == 1) {
+            return inversions % 2 == 0;
+        }
+        // Even grid width: solvable if (inversion count + row of empty space) is odd
+        int emptyRowFromBottom = size - emptyY;
         return (inversions + emptyRowFromBottom) % 2 == 1;
     }
     
@@ -141,7 +195,7 @@ public class PuzzleBoard {
             return false; // Moving individual tiles is only for classic mode
         }
 
-        if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE) {
+        if (x < 0 || x >= size || y < 0 || y >= size) {
             return false;
         }
         
@@ -152,16 +206,20 @@ public class PuzzleBoard {
         
         // Check if tile is adjacent to empty space
         if (isAdjacentToEmpty(x, y)) {
-            // Swap tile with empty space
+            // Swap tile with empty space, reusing the empty tile instead of allocating one per move
+            Tile emptyTile = board[emptyX][emptyY];
             board[emptyX][emptyY] = tile;
-            board[x][y] = new Tile(emptyX, emptyY); // New empty tile at old empty position
+            board[x][y] = emptyTile;
             
+            // Only the moved tile can change the win state
+            boolean wasCorrect = tile.isInCorrectPosition();
             tile.setGridPosition(emptyX, emptyY);
+            emptyTile.setGridPosition(x, y);
             emptyX = x;
             emptyY = y;
-            
-            // Check win condition
-            checkWinCondition();
+            misplacedTiles += (wasCorrect ? 1 : 0) - (tile.isInCorrectPosition() ? 1 : 0);
+            isWon = misplacedTiles == 0;
+            recordMove(TelemetryEvent.TILE_SLIDE, y * size + x);
             
             return true;
         }
@@ -184,50 +242,212 @@ public class PuzzleBoard {
     }
     
     /**
-     * Check if puzzle is solved
+     * Check if puzzle is solved by counting misplaced tiles on the whole board
      */
     protected void checkWinCondition() {
-        isWon = true;
-        
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        misplacedTiles = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 Tile tile = board[x][y];
-                // For boards with empty tile, empty tile must also be in correct position
-                // For boards without empty tile, all 16 tiles must be in correct position
-                if (!tile.isInCorrectPosition()) {
-                    isWon = false;
-                    return;
+                // The empty tile is wherever the other tiles left room for it,
+                // so only the image tiles need to be checked
+                if (!tile.isEmpty() && !tile.isInCorrectPosition()) {
+                    misplacedTiles++;
                 }
             }
         }
+        isWon = misplacedTiles == 0;
+    }
+    
+    /**
+     * Move tiles by a permutation generator of a {@link PuzzleMode} with the same board size.
+     * Each cycle is rotated in one pass, and the win state is updated from the moved tiles only.
+     */
+    public void applyGenerator(PermutationGenerator generator) {
+        int[] xs = generator.getCycleXs();
+        int[] ys = generator.getCycleYs();
+        int[] ends = generator.getCycleEnds();
+        
+        int correctBefore = 0;
+        for (int i = 0; i < xs.length; i++) {
+            Tile tile = board[xs[i]][ys[i]];
+            if (!tile.isEmpty() && tile.isInCorrectPosition()) {
+                correctBefore++;
+            }
+        }
+        
+        int start = 0;
+        for (int c = 0; c < ends.length; c++) {
+            int end = ends[c];
+            Tile carried = board[xs[end - 1]][ys[end - 1]];
+            for (int i = end - 1; i > start; i--) {
+                board[xs[i]][ys[i]] = board[xs[i - 1]][ys[i - 1]];
+            }
+            board[xs[start]][ys[start]] = carried;
+            start = end;
+        }
+        
+        int correctAfter = 0;
+        for (int i = 0; i < xs.length; i++) {
+            Tile tile = board[xs[i]][ys[i]];
+            tile.setGridPosition(xs[i], ys[i]);
+            if (tile.isEmpty()) {
+                emptyX = xs[i];
+                emptyY = ys[i];
+            } else if (tile.isInCorrectPosition()) {
+                correctAfter++;
+            }
+        }
+        misplacedTiles += correctBefore - correctAfter;
+        isWon = misplacedTiles == 0;
+    }
+    
+    /**
+     * Apply a whole move sequence as one permutation: a single pass over the moved cells and one win check,
+     * however many moves the sequence holds
+     */
+    public void applySequence(MoveSequence sequence) {
+        if (sequence.getSize() != size) {
+            throw new IllegalArgumentException("Sequence for a " + sequence.getSize() + "x" + sequence.getSize()
+                + " board applied to a " + size + "x" + size + " board");
+        }
+        applyGenerator(sequence.compile("sequence"));
     }
     
     /**
      * Update animations for all tiles
      */
     public void update(float deltaTime) {
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        int animating = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 board[x][y].updateAnimation(deltaTime);
+                if (board[x][y].isAnimating()) {
+                    animating++;
+                }
             }
         }
+        animatingTiles = animating;
     }
     
     /**
      * Reset the board with a new shuffle
      */
     public void reset() {
-        shuffleBoard();
+        shuffling = true;
+        try {
+            shuffleBoard();
+        } finally {
+            shuffling = false;
+        }
+    }
+    
+    /**
+     * Attach a telemetry recorder that receives every player move; pass null to detach
+     */
+    public void setTelemetry(TelemetryRecorder telemetry) {
+        this.telemetry = telemetry;
+    }
+    
+    /**
+     * Report a completed player move to the telemetry recorder, if one is attached.
+     * Moves made while shuffling are not reported. The animating flag tells whether tiles were still
+     * moving as of the last update, i.e. whether the player moved before the previous move finished.
+     */
+    protected void recordMove(TelemetryEvent event, int argument) {
+        if (telemetry != null && !shuffling) {
+            telemetry.record(event, argument, animatingTiles > 0);
+            if (isWon) {
+                telemetry.record(TelemetryEvent.WIN, 0, false);
+            }
+        }
     }
     
     // Getters
     public Tile getTile(int x, int y) {
-        if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE) {
+        if (x < 0 || x >= size || y < 0 || y >= size) {
             return null;
         }
         return board[x][y];
     }
     
+    public int getSize() { return size; }
+    
+    /**
+     * Write the board as a state array for {@link com.tileshifter.perm.PermutationRanker} and
+     * {@link com.tileshifter.perm.SolvableStateRanker}: entry y * size + x holds the id of the tile in that cell,
+     * where a tile's id is the index of its correct cell (so the empty tile has id size * size - 1)
+     */
+    public void getState(byte[] state) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                Tile tile = board[x][y];
+                state[y * size + x] = (byte) (tile.getCorrectY() * size + tile.getCorrectX());
+            }
+        }
+    }
+    
+    /**
+     * Rearrange the existing tiles to match a state array in the format of {@link #getState(byte[])}
+     */
+    public void setState(byte[] state) {
+        if (cellScratch == null) {
+            cellScratch = new Tile[size * size];
+        }
+        Tile[] tilesById = cellScratch; // Every entry is overwritten below
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                Tile tile = board[x][y];
+                tilesById[tile.getCorrectY() * size + tile.getCorrectX()] = tile;
+            }
+        }
+        for (int cell = 0; cell < tilesById.length; cell++) {
+            Tile tile = tilesById[state[cell] & 0xFF];
+            int x = cell % size;
+            int y = cell / size;
+            board[x][y] = tile;
+            tile.setGridPosition(x, y);
+            if (tile.isEmpty()) {
+                emptyX = x;
+                emptyY = y;
+            }
+        }
+        checkWinCondition();
+    }
+    
+    /**
+     * Rearrange only the given cells to match a state array in the format of {@link #getState(byte[])}, e.g. after
+     * other players' moves on a shared board. The tiles the state puts in those cells must be the ones they hold
+     * now, in some order; the other cells and the win check are not touched beyond the moved tiles.
+     * @param cells Cell indices (y * size + x), count of them
+     */
+    public void setCells(byte[] state, int[] cells, int count) {
+        if (cellScratch == null) {
+            cellScratch = new Tile[size * size];
+        }
+        for (int i = 0; i < count; i++) {
+            Tile tile = board[cells[i] % size][cells[i] / size];
+            if (!tile.isEmpty() && tile.isInCorrectPosition()) {
+                misplacedTiles++;
+            }
+            cellScratch[tile.getCorrectY() * size + tile.getCorrectX()] = tile;
+        }
+        for (int i = 0; i < count; i++) {
+            int x = cells[i] % size;
+            int y = cells[i] / size;
+            Tile tile = cellScratch[state[cells[i]] & 0xFF];
+            board[x][y] = tile;
+            tile.setGridPosition(x, y);
+            if (tile.isEmpty()) {
+                emptyX = x;
+                emptyY = y;
+            } else if (tile.isInCorrectPosition()) {
+                misplacedTiles--;
+            }
+        }
+        isWon = misplacedTiles == 0;
+    }
+    
     public int getEmptyX() { return emptyX; }
     public int getEmptyY() { return emptyY; }
     public boolean isWon() { return isWon; }
@@ -236,8 +456,8 @@ public class PuzzleBoard {
      * Check if any tile is currently animating
      */
     public boolean isAnimating() {
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 if (board[x][y].isAnimating()) {
                     return true;
                 }
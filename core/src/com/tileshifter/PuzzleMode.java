@@ -0,0 +1,318 @@
+package com.tileshifter;
+
+import com.badlogic.gdx.utils.Array;
+import com.tileshifter.perm.BoardSymmetries;
+import com.tileshifter.perm.MoveSequence;
+import com.tileshifter.perm.PermutationGenerator;
+import com.tileshifter.perm.ReachableStates;
+import java.util.Arrays;
+
+/**
+ * Declarative definition of a puzzle mode: a board size plus the set of moves, each a {@link PermutationGenerator}
+ * 
+ * Modes are put together with {@link Builder}; see {@link PuzzleModes} for the built-in ones. Boards, shuffles,
+ * win detection and solvers only need the compiled generators, so a new variant needs no move code of its own.
+ * Modes with a blank also allow sliding a neighbouring tile into the blank, which depends on where the blank is
+ * and is therefore kept as a per-cell neighbour table rather than as generators.
+ */
+public final class PuzzleMode {
+    /** Directions for blank moves: the blank swaps with its neighbour in this direction (y grows downwards) */
+    public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+    
+    private final String name;
+    private final int size;
+    private final boolean hasBlank;
+    private final PermutationGenerator[] generators;
+    private final int[] inverses;
+    private final int[] blankNeighbors; // [cell * 4 + direction], -1 at the edge
+    private final ReachableStates reachableStates;
+    private BoardSymmetries symmetries; // Found on first use, as large boards have many candidates to check
+    
+    private PuzzleMode(String name, int size, boolean hasBlank, PermutationGenerator[] generators) {
+        this.name = name;
+        this.size = size;
+        this.hasBlank = hasBlank;
+        this.generators = generators;
+        
+        inverses = new int[generators.length];
+        for (int i = 0; i < generators.length; i++) {
+            inverses[i] = -1;
+            for (int j = 0; j < generators.length; j++) {
+                if (generators[i].isInverseOf(generators[j])) {
+                    inverses[i] = j;
+                    break;
+                }
+            }
+        }
+        
+        int cells = size * size;
+        blankNeighbors = new int[hasBlank ? cells * 4 : 0];
+        if (hasBlank) {
+            for (int cell = 0; cell < cells; cell++) {
+                int x = cell % size;
+                int y = cell / size;
+                blankNeighbors[cell * 4 + UP] = y > 0 ? cell - size : -1;
+                blankNeighbors[cell * 4 + DOWN] = y < size - 1 ? cell + size : -1;
+                blankNeighbors[cell * 4 + LEFT] = x > 0 ? cell - 1 : -1;
+                blankNeighbors[cell * 4 + RIGHT] = x < size - 1 ? cell + 1 : -1;
+            }
+        }
+        reachableStates = hasBlank ? ReachableStates.sliding(size) : ReachableStates.analyze(size, generators);
+    }
+    
+    public String getName() { return name; }
+    public int getSize() { return size; }
+    public int getCellCount() { return size * size; }
+    public boolean hasBlank() { return hasBlank; }
+    public int getGeneratorCount() { return generators.length; }
+    public PermutationGenerator getGenerator(int index) { return generators[index]; }
+    
+    /**
+     * @return Index of the generator that undoes the given one, or -1 if the mode has none
+     */
+    public int getInverse(int index) { return inverses[index]; }
+    
+    /**
+     * @return The states this mode can reach from the solved board, for uniform shuffles and solvability checks
+     */
+    public ReachableStates getReachableStates() { return reachableStates; }
+    
+    /**
+     * @return The transforms that keep a state's distance from the solved state, for storing equivalent states once
+     */
+    public synchronized BoardSymmetries getSymmetries() {
+        if (symmetries == null) {
+            symmetries = hasBlank ? BoardSymmetries.sliding(size) : BoardSymmetries.analyze(size, generators);
+        }
+        return symmetries;
+    }
+    
+    /**
+     * @return Index of the generator with the given name
+     * @throws IllegalArgumentException if the mode has no such generator
+     */
+    public int indexOf(String generatorName) {
+        for (int i = 0; i < generators.length; i++) {
+            if (generators[i].getName().equals(generatorName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(name + " has no move named " + generatorName);
+    }
+    
+    /**
+     * @return The cell the blank moves to from blankCell in the given direction, or -1 at the edge
+     */
+    public int getBlankNeighbor(int blankCell, int direction) {
+        return blankNeighbors[blankCell * 4 + direction];
+    }
+    
+    /**
+     * Slides the neighbouring tile into the blank on a state array
+     * @return The new blank cell, or -1 (state unchanged) at the edge
+     */
+    public int moveBlank(byte[] state, int offset, int blankCell, int direction) {
+        int target = blankNeighbors[blankCell * 4 + direction];
+        if (target >= 0) {
+            state[offset + blankCell] = state[offset + target];
+            state[offset + target] = (byte) (size * size - 1);
+        }
+        return target;
+    }
+    
+    /**
+     * Applies a generator to a state array (tile id per cell, see {@link PuzzleBoard#getState(byte[])})
+     */
+    public void apply(byte[] state, int offset, int generatorIndex) {
+        generators[generatorIndex].apply(state, offset);
+    }
+    
+    /**
+     * Composes a run of generator indices, e.g. a recorded game, into one {@link MoveSequence}
+     */
+    public MoveSequence sequence(int[] generatorIndices, int offset, int length) {
+        MoveSequence sequence = new MoveSequence(size);
+        for (int i = offset; i < offset + length; i++) {
+            sequence.then(generators[generatorIndices[i]]);
+        }
+        return sequence;
+    }
+    
+    /**
+     * Writes a uniformly random reachable state other than the solved one (unless the mode can hardly reach
+     * anything else) drawn only from the given random, so the same seed shuffles the same board everywhere, e.g.
+     * for every player of a race. Modes whose reachable states are not characterized make 50 to 100 random moves.
+     */
+    public void shuffle(java.util.Random random, byte[] state, int offset) {
+        int cells = size * size;
+        if (reachableStates.isCharacterized()) {
+            for (int attempt = 0; attempt < 8; attempt++) {
+                reachableStates.sample(random, state, offset);
+                if (!isSolved(state, offset)) {
+                    break;
+                }
+            }
+            return;
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            state[offset + cell] = (byte) cell;
+        }
+        int moves = 50 + random.nextInt(51);
+        for (int i = 0; i < moves; i++) {
+            generators[random.nextInt(generators.length)].apply(state, offset);
+        }
+    }
+    
+    /**
+     * @return Whether every tile of a state array is in its own cell
+     */
+    public boolean isSolved(byte[] state, int offset) {
+        for (int cell = 0; cell < size * size; cell++) {
+            if ((state[offset + cell] & 0xFF) != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public static Builder builder(String name, int size) {
+        return new Builder(name, size);
+    }
+    
+    /**
+     * Collects the moves of a mode. Generator names are part of the mode's interface: boards and tools look
+     * moves up with {@link PuzzleMode#indexOf(String)}.
+     */
+    public static final class Builder {
+        private final String name;
+        private final int size;
+        private boolean hasBlank = false;
+        private final Array<PermutationGenerator> generators = new Array<>();
+        
+        private Builder(String name, int size) {
+            if (size < 2) {
+                throw new IllegalArgumentException("Board size must be at least 2, got " + size);
+            }
+            this.name = name;
+            this.size = size;
+        }
+        
+        /**
+         * The bottom-right tile is a blank that neighbouring tiles slide into
+         */
+        public Builder blankMoves() {
+            hasBlank = true;
+            return this;
+        }
+        
+        /**
+         * Adds a move from an explicit permutation: destinations[cell] is where the tile in cell goes
+         */
+        public Builder generator(String generatorName, int[] destinations) {
+            for (PermutationGenerator existing : generators) {
+                if (existing.getName().equals(generatorName)) {
+                    throw new IllegalArgumentException(name + " already has a move named " + generatorName);
+                }
+            }
+            generators.add(new PermutationGenerator(generatorName, size, destinations));
+            return this;
+        }
+        
+        /**
+         * Adds the rotation of the blockSize x blockSize block with top-left cell (x, y), named
+         * "rotate NxN at x,y cw" or "... ccw"
+         */
+        public Builder rotation(int x, int y, int blockSize, boolean clockwise) {
+            if (blockSize < 2 || x < 0 || y < 0 || x + blockSize > size || y + blockSize > size) {
+                throw new IllegalArgumentException(name + ": a " + blockSize + "x" + blockSize
+                    + " block at " + x + "," + y + " does not fit on the board");
+            }
+            int[] destinations = identity();
+            for (int j = 0; j < blockSize; j++) {
+                for (int i = 0; i < blockSize; i++) {
+                    // Clockwise with y growing downwards: (i, j) -> (blockSize-1-j, i)
+                    int toI = clockwise ? blockSize - 1 - j : j;
+                    int toJ = clockwise ? i : blockSize - 1 - i;
+                    destinations[(y + j) * size + x + i] = (y + toJ) * size + x + toI;
+                }
+            }
+            return generator("rotate " + blockSize + "x" + blockSize + " at " + x + "," + y
+                + (clockwise ? " cw" : " ccw"), destinations);
+        }
+        
+        /**
+         * Adds rotations of blockSize x blockSize blocks at each of the given top-left cells {x, y}
+         */
+        public Builder rotations(int[][] positions, int blockSize, boolean clockwise) {
+            for (int[] position : positions) {
+                rotation(position[0], position[1], blockSize, clockwise);
+            }
+            return this;
+        }
+        
+        /**
+         * Adds cyclic shifts of every column, named "column X up" and "column X down"
+         */
+        public Builder columnShifts() {
+            for (int x = 0; x < size; x++) {
+                generator("column " + x + " up", line(x, 0, 0, 1, -1));
+                generator("column " + x + " down", line(x, 0, 0, 1, 1));
+            }
+            return this;
+        }
+        
+        /**
+         * Adds cyclic shifts of every row, named "row Y left" and "row Y right"
+         */
+        public Builder rowShifts() {
+            for (int y = 0; y < size; y++) {
+                generator("row " + y + " left", line(0, y, 1, 0, -1));
+                generator("row " + y + " right", line(0, y, 1, 0, 1));
+            }
+            return this;
+        }
+        
+        /**
+         * Adds cyclic shifts along the wrapped diagonals (cells where (y - x) mod size == D),
+         * named "diagonal D forward" (towards +x, +y) and "diagonal D back"
+         */
+        public Builder diagonalShifts() {
+            for (int d = 0; d < size; d++) {
+                generator("diagonal " + d + " forward", line(0, d, 1, 1, 1));
+                generator("diagonal " + d + " back", line(0, d, 1, 1, -1));
+            }
+            return this;
+        }
+        
+        public PuzzleMode build() {
+            if (generators.size == 0 && !hasBlank) {
+                throw new IllegalStateException(name + " has no moves");
+            }
+            return new PuzzleMode(name, size, hasBlank, generators.toArray(PermutationGenerator.class));
+        }
+        
+        private int[] identity() {
+            int[] destinations = new int[size * size];
+            for (int cell = 0; cell < destinations.length; cell++) {
+                destinations[cell] = cell;
+            }
+            return destinations;
+        }
+        
+        /**
+         * Shift by step along the wrapped line of size cells starting at (x, y) with direction (dx, dy)
+         */
+        private int[] line(int x, int y, int dx, int dy, int step) {
+            int[] destinations = identity();
+            for (int i = 0; i < size; i++) {
+                int fromX = (x + i * dx) % size;
+                int fromY = (y + i * dy) % size;
+                int to = ((i + step) % size + size) % size;
+                int toX = (x + to * dx) % size;
+                int toY = (y + to * dy) % size;
+                destinations[fromY * size + fromX] = toY * size + toX;
+            }
+            return destinations;
+        }
+    }
+}
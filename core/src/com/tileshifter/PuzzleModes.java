@@ -0,0 +1,97 @@
+package com.tileshifter;
+
+/**
+ * Built-in puzzle mode definitions
+ * The first three back the {@link GameMode}s; the others are variants that boards, shuffles and solvers support
+ * through {@link GeneratorPuzzleBoard} without any mode-specific code.
+ */
+public final class PuzzleModes {
+    private PuzzleModes() {
+    }
+    
+    /**
+     * Looks up a built-in mode by its name, e.g. when reading saved puzzles
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static PuzzleMode named(String name, int size) {
+        switch (name) {
+            case "Classic": return classic(size);
+            case "Rotate": return rotate(size);
+            case "Shift": return shift(size);
+            case "Counter-Rotate": return counterRotate(size);
+            case "Rotate 3x3": return rotate3x3(size);
+            case "Diagonal Shift": return diagonalShift(size);
+            default: throw new IllegalArgumentException("Unknown puzzle mode: " + name);
+        }
+    }
+    
+    /**
+     * @return The mode of the board a {@link GameMode} plays on, e.g. for networked games that only exchange
+     * the game mode and size
+     */
+    public static PuzzleMode of(GameMode gameMode, int size) {
+        switch (gameMode) {
+            case CLASSIC: return classic(size);
+            case ROTATE: return rotate(size);
+            case SHIFT: return shift(size);
+            default: throw new IllegalArgumentException("Unknown game mode: " + gameMode);
+        }
+    }
+    
+    /**
+     * Sliding puzzle: tiles next to the blank slide into it
+     */
+    public static PuzzleMode classic(int size) {
+        return PuzzleMode.builder("Classic", size).blankMoves().build();
+    }
+    
+    /**
+     * Clockwise rotations of the 2x2 sub-boards laid out by {@link RotatePuzzleBoard#createSubBoardPositions(int)}
+     */
+    public static PuzzleMode rotate(int size) {
+        return PuzzleMode.builder("Rotate", size)
+            .rotations(RotatePuzzleBoard.createSubBoardPositions(size), 2, true)
+            .build();
+    }
+    
+    /**
+     * Cyclic shifts of every row and column
+     */
+    public static PuzzleMode shift(int size) {
+        return PuzzleMode.builder("Shift", size).columnShifts().rowShifts().build();
+    }
+    
+    /**
+     * Like {@link #rotate(int)}, but sub-boards can also be turned counter-clockwise
+     */
+    public static PuzzleMode counterRotate(int size) {
+        int[][] positions = RotatePuzzleBoard.createSubBoardPositions(size);
+        return PuzzleMode.builder("Counter-Rotate", size)
+            .rotations(positions, 2, true)
+            .rotations(positions, 2, false)
+            .build();
+    }
+    
+    /**
+     * Clockwise rotations of every 3x3 block
+     */
+    public static PuzzleMode rotate3x3(int size) {
+        if (size < 3) {
+            throw new IllegalArgumentException("3x3 rotations need a board of at least 3x3, got " + size);
+        }
+        PuzzleMode.Builder builder = PuzzleMode.builder("Rotate 3x3", size);
+        for (int y = 0; y + 3 <= size; y++) {
+            for (int x = 0; x + 3 <= size; x++) {
+                builder.rotation(x, y, 3, true);
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Shift mode with cyclic shifts along the wrapped diagonals as well
+     */
+    public static PuzzleMode diagonalShift(int size) {
+        return PuzzleMode.builder("Diagonal Shift", size).columnShifts().rowShifts().diagonalShifts().build();
+    }
+}
@@ -0,0 +1,259 @@
+package com.tileshifter;
+
+import com.tileshifter.solver.DifficultyEstimator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shuffled and graded positions kept ready per game mode and board size, so starting or resetting a game only
+ * copies a state array instead of shuffling and grading one on the render thread
+ *
+ * Low-priority daemon threads refill each mode and size up to a target that follows demand: the recent rate of
+ * takes (a moving average over about half a minute) times {@link #REFILL_SECONDS}, between {@link #MIN_TARGET} and
+ * {@link #MAX_TARGET}. A take from an empty pool shuffles on the calling thread and counts as a miss.
+ * States are tile ids per cell as in {@link PuzzleBoard#getState(byte[])}. All methods are thread-safe.
+ */
+public class PuzzlePool {
+    public static final int MIN_TARGET = 2;
+    public static final int MAX_TARGET = 32;
+    public static final float REFILL_SECONDS = 10f; // Recent demand kept ready
+    private static final float RATE_TIME_CONSTANT_SECONDS = 30f;
+    private static final int GRADING_ATTEMPTS = 16; // Shuffles tried per position to meet a minimum difficulty
+    
+    private final Map<Integer, Shelf> shelves = new HashMap<>();
+    private final ExecutorService workers;
+    private final AtomicLong takes = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    
+    public PuzzlePool() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    
+    public PuzzlePool(int threads) {
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "puzzle-pool-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Starts filling the pool for a mode and size, e.g. once the player picks a mode, so the first take is a hit
+     */
+    public void prepare(GameMode gameMode, int size) {
+        shelf(gameMode, size).refill(true);
+    }
+    
+    /**
+     * Only keeps positions that need at least minMoves by {@link DifficultyEstimator#estimateMoves}; positions
+     * already pooled are kept. If no shuffle in {@link #GRADING_ATTEMPTS} meets it, the hardest one is used.
+     */
+    public void setMinMoves(GameMode gameMode, int size, float minMoves) {
+        shelf(gameMode, size).minMoves = minMoves;
+    }
+    
+    /**
+     * Writes a pooled position for a mode and size, or shuffles one on the calling thread if none is ready
+     * @return The position's estimated optimal solution length in moves
+     */
+    public float take(GameMode gameMode, int size, byte[] state, int offset) {
+        takes.incrementAndGet();
+        Shelf shelf = shelf(gameMode, size);
+        float moves = shelf.take(state, offset);
+        if (moves < 0) {
+            misses.incrementAndGet();
+            moves = shelf.generate(state, offset);
+        }
+        shelf.refill(false);
+        return moves;
+    }
+    
+    /**
+     * @return Positions ready across all modes and sizes
+     */
+    public synchronized int getReadyCount() {
+        int ready = 0;
+        for (Shelf shelf : shelves.values()) {
+            ready += shelf.getCount();
+        }
+        return ready;
+    }
+    
+    /**
+     * @return The sum of the current refill targets across all modes and sizes
+     */
+    public synchronized int getTargetCount() {
+        int target = 0;
+        for (Shelf shelf : shelves.values()) {
+            target += shelf.getTarget();
+        }
+        return target;
+    }
+    
+    /** @return Takes since the pool was created */
+    public long getTakeCount() { return takes.get(); }
+    /** @return Takes that found no position ready, since the pool was created */
+    public long getMissCount() { return misses.get(); }
+    /** @return Positions generated by the workers since the pool was created */
+    public long getGeneratedCount() { return generated.get(); }
+    
+    /**
+     * Stops the workers; takes still work but shuffle on the calling thread
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+    
+    private synchronized Shelf shelf(GameMode gameMode, int size) {
+        Integer key = gameMode.ordinal() << 8 | size;
+        Shelf shelf = shelves.get(key);
+        if (shelf == null) {
+            shelf = new Shelf(gameMode, size);
+            shelves.put(key, shelf);
+        }
+        return shelf;
+    }
+    
+    /**
+     * The positions of one mode and size, in a ring buffer of MAX_TARGET states. At most one refill task per
+     * shelf is queued at a time; it generates one position per run and queues itself again, so shelves share the
+     * workers fairly.
+     */
+    private final class Shelf implements Runnable {
+        private final GameMode gameMode;
+        private final int size;
+        private final int cells;
+        private final Random random = new Random();
+        private volatile float minMoves;
+        private PuzzleMode mode; // Built on first use, see init()
+        private DifficultyEstimator estimator;
+        
+        // Guarded by this
+        private final byte[] states;
+        private final float[] moves = new float[MAX_TARGET];
+        private int head;
+        private int count;
+        private int target = MIN_TARGET;
+        private float takesPerSecond;
+        private long lastTakeNanos;
+        private boolean refillQueued;
+        
+        private final byte[] scratch; // Refill task only
+        
+        Shelf(GameMode gameMode, int size) {
+            this.gameMode = gameMode;
+            this.size = size;
+            cells = size * size;
+            states = new byte[MAX_TARGET * cells];
+            scratch = new byte[cells];
+        }
+        
+        synchronized int getCount() {
+            return count;
+        }
+        
+        synchronized int getTarget() {
+            return target;
+        }
+        
+        /**
+         * @return The position's estimated moves, or -1 if none is ready
+         */
+        synchronized float take(byte[] state, int offset) {
+            long now = System.nanoTime();
+            if (lastTakeNanos != 0) {
+                takesPerSecond *= (float) Math.exp(-(now - lastTakeNanos) / 1e9 / RATE_TIME_CONSTANT_SECONDS);
+            }
+            takesPerSecond += 1f / RATE_TIME_CONSTANT_SECONDS;
+            lastTakeNanos = now;
+            target = Math.min(MAX_TARGET, MIN_TARGET + (int) Math.ceil(takesPerSecond * REFILL_SECONDS));
+            
+            if (count == 0) {
+                return -1;
+            }
+            System.arraycopy(states, head * cells, state, offset, cells);
+            float result = moves[head];
+            head = (head + 1) % MAX_TARGET;
+            count--;
+            return result;
+        }
+        
+        /**
+         * Queues the refill task unless it is queued or the shelf is full. Takes only wake a worker once the shelf
+         * is half empty, which then refills it in one go instead of waking up for every position.
+         */
+        synchronized void refill(boolean topUp) {
+            if (refillQueued || count >= target || (!topUp && count > target / 2)) {
+                return;
+            }
+            refillQueued = true;
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException e) {
+                refillQueued = false; // Shut down
+            }
+        }
+        
+        @Override
+        public void run() {
+            float estimate = generate(scratch, 0);
+            generated.incrementAndGet();
+            synchronized (this) {
+                if (count < MAX_TARGET) {
+                    int slot = (head + count) % MAX_TARGET;
+                    System.arraycopy(scratch, 0, states, slot * cells, cells);
+                    moves[slot] = estimate;
+                    count++;
+                }
+                refillQueued = false;
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                refill(true);
+            }
+        }
+        
+        /**
+         * Shuffles a position, retrying while it is easier than minMoves
+         * @return Its estimated moves
+         */
+        float generate(byte[] state, int offset) {
+            init();
+            mode.shuffle(random, state, offset);
+            float best = Math.max(0f, estimator.estimateMoves(state, offset)); // Fits can dip below zero
+            if (best >= minMoves) {
+                return best;
+            }
+            byte[] candidate = new byte[cells]; // Takes on a miss may run alongside the refill task
+            for (int attempt = 1; attempt < GRADING_ATTEMPTS && best < minMoves; attempt++) {
+                mode.shuffle(random, candidate, 0);
+                float estimate = Math.max(0f, estimator.estimateMoves(candidate, 0));
+                if (estimate > best) {
+                    System.arraycopy(candidate, 0, state, offset, cells);
+                    best = estimate;
+                }
+            }
+            return best;
+        }
+        
+        private synchronized void init() {
+            if (mode == null) {
+                mode = PuzzleModes.of(gameMode, size);
+                estimator = new DifficultyEstimator(mode);
+            }
+        }
+    }
+}
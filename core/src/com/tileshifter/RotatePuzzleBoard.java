@@ -1,61 +1,68 @@
 package com.tileshifter;
 
-import java.util.Random;
+import com.tileshifter.telemetry.TelemetryEvent;
 
 /**
  * Manages the Rotate puzzle board where 2x2 sub-boards can be rotated clockwise
- * Five overlapping 2x2 sub-boards: top-left, top-right, bottom-left, bottom-right, and center
+ * On a 4x4 board there are five overlapping 2x2 sub-boards: top-left, top-right, bottom-left, bottom-right, and center
+ * The rotations are the generators of {@link PuzzleModes#rotate(int)}, in sub-board order
  */
-public class RotatePuzzleBoard extends PuzzleBoard {
-    private Random random;
-    
-    // Define the 5 sub-board starting positions (top-left corner of each 2x2 sub-board)
-    private static final int[][] SUBBOARD_POSITIONS = {
-        {0, 0}, // Top-left
-        {0, 2}, // Bottom-left  
-        {2, 0}, // Top-right
-        {2, 2}, // Bottom-right
-        {1, 1}  // Center
-    };
+public class RotatePuzzleBoard extends GeneratorPuzzleBoard {
+    // Sub-board starting positions (top-left corner of each 2x2 sub-board)
+    private final int[][] subBoardPositions;
     
     public RotatePuzzleBoard() {
-        super(false); // No empty tile for Rotate mode
-        random = new Random();
+        this(BOARD_SIZE);
+    }
+    
+    public RotatePuzzleBoard(int size) {
+        super(PuzzleModes.rotate(checkSize(size))); // No empty tile for Rotate mode
+        subBoardPositions = createSubBoardPositions(size);
+    }
+    
+    private static int checkSize(int size) {
+        if (size < 4 || size % 2 != 0) {
+            throw new IllegalArgumentException("Rotate mode needs an even board size of at least 4, got " + size);
+        }
+        return size;
+    }
+    
+    /**
+     * Lays out the sub-boards for a board of the given size: a grid of non-overlapping
+     * 2x2 sub-boards at even coordinates, followed by the overlapping ones at odd coordinates.
+     * For a 4x4 board this yields top-left, bottom-left, top-right, bottom-right and center.
+     */
+    public static int[][] createSubBoardPositions(int size) {
+        int evenCount = size / 2;
+        int oddCount = (size - 2) / 2;
+        int[][] positions = new int[evenCount * evenCount + oddCount * oddCount][];
+        int index = 0;
+        for (int x = 0; x < size - 1; x += 2) {
+            for (int y = 0; y < size - 1; y += 2) {
+                positions[index++] = new int[] {x, y};
+            }
+        }
+        for (int x = 1; x < size - 1; x += 2) {
+            for (int y = 1; y < size - 1; y += 2) {
+                positions[index++] = new int[] {x, y};
+            }
+        }
+        return positions;
     }
     
     /**
      * Rotates a 2x2 sub-board clockwise
-     * @param subBoardIndex Index of the sub-board (0-4)
+     * @param subBoardIndex Index of the sub-board (0 to getSubBoardCount()-1)
      * @return true if rotation was successful
      */
     public boolean rotateSubBoard(int subBoardIndex) {
-        if (subBoardIndex < 0 || subBoardIndex >= SUBBOARD_POSITIONS.length) {
+        if (subBoardIndex < 0 || subBoardIndex >= subBoardPositions.length) {
             return false;
         }
         
-        int startX = SUBBOARD_POSITIONS[subBoardIndex][0];
-        int startY = SUBBOARD_POSITIONS[subBoardIndex][1];
-        
-        // Get the 4 tiles in the 2x2 sub-board
-        Tile topLeft = board[startX][startY];
-        Tile topRight = board[startX + 1][startY];
-        Tile bottomLeft = board[startX][startY + 1];
-        Tile bottomRight = board[startX + 1][startY + 1];
-        
         // Rotate clockwise: TL -> TR -> BR -> BL -> TL
-        board[startX][startY] = bottomLeft;
-        board[startX + 1][startY] = topLeft;
-        board[startX + 1][startY + 1] = topRight;
-        board[startX][startY + 1] = bottomRight;
-        
-        // Update grid positions
-        board[startX][startY].setGridPosition(startX, startY);
-        board[startX + 1][startY].setGridPosition(startX + 1, startY);
-        board[startX + 1][startY + 1].setGridPosition(startX + 1, startY + 1);
-        board[startX][startY + 1].setGridPosition(startX, startY + 1);
-        
-        // Check win condition
-        checkWinCondition();
+        applyGenerator(mode.getGenerator(subBoardIndex));
+        recordMove(TelemetryEvent.ROTATE_SUB_BOARD, subBoardIndex);
         
         return true;
     }
@@ -64,12 +71,12 @@ public class RotatePuzzleBoard extends PuzzleBoard {
      * Determines which sub-board (if any) contains the given grid coordinates
      * @param gridX X coordinate in the grid
      * @param gridY Y coordinate in the grid
-     * @return Index of the sub-board (0-4), or -1 if not in any clickable sub-board
+     * @return Index of the sub-board, or -1 if not in any clickable sub-board
      */
     public int getSubBoardAtPosition(int gridX, int gridY) {
-        for (int i = 0; i < SUBBOARD_POSITIONS.length; i++) {
-            int startX = SUBBOARD_POSITIONS[i][0];
-            int startY = SUBBOARD_POSITIONS[i][1];
+        for (int i = 0; i < subBoardPositions.length; i++) {
+            int startX = subBoardPositions[i][0];
+            int startY = subBoardPositions[i][1];
             
             if (gridX >= startX && gridX < startX + 2 && 
                 gridY >= startY && gridY < startY + 2) {
@@ -79,35 +86,14 @@ public class RotatePuzzleBoard extends PuzzleBoard {
         return -1;
     }
     
-    /**
-     * Shuffle the board using random rotations
-     */
-    @Override
-    protected void shuffleBoard() {
-        // Perform 50-100 random rotations to shuffle
-        int numRotations = 50 + random.nextInt(51);
-        for (int i = 0; i < numRotations; i++) {
-            int subBoardIndex = random.nextInt(SUBBOARD_POSITIONS.length);
-            rotateSubBoard(subBoardIndex);
-        }
-        
-        isWon = false;
-    }
-    
-    /**
-     * For rotate mode, we don't use the traditional solvability check
-     */
-    @Override
-    protected boolean isSolvable(java.util.List<Tile> tiles) {
-        return true; // All configurations are solvable in rotate mode
+    public int getSubBoardCount() {
+        return subBoardPositions.length;
     }
     
     /**
-     * Override moveTile to disable it for rotate mode
+     * @return Grid position {x, y} of the top-left tile of the given sub-board
      */
-    @Override
-    public boolean moveTile(int x, int y) {
-        return false; // Tiles cannot be moved in rotate mode, only rotated
+    public int[] getSubBoardPosition(int subBoardIndex) {
+        return subBoardPositions[subBoardIndex];
     }
 }
-
@@ -2,15 +2,26 @@ package com.tileshifter;
 
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeFontParameter;
 import com.badlogic.gdx.utils.viewport.FitViewport; // Using FitViewport to maintain aspect ratio
 import com.badlogic.gdx.utils.viewport.Viewport;
+import com.tileshifter.assets.GameAssets;
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.metrics.PerformanceMonitor;
+import com.tileshifter.metrics.PerformanceOverlay;
 import com.tileshifter.screens.ModeSelectionScreen;
+import com.tileshifter.screens.SplashScreen;
+import com.tileshifter.telemetry.TelemetryRecorder;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main game class for Tile Shifter puzzle game
@@ -21,38 +32,109 @@ public class TileShiftGame extends Game {
     public BitmapFont font;
     public OrthographicCamera camera;
     public Viewport viewport;
+    public final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
+    public final PuzzlePool puzzlePool = new PuzzlePool(); // Shuffled positions for new games and resets
+    public GameAssets assets; // Shared font and textures, loaded in the background on start
+    
+    private PerformanceOverlay performanceOverlay;
+    private boolean overlayVisible = false; // Toggled with F3
+    private TelemetryRecorder telemetry; // Optional move recorder, set by the launcher
+    private String raceHost; // Game server for races, set by the launcher; null for local games
+    private int racePort;
+    private int racePlayers;
+    private int spectateRaceId = -1; // -1 unless watching races on the race server instead of playing
+    private int spectatePlayer;
+    private boolean coop; // Whether games on the race server share one board instead of racing
+    private Leaderboard leaderboard; // Ranks local solves; optional, set by the launcher
+    private final ExecutorService leaderboardWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "leaderboard");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private String playerName = "Player";
     
     public static final int VIRTUAL_WIDTH = 800; // Define a virtual width
     public static final int VIRTUAL_HEIGHT = 600; // Define a virtual height
     
+    /** Target time from create() until the mode selection screen is usable */
+    public static final long STARTUP_BUDGET_MILLIS = 1500;
+    
+    private long createNanos;
+    private long firstFrameMillis = -1;
+    private long startupMillis = -1;
+    
     @Override
     public void create() {
+        createNanos = System.nanoTime();
         batch = new SpriteBatch();
 
         camera = new OrthographicCamera();
         viewport = new FitViewport(VIRTUAL_WIDTH, VIRTUAL_HEIGHT, camera); // Initialize FitViewport
         viewport.apply(true);
 
-        // Generate font from a TTF file
-        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("assets/fonts/Roboto-Regular.ttf"));
-        FreeTypeFontParameter parameter = new FreeTypeFontParameter();
-        parameter.size = 24; // Font size
-        parameter.shadowOffsetX = 1;
-        parameter.shadowOffsetY = 1;
-        parameter.borderColor = com.badlogic.gdx.graphics.Color.DARK_GRAY;
-        parameter.borderWidth = 1;
-        parameter.genMipMaps = true; // Enable mipmaps for smoother scaling
-        parameter.minFilter = com.badlogic.gdx.graphics.Texture.TextureFilter.Linear; // Use linear filtering
-        parameter.magFilter = com.badlogic.gdx.graphics.Texture.TextureFilter.Linear; // Use linear filtering
-        font = generator.generateFont(parameter); // Generates a clean BitmapFont
-        generator.dispose(); // Dispose the generator to avoid memory leaks
+        // Fonts and images are decoded on worker threads while the splash screen is shown
+        assets = new GameAssets();
+        assets.startLoading();
+        
+        performanceOverlay = new PerformanceOverlay();
+        performanceMonitor.setProfilingEnabled(overlayVisible);
+        performanceMonitor.setPuzzlePool(puzzlePool);
+        
+        setScreen(new SplashScreen(this));
+    }
+    
+    /**
+     * Called by the splash screen once all assets are uploaded; opens the mode selection screen
+     */
+    public void onAssetsLoaded() {
+        font = assets.getFont();
+        startupMillis = (System.nanoTime() - createNanos) / 1000000L;
+        Gdx.app.log("TileShiftGame", "Startup: first frame " + firstFrameMillis + " ms, interactive "
+            + startupMillis + " ms (budget " + STARTUP_BUDGET_MILLIS + " ms)");
+        if (startupMillis > STARTUP_BUDGET_MILLIS) {
+            Gdx.app.error("TileShiftGame", "Startup took " + startupMillis + " ms, over the "
+                + STARTUP_BUDGET_MILLIS + " ms budget");
+        }
         
         // Start with the mode selection screen
         setScreen(new ModeSelectionScreen(this));
     }
     
+    /**
+     * Blocks until all assets are loaded, for callers that drive the game without the splash screen
+     */
+    public void finishLoading() {
+        assets.finishLoading();
+        font = assets.getFont();
+    }
+    
+    /**
+     * @return Milliseconds from create() to the first rendered frame, or -1 before it
+     */
+    public long getFirstFrameMillis() {
+        return firstFrameMillis;
+    }
+    
+    /**
+     * @return Milliseconds from create() until the menu was ready, or -1 while still loading
+     */
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+    
     @Override
     public void render() {
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F3)) {
+            setPerformanceOverlayVisible(!overlayVisible);
+        }
+        performanceMonitor.beginFrame(batch);
+        if (telemetry != null) {
+            telemetry.setFrameTime(Gdx.graphics.getDeltaTime());
+        }
+        
         // Update the camera
         camera.update();
         // Apply the viewport to the GL context
@@ -67,6 +149,121 @@ public class TileShiftGame extends Game {
 
         // Render current screen
         super.render();
+        if (firstFrameMillis < 0) {
+            firstFrameMillis = (System.nanoTime() - createNanos) / 1000000L;
+        }
+        
+        performanceMonitor.endFrame(batch);
+        if (overlayVisible && font != null) { // The font is not available during the splash screen
+            performanceOverlay.draw(performanceMonitor, batch, font, camera);
+        }
+    }
+    
+    @Override
+    public void setScreen(Screen screen) {
+        performanceMonitor.setScreenName(screen == null ? "" : screen.getClass().getSimpleName());
+        super.setScreen(screen);
+    }
+    
+    /**
+     * Shows or hides the performance overlay; GL call counting is only active while it is visible
+     */
+    public void setPerformanceOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+        if (performanceOverlay != null) {
+            performanceMonitor.setProfilingEnabled(visible);
+        }
+    }
+    
+    /**
+     * Enables move telemetry for boards created from now on; pass null to disable.
+     * The game closes the recorder on dispose.
+     */
+    public void setTelemetry(TelemetryRecorder telemetry) {
+        this.telemetry = telemetry;
+    }
+    
+    public TelemetryRecorder getTelemetry() {
+        return telemetry;
+    }
+    
+    /**
+     * Makes new games races against other players on a game server; pass a null host for local games
+     * @param players Players per race, including this one
+     */
+    public void setRaceServer(String host, int port, int players) {
+        raceHost = host;
+        racePort = port;
+        racePlayers = players;
+    }
+    
+    public String getRaceHost() {
+        return raceHost;
+    }
+    
+    public int getRacePort() {
+        return racePort;
+    }
+    
+    public int getRacePlayers() {
+        return racePlayers;
+    }
+    
+    /**
+     * Makes new games watch a player's board on the {@link #setRaceServer race server} instead of racing
+     * @param raceId The race's id, or 0 for the race that started last
+     */
+    public void setSpectating(int raceId, int player) {
+        spectateRaceId = raceId;
+        spectatePlayer = player;
+    }
+    
+    public boolean isSpectating() {
+        return spectateRaceId >= 0;
+    }
+    
+    public int getSpectateRaceId() {
+        return spectateRaceId;
+    }
+    
+    public int getSpectatePlayer() {
+        return spectatePlayer;
+    }
+    
+    /**
+     * Makes new games on the {@link #setRaceServer race server} co-op games, where all players solve one board
+     */
+    public void setCoop(boolean coop) {
+        this.coop = coop;
+    }
+    
+    public boolean isCoop() {
+        return coop;
+    }
+    
+    /**
+     * Ranks solved local games on a leaderboard, under the given player name; pass null to stop ranking.
+     * The game closes the leaderboard on dispose.
+     */
+    public void setLeaderboard(Leaderboard leaderboard, String playerName) {
+        this.leaderboard = leaderboard;
+        this.playerName = playerName;
+    }
+    
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    /**
+     * Runs leaderboard work, such as submitting and ranking a solve, off the render thread and one task at a time.
+     * Tasks still queued on dispose finish before the leaderboard is closed.
+     */
+    public void runOnLeaderboardThread(Runnable task) {
+        leaderboardWorker.execute(task);
+    }
+    
+    public String getPlayerName() {
+        return playerName;
     }
     
     @Override
@@ -80,9 +277,31 @@ public class TileShiftGame extends Game {
         if (batch != null) {
             batch.dispose();
         }
-        if (font != null) {
-            font.dispose();
+        if (assets != null) {
+            assets.dispose(); // Also disposes the font
+        }
+        if (performanceOverlay != null) {
+            performanceOverlay.dispose();
+        }
+        if (telemetry != null) {
+            telemetry.close();
+        }
+        leaderboardWorker.shutdown();
+        try {
+            if (!leaderboardWorker.awaitTermination(5, TimeUnit.SECONDS)) {
+                Gdx.app.error("TileShiftGame", "Gave up waiting for leaderboard submissions");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (leaderboard != null) {
+            try {
+                leaderboard.close();
+            } catch (IOException e) {
+                Gdx.app.error("TileShiftGame", "Could not close the leaderboard", e);
+            }
         }
+        puzzlePool.shutdown();
         if (camera != null) {
             // Camera doesn't need explicit dispose, but including for completeness if it held resources
         }
@@ -0,0 +1,473 @@
+package com.tileshifter.assets;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Files.FileType;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeBitmapFontData;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeFontParameter;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.tileshifter.pack.PuzzlePack;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the game's shared font and textures on worker threads
+ * 
+ * Workers do all CPU work: reading and decoding the JPGs, rasterizing the FreeType font into a
+ * {@link PixmapPacker} and drawing the generated button pixmaps. Finished pixmaps are queued and
+ * {@link #update()} turns at most {@link #UPLOADS_PER_FRAME} of them into textures per call, so the
+ * GL uploads stay on the render thread and are spread across frames.
+ * 
+ * When the game ships a {@link PuzzlePack}, images come from it instead: the list of puzzle images is the pack's,
+ * only the logo and the thumbnail atlas are loaded up front, and a puzzle image is copied from the mapped pack
+ * into a pixmap when a game first needs it, so nothing scans the images folder or decodes a JPG.
+ * 
+ * All textures and the font are owned by this class; screens must not dispose them.
+ */
+public class GameAssets implements Disposable {
+    public static final int UPLOADS_PER_FRAME = 2;
+    
+    public static final String LOGO_IMAGE = "Mytholore.jpg";
+    private static final String IMAGES_DIR = "assets/images/";
+    private static final String PUZZLE_PACK = "assets/puzzles.pack";
+    private static final String FONT_FILE = "assets/fonts/Roboto-Regular.ttf";
+    private static final int FONT_PAGE_SIZE = 512; // Fits all glyphs of the 24px font on one page
+    
+    // Keys for generated textures
+    private static final String WHITE_PIXEL = "generated/white";
+    private static final String CIRCLE_BUTTON = "generated/circle";
+    private static final String ROTATION_ICON = "generated/rotation";
+    private static final String THUMBNAIL_ATLAS = "generated/thumbnails";
+    
+    private final Array<String> puzzleImageNames = new Array<>();
+    private final ObjectMap<String, Texture> textures = new ObjectMap<>();
+    private final ObjectMap<String, TextureRegion> thumbnails = new ObjectMap<>();
+    private final LinkedBlockingQueue<PendingUpload> pendingUploads = new LinkedBlockingQueue<>();
+    private ExecutorService workers;
+    private BitmapFont font;
+    private PuzzlePack pack; // Null without a pack, or if it could not be read
+    private int totalJobs;
+    private int completedJobs;
+    
+    /**
+     * A decoded asset waiting for its GL upload on the render thread
+     */
+    private interface PendingUpload {
+        void upload();
+        void discard();
+    }
+    
+    /**
+     * Starts decoding all assets in the background; call from the render thread
+     */
+    public void startLoading() {
+        pack = openPack();
+        if (pack != null) {
+            for (int i = 0; i < pack.getImageCount(); i++) {
+                if (pack.isPuzzleImage(i)) {
+                    puzzleImageNames.add(pack.getImageName(i));
+                }
+            }
+        } else {
+            findImages();
+        }
+        
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "asset-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        // The logo goes first so the splash screen can show it early
+        submitImage(LOGO_IMAGE);
+        submitFont();
+        submitGeneratedPixmaps();
+        if (pack != null) {
+            // Puzzle images are copied from the pack when a game needs them
+            submitThumbnailAtlas();
+        } else {
+            for (String name : puzzleImageNames) {
+                submitImage(name);
+            }
+        }
+        workers.shutdown(); // Queued jobs still run; the threads exit once they are done
+    }
+    
+    /**
+     * Maps the puzzle pack if the game has one; reads it into memory where it is no plain file, e.g. in a jar
+     * @return The pack, or null
+     */
+    private static PuzzlePack openPack() {
+        FileHandle handle = Gdx.files.internal(PUZZLE_PACK);
+        try {
+            File file = handle.file();
+            if (handle.type() == FileType.Internal && file.isFile()) {
+                return PuzzlePack.open(file);
+            }
+            if (handle.exists()) {
+                return PuzzlePack.wrap(ByteBuffer.wrap(handle.readBytes()));
+            }
+        } catch (IOException | GdxRuntimeException e) {
+            Gdx.app.error("GameAssets", "Failed to read puzzle pack " + PUZZLE_PACK + ", using the images folder", e);
+        }
+        return null;
+    }
+    
+    private void findImages() {
+        FileHandle imagesDir = Gdx.files.internal(IMAGES_DIR);
+        if (imagesDir.exists()) {
+            for (FileHandle file : imagesDir.list()) {
+                if ((file.extension().equalsIgnoreCase("jpg") ||
+                     file.extension().equalsIgnoreCase("jpeg")) &&
+                    !file.name().equalsIgnoreCase(LOGO_IMAGE)) { // The logo is not a puzzle image
+                    puzzleImageNames.add(file.name());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Uploads up to {@link #UPLOADS_PER_FRAME} decoded assets; call once per frame from the render thread
+     * @return true once every asset is loaded
+     */
+    public boolean update() {
+        for (int i = 0; i < UPLOADS_PER_FRAME; i++) {
+            PendingUpload upload = pendingUploads.poll();
+            if (upload == null) {
+                break;
+            }
+            upload.upload();
+            completedJobs++;
+        }
+        return isLoaded();
+    }
+    
+    /**
+     * Blocks until every asset is loaded, uploading them as they arrive
+     */
+    public void finishLoading() {
+        while (!isLoaded()) {
+            PendingUpload upload;
+            try {
+                upload = pendingUploads.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GdxRuntimeException("Interrupted while loading assets", e);
+            }
+            upload.upload();
+            completedJobs++;
+        }
+    }
+    
+    public boolean isLoaded() {
+        return totalJobs > 0 && completedJobs == totalJobs;
+    }
+    
+    /**
+     * @return Fraction of assets loaded, between 0 and 1
+     */
+    public float getProgress() {
+        return totalJobs == 0 ? 0f : (float) completedJobs / totalJobs;
+    }
+    
+    public BitmapFont getFont() {
+        return font;
+    }
+    
+    /**
+     * @return Names of the selectable puzzle images, from the pack or the images folder
+     */
+    public Array<String> getPuzzleImageNames() {
+        return puzzleImageNames;
+    }
+    
+    /**
+     * @return The texture for an image, loading it now if it was not preloaded
+     */
+    public Texture getImage(String name) {
+        Texture texture = textures.get(name);
+        if (texture == null) {
+            Pixmap pixmap = loadPixmap(name);
+            texture = new Texture(pixmap);
+            pixmap.dispose();
+            textures.put(name, texture);
+        }
+        return texture;
+    }
+    
+    /**
+     * @return The thumbnail of a puzzle image: its region of the pack's thumbnail atlas, or the whole image
+     * without a pack
+     */
+    public TextureRegion getThumbnail(String name) {
+        TextureRegion thumbnail = thumbnails.get(name);
+        if (thumbnail == null) {
+            int image = pack != null ? pack.findImage(name) : -1;
+            if (image >= 0) {
+                thumbnail = new TextureRegion(getGenerated(THUMBNAIL_ATLAS), pack.getThumbnailX(image),
+                    pack.getThumbnailY(image), pack.getThumbnailWidth(image), pack.getThumbnailHeight(image));
+            } else {
+                thumbnail = new TextureRegion(getImage(name));
+            }
+            thumbnails.put(name, thumbnail);
+        }
+        return thumbnail;
+    }
+    
+    /**
+     * @return The puzzle pack the images come from, with its pre-generated puzzles, or null without one
+     */
+    public PuzzlePack getPuzzlePack() {
+        return pack;
+    }
+    
+    /**
+     * Decodes an image from the images folder, or copies its pixels from the pack; safe on worker threads
+     */
+    private Pixmap loadPixmap(String name) {
+        int image = pack != null ? pack.findImage(name) : -1;
+        if (image < 0) {
+            return new Pixmap(Gdx.files.internal(IMAGES_DIR + name));
+        }
+        Pixmap pixmap = new Pixmap(pack.getImageWidth(image), pack.getImageHeight(image), Pixmap.Format.RGB888);
+        pack.readImagePixels(image, pixmap.getPixels());
+        return pixmap;
+    }
+    
+    /**
+     * @return The logo texture, or null while it is still loading
+     */
+    public Texture getLogoIfLoaded() {
+        return textures.get(LOGO_IMAGE);
+    }
+    
+    /**
+     * @return A 1x1 white texture for tinted solid backgrounds
+     */
+    public Texture getWhitePixel() {
+        return getGenerated(WHITE_PIXEL);
+    }
+    
+    /**
+     * @return The circular background of the rotate buttons
+     */
+    public Texture getCircleButton() {
+        return getGenerated(CIRCLE_BUTTON);
+    }
+    
+    /**
+     * @return The arrow icon drawn on the rotate buttons
+     */
+    public Texture getRotationIcon() {
+        return getGenerated(ROTATION_ICON);
+    }
+    
+    private Texture getGenerated(String key) {
+        Texture texture = textures.get(key);
+        if (texture == null) {
+            // Only happens if a screen is created before loading finished
+            Pixmap pixmap = createGeneratedPixmap(key);
+            texture = new Texture(pixmap);
+            pixmap.dispose();
+            textures.put(key, texture);
+        }
+        return texture;
+    }
+    
+    private void submitImage(final String name) {
+        totalJobs++;
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queueTexture(name, loadPixmap(name));
+                } catch (final Exception e) {
+                    pendingUploads.add(new PendingUpload() {
+                        @Override
+                        public void upload() {
+                            Gdx.app.error("GameAssets", "Failed to load image: " + name, e);
+                        }
+                        
+                        @Override
+                        public void discard() {
+                        }
+                    });
+                }
+            }
+        });
+    }
+    
+    private void submitThumbnailAtlas() {
+        totalJobs++;
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                queueTexture(THUMBNAIL_ATLAS, createGeneratedPixmap(THUMBNAIL_ATLAS));
+            }
+        });
+    }
+    
+    private void submitGeneratedPixmaps() {
+        final String[] keys = {WHITE_PIXEL, CIRCLE_BUTTON, ROTATION_ICON};
+        totalJobs += keys.length;
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String key : keys) {
+                    queueTexture(key, createGeneratedPixmap(key));
+                }
+            }
+        });
+    }
+    
+    private void queueTexture(final String key, final Pixmap pixmap) {
+        pendingUploads.add(new PendingUpload() {
+            @Override
+            public void upload() {
+                textures.put(key, new Texture(pixmap));
+                pixmap.dispose();
+            }
+            
+            @Override
+            public void discard() {
+                pixmap.dispose();
+            }
+        });
+    }
+    
+    private Pixmap createGeneratedPixmap(String key) {
+        Pixmap pixmap;
+        if (key.equals(THUMBNAIL_ATLAS)) {
+            pixmap = new Pixmap(pack.getAtlasWidth(), pack.getAtlasHeight(), Pixmap.Format.RGB888);
+            pack.readAtlasPixels(pixmap.getPixels());
+        } else if (key.equals(CIRCLE_BUTTON)) {
+            pixmap = new Pixmap(64, 64, Pixmap.Format.RGBA8888);
+            pixmap.setColor(0.7f, 0.7f, 0.7f, 0.9f); // Brighter, more opaque grey
+            pixmap.fillCircle(32, 32, 30);
+        } else if (key.equals(ROTATION_ICON)) {
+            pixmap = new Pixmap(32, 32, Pixmap.Format.RGBA8888);
+            pixmap.setColor(Color.YELLOW); // Bright yellow for visibility
+            // Draw a simple clockwise arrow
+            pixmap.fillTriangle(16, 2, 22, 10, 10, 10); // Arrowhead
+            pixmap.fillRectangle(14, 10, 4, 10); // Arrow shaft
+            pixmap.fillCircle(16, 24, 6); // Base of arrow
+        } else {
+            pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+            pixmap.setColor(Color.WHITE);
+            pixmap.fill();
+        }
+        return pixmap;
+    }
+    
+    private void submitFont() {
+        totalJobs++;
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                final FreeTypeFontParameter parameter = new FreeTypeFontParameter();
+                parameter.size = 24; // Font size
+                parameter.shadowOffsetX = 1;
+                parameter.shadowOffsetY = 1;
+                parameter.borderColor = Color.DARK_GRAY;
+                parameter.borderWidth = 1;
+                parameter.genMipMaps = true; // Enable mipmaps for smoother scaling
+                parameter.minFilter = Texture.TextureFilter.Linear; // Use linear filtering
+                parameter.magFilter = Texture.TextureFilter.Linear; // Use linear filtering
+                
+                // With our own packer the generator only rasterizes glyphs into pixmaps;
+                // creating the page textures is left to the render thread
+                final PixmapPacker packer = new PixmapPacker(FONT_PAGE_SIZE, FONT_PAGE_SIZE,
+                    Pixmap.Format.RGBA8888, 1, false, new PixmapPacker.SkylineStrategy());
+                packer.setTransparentColor(parameter.borderColor);
+                packer.getTransparentColor().a = 0;
+                parameter.packer = packer;
+                
+                final FreeTypeBitmapFontData data;
+                try {
+                    FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal(FONT_FILE));
+                    try {
+                        data = generator.generateData(parameter);
+                    } finally {
+                        generator.dispose();
+                    }
+                } catch (final RuntimeException e) {
+                    packer.dispose();
+                    pendingUploads.add(new PendingUpload() {
+                        @Override
+                        public void upload() {
+                            throw new GdxRuntimeException("Failed to generate font " + FONT_FILE, e);
+                        }
+                        
+                        @Override
+                        public void discard() {
+                        }
+                    });
+                    return;
+                }
+                
+                pendingUploads.add(new PendingUpload() {
+                    @Override
+                    public void upload() {
+                        Array<TextureRegion> regions = new Array<>();
+                        packer.updateTextureRegions(regions, parameter.minFilter, parameter.magFilter, parameter.genMipMaps);
+                        font = new BitmapFont(data, regions, true);
+                        font.setOwnsTexture(true); // The page textures dispose their pixmaps too
+                    }
+                    
+                    @Override
+                    public void discard() {
+                        packer.dispose();
+                    }
+                });
+            }
+        });
+    }
+    
+    @Override
+    public void dispose() {
+        if (workers != null) {
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        PendingUpload upload;
+        while ((upload = pendingUploads.poll()) != null) {
+            upload.discard();
+        }
+        for (Texture texture : textures.values()) {
+            texture.dispose();
+        }
+        textures.clear();
+        thumbnails.clear();
+        if (font != null) {
+            font.dispose();
+            font = null;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.tileshifter.leaderboard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Rankings of solved puzzles per image, mode and size, by time and by moves, stored in an append-only log
+ *
+ * {@link #submit} replays a submission's moves with a {@link ReplayVerifier}, from its start position or the one
+ * its seed shuffles to, appends it to the log and adds it to the rankings. Each board and ranking has a
+ * {@link RankIndex} of (value, entry) keys, so the top entries from any rank, a player's rank and the number of
+ * entries up to a value all take O(log n), however many entries there are.
+ * Ties go to the earlier entry. Only the log is written to disk; {@link #open} rebuilds the rankings from it after
+ * dropping a damaged tail, so a crash loses at most the submission being written. The rebuild sorts each ranking's
+ * keys and builds its index in one pass rather than inserting entries one by one.
+ *
+ * With bestPerPlayer, e.g. on a server, each ranking holds only every player's best entry; otherwise every solve
+ * is ranked, e.g. for the local leaderboard of one player. Entries are numbered in submission order and their
+ * player, time and move count are kept in memory; start positions and moves are only in the log.
+ *
+ * Thread-safe: submissions are verified without a lock, appended and synced under a log lock that only other
+ * submissions wait for, and ranked under a short write lock; queries share a read lock, so a sync does not hold
+ * them up. The write lock is taken inside the log lock, so entries are numbered in log order, as a rebuild numbers
+ * them.
+ */
+public final class Leaderboard implements Closeable {
+    /** {@link #submit} result for a submission whose moves do not solve its board */
+    public static final int REJECTED = -1;
+    
+    private final LeaderboardLog log;
+    private final boolean bestPerPlayer;
+    private final boolean syncEachSubmission;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock logLock = new ReentrantLock();
+    private final Map<String, Board> boards = new HashMap<>();
+    private final Map<String, Integer> playerIds = new HashMap<>();
+    private final ArrayList<String> playerNames = new ArrayList<>();
+    private final Map<Integer, PuzzleMode> modes = new HashMap<>(); // By mode ordinal << 8 | size; locks itself
+    
+    // Entries by number
+    private int[] entryPlayers = new int[1024];
+    private int[] entryMillis = new int[1024];
+    private int[] entryMoves = new int[1024];
+    private int entryCount;
+    private boolean loading; // While reading the log: rankings are collected, and indexed once it is read
+    
+    private Leaderboard(File file, boolean bestPerPlayer, boolean syncEachSubmission) throws IOException {
+        this.bestPerPlayer = bestPerPlayer;
+        this.syncEachSubmission = syncEachSubmission;
+        loading = true;
+        log = LeaderboardLog.open(file, new LeaderboardLog.Listener() {
+            @Override
+            public void recovered(Submission submission) {
+                add(submission); // Verified before it was logged
+            }
+        });
+        loading = false;
+        for (Board board : boards.values()) {
+            index(board);
+        }
+    }
+    
+    /**
+     * Builds a board's rankings from what {@link #add} collected while loading
+     */
+    private void index(Board board) {
+        for (Ranking ranking : Ranking.values()) {
+            int r = ranking.ordinal();
+            long[] keys;
+            int count;
+            if (bestPerPlayer) {
+                keys = new long[board.playerCount];
+                count = 0;
+                for (int slot = 0; slot < board.players.length; slot++) {
+                    if (board.players[slot] != 0) {
+                        keys[count++] = key(board.bests[r][slot], ranking);
+                    }
+                }
+            } else {
+                keys = board.loadedKeys[r];
+                count = board.loadedCounts[r];
+            }
+            Arrays.sort(keys, 0, count);
+            board.indexes[r].addAll(keys, count);
+        }
+        board.loadedKeys = null;
+    }
+    
+    /**
+     * Opens or creates a leaderboard log and ranks the submissions in it
+     * @param bestPerPlayer Whether rankings keep only each player's best entry
+     * @param syncEachSubmission Whether every submission is forced to the storage device before it is ranked
+     * @throws IOException if the file is not a leaderboard log or cannot be read
+     */
+    public static Leaderboard open(File file, boolean bestPerPlayer, boolean syncEachSubmission)
+        throws IOException {
+        return new Leaderboard(file, bestPerPlayer, syncEachSubmission);
+    }
+    
+    /**
+     * Verifies, logs and ranks a solve
+     * @return The new entry's number, or {@link #REJECTED} (nothing logged) if the moves do not solve the board
+     */
+    public int submit(Submission submission) throws IOException {
+        // A verifier per submission costs one board, and lets submissions replay at the same time
+        ReplayVerifier verifier = new ReplayVerifier(mode(submission.getGameMode(), submission.getSize()));
+        if (submission.isSeeded()
+            ? !verifier.verify(submission.getSeed(), submission.getMoves(), submission.getMoveCount())
+            : !verifier.verify(submission.getStart(), submission.getMoves(), submission.getMoveCount())) {
+            return REJECTED;
+        }
+        logLock.lock();
+        try {
+            log.append(submission);
+            if (syncEachSubmission) {
+                log.sync();
+            }
+            lock.writeLock().lock();
+            try {
+                return add(submission);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+    
+    private PuzzleMode mode(GameMode gameMode, int size) {
+        Integer key = gameMode.ordinal() << 8 | size;
+        synchronized (modes) {
+            PuzzleMode mode = modes.get(key);
+            if (mode == null) {
+                mode = PuzzleModes.of(gameMode, size);
+                modes.put(key, mode);
+            }
+            return mode;
+        }
+    }
+    
+    private int add(Submission submission) {
+        int entry = entryCount++;
+        if (entry == entryPlayers.length) {
+            int capacity = entryPlayers.length * 2;
+            entryPlayers = Arrays.copyOf(entryPlayers, capacity);
+            entryMillis = Arrays.copyOf(entryMillis, capacity);
+            entryMoves = Arrays.copyOf(entryMoves, capacity);
+        }
+        Integer player = playerIds.get(submission.getPlayer());
+        if (player == null) {
+            player = playerNames.size();
+            playerIds.put(submission.getPlayer(), player);
+            playerNames.add(submission.getPlayer());
+        }
+        entryPlayers[entry] = player;
+        entryMillis[entry] = submission.getMillis();
+        entryMoves[entry] = submission.getMoveCount();
+        
+        String key = boardKey(submission.getImage(), submission.getGameMode(), submission.getSize());
+        Board board = boards.get(key);
+        if (board == null) {
+            board = new Board();
+            boards.put(key, board);
+        }
+        for (Ranking ranking : Ranking.values()) {
+            int best = board.getBest(player, ranking);
+            long entryKey = key(entry, ranking);
+            if (best < 0 || entryKey < key(best, ranking)) {
+                if (bestPerPlayer && best >= 0 && !loading) {
+                    board.indexes[ranking.ordinal()].remove(key(best, ranking));
+                }
+                board.setBest(player, ranking, entry);
+            } else if (bestPerPlayer) {
+                continue;
+            }
+            if (!loading) {
+                board.indexes[ranking.ordinal()].insert(entryKey);
+            } else if (!bestPerPlayer) {
+                board.load(ranking, entryKey);
+            }
+        }
+        return entry;
+    }
+    
+    /**
+     * @return The entry's index key: its value in the ranking, then its number, so earlier entries win ties
+     */
+    private long key(int entry, Ranking ranking) {
+        return (long) ranking.valueOf(entryMillis[entry], entryMoves[entry]) << 32 | entry;
+    }
+    
+    private static String boardKey(String image, GameMode gameMode, int size) {
+        return image + '\n' + gameMode.ordinal() + '\n' + size;
+    }
+    
+    /**
+     * @return Entries in the ranking
+     */
+    public int getEntryCount(String image, GameMode gameMode, int size, Ranking ranking) {
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            return board == null ? 0 : board.indexes[ranking.ordinal()].size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Writes the numbers of the entries from the given rank on, best first
+     * @param fromRank 0 for the best entry
+     * @return How many were written: count, or fewer at the end of the ranking
+     */
+    public int getTop(String image, GameMode gameMode, int size, Ranking ranking, int fromRank, int[] entries,
+                      int count) {
+        long[] keys = new long[Math.max(0, count)];
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            if (board == null) {
+                return 0;
+            }
+            int written = board.indexes[ranking.ordinal()].get(fromRank, keys, 0, count);
+            for (int i = 0; i < written; i++) {
+                entries[i] = (int) keys[i];
+            }
+            return written;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @return The player's best entry in the ranking, or -1 if they have none
+     */
+    public int getBestEntry(String image, GameMode gameMode, int size, Ranking ranking, String player) {
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            Integer id = playerIds.get(player);
+            return board == null || id == null ? -1 : board.getBest(id, ranking);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @return The rank of the player's best entry, 0 for the best in the ranking, or -1 if they have none
+     */
+    public int getRank(String image, GameMode gameMode, int size, Ranking ranking, String player) {
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            Integer id = playerIds.get(player);
+            int best = board == null || id == null ? -1 : board.getBest(id, ranking);
+            return best < 0 ? -1 : board.indexes[ranking.ordinal()].rankOf(key(best, ranking));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @return The rank of an entry, 0 for the best, or -1 if it is not ranked, e.g. a player's worse solve on a
+     * leaderboard of player bests
+     */
+    public int getRank(String image, GameMode gameMode, int size, Ranking ranking, int entry) {
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            if (board == null || entry < 0 || entry >= entryCount) {
+                return -1;
+            }
+            RankIndex index = board.indexes[ranking.ordinal()];
+            long key = key(entry, ranking);
+            int rank = index.rankOf(key);
+            long[] found = new long[1];
+            return index.get(rank, found, 0, 1) == 1 && found[0] == key ? rank : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @return Entries in the ranking with at most the given time or move count, e.g. to place a solve between two
+     * thresholds
+     */
+    public int countUpTo(String image, GameMode gameMode, int size, Ranking ranking, int value) {
+        lock.readLock().lock();
+        try {
+            Board board = boards.get(boardKey(image, gameMode, size));
+            return board == null || value < 0 ? 0
+                : board.indexes[ranking.ordinal()].rankOf(((long) value + 1) << 32);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public String getPlayer(int entry) {
+        lock.readLock().lock();
+        try {
+            return playerNames.get(entryPlayers[entry]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int getMillis(int entry) {
+        lock.readLock().lock();
+        try {
+            return entryMillis[entry];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int getMoves(int entry) {
+        lock.readLock().lock();
+        try {
+            return entryMoves[entry];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * @return Entries on all boards, ranked or not
+     */
+    public int getTotalEntryCount() {
+        lock.readLock().lock();
+        try {
+            return entryCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /** @return Submissions read from the log on open */
+    public int getRecoveredCount() { return log.getRecoveredCount(); }
+    /** @return Bytes of a damaged log tail dropped on open, e.g. a submission cut off by a crash */
+    public long getDroppedBytes() { return log.getDroppedBytes(); }
+    
+    /**
+     * Forces logged submissions to the storage device, for leaderboards that do not sync each one
+     */
+    public void sync() throws IOException {
+        logLock.lock();
+        try {
+            log.sync();
+        } finally {
+            logLock.unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        logLock.lock();
+        try {
+            log.sync();
+            log.close();
+        } finally {
+            logLock.unlock();
+        }
+    }
+    
+    /**
+     * The rankings of one image, mode and size, with each player's best entry per ranking in an open-addressing
+     * table, so looking up a player costs no boxing and about 12 bytes per player
+     */
+    private static final class Board {
+        final RankIndex[] indexes = new RankIndex[Ranking.values().length];
+        int[] players = new int[16]; // Player id + 1, 0 for a free slot
+        int[][] bests = new int[indexes.length][16];
+        int playerCount;
+        long[][] loadedKeys; // Keys collected while loading, null before and after
+        final int[] loadedCounts = new int[indexes.length];
+        
+        Board() {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = new RankIndex();
+            }
+        }
+        
+        void load(Ranking ranking, long key) {
+            int r = ranking.ordinal();
+            if (loadedKeys == null) {
+                loadedKeys = new long[indexes.length][16];
+            }
+            if (loadedCounts[r] == loadedKeys[r].length) {
+                loadedKeys[r] = Arrays.copyOf(loadedKeys[r], loadedCounts[r] * 2);
+            }
+            loadedKeys[r][loadedCounts[r]++] = key;
+        }
+        
+        int getBest(int player, Ranking ranking) {
+            int slot = find(player);
+            return players[slot] == 0 ? -1 : bests[ranking.ordinal()][slot];
+        }
+        
+        void setBest(int player, Ranking ranking, int entry) {
+            int slot = find(player);
+            if (players[slot] == 0) {
+                if ((playerCount + 1) * 4 > players.length * 3) {
+                    grow();
+                    slot = find(player);
+                }
+                players[slot] = player + 1;
+                for (int[] best : bests) {
+                    best[slot] = -1;
+                }
+                playerCount++;
+            }
+            bests[ranking.ordinal()][slot] = entry;
+        }
+        
+        private int find(int player) {
+            int mask = players.length - 1;
+            int hash = player * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (players[slot] != 0 && players[slot] != player + 1) {
+                slot = slot + 1 & mask;
+            }
+            return slot;
+        }
+        
+        private void grow() {
+            int[] oldPlayers = players;
+            int[][] oldBests = bests;
+            players = new int[oldPlayers.length * 2];
+            bests = new int[indexes.length][players.length];
+            for (int slot = 0; slot < oldPlayers.length; slot++) {
+                if (oldPlayers[slot] != 0) {
+                    int to = find(oldPlayers[slot] - 1);
+                    players[to] = oldPlayers[slot];
+                    for (int r = 0; r < bests.length; r++) {
+                        bests[r][to] = oldBests[r][slot];
+                    }
+                }
+            }
+        }
+    }
+}
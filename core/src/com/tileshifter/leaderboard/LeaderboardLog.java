@@ -0,0 +1,240 @@
+package com.tileshifter.leaderboard;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import com.tileshifter.GameMode;
+
+/**
+ * Append-only file of accepted {@link Submission}s, the only place leaderboards are stored; the rankings are
+ * rebuilt from it on open
+ *
+ * File format (big-endian): magic "TSLB", version int, then {@link #HEADER_BYTES} - 8 reserved bytes, then one record
+ * per submission: payload length int, CRC-32 of the payload int, payload. The payload holds the submission time
+ * (long), mode ordinal and size (bytes), image and player (length-prefixed UTF-8, 2-byte lengths), milliseconds
+ * (int), the start: 0 and a byte per cell, or 1 and the seed (long) for seeded submissions, then the move count
+ * (2 bytes) and the moves.
+ *
+ * A record is written with one write at the end of the file, so a crash can only leave the last record partly
+ * written. Opening reads records up to the first one that is cut off or fails its CRC, and truncates the file there,
+ * so later appends follow the last good record.
+ */
+final class LeaderboardLog implements Closeable {
+    static final int MAGIC = 0x54534C42; // "TSLB"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_PAYLOAD_BYTES = 1 << 20;
+    private static final GameMode[] GAME_MODES = GameMode.values();
+    
+    /** Receives the records read on open, in file order */
+    interface Listener {
+        void recovered(Submission submission);
+    }
+    
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+    private long length;
+    private final long droppedBytes;
+    private final int recoveredCount;
+    
+    private LeaderboardLog(RandomAccessFile file, long length, long droppedBytes, int recoveredCount) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.length = length;
+        this.droppedBytes = droppedBytes;
+        this.recoveredCount = recoveredCount;
+    }
+    
+    /**
+     * Opens or creates a log, passing every intact record to the listener and dropping a damaged tail
+     * @throws IOException if the file is not a leaderboard log or cannot be read
+     */
+    static LeaderboardLog open(File path, Listener listener) throws IOException {
+        File parent = path.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            if (file.length() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                file.getChannel().write(header, 0);
+                file.getChannel().force(true);
+            } else if (file.length() < HEADER_BYTES || file.readInt() != MAGIC) {
+                throw new IOException(path + " is not a leaderboard log");
+            } else if (file.readInt() != VERSION) {
+                throw new IOException(path + " has an unsupported leaderboard log version");
+            }
+            long fileLength = file.length();
+            long end = HEADER_BYTES;
+            int records = 0;
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[256];
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(skip(new FileInputStream(path),
+                HEADER_BYTES), 1 << 16))) {
+                while (end + RECORD_HEADER_BYTES <= fileLength) {
+                    int payloadLength = input.readInt();
+                    int checksum = input.readInt();
+                    if (payloadLength <= 0 || payloadLength > MAX_PAYLOAD_BYTES
+                        || end + RECORD_HEADER_BYTES + payloadLength > fileLength) {
+                        break; // Cut off, or a torn length
+                    }
+                    if (payload.length < payloadLength) {
+                        payload = new byte[Math.max(payloadLength, payload.length * 2)];
+                    }
+                    input.readFully(payload, 0, payloadLength);
+                    crc.reset();
+                    crc.update(payload, 0, payloadLength);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    Submission submission = decode(payload, payloadLength);
+                    if (submission == null) {
+                        break;
+                    }
+                    listener.recovered(submission);
+                    end += RECORD_HEADER_BYTES + payloadLength;
+                    records++;
+                }
+            } catch (EOFException e) {
+                // The file shrank while reading; keep what was read
+            }
+            if (end < fileLength) {
+                file.setLength(end);
+                file.getChannel().force(true);
+            }
+            return new LeaderboardLog(file, end, fileLength - end, records);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+    
+    private static InputStream skip(InputStream input, long bytes) throws IOException {
+        long skipped = 0;
+        while (skipped < bytes) {
+            long step = input.skip(bytes - skipped);
+            if (step <= 0) {
+                throw new EOFException();
+            }
+            skipped += step;
+        }
+        return input;
+    }
+    
+    /**
+     * @return The record's submission, or null if the payload does not hold a valid one
+     */
+    private static Submission decode(byte[] payload, int payloadLength) {
+        ByteBuffer in = ByteBuffer.wrap(payload, 0, payloadLength);
+        try {
+            long submittedMillis = in.getLong();
+            int mode = in.get() & 0xFF;
+            int size = in.get() & 0xFF;
+            String image = readString(in);
+            String player = readString(in);
+            int millis = in.getInt();
+            if (mode >= GAME_MODES.length) {
+                return null;
+            }
+            boolean seeded = in.get() != 0;
+            long seed = 0;
+            byte[] start = null;
+            if (seeded) {
+                seed = in.getLong();
+            } else {
+                start = new byte[size * size];
+                in.get(start);
+            }
+            byte[] moves = new byte[in.getShort() & 0xFFFF];
+            in.get(moves);
+            return seeded
+                ? new Submission(image, GAME_MODES[mode], size, player, millis, submittedMillis, seed, moves)
+                : new Submission(image, GAME_MODES[mode], size, player, millis, submittedMillis, start, moves);
+        } catch (RuntimeException e) {
+            return null; // Too short, or values a submission rejects
+        }
+    }
+    
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Writes a record at the end of the file; see {@link #sync()} for durability
+     */
+    void append(Submission submission) throws IOException {
+        byte[] image = submission.getImage().getBytes(StandardCharsets.UTF_8);
+        byte[] player = submission.getPlayer().getBytes(StandardCharsets.UTF_8);
+        int startLength = submission.isSeeded() ? 8 : submission.getStart().length;
+        int payloadLength = 8 + 2 + 2 + image.length + 2 + player.length + 4 + 1 + startLength + 2
+            + submission.getMoveCount();
+        if (image.length > 0xFFFF || payloadLength > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Submission too large for the log: " + payloadLength + " bytes");
+        }
+        int recordLength = RECORD_HEADER_BYTES + payloadLength;
+        if (buffer.capacity() < recordLength) {
+            buffer = ByteBuffer.allocate(Math.max(recordLength, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.position(RECORD_HEADER_BYTES);
+        buffer.putLong(submission.getSubmittedMillis());
+        buffer.put((byte) submission.getGameMode().ordinal());
+        buffer.put((byte) submission.getSize());
+        buffer.putShort((short) image.length).put(image);
+        buffer.putShort((short) player.length).put(player);
+        buffer.putInt(submission.getMillis());
+        if (submission.isSeeded()) {
+            buffer.put((byte) 1).putLong(submission.getSeed());
+        } else {
+            buffer.put((byte) 0).put(submission.getStart());
+        }
+        buffer.putShort((short) submission.getMoveCount()).put(submission.getMoves());
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_BYTES, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        long position = length;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        length = position;
+    }
+    
+    /**
+     * Forces appended records to the storage device, so they survive a power loss and not just a crash
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+    
+    /** @return The file length, up to the end of the last record */
+    long getLength() { return length; }
+    /** @return Bytes of a damaged tail dropped on open */
+    long getDroppedBytes() { return droppedBytes; }
+    /** @return Records read on open */
+    int getRecoveredCount() { return recoveredCount; }
+    
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
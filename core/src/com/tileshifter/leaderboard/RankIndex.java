@@ -0,0 +1,268 @@
+package com.tileshifter.leaderboard;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of distinct long keys with lookups by rank, as a skip list whose links also count the keys they skip
+ *
+ * Finding a key's rank, the key at a rank and inserting or removing a key each take O(log n) expected steps; walking
+ * on from a rank costs one step per key. Nodes live in one flat array instead of objects: a node with k levels owns
+ * k consecutive links and is numbered by its first one, and each link is two longs, the key of the node it points to
+ * and that node's number and the link's span. A step along a level compares the key in the link it already read, so
+ * it touches one cache line instead of one per array, and n keys take about 22 bytes per key. Node 0 is the head,
+ * so pointing to node 0 ends a level. Removed nodes are reused by later inserts of the same level.
+ *
+ * {@link #addAll} builds an index from sorted keys in one pass, appending nodes in key order, which is both much
+ * faster than inserting keys one by one in random order and leaves a layout that later walks read sequentially.
+ *
+ * Not thread-safe.
+ */
+final class RankIndex {
+    static final int MAX_LEVEL = 16; // Levels rise with probability 1/4, so this covers 4^16 keys
+    
+    private long[] links = new long[2 * 64]; // Per link: key of the next node, then its number << 32 | span
+    private final int[] freeNodes = new int[MAX_LEVEL + 1]; // Per level, linked through their first link
+    private int linkCount = MAX_LEVEL; // The head's links come first
+    private int level = 1;
+    private int size;
+    private long random = 0x9E3779B97F4A7C15L;
+    
+    // Insert and remove scratch
+    private final int[] update = new int[MAX_LEVEL];
+    private final int[] rank = new int[MAX_LEVEL];
+    
+    int size() {
+        return size;
+    }
+    
+    private static int nextOf(long pointer) {
+        return (int) (pointer >>> 32);
+    }
+    
+    /** @return The level-0 steps a link skips; for the last link of a level, to past the end */
+    private static int spanOf(long pointer) {
+        return (int) pointer;
+    }
+    
+    private static long pointer(int next, int span) {
+        return (long) next << 32 | span & 0xFFFFFFFFL;
+    }
+    
+    /**
+     * @return The number of keys below the given one, which is its rank if it is in the index
+     */
+    int rankOf(long key) {
+        int node = 0;
+        int traversed = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            int link = node + l;
+            while (true) {
+                long pointer = links[2 * link + 1];
+                if (nextOf(pointer) == 0 || links[2 * link] >= key) {
+                    break;
+                }
+                traversed += spanOf(pointer);
+                node = nextOf(pointer);
+                link = node + l;
+            }
+        }
+        return traversed;
+    }
+    
+    /**
+     * Writes the keys from the given rank on, in order
+     * @return How many were written: count, or fewer at the end of the index
+     */
+    int get(int fromRank, long[] out, int offset, int count) {
+        if (fromRank < 0 || fromRank >= size || count <= 0) {
+            return 0;
+        }
+        // Walk down the levels until the skipped keys reach fromRank + 1
+        int node = 0;
+        long key = 0;
+        int traversed = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            int link = node + l;
+            while (true) {
+                long pointer = links[2 * link + 1];
+                if (nextOf(pointer) == 0 || traversed + spanOf(pointer) > fromRank + 1) {
+                    break;
+                }
+                traversed += spanOf(pointer);
+                key = links[2 * link];
+                node = nextOf(pointer);
+                link = node + l;
+            }
+        }
+        int written = 0;
+        while (true) {
+            out[offset + written++] = key;
+            if (written == count) {
+                break;
+            }
+            int link = node; // Its level-0 link
+            node = nextOf(links[2 * link + 1]);
+            if (node == 0) {
+                break;
+            }
+            key = links[2 * link];
+        }
+        return written;
+    }
+    
+    /**
+     * @return Whether the key was added; false if it was already in the index
+     */
+    boolean insert(long key) {
+        int node = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            rank[l] = l == level - 1 ? 0 : rank[l + 1];
+            int link = node + l;
+            while (true) {
+                long pointer = links[2 * link + 1];
+                if (nextOf(pointer) == 0 || links[2 * link] >= key) {
+                    break;
+                }
+                rank[l] += spanOf(pointer);
+                node = nextOf(pointer);
+                link = node + l;
+            }
+            update[l] = node;
+        }
+        if (nextOf(links[2 * node + 1]) != 0 && links[2 * node] == key) {
+            return false;
+        }
+        
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int l = level; l < nodeLevel; l++) {
+                rank[l] = 0;
+                update[l] = 0;
+                links[2 * l + 1] = pointer(0, size); // The head's link at level l
+            }
+            level = nodeLevel;
+        }
+        int added = allocate(nodeLevel);
+        for (int l = 0; l < nodeLevel; l++) {
+            int link = update[l] + l;
+            long pointer = links[2 * link + 1];
+            int skipped = rank[0] - rank[l];
+            links[2 * (added + l)] = links[2 * link];
+            links[2 * (added + l) + 1] = pointer(nextOf(pointer), spanOf(pointer) - skipped);
+            links[2 * link] = key;
+            links[2 * link + 1] = pointer(added, skipped + 1);
+        }
+        for (int l = nodeLevel; l < level; l++) {
+            links[2 * (update[l] + l) + 1]++; // The span, in the low bits
+        }
+        size++;
+        return true;
+    }
+    
+    /**
+     * Fills an empty index in O(count)
+     * @param sorted Keys in strictly ascending order
+     * @throws IllegalStateException if the index is not empty
+     * @throws IllegalArgumentException if the keys are not strictly ascending
+     */
+    void addAll(long[] sorted, int count) {
+        if (size > 0) {
+            throw new IllegalStateException("addAll needs an empty index, this one has " + size + " keys");
+        }
+        for (int i = 1; i < count; i++) {
+            if (sorted[i] <= sorted[i - 1]) {
+                throw new IllegalArgumentException("Keys not strictly ascending at " + i);
+            }
+        }
+        // The last node on every level so far and its position, 1-based
+        int[] last = update;
+        int[] lastPosition = rank;
+        Arrays.fill(last, 0);
+        Arrays.fill(lastPosition, 0);
+        for (int i = 0; i < count; i++) {
+            int nodeLevel = randomLevel();
+            int node = allocate(nodeLevel);
+            level = Math.max(level, nodeLevel);
+            for (int l = 0; l < nodeLevel; l++) {
+                int link = last[l] + l;
+                links[2 * link] = sorted[i];
+                links[2 * link + 1] = pointer(node, i + 1 - lastPosition[l]);
+                last[l] = node;
+                lastPosition[l] = i + 1;
+            }
+        }
+        for (int l = 0; l < level; l++) {
+            links[2 * (last[l] + l) + 1] = pointer(0, count - lastPosition[l]);
+        }
+        size = count;
+    }
+    
+    /**
+     * @return Whether the key was in the index
+     */
+    boolean remove(long key) {
+        int node = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            int link = node + l;
+            while (true) {
+                long pointer = links[2 * link + 1];
+                if (nextOf(pointer) == 0 || links[2 * link] >= key) {
+                    break;
+                }
+                node = nextOf(pointer);
+                link = node + l;
+            }
+            update[l] = node;
+        }
+        int removed = nextOf(links[2 * node + 1]);
+        if (removed == 0 || links[2 * node] != key) {
+            return false;
+        }
+        int removedLevel = 0;
+        for (int l = 0; l < level; l++) {
+            int link = update[l] + l;
+            long pointer = links[2 * link + 1];
+            if (nextOf(pointer) == removed) {
+                long removedPointer = links[2 * (removed + l) + 1];
+                links[2 * link] = links[2 * (removed + l)];
+                links[2 * link + 1] = pointer(nextOf(removedPointer), spanOf(pointer) + spanOf(removedPointer) - 1);
+                removedLevel++;
+            } else {
+                links[2 * link + 1] = pointer - 1;
+            }
+        }
+        while (level > 1 && nextOf(links[2 * (level - 1) + 1]) == 0) {
+            level--;
+        }
+        size--;
+        
+        links[2 * removed + 1] = pointer(freeNodes[removedLevel], 0);
+        freeNodes[removedLevel] = removed;
+        return true;
+    }
+    
+    /**
+     * @return The number of a node with the given number of links, reused or appended
+     */
+    private int allocate(int nodeLevel) {
+        int node = freeNodes[nodeLevel];
+        if (node != 0) {
+            freeNodes[nodeLevel] = nextOf(links[2 * node + 1]);
+            return node;
+        }
+        if (2 * (linkCount + nodeLevel) > links.length) {
+            links = Arrays.copyOf(links, Math.max(links.length * 2, 2 * (linkCount + nodeLevel)));
+        }
+        node = linkCount;
+        linkCount += nodeLevel;
+        return node;
+    }
+    
+    private int randomLevel() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        // Each pair of low zero bits is one more level: probability 1/4 per level
+        return Math.min(MAX_LEVEL, Long.numberOfTrailingZeros(random | 1L << 62) / 2 + 1);
+    }
+}
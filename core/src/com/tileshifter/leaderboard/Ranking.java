@@ -0,0 +1,23 @@
+package com.tileshifter.leaderboard;
+
+/**
+ * What a leaderboard ranks solves by; fewer is better, and ties go to whoever submitted first
+ * The ordinal is sent over the network, so new rankings must only be appended
+ */
+public enum Ranking {
+    TIME,   // Milliseconds from the first view of the puzzle to the solving move
+    MOVES;  // Moves in the solution
+    
+    private static final Ranking[] VALUES = values();
+    
+    public static Ranking fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+    
+    /**
+     * @return The value of a solve in this ranking
+     */
+    public int valueOf(int millis, int moves) {
+        return this == TIME ? millis : moves;
+    }
+}
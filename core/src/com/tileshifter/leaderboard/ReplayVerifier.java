@@ -0,0 +1,109 @@
+package com.tileshifter.leaderboard;
+
+import java.util.Random;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * Checks a move log against the board it claims to solve by replaying it, in microseconds for any realistic game
+ *
+ * A log is valid if the start position, given or shuffled from a seed, is one the mode can shuffle to and is not already solved, every move is
+ * legal where it is made, and the board is solved after the last move and not before. The moves follow
+ * {@link com.tileshifter.net.Session#move}, so a log the server accepted move by move is always valid.
+ *
+ * Not thread-safe; a verifier reuses one board for all replays.
+ */
+public final class ReplayVerifier {
+    private final PuzzleMode mode;
+    private final byte[] board;
+    private byte[] shuffled; // Start shuffled from a seed; allocated on the first seeded replay
+    
+    public ReplayVerifier(PuzzleMode mode) {
+        this.mode = mode;
+        board = new byte[mode.getCellCount()];
+    }
+    
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    /**
+     * Writes the position a game with the given seed starts from, as a server session shuffles it
+     */
+    public static void shuffle(PuzzleMode mode, long seed, byte[] state) {
+        mode.shuffle(new Random(seed), state, 0);
+    }
+    
+    /**
+     * @return Whether the moves solve the position a game with the given seed starts from, with the last move and
+     * no earlier one
+     */
+    public boolean verify(long seed, byte[] moves, int count) {
+        if (shuffled == null) {
+            shuffled = new byte[board.length];
+        }
+        shuffle(mode, seed, shuffled);
+        return verify(shuffled, moves, count);
+    }
+    
+    /**
+     * @return Whether the moves solve the start position, with the last move and no earlier one
+     */
+    public boolean verify(byte[] start, byte[] moves, int count) {
+        int cells = board.length;
+        if (start.length != cells || count < 1 || count > moves.length
+            || mode.getReachableStates().isCharacterized() && !mode.getReachableStates().isReachable(start, 0)) {
+            return false;
+        }
+        System.arraycopy(start, 0, board, 0, cells);
+        int misplaced = 0;
+        int blankCell = -1;
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = board[cell] & 0xFF;
+            if (tile >= cells) {
+                return false;
+            }
+            misplaced += tile != cell ? 1 : 0;
+            if (mode.hasBlank() && tile == cells - 1) {
+                blankCell = cell;
+            }
+        }
+        if (mode.hasBlank() && blankCell < 0) {
+            return false;
+        }
+        // Counting misplaced tiles in the cells each move changes tells when the board is solved in O(1)
+        for (int i = 0; i < count; i++) {
+            if (misplaced == 0) {
+                return false;
+            }
+            int move = moves[i] & 0xFF;
+            if (mode.hasBlank()) {
+                int target = move <= PuzzleMode.RIGHT ? mode.getBlankNeighbor(blankCell, move) : -1;
+                if (target < 0) {
+                    return false;
+                }
+                misplaced -= misplacedAt(blankCell) + misplacedAt(target);
+                mode.moveBlank(board, 0, blankCell, move);
+                misplaced += misplacedAt(blankCell) + misplacedAt(target);
+                blankCell = target;
+            } else {
+                if (move >= mode.getGeneratorCount()) {
+                    return false;
+                }
+                int[] cycleCells = mode.getGenerator(move).getCycleCells();
+                for (int cell : cycleCells) {
+                    misplaced -= misplacedAt(cell);
+                }
+                mode.apply(board, 0, move);
+                for (int cell : cycleCells) {
+                    misplaced += misplacedAt(cell);
+                }
+            }
+        }
+        return misplaced == 0;
+    }
+    
+    private int misplacedAt(int cell) {
+        return (board[cell] & 0xFF) != cell ? 1 : 0;
+    }
+}
@@ -0,0 +1,103 @@
+package com.tileshifter.leaderboard;
+
+import java.nio.charset.StandardCharsets;
+
+import com.tileshifter.GameMode;
+
+/**
+ * One solved puzzle handed to a {@link Leaderboard}: which board it was on, who solved it, how long it took and
+ * the compact move log that {@link ReplayVerifier} replays from the start position before it is accepted
+ *
+ * Boards are told apart by image, mode and size; server leaderboards, whose games have no image, use "".
+ * Server games are shuffled from a seed the server picks, and their submissions hold that seed instead of a start
+ * position, so the verifier shuffles the start itself and a client cannot choose an easy one. Local games start
+ * from pooled or packed positions and hold the start position.
+ * Moves are one byte each, in the encoding of {@link com.tileshifter.net.Session#move}.
+ */
+public final class Submission {
+    /** Longest player name, in UTF-8 bytes, so names fit the fixed-length network messages */
+    public static final int MAX_PLAYER_BYTES = 16;
+    public static final int MAX_MOVES = 0xFFFF;
+    
+    private final String image;
+    private final GameMode gameMode;
+    private final int size;
+    private final String player;
+    private final int millis;
+    private final long submittedMillis;
+    private final boolean seeded;
+    private final long seed;
+    private final byte[] start;
+    private final byte[] moves;
+    
+    /**
+     * @param start Tile id per cell before the first move, as in {@link com.tileshifter.PuzzleBoard#getState}
+     * @param submittedMillis Epoch milliseconds of the solve
+     * @throws IllegalArgumentException for empty or long player names, negative times, a start position of the
+     * wrong size or more than {@link #MAX_MOVES} moves
+     */
+    public Submission(String image, GameMode gameMode, int size, String player, int millis, long submittedMillis,
+                      byte[] start, byte[] moves) {
+        this(image, gameMode, size, player, millis, submittedMillis, false, 0, start, moves);
+    }
+    
+    /**
+     * @param seed Seed the game was shuffled from with {@link ReplayVerifier#shuffle}
+     * @param submittedMillis Epoch milliseconds of the solve
+     * @throws IllegalArgumentException for empty or long player names, negative times or more than
+     * {@link #MAX_MOVES} moves
+     */
+    public Submission(String image, GameMode gameMode, int size, String player, int millis, long submittedMillis,
+                      long seed, byte[] moves) {
+        this(image, gameMode, size, player, millis, submittedMillis, true, seed, null, moves);
+    }
+    
+    private Submission(String image, GameMode gameMode, int size, String player, int millis, long submittedMillis,
+                       boolean seeded, long seed, byte[] start, byte[] moves) {
+        if (player.isEmpty() || player.getBytes(StandardCharsets.UTF_8).length > MAX_PLAYER_BYTES) {
+            throw new IllegalArgumentException("Player names must have 1 to " + MAX_PLAYER_BYTES
+                + " UTF-8 bytes, got \"" + player + "\"");
+        }
+        if (millis < 0 || !seeded && start.length != size * size || moves.length > MAX_MOVES) {
+            throw new IllegalArgumentException("Bad submission: " + millis + " ms, "
+                + (seeded ? "seed " + seed : start.length + " cells") + " for size " + size + ", " + moves.length
+                + " moves");
+        }
+        this.image = image;
+        this.gameMode = gameMode;
+        this.size = size;
+        this.player = player;
+        this.millis = millis;
+        this.submittedMillis = submittedMillis;
+        this.seeded = seeded;
+        this.seed = seed;
+        this.start = start;
+        this.moves = moves;
+    }
+    
+    /**
+     * @return The name shortened to at most {@link #MAX_PLAYER_BYTES} UTF-8 bytes, or "Player" if it is empty
+     */
+    public static String fitPlayerName(String name) {
+        String fitted = name.trim();
+        while (fitted.getBytes(StandardCharsets.UTF_8).length > MAX_PLAYER_BYTES) {
+            fitted = fitted.substring(0, fitted.length() - 1);
+        }
+        return fitted.isEmpty() ? "Player" : fitted;
+    }
+    
+    public String getImage() { return image; }
+    public GameMode getGameMode() { return gameMode; }
+    public int getSize() { return size; }
+    public String getPlayer() { return player; }
+    public int getMillis() { return millis; }
+    public long getSubmittedMillis() { return submittedMillis; }
+    /** @return Whether the start position is given by {@link #getSeed()} rather than {@link #getStart()} */
+    public boolean isSeeded() { return seeded; }
+    public long getSeed() { return seed; }
+    /** @return The start position, or null if the submission is seeded; not copied, so callers must not change it */
+    public byte[] getStart() { return start; }
+    /** @return The moves; not copied, so callers must not change them */
+    public byte[] getMoves() { return moves; }
+    public int getMoveCount() { return moves.length; }
+}
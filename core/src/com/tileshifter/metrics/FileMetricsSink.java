@@ -0,0 +1,45 @@
+package com.tileshifter.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Writes the latest snapshot as JSON to a local file for external agents to scrape
+ * The file is replaced through a temporary file, so readers never see a partial write
+ */
+public class FileMetricsSink implements MetricsSink {
+    private final File file;
+    private final File tempFile;
+    
+    public FileMetricsSink(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+    }
+    
+    @Override
+    public void publish(MetricsSnapshot snapshot) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8")) {
+            writer.write(snapshot.toJson());
+            writer.write('\n');
+        } catch (IOException e) {
+            Gdx.app.error("FileMetricsSink", "Failed to write metrics to " + tempFile.getPath(), e);
+            return;
+        }
+        // renameTo does not replace an existing file on every platform
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                Gdx.app.error("FileMetricsSink", "Failed to replace " + file.getPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.tileshifter.metrics;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Portable runtime sampler using only what libGDX exposes: heap sizes, no GC statistics
+ */
+public class GdxRuntimeSampler implements RuntimeSampler {
+    @Override
+    public long getGcCount() { return -1; }
+    
+    @Override
+    public long getGcTimeMillis() { return -1; }
+    
+    @Override
+    public long getHeapBytes() { return Gdx.app.getJavaHeap(); }
+    
+    @Override
+    public long getNativeBytes() { return Gdx.app.getNativeHeap(); }
+}
@@ -0,0 +1,9 @@
+package com.tileshifter.metrics;
+
+/**
+ * Receives a metrics snapshot from the performance monitor once per reporting interval
+ * Called on the render thread, so implementations must return quickly
+ */
+public interface MetricsSink {
+    void publish(MetricsSnapshot snapshot);
+}
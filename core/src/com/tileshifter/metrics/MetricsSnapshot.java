@@ -0,0 +1,133 @@
+package com.tileshifter.metrics;
+
+import java.util.Locale;
+
+/**
+ * Immutable summary of one reporting interval of the performance monitor
+ * Per-frame values are averages over the frames rendered in the interval
+ */
+public class MetricsSnapshot {
+    /** Upper bounds (exclusive, in milliseconds) of the frame time histogram buckets; the last bucket is open-ended */
+    public static final float[] HISTOGRAM_BOUNDS_MILLIS = {4f, 8f, 16.7f, 33.3f, 50f};
+    
+    private final long timestampMillis;
+    private final String screenName;
+    private final int framesPerSecond;
+    private final int frames;
+    private final float frameTimeAvgMillis;
+    private final float frameTimeMaxMillis;
+    private final int[] frameTimeHistogram;
+    private final float renderCallsPerFrame;
+    private final float drawCallsPerFrame;
+    private final float textureBindsPerFrame;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final long heapBytes;
+    private final long nativeBytes;
+    private final float movesPerSecond;
+    private final float[] phaseMillis;
+    private final int poolReady;
+    private final int poolTarget;
+    private final int poolTakes;
+    private final int poolMisses;
+    private final float poolGeneratedPerSecond;
+    
+    public MetricsSnapshot(long timestampMillis, String screenName, int framesPerSecond, int frames,
+                           float frameTimeAvgMillis, float frameTimeMaxMillis, int[] frameTimeHistogram,
+                           float renderCallsPerFrame, float drawCallsPerFrame, float textureBindsPerFrame,
+                           long gcCount, long gcTimeMillis, long heapBytes, long nativeBytes,
+                           float movesPerSecond, float[] phaseMillis, int poolReady, int poolTarget,
+                           int poolTakes, int poolMisses, float poolGeneratedPerSecond) {
+        this.timestampMillis = timestampMillis;
+        this.screenName = screenName;
+        this.framesPerSecond = framesPerSecond;
+        this.frames = frames;
+        this.frameTimeAvgMillis = frameTimeAvgMillis;
+        this.frameTimeMaxMillis = frameTimeMaxMillis;
+        this.frameTimeHistogram = frameTimeHistogram;
+        this.renderCallsPerFrame = renderCallsPerFrame;
+        this.drawCallsPerFrame = drawCallsPerFrame;
+        this.textureBindsPerFrame = textureBindsPerFrame;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.heapBytes = heapBytes;
+        this.nativeBytes = nativeBytes;
+        this.movesPerSecond = movesPerSecond;
+        this.phaseMillis = phaseMillis;
+        this.poolReady = poolReady;
+        this.poolTarget = poolTarget;
+        this.poolTakes = poolTakes;
+        this.poolMisses = poolMisses;
+        this.poolGeneratedPerSecond = poolGeneratedPerSecond;
+    }
+    
+    /**
+     * Formats the snapshot as a single-line JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append('{');
+        json.append("\"timestamp\":").append(timestampMillis);
+        json.append(",\"screen\":\"").append(screenName).append('"');
+        json.append(",\"fps\":").append(framesPerSecond);
+        json.append(",\"frames\":").append(frames);
+        json.append(",\"frameTimeAvgMillis\":").append(format(frameTimeAvgMillis));
+        json.append(",\"frameTimeMaxMillis\":").append(format(frameTimeMaxMillis));
+        json.append(",\"frameTimeHistogram\":[");
+        for (int i = 0; i < frameTimeHistogram.length; i++) {
+            json.append(i == 0 ? "" : ",").append(frameTimeHistogram[i]);
+        }
+        json.append("],\"renderCallsPerFrame\":").append(format(renderCallsPerFrame));
+        json.append(",\"drawCallsPerFrame\":").append(format(drawCallsPerFrame));
+        json.append(",\"textureBindsPerFrame\":").append(format(textureBindsPerFrame));
+        json.append(",\"gcCount\":").append(gcCount);
+        json.append(",\"gcTimeMillis\":").append(gcTimeMillis);
+        json.append(",\"heapBytes\":").append(heapBytes);
+        json.append(",\"nativeBytes\":").append(nativeBytes);
+        json.append(",\"movesPerSecond\":").append(format(movesPerSecond));
+        for (Phase phase : Phase.values()) {
+            json.append(",\"").append(phase.name().toLowerCase(Locale.ROOT)).append("Millis\":")
+                .append(format(phaseMillis[phase.ordinal()]));
+        }
+        json.append(",\"poolReady\":").append(poolReady);
+        json.append(",\"poolTarget\":").append(poolTarget);
+        json.append(",\"poolTakes\":").append(poolTakes);
+        json.append(",\"poolMisses\":").append(poolMisses);
+        json.append(",\"poolGeneratedPerSecond\":").append(format(poolGeneratedPerSecond));
+        json.append('}');
+        return json.toString();
+    }
+    
+    private static String format(float value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+    
+    // Getters
+    public long getTimestampMillis() { return timestampMillis; }
+    public String getScreenName() { return screenName; }
+    public int getFramesPerSecond() { return framesPerSecond; }
+    public int getFrames() { return frames; }
+    public float getFrameTimeAvgMillis() { return frameTimeAvgMillis; }
+    public float getFrameTimeMaxMillis() { return frameTimeMaxMillis; }
+    public int[] getFrameTimeHistogram() { return frameTimeHistogram.clone(); }
+    public float getRenderCallsPerFrame() { return renderCallsPerFrame; }
+    /** @return Average GL draw calls per frame, or -1 when GL profiling is off */
+    public float getDrawCallsPerFrame() { return drawCallsPerFrame; }
+    /** @return Average texture binds per frame, or -1 when GL profiling is off */
+    public float getTextureBindsPerFrame() { return textureBindsPerFrame; }
+    public long getGcCount() { return gcCount; }
+    public long getGcTimeMillis() { return gcTimeMillis; }
+    public long getHeapBytes() { return heapBytes; }
+    public long getNativeBytes() { return nativeBytes; }
+    public float getMovesPerSecond() { return movesPerSecond; }
+    public float getPhaseMillis(Phase phase) { return phaseMillis[phase.ordinal()]; }
+    /** @return Puzzle pool positions ready at the end of the interval, over all modes and sizes */
+    public int getPoolReady() { return poolReady; }
+    /** @return The sum of the puzzle pool's refill targets at the end of the interval */
+    public int getPoolTarget() { return poolTarget; }
+    /** @return Positions taken from the puzzle pool in the interval */
+    public int getPoolTakes() { return poolTakes; }
+    /** @return Takes in the interval that found the pool empty and shuffled on the render thread */
+    public int getPoolMisses() { return poolMisses; }
+    public float getPoolGeneratedPerSecond() { return poolGeneratedPerSecond; }
+}
@@ -0,0 +1,234 @@
+package com.tileshifter.metrics;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.tileshifter.PuzzlePool;
+
+/**
+ * Collects per-frame performance metrics on the render thread and publishes a snapshot to its sinks once per second
+ * 
+ * Frame bookkeeping only reads counters and timestamps, so it stays enabled all the time. GL call counting
+ * wraps the GL context with a {@link GLProfiler}, which checks for errors after every call; it is only
+ * enabled on demand (e.g. while the overlay is visible) and reported as -1 otherwise.
+ */
+public class PerformanceMonitor {
+    public static final int HISTORY_SIZE = 120; // Frames kept for the overlay's frame time graph
+    private static final long REPORT_INTERVAL_NANOS = 1000000000L;
+    private static final int PHASE_COUNT = Phase.values().length;
+    
+    private final Array<MetricsSink> sinks = new Array<>();
+    private RuntimeSampler runtimeSampler = new GdxRuntimeSampler();
+    private GLProfiler profiler;
+    private String screenName = "";
+    private PuzzlePool puzzlePool;
+    
+    // Recent frame times in milliseconds, as a ring buffer
+    private final float[] frameTimeHistory = new float[HISTORY_SIZE];
+    private int historyIndex;
+    
+    // Accumulators for the current reporting interval
+    private long frameStartNanos;
+    private long intervalStartNanos;
+    private int intervalFrames;
+    private double intervalFrameMillis;
+    private float intervalMaxFrameMillis;
+    private int[] intervalHistogram = new int[MetricsSnapshot.HISTOGRAM_BOUNDS_MILLIS.length + 1];
+    private long intervalRenderCalls;
+    private long intervalDrawCalls;
+    private long intervalTextureBinds;
+    private int intervalMoves;
+    private final long[] intervalPhaseNanos = new long[PHASE_COUNT];
+    private int frameStartRenderCalls;
+    // Puzzle pool counters at the start of the interval
+    private long intervalPoolTakes;
+    private long intervalPoolMisses;
+    private long intervalPoolGenerated;
+    
+    private volatile MetricsSnapshot latestSnapshot;
+    
+    public void addSink(MetricsSink sink) {
+        sinks.add(sink);
+    }
+    
+    public void setRuntimeSampler(RuntimeSampler runtimeSampler) {
+        this.runtimeSampler = runtimeSampler;
+    }
+    
+    /**
+     * Reports the pool's positions and refills with every snapshot; pass null to report zeros
+     */
+    public void setPuzzlePool(PuzzlePool puzzlePool) {
+        this.puzzlePool = puzzlePool;
+        if (puzzlePool != null) {
+            intervalPoolTakes = puzzlePool.getTakeCount();
+            intervalPoolMisses = puzzlePool.getMissCount();
+            intervalPoolGenerated = puzzlePool.getGeneratedCount();
+        }
+    }
+    
+    /**
+     * Turns GL draw call and texture bind counting on or off; must be called on the render thread
+     */
+    public void setProfilingEnabled(boolean enabled) {
+        if (enabled) {
+            if (profiler == null) {
+                profiler = new GLProfiler(Gdx.graphics);
+            }
+            profiler.enable();
+            profiler.reset();
+        } else if (profiler != null) {
+            profiler.disable();
+        }
+        intervalDrawCalls = 0;
+        intervalTextureBinds = 0;
+    }
+    
+    public boolean isProfilingEnabled() {
+        return profiler != null && profiler.isEnabled();
+    }
+    
+    /**
+     * Called when the game switches screens; phase timings are reported per screen
+     */
+    public void setScreenName(String screenName) {
+        this.screenName = screenName;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            intervalPhaseNanos[i] = 0;
+        }
+    }
+    
+    public void beginFrame(SpriteBatch batch) {
+        frameStartNanos = TimeUtils.nanoTime();
+        frameStartRenderCalls = batch.totalRenderCalls;
+        if (intervalStartNanos == 0) {
+            intervalStartNanos = frameStartNanos;
+        }
+        if (isProfilingEnabled()) {
+            profiler.reset();
+        }
+    }
+    
+    public void endFrame(SpriteBatch batch) {
+        long now = TimeUtils.nanoTime();
+        float frameMillis = (now - frameStartNanos) / 1000000f;
+        
+        frameTimeHistory[historyIndex] = frameMillis;
+        historyIndex = (historyIndex + 1) % HISTORY_SIZE;
+        
+        intervalFrames++;
+        intervalFrameMillis += frameMillis;
+        intervalMaxFrameMillis = Math.max(intervalMaxFrameMillis, frameMillis);
+        intervalHistogram[histogramBucket(frameMillis)]++;
+        
+        // SpriteBatch.renderCalls resets on every begin(), so use the running total instead
+        intervalRenderCalls += batch.totalRenderCalls - frameStartRenderCalls;
+        if (isProfilingEnabled()) {
+            intervalDrawCalls += profiler.getDrawCalls();
+            intervalTextureBinds += profiler.getTextureBindings();
+        }
+        
+        if (now - intervalStartNanos >= REPORT_INTERVAL_NANOS) {
+            publish(now);
+        }
+    }
+    
+    /**
+     * @return A start timestamp to pass to {@link #phaseEnd(Phase, long)}
+     */
+    public long phaseStart() {
+        return TimeUtils.nanoTime();
+    }
+    
+    public void phaseEnd(Phase phase, long startNanos) {
+        intervalPhaseNanos[phase.ordinal()] += TimeUtils.nanoTime() - startNanos;
+    }
+    
+    /**
+     * Counts a player move (tile slide, shift or rotation) for the move rate
+     */
+    public void recordMove() {
+        intervalMoves++;
+    }
+    
+    /**
+     * @return The most recent snapshot, or null before the first interval completes; safe to call from any thread
+     */
+    public MetricsSnapshot getLatestSnapshot() {
+        return latestSnapshot;
+    }
+    
+    /**
+     * Copies the recent frame times, oldest first, into the given array of length HISTORY_SIZE
+     */
+    public void getFrameTimeHistory(float[] out) {
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            out[i] = frameTimeHistory[(historyIndex + i) % HISTORY_SIZE];
+        }
+    }
+    
+    private static int histogramBucket(float frameMillis) {
+        float[] bounds = MetricsSnapshot.HISTOGRAM_BOUNDS_MILLIS;
+        for (int i = 0; i < bounds.length; i++) {
+            if (frameMillis < bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+    
+    private void publish(long now) {
+        float seconds = (now - intervalStartNanos) / 1e9f;
+        float frames = Math.max(1, intervalFrames);
+        boolean profiling = isProfilingEnabled();
+        
+        float[] phaseMillis = new float[PHASE_COUNT];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseMillis[i] = intervalPhaseNanos[i] / 1000000f / frames;
+            intervalPhaseNanos[i] = 0;
+        }
+        
+        int poolReady = 0, poolTarget = 0, poolTakes = 0, poolMisses = 0;
+        float poolGenerated = 0;
+        if (puzzlePool != null) {
+            poolReady = puzzlePool.getReadyCount();
+            poolTarget = puzzlePool.getTargetCount();
+            long takes = puzzlePool.getTakeCount();
+            long misses = puzzlePool.getMissCount();
+            long generated = puzzlePool.getGeneratedCount();
+            poolTakes = (int) (takes - intervalPoolTakes);
+            poolMisses = (int) (misses - intervalPoolMisses);
+            poolGenerated = (generated - intervalPoolGenerated) / seconds;
+            intervalPoolTakes = takes;
+            intervalPoolMisses = misses;
+            intervalPoolGenerated = generated;
+        }
+        
+        MetricsSnapshot snapshot = new MetricsSnapshot(
+            System.currentTimeMillis(), screenName, Gdx.graphics.getFramesPerSecond(), intervalFrames,
+            (float) (intervalFrameMillis / frames), intervalMaxFrameMillis, intervalHistogram,
+            intervalRenderCalls / frames,
+            profiling ? intervalDrawCalls / frames : -1,
+            profiling ? intervalTextureBinds / frames : -1,
+            runtimeSampler.getGcCount(), runtimeSampler.getGcTimeMillis(),
+            runtimeSampler.getHeapBytes(), runtimeSampler.getNativeBytes(),
+            intervalMoves / seconds, phaseMillis, poolReady, poolTarget, poolTakes, poolMisses, poolGenerated);
+        latestSnapshot = snapshot;
+        
+        intervalStartNanos = now;
+        intervalFrames = 0;
+        intervalFrameMillis = 0;
+        intervalMaxFrameMillis = 0;
+        intervalHistogram = new int[intervalHistogram.length]; // The old array now belongs to the snapshot
+        intervalRenderCalls = 0;
+        intervalDrawCalls = 0;
+        intervalTextureBinds = 0;
+        intervalMoves = 0;
+        
+        for (int i = 0; i < sinks.size; i++) {
+            sinks.get(i).publish(snapshot);
+        }
+    }
+}
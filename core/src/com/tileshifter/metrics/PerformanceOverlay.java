@@ -0,0 +1,119 @@
+package com.tileshifter.metrics;
+
+import java.util.Locale;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Draws the performance monitor's metrics and a frame time graph in the bottom-left corner of the screen
+ */
+public class PerformanceOverlay implements Disposable {
+    private static final float MARGIN = 10f;
+    private static final float PANEL_WIDTH = 330f;
+    private static final float BAR_WIDTH = 2f;
+    private static final float GRAPH_HEIGHT = 60f;
+    private static final float MILLIS_PER_GRAPH_HEIGHT = 33.3f; // The graph tops out at two 60 Hz frames
+    private static final float TEXT_SCALE = 0.6f;
+    private static final float LINE_HEIGHT = 16f;
+    
+    private final ShapeRenderer shapeRenderer = new ShapeRenderer();
+    private final float[] history = new float[PerformanceMonitor.HISTORY_SIZE];
+    
+    // Text is rebuilt only when a new snapshot arrives, not every frame
+    private MetricsSnapshot shownSnapshot;
+    private String[] lines = {"Collecting metrics..."};
+    
+    public void draw(PerformanceMonitor monitor, SpriteBatch batch, BitmapFont font, Camera camera) {
+        MetricsSnapshot snapshot = monitor.getLatestSnapshot();
+        if (snapshot != null && snapshot != shownSnapshot) {
+            shownSnapshot = snapshot;
+            lines = formatLines(snapshot);
+        }
+        monitor.getFrameTimeHistory(history);
+        
+        float panelHeight = GRAPH_HEIGHT + lines.length * LINE_HEIGHT + 3 * MARGIN;
+        float graphY = MARGIN * 2;
+        
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        shapeRenderer.setProjectionMatrix(camera.combined);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        shapeRenderer.setColor(0f, 0f, 0f, 0.7f);
+        shapeRenderer.rect(MARGIN, MARGIN, PANEL_WIDTH, panelHeight);
+        
+        // One bar per recent frame: green within a 60 Hz budget, yellow within 30 Hz, red above
+        for (int i = 0; i < history.length; i++) {
+            float millis = history[i];
+            if (millis < 16.7f) {
+                shapeRenderer.setColor(0.2f, 0.8f, 0.2f, 1f);
+            } else if (millis < 33.3f) {
+                shapeRenderer.setColor(0.9f, 0.8f, 0.1f, 1f);
+            } else {
+                shapeRenderer.setColor(0.9f, 0.2f, 0.2f, 1f);
+            }
+            float height = Math.min(GRAPH_HEIGHT, millis / MILLIS_PER_GRAPH_HEIGHT * GRAPH_HEIGHT);
+            shapeRenderer.rect(MARGIN * 2 + i * BAR_WIDTH, graphY, BAR_WIDTH, height);
+        }
+        // Marker line at 16.7 ms
+        shapeRenderer.setColor(1f, 1f, 1f, 0.5f);
+        shapeRenderer.rect(MARGIN * 2, graphY + GRAPH_HEIGHT / 2, history.length * BAR_WIDTH, 1f);
+        shapeRenderer.end();
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        
+        batch.begin();
+        float scaleX = font.getData().scaleX;
+        float scaleY = font.getData().scaleY;
+        font.getData().setScale(TEXT_SCALE);
+        font.setColor(1f, 1f, 1f, 1f);
+        float textY = graphY + GRAPH_HEIGHT + MARGIN + lines.length * LINE_HEIGHT;
+        for (String line : lines) {
+            font.draw(batch, line, MARGIN * 2, textY);
+            textY -= LINE_HEIGHT;
+        }
+        font.getData().setScale(scaleX, scaleY);
+        batch.end();
+    }
+    
+    private static String[] formatLines(MetricsSnapshot snapshot) {
+        String binds = snapshot.getTextureBindsPerFrame() < 0 ? "n/a" :
+            String.format(Locale.ROOT, "%.1f", snapshot.getTextureBindsPerFrame());
+        String draws = snapshot.getDrawCallsPerFrame() < 0 ? "n/a" :
+            String.format(Locale.ROOT, "%.1f", snapshot.getDrawCallsPerFrame());
+        int[] histogram = snapshot.getFrameTimeHistogram();
+        StringBuilder histogramLine = new StringBuilder("hist");
+        float[] bounds = MetricsSnapshot.HISTOGRAM_BOUNDS_MILLIS;
+        for (int i = 0; i < histogram.length; i++) {
+            histogramLine.append(i < bounds.length ? String.format(Locale.ROOT, " <%.0f:", bounds[i]) : " more:")
+                .append(histogram[i]);
+        }
+        return new String[] {
+            String.format(Locale.ROOT, "%s  FPS %d  frame %.2f ms (max %.2f)",
+                snapshot.getScreenName(), snapshot.getFramesPerSecond(),
+                snapshot.getFrameTimeAvgMillis(), snapshot.getFrameTimeMaxMillis()),
+            histogramLine.toString(),
+            String.format(Locale.ROOT, "batch calls %.1f  draws %s  binds %s",
+                snapshot.getRenderCallsPerFrame(), draws, binds),
+            String.format(Locale.ROOT, "GC %d (%d ms)  heap %d MB  native %s",
+                snapshot.getGcCount(), snapshot.getGcTimeMillis(), snapshot.getHeapBytes() >> 20,
+                snapshot.getNativeBytes() < 0 ? "n/a" : (snapshot.getNativeBytes() >> 20) + " MB"),
+            String.format(Locale.ROOT, "input %.2f  update %.2f  render %.2f  anim %.2f ms",
+                snapshot.getPhaseMillis(Phase.INPUT), snapshot.getPhaseMillis(Phase.UPDATE),
+                snapshot.getPhaseMillis(Phase.RENDER), snapshot.getPhaseMillis(Phase.ANIMATION)),
+            String.format(Locale.ROOT, "moves/s %.1f", snapshot.getMovesPerSecond()),
+            String.format(Locale.ROOT, "pool %d/%d  takes %d  misses %d  refills/s %.1f",
+                snapshot.getPoolReady(), snapshot.getPoolTarget(), snapshot.getPoolTakes(),
+                snapshot.getPoolMisses(), snapshot.getPoolGeneratedPerSecond())
+        };
+    }
+    
+    @Override
+    public void dispose() {
+        shapeRenderer.dispose();
+    }
+}
@@ -0,0 +1,11 @@
+package com.tileshifter.metrics;
+
+/**
+ * Phases of a screen's frame that are timed separately by the performance monitor
+ */
+public enum Phase {
+    INPUT,     // Hover detection and click handling, including the moves they trigger
+    UPDATE,    // Game state updates outside of input handling
+    RENDER,    // Drawing with ShapeRenderer and SpriteBatch
+    ANIMATION  // Button press, win message and tile animation timers
+}
@@ -0,0 +1,19 @@
+package com.tileshifter.metrics;
+
+/**
+ * Source of process-level statistics for the performance monitor
+ * Platforms with richer runtime APIs (e.g. desktop JMX) can provide their own implementation
+ */
+public interface RuntimeSampler {
+    /** @return Total number of garbage collections so far, or -1 if unknown */
+    long getGcCount();
+    
+    /** @return Accumulated garbage collection time in milliseconds, or -1 if unknown */
+    long getGcTimeMillis();
+    
+    /** @return Java heap in use, in bytes */
+    long getHeapBytes();
+    
+    /** @return Native (off-heap) memory in use, in bytes, or -1 if unknown */
+    long getNativeBytes();
+}
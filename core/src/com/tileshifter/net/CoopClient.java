@@ -0,0 +1,364 @@
+package com.tileshifter.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Client side of a co-op game on a game server, where several players solve one shared board
+ *
+ * {@link #move} applies a move to the predicted board at once and queues it for the next network tick, like
+ * {@link RaceClient}. The server applies the moves of all players in one order and sends each tick's moves to
+ * everyone with a sequence number; they are applied to the confirmed board, and the predicted board is the
+ * confirmed one plus this player's moves still in flight. When only this player's own moves come back, the
+ * predicted board is already right. Otherwise it is rebuilt by re-applying the moves in flight, and the
+ * {@link Listener} is told which cells changed, so it only needs to move those tiles.
+ *
+ * A reader thread connects and decodes server messages; everything else, including the listener callbacks, runs
+ * on the thread that calls {@link #update}, normally the render thread.
+ */
+public final class CoopClient implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    
+    /**
+     * Receives co-op events on the thread calling {@link #update}
+     */
+    public interface Listener {
+        /**
+         * The shared board starts from this state; the array is the listener's to keep
+         */
+        void started(PuzzleMode mode, byte[] state, int playerIndex, int playerCount);
+        
+        /**
+         * Other players' moves or a rejected move changed the predicted board
+         * @param state The predicted board (tile id per cell); only valid during the call
+         * @param cells The cells whose tile changed, count of them; only valid during the call
+         */
+        void boardChanged(byte[] state, int[] cells, int count);
+        
+        /**
+         * The shared board is solved; no more moves are accepted
+         * @param player Index of the player whose move solved it
+         */
+        void solved(int player);
+        
+        /**
+         * The connection failed or the server refused the game; no more events follow
+         */
+        void failed(String reason);
+    }
+    
+    private final String host;
+    private final int port;
+    private final GameMode gameMode;
+    private final int size;
+    private final int players;
+    private final ConcurrentLinkedQueue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object();
+    private volatile Socket socket;
+    private volatile boolean closed;
+    
+    // Only used on the update thread
+    private Session confirmed;
+    private Session predicted;
+    private int playerIndex = -1;
+    private int playerCount;
+    private boolean over;
+    private int[] pending = new int[64]; // Moves not applied to the confirmed board yet, oldest first
+    private int pendingStart;
+    private int pendingEnd;
+    private final byte[] outgoing = new byte[256];
+    private int outgoingLength;
+    private long lastSendNanos;
+    private byte[] before; // The predicted board before a rebuild
+    private byte[] after;
+    private int[] changedCells;
+    private long bytesSent;
+    private long otherMoves;
+    private int rebuilds;
+    
+    public CoopClient(String host, int port, GameMode gameMode, int size, int players) {
+        this.host = host;
+        this.port = port;
+        this.gameMode = gameMode;
+        this.size = size;
+        this.players = players;
+    }
+    
+    /**
+     * Connects and asks to join a co-op game on a background thread
+     */
+    public void start() {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readMessages();
+            }
+        }, "coop-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    private void readMessages() {
+        try {
+            Socket connection = new Socket();
+            socket = connection;
+            connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+            byte[] join = new byte[Protocol.JOIN_RACE_LENGTH];
+            Protocol.writeJoinCoop(join, 0, gameMode.ordinal(), size, players);
+            write(join, join.length);
+            ReplyReader.read(connection.getInputStream(), inbox);
+            if (!closed) {
+                inbox.add(ReplyReader.failure("Server closed the connection"));
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                inbox.add(ReplyReader.failure(ReplyReader.describe(e)));
+            }
+        }
+    }
+    
+    private void write(byte[] bytes, int length) throws IOException {
+        synchronized (writeLock) {
+            OutputStream output = socket.getOutputStream();
+            output.write(bytes, 0, length);
+        }
+    }
+    
+    /**
+     * Predicts a move and queues it for the next tick
+     * @param move Direction the blank moves in for the classic mode, otherwise a generator index
+     * @return false, without queueing anything, if the game is not running or the move is not valid on the
+     * predicted board
+     */
+    public boolean move(int move) {
+        if (!isRunning() || predicted.move(move) == Protocol.REJECTED) {
+            return false;
+        }
+        if (pendingEnd == pending.length) {
+            if (pendingStart > 0) {
+                System.arraycopy(pending, pendingStart, pending, 0, pendingEnd - pendingStart);
+                pendingEnd -= pendingStart;
+                pendingStart = 0;
+            } else {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+        }
+        pending[pendingEnd++] = move;
+        if (outgoingLength + 2 > outgoing.length) {
+            send();
+        }
+        outgoingLength = Protocol.writeMove(outgoing, outgoingLength, move);
+        return true;
+    }
+    
+    /**
+     * Hands the messages received since the last call to the listener and sends queued moves once per tick
+     */
+    public void update(Listener listener) {
+        byte[] message;
+        while ((message = inbox.poll()) != null) {
+            handle(message, listener);
+        }
+        if (outgoingLength > 0 && System.nanoTime() - lastSendNanos >= RaceClient.TICK_MILLIS * 1000000L) {
+            send();
+        }
+    }
+    
+    private void send() {
+        if (outgoingLength == 0) {
+            return;
+        }
+        try {
+            write(outgoing, outgoingLength);
+            bytesSent += outgoingLength;
+        } catch (IOException e) {
+            // The reader thread reports the failure
+        }
+        outgoingLength = 0;
+        lastSendNanos = System.nanoTime();
+    }
+    
+    private void handle(byte[] message, Listener listener) {
+        if (over) {
+            return;
+        }
+        switch (message[0] & 0xFF) {
+            case Protocol.RACE_START: {
+                PuzzleMode mode = PuzzleModes.of(GameMode.values()[message[1] & 0xFF], message[2] & 0xFF);
+                long seed = Protocol.readLong(message, 3);
+                playerIndex = message[11] & 0xFF;
+                playerCount = message[12] & 0xFF;
+                confirmed = new Session(message[1] & 0xFF, mode, seed);
+                predicted = new Session(message[1] & 0xFF, mode, seed);
+                before = new byte[mode.getCellCount()];
+                after = new byte[mode.getCellCount()];
+                changedCells = new int[mode.getCellCount()];
+                byte[] state = new byte[mode.getCellCount()];
+                predicted.getState(state, 0);
+                listener.started(mode, state, playerIndex, playerCount);
+                break;
+            }
+            case Protocol.COOP_MOVES:
+                applyMoves(message, listener);
+                break;
+            case Protocol.ERROR:
+                over = true;
+                listener.failed("The server refused the game (error " + (message[1] & 0xFF) + ")");
+                break;
+            case ReplyReader.FAILURE:
+                over = true;
+                listener.failed(ReplyReader.failureReason(message));
+                break;
+            default:
+                // Replies this client never asks for
+                break;
+        }
+    }
+    
+    /**
+     * Applies a tick's moves to the confirmed board in the server's order, retiring this player's own moves from
+     * the moves in flight, and rebuilds the predicted board only if anything but its own applied moves came back
+     */
+    private void applyMoves(byte[] message, Listener listener) {
+        if (Protocol.readInt(message, 1) != confirmed.getMoveCount()) {
+            over = true;
+            listener.failed("Out of sync with the shared board");
+            return;
+        }
+        int count = Protocol.readShort(message, 5);
+        boolean rebuild = false;
+        int solvedBy = -1;
+        for (int i = 0; i < count; i++) {
+            int offset = Protocol.COOP_MOVES_HEADER_LENGTH + i * Protocol.COOP_ENTRY_LENGTH;
+            int player = message[offset] & 0xFF;
+            boolean rejected = (player & Protocol.COOP_REJECTED) != 0;
+            player &= ~Protocol.COOP_REJECTED;
+            if (player == playerIndex) {
+                // The server handles this player's moves in the order they were sent
+                if (pendingStart < pendingEnd) {
+                    pendingStart++;
+                }
+                rebuild |= rejected;
+            } else if (!rejected) {
+                rebuild = true;
+                otherMoves++;
+            }
+            if (!rejected && confirmed.move(message[offset + 1] & 0xFF) == Protocol.SOLVED) {
+                solvedBy = player;
+            }
+        }
+        if (solvedBy >= 0) {
+            // Moves still in flight come too late; show the solved board
+            rebuild |= pendingStart < pendingEnd;
+            pendingStart = pendingEnd;
+        }
+        if (rebuild) {
+            rebuildPrediction(listener);
+        }
+        if (solvedBy >= 0) {
+            over = true;
+            listener.solved(solvedBy);
+        }
+    }
+    
+    /**
+     * Re-applies the moves in flight to the confirmed board and reports the cells where the result differs from
+     * what the predicted board showed
+     */
+    private void rebuildPrediction(Listener listener) {
+        predicted.getState(before, 0);
+        predicted.copyFrom(confirmed);
+        for (int i = pendingStart; i < pendingEnd; i++) {
+            // A move that no longer fits stays in flight; the server rejects it too and says so
+            predicted.move(pending[i]);
+        }
+        rebuilds++;
+        predicted.getState(after, 0);
+        int changed = 0;
+        for (int cell = 0; cell < after.length; cell++) {
+            if (after[cell] != before[cell]) {
+                changedCells[changed++] = cell;
+            }
+        }
+        if (changed > 0) {
+            listener.boardChanged(after, changedCells, changed);
+        }
+    }
+    
+    /**
+     * @return Whether the game started and the board is not solved, i.e. moves are accepted
+     */
+    public boolean isRunning() {
+        return predicted != null && !over;
+    }
+    
+    public int getPlayerIndex() {
+        return playerIndex;
+    }
+    
+    /**
+     * @return Players sharing the board, or 0 before the start
+     */
+    public int getPlayerCount() {
+        return playerCount;
+    }
+    
+    /**
+     * @return The predicted board, for checks; do not modify
+     */
+    public Session getPredicted() {
+        return predicted;
+    }
+    
+    public Session getConfirmed() {
+        return confirmed;
+    }
+    
+    /**
+     * @return Moves sent but not applied to the confirmed board yet
+     */
+    public int getPendingMoveCount() {
+        return pendingEnd - pendingStart;
+    }
+    
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    /**
+     * @return Moves of other players applied so far
+     */
+    public long getOtherMoveCount() {
+        return otherMoves;
+    }
+    
+    /**
+     * @return How many times the predicted board was rebuilt from the confirmed one
+     */
+    public int getRebuildCount() {
+        return rebuilds;
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.tileshifter.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wire format shared by the game server and its clients
+ *
+ * Every message starts with a one-byte opcode that, with at most the byte after it, fixes its length, so messages
+ * need no framing of their own and any number of them can be pipelined in one write. Over WebSocket the same
+ * bytes travel in binary frames, and a message may be split across frames. Multi-byte numbers are big-endian.
+ *
+ * Requests:
+ * <ul>
+ * <li>{@link #NEW_GAME} mode, size, seed (8 bytes): starts a game shuffled from the seed, replied to with
+ * {@link #STATE}. Servers with a leaderboard ignore the seed and pick their own, so ranked games cannot be chosen.</li>
+ * <li>{@link #MOVE} move, or the single byte {@link #SHORT_MOVE} | move for moves below {@link #SHORT_MOVES}:
+ * replied to with {@link #MOVED}, or in a race with {@link #MOVES_ACK}. Classic moves are the direction the
+ * blank moves in ({@link com.tileshifter.PuzzleMode#UP} etc.), other modes use the index of the mode's
+ * generator.</li>
+ * <li>{@link #GET_STATE}: replied to with {@link #STATE}</li>
+ * <li>{@link #PING}: replied to with {@link #PONG}</li>
+ * <li>{@link #JOIN_RACE} mode, size, player count: waits for that many players to join with the same mode and
+ * size, then sends each of them {@link #RACE_START}</li>
+ * <li>{@link #SPECTATE} race id (4 bytes), player index: streams that player's board, starting with
+ * {@link #SPECTATE_STATE} and followed by one {@link #SPECTATE_MOVES} or {@link #SPECTATE_STATE} per tick in which
+ * it changed; race id 0 picks the race that started last. The connection only sends from then on.</li>
+ * <li>{@link #JOIN_COOP} mode, size, player count: like {@link #JOIN_RACE}, but the players share one board. Moves
+ * are not acknowledged one by one; every player sees them, its own included, in {@link #COOP_MOVES}.</li>
+ * <li>{@link #SET_NAME} name ({@link #NAME_LENGTH} bytes of UTF-8, zero padded): once a connection has a name, the
+ * games it solves after {@link #NEW_GAME} are ranked on the server's leaderboard, timed from the request to the
+ * solving move. Not replied to; an empty name stops ranking.</li>
+ * <li>{@link #GET_LEADERBOARD} mode, size, ranking, first rank (4 bytes), count: replied to with
+ * {@link #LEADERBOARD}. Rankings are {@link com.tileshifter.leaderboard.Ranking} ordinals.</li>
+ * <li>{@link #GET_RANK} mode, size, ranking: replied to with {@link #RANK} for the connection's name</li>
+ * </ul>
+ * Replies:
+ * <ul>
+ * <li>{@link #STATE} mode, size, move count (4 bytes), then the tile id of every cell</li>
+ * <li>{@link #MOVED} one of {@link #REJECTED}, {@link #APPLIED} or {@link #SOLVED}</li>
+ * <li>{@link #ERROR} one of the error codes</li>
+ * <li>{@link #PONG}</li>
+ * <li>{@link #RACE_START} mode, size, seed (8 bytes), the player's index, player count, race id (4 bytes): every
+ * player's board, or the shared board of a co-op game, is {@link com.tileshifter.PuzzleMode#shuffle shuffled} with
+ * {@code new Random(seed)}</li>
+ * <li>{@link #MOVES_ACK} count, then count bits (lowest bit of the first byte first), set for each move that was
+ * applied, in the order the moves were sent</li>
+ * <li>{@link #PROGRESS} count, then per player that moved since the last one: index, flags ({@link #FINISHED},
+ * {@link #LEFT}), move count (4 bytes), misplaced tiles (2 bytes)</li>
+ * <li>{@link #RACE_OVER} the winner's index; moves after it are rejected</li>
+ * <li>{@link #SPECTATE_STATE} mode, size, sequence (4 bytes), move count (4 bytes), then the tile id of every cell:
+ * a keyframe, sent when spectating starts, once a second and whenever a spectator fell behind</li>
+ * <li>{@link #SPECTATE_MOVES} sequence (4 bytes), count (2 bytes), then one byte per move: the moves of one tick.
+ * The sequence counts the ticks with moves, so it is one more than the previous frame's; a keyframe carries the
+ * sequence of the last moves it includes.</li>
+ * <li>{@link #SPECTATE_END}: the race is over and the stream ends</li>
+ * <li>{@link #COOP_MOVES} sequence (4 bytes), count (2 bytes), then per move the player's index, or'ed with
+ * {@link #COOP_REJECTED} if the shared board rejected it, and the move: the moves all players made in one tick,
+ * in the order the server applied them. The sequence is the number of moves applied before the first one, i.e. the
+ * shared board's move count, so every player replays the same moves on the same board.</li>
+ * <li>{@link #LEADERBOARD} mode, size, ranking, entries in the ranking (4 bytes), first rank (4 bytes), count, then
+ * per entry milliseconds (4 bytes), moves (4 bytes) and the player's name ({@link #NAME_LENGTH} bytes): at most
+ * {@link #MAX_LEADERBOARD_ENTRIES} entries from the first rank on, best first</li>
+ * <li>{@link #RANK} ranking, rank (4 bytes, 0 for the best, -1 if the player has no entry), entries in the ranking
+ * (4 bytes), then the milliseconds and moves (4 bytes each) of the player's best entry</li>
+ * </ul>
+ * Modes are {@link com.tileshifter.GameMode} ordinals.
+ */
+public final class Protocol {
+    public static final int NEW_GAME = 0x01;
+    public static final int MOVE = 0x02;
+    public static final int GET_STATE = 0x03;
+    public static final int PING = 0x04;
+    public static final int JOIN_RACE = 0x05;
+    public static final int SPECTATE = 0x06;
+    public static final int JOIN_COOP = 0x07;
+    public static final int SET_NAME = 0x08;
+    public static final int GET_LEADERBOARD = 0x09;
+    public static final int GET_RANK = 0x0A;
+    /** Opcodes SHORT_MOVE to SHORT_MOVE + {@link #SHORT_MOVES} - 1 are one-byte moves */
+    public static final int SHORT_MOVE = 0x40;
+    public static final int SHORT_MOVES = 0x40;
+    
+    public static final int STATE = 0x81;
+    public static final int MOVED = 0x82;
+    public static final int ERROR = 0x83;
+    public static final int PONG = 0x84;
+    public static final int RACE_START = 0x85;
+    public static final int MOVES_ACK = 0x86;
+    public static final int PROGRESS = 0x87;
+    public static final int RACE_OVER = 0x88;
+    public static final int SPECTATE_MOVES = 0x89;
+    public static final int SPECTATE_STATE = 0x8A;
+    public static final int SPECTATE_END = 0x8B;
+    public static final int COOP_MOVES = 0x8C;
+    public static final int LEADERBOARD = 0x8D;
+    public static final int RANK = 0x8E;
+    
+    public static final int REJECTED = 0;
+    public static final int APPLIED = 1;
+    public static final int SOLVED = 2;
+    
+    /** Unknown opcode; the server closes the connection after sending it */
+    public static final int BAD_REQUEST = 1;
+    /** Unsupported mode, size or ranking */
+    public static final int BAD_MODE = 2;
+    /** Move or state request before the first {@link #NEW_GAME}, or no such race to spectate */
+    public static final int NO_GAME = 3;
+    /** Leaderboard request to a server without a leaderboard, or a rank request before {@link #SET_NAME} */
+    public static final int NO_LEADERBOARD = 4;
+    
+    /** {@link #PROGRESS} flag: the player solved the board */
+    public static final int FINISHED = 1;
+    /** {@link #PROGRESS} flag: the player disconnected */
+    public static final int LEFT = 2;
+    /** {@link #COOP_MOVES} flag on the player index: the move was not applied */
+    public static final int COOP_REJECTED = 0x80;
+    
+    public static final int NEW_GAME_LENGTH = 11;
+    public static final int JOIN_RACE_LENGTH = 4;
+    public static final int STATE_HEADER_LENGTH = 7;
+    public static final int SPECTATE_LENGTH = 6;
+    public static final int RACE_START_LENGTH = 17;
+    public static final int SPECTATE_MOVES_HEADER_LENGTH = 7;
+    public static final int SPECTATE_STATE_HEADER_LENGTH = 11;
+    public static final int COOP_MOVES_HEADER_LENGTH = 7;
+    public static final int COOP_ENTRY_LENGTH = 2;
+    public static final int PROGRESS_ENTRY_LENGTH = 8;
+    /** Bytes of a player name in {@link #SET_NAME} and {@link #LEADERBOARD} */
+    public static final int NAME_LENGTH = 16;
+    public static final int SET_NAME_LENGTH = 1 + NAME_LENGTH;
+    public static final int GET_LEADERBOARD_LENGTH = 9;
+    public static final int GET_RANK_LENGTH = 4;
+    public static final int LEADERBOARD_HEADER_LENGTH = 13;
+    public static final int LEADERBOARD_ENTRY_LENGTH = 8 + NAME_LENGTH;
+    public static final int RANK_LENGTH = 18;
+    /** Most entries one {@link #LEADERBOARD} holds */
+    public static final int MAX_LEADERBOARD_ENTRIES = 10;
+    /** Most moves one {@link #MOVES_ACK} acknowledges */
+    public static final int MAX_ACKED_MOVES = 255;
+    
+    private Protocol() {
+    }
+    
+    /**
+     * @return The length of a request with the given opcode including the opcode, or -1 if it is unknown
+     */
+    public static int requestLength(int opcode) {
+        if (opcode >= SHORT_MOVE && opcode < SHORT_MOVE + SHORT_MOVES) {
+            return 1;
+        }
+        switch (opcode) {
+            case NEW_GAME: return NEW_GAME_LENGTH;
+            case MOVE: return 2;
+            case GET_STATE: return 1;
+            case PING: return 1;
+            case JOIN_RACE: return JOIN_RACE_LENGTH;
+            case JOIN_COOP: return JOIN_RACE_LENGTH;
+            case SPECTATE: return SPECTATE_LENGTH;
+            case SET_NAME: return SET_NAME_LENGTH;
+            case GET_LEADERBOARD: return GET_LEADERBOARD_LENGTH;
+            case GET_RANK: return GET_RANK_LENGTH;
+            default: return -1;
+        }
+    }
+    
+    /**
+     * @return The length of the reply starting at offset, 0 if more than the available bytes are needed to tell,
+     * or -1 if the opcode is unknown
+     */
+    public static int replyLength(byte[] buffer, int offset, int available) {
+        if (available < 1) {
+            return 0;
+        }
+        switch (buffer[offset] & 0xFF) {
+            case MOVED:
+            case ERROR:
+            case RACE_OVER:
+                return 2;
+            case PONG:
+            case SPECTATE_END:
+                return 1;
+            case RACE_START:
+                return RACE_START_LENGTH;
+            case RANK:
+                return RANK_LENGTH;
+            case LEADERBOARD:
+                return available < LEADERBOARD_HEADER_LENGTH ? 0
+                    : LEADERBOARD_HEADER_LENGTH + (buffer[offset + 12] & 0xFF) * LEADERBOARD_ENTRY_LENGTH;
+            case STATE: {
+                if (available < 3) {
+                    return 0;
+                }
+                int size = buffer[offset + 2] & 0xFF;
+                return STATE_HEADER_LENGTH + size * size;
+            }
+            case MOVES_ACK:
+                return available < 2 ? 0 : 2 + ((buffer[offset + 1] & 0xFF) + 7) / 8;
+            case PROGRESS:
+                return available < 2 ? 0 : 2 + (buffer[offset + 1] & 0xFF) * PROGRESS_ENTRY_LENGTH;
+            case SPECTATE_MOVES:
+                return available < SPECTATE_MOVES_HEADER_LENGTH ? 0
+                    : SPECTATE_MOVES_HEADER_LENGTH + readShort(buffer, offset + 5);
+            case COOP_MOVES:
+                return available < COOP_MOVES_HEADER_LENGTH ? 0
+                    : COOP_MOVES_HEADER_LENGTH + readShort(buffer, offset + 5) * COOP_ENTRY_LENGTH;
+            case SPECTATE_STATE: {
+                if (available < 3) {
+                    return 0;
+                }
+                int size = buffer[offset + 2] & 0xFF;
+                return SPECTATE_STATE_HEADER_LENGTH + size * size;
+            }
+            default:
+                return -1;
+        }
+    }
+    
+    /**
+     * Writes a move in its shortest form
+     * @return The offset after it
+     */
+    public static int writeMove(byte[] buffer, int offset, int move) {
+        if (move < SHORT_MOVES) {
+            buffer[offset] = (byte) (SHORT_MOVE | move);
+            return offset + 1;
+        }
+        buffer[offset] = (byte) MOVE;
+        buffer[offset + 1] = (byte) move;
+        return offset + 2;
+    }
+    
+    /**
+     * Writes a {@link #NEW_GAME} request
+     * @return The offset after it
+     */
+    public static int writeNewGame(byte[] buffer, int offset, int mode, int size, long seed) {
+        buffer[offset] = (byte) NEW_GAME;
+        buffer[offset + 1] = (byte) mode;
+        buffer[offset + 2] = (byte) size;
+        writeLong(buffer, offset + 3, seed);
+        return offset + NEW_GAME_LENGTH;
+    }
+    
+    /**
+     * Writes a {@link #JOIN_RACE} request
+     * @return The offset after it
+     */
+    public static int writeJoinRace(byte[] buffer, int offset, int mode, int size, int players) {
+        return writeJoin(buffer, offset, JOIN_RACE, mode, size, players);
+    }
+    
+    /**
+     * Writes a {@link #JOIN_COOP} request
+     * @return The offset after it
+     */
+    public static int writeJoinCoop(byte[] buffer, int offset, int mode, int size, int players) {
+        return writeJoin(buffer, offset, JOIN_COOP, mode, size, players);
+    }
+    
+    private static int writeJoin(byte[] buffer, int offset, int opcode, int mode, int size, int players) {
+        buffer[offset] = (byte) opcode;
+        buffer[offset + 1] = (byte) mode;
+        buffer[offset + 2] = (byte) size;
+        buffer[offset + 3] = (byte) players;
+        return offset + JOIN_RACE_LENGTH;
+    }
+    
+    /**
+     * Writes a {@link #SPECTATE} request
+     * @return The offset after it
+     */
+    public static int writeSpectate(byte[] buffer, int offset, int raceId, int player) {
+        buffer[offset] = (byte) SPECTATE;
+        writeInt(buffer, offset + 1, raceId);
+        buffer[offset + 5] = (byte) player;
+        return offset + SPECTATE_LENGTH;
+    }
+    
+    /**
+     * Writes a {@link #SET_NAME} request
+     * @param name At most {@link #NAME_LENGTH} bytes of UTF-8; longer names are cut off
+     * @return The offset after it
+     */
+    public static int writeSetName(byte[] buffer, int offset, String name) {
+        buffer[offset] = (byte) SET_NAME;
+        writeName(buffer, offset + 1, name);
+        return offset + SET_NAME_LENGTH;
+    }
+    
+    /**
+     * Writes a {@link #GET_LEADERBOARD} request
+     * @return The offset after it
+     */
+    public static int writeGetLeaderboard(byte[] buffer, int offset, int mode, int size, int ranking, int fromRank,
+                                          int count) {
+        buffer[offset] = (byte) GET_LEADERBOARD;
+        buffer[offset + 1] = (byte) mode;
+        buffer[offset + 2] = (byte) size;
+        buffer[offset + 3] = (byte) ranking;
+        writeInt(buffer, offset + 4, fromRank);
+        buffer[offset + 8] = (byte) count;
+        return offset + GET_LEADERBOARD_LENGTH;
+    }
+    
+    /**
+     * Writes a {@link #GET_RANK} request
+     * @return The offset after it
+     */
+    public static int writeGetRank(byte[] buffer, int offset, int mode, int size, int ranking) {
+        buffer[offset] = (byte) GET_RANK;
+        buffer[offset + 1] = (byte) mode;
+        buffer[offset + 2] = (byte) size;
+        buffer[offset + 3] = (byte) ranking;
+        return offset + GET_RANK_LENGTH;
+    }
+    
+    /**
+     * Writes a name as {@link #NAME_LENGTH} bytes of UTF-8, zero padded, cut off at a character boundary
+     */
+    public static void writeName(byte[] buffer, int offset, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, NAME_LENGTH);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--; // Don't split a character
+        }
+        System.arraycopy(bytes, 0, buffer, offset, length);
+        Arrays.fill(buffer, offset + length, offset + NAME_LENGTH, (byte) 0);
+    }
+    
+    /**
+     * @return A name written by {@link #writeName}, without its padding
+     */
+    public static String readName(byte[] buffer, int offset) {
+        int length = 0;
+        while (length < NAME_LENGTH && buffer[offset + length] != 0) {
+            length++;
+        }
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+    
+    public static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+    
+    public static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+    
+    public static void writeLong(byte[] buffer, int offset, long value) {
+        writeInt(buffer, offset, (int) (value >>> 32));
+        writeInt(buffer, offset + 4, (int) value);
+    }
+    
+    public static int readShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 8 | buffer[offset + 1] & 0xFF;
+    }
+    
+    public static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+            | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+    }
+    
+    public static long readLong(byte[] buffer, int offset) {
+        return (long) readInt(buffer, offset) << 32 | readInt(buffer, offset + 4) & 0xFFFFFFFFL;
+    }
+}
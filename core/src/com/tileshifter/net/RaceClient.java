@@ -0,0 +1,341 @@
+package com.tileshifter.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Client side of a race against other players on a game server, with client-side prediction
+ *
+ * {@link #move} applies a move to the predicted board at once, so the caller can animate it right away, and
+ * queues it for the next network tick; the moves of one tick go out in a single write of one or two bytes each.
+ * The server acknowledges them in order. Acknowledged moves are applied to the confirmed board, and if the server
+ * rejected one (e.g. because another player already won), the predicted board is rebuilt from the confirmed one
+ * plus the moves still in flight and handed to {@link Listener#predictionCorrected}.
+ *
+ * A reader thread connects and decodes server messages; everything else, including the listener callbacks, runs
+ * on the thread that calls {@link #update()}, normally the render thread.
+ */
+public final class RaceClient implements Closeable {
+    /** How often queued moves are sent */
+    public static final long TICK_MILLIS = 50;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    
+    /**
+     * Receives race events on the thread calling {@link #update()}
+     */
+    public interface Listener {
+        /**
+         * Every player starts from this state; the array is the listener's to keep
+         */
+        void raceStarted(PuzzleMode mode, byte[] state, int playerIndex, int playerCount);
+        
+        /**
+         * The server rejected a predicted move; the board should now show this state
+         */
+        void predictionCorrected(byte[] state);
+        
+        /**
+         * A player's progress changed, including this client's own
+         * @param flags {@link Protocol#FINISHED} and {@link Protocol#LEFT}
+         */
+        void progress(int player, int flags, int moveCount, int misplaced);
+        
+        void raceOver(int winner);
+        
+        /**
+         * The connection failed or the server refused the race; no more events follow
+         */
+        void failed(String reason);
+    }
+    
+    private final String host;
+    private final int port;
+    private final GameMode gameMode;
+    private final int size;
+    private final int players;
+    private final Listener listener;
+    private final ConcurrentLinkedQueue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object();
+    private volatile Socket socket;
+    private volatile boolean closed;
+    
+    // Only used on the update thread
+    private Session confirmed;
+    private Session predicted;
+    private int playerIndex = -1;
+    private int raceId;
+    private boolean over;
+    private int[] pending = new int[64]; // Moves not acknowledged yet, oldest first
+    private int pendingStart;
+    private int pendingEnd;
+    private final byte[] outgoing = new byte[256];
+    private int outgoingLength;
+    private long lastSendNanos;
+    private long bytesSent;
+    private int corrections;
+    
+    public RaceClient(String host, int port, GameMode gameMode, int size, int players, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.gameMode = gameMode;
+        this.size = size;
+        this.players = players;
+        this.listener = listener;
+    }
+    
+    /**
+     * Connects and asks to join a race on a background thread
+     */
+    public void start() {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readMessages();
+            }
+        }, "race-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    private void readMessages() {
+        try {
+            Socket connection = new Socket();
+            socket = connection;
+            connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+            byte[] join = new byte[Protocol.JOIN_RACE_LENGTH];
+            Protocol.writeJoinRace(join, 0, gameMode.ordinal(), size, players);
+            write(join, join.length);
+            ReplyReader.read(connection.getInputStream(), inbox);
+            if (!closed) {
+                inbox.add(ReplyReader.failure("Server closed the connection"));
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                inbox.add(ReplyReader.failure(ReplyReader.describe(e)));
+            }
+        }
+    }
+    
+    private void write(byte[] bytes, int length) throws IOException {
+        synchronized (writeLock) {
+            OutputStream output = socket.getOutputStream();
+            output.write(bytes, 0, length);
+        }
+    }
+    
+    /**
+     * Predicts a move and queues it for the next tick
+     * @param move Direction the blank moves in for the classic mode, otherwise a generator index
+     * @return false, without queueing anything, if the race is not running or the move is not valid
+     */
+    public boolean move(int move) {
+        if (!isRunning() || predicted.move(move) == Protocol.REJECTED) {
+            return false;
+        }
+        if (pendingEnd == pending.length) {
+            if (pendingStart > 0) {
+                System.arraycopy(pending, pendingStart, pending, 0, pendingEnd - pendingStart);
+                pendingEnd -= pendingStart;
+                pendingStart = 0;
+            } else {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+        }
+        pending[pendingEnd++] = move;
+        if (outgoingLength + 2 > outgoing.length) {
+            send();
+        }
+        outgoingLength = Protocol.writeMove(outgoing, outgoingLength, move);
+        return true;
+    }
+    
+    /**
+     * Asks the server for the authoritative board; a difference to the confirmed board is corrected like a
+     * rejected move
+     */
+    public void requestState() {
+        if (outgoingLength + 1 > outgoing.length) {
+            send();
+        }
+        outgoing[outgoingLength++] = (byte) Protocol.GET_STATE;
+    }
+    
+    /**
+     * Handles the messages received since the last call and sends queued moves once per tick
+     */
+    public void update() {
+        byte[] message;
+        while ((message = inbox.poll()) != null) {
+            handle(message);
+        }
+        if (outgoingLength > 0 && System.nanoTime() - lastSendNanos >= TICK_MILLIS * 1000000L) {
+            send();
+        }
+    }
+    
+    private void send() {
+        if (outgoingLength == 0) {
+            return;
+        }
+        try {
+            write(outgoing, outgoingLength);
+            bytesSent += outgoingLength;
+        } catch (IOException e) {
+            // The reader thread reports the failure
+        }
+        outgoingLength = 0;
+        lastSendNanos = System.nanoTime();
+    }
+    
+    private void handle(byte[] message) {
+        switch (message[0] & 0xFF) {
+            case Protocol.RACE_START: {
+                PuzzleMode mode = PuzzleModes.of(GameMode.values()[message[1] & 0xFF], message[2] & 0xFF);
+                long seed = Protocol.readLong(message, 3);
+                playerIndex = message[11] & 0xFF;
+                raceId = Protocol.readInt(message, 13);
+                confirmed = new Session(message[1] & 0xFF, mode, seed);
+                predicted = new Session(message[1] & 0xFF, mode, seed);
+                byte[] state = new byte[mode.getCellCount()];
+                predicted.getState(state, 0);
+                listener.raceStarted(mode, state, playerIndex, message[12] & 0xFF);
+                break;
+            }
+            case Protocol.MOVES_ACK:
+                acknowledge(message);
+                break;
+            case Protocol.STATE:
+                if (confirmed != null && !confirmed.hasState(message, Protocol.STATE_HEADER_LENGTH)) {
+                    confirmed.setState(message, Protocol.STATE_HEADER_LENGTH, Protocol.readInt(message, 3));
+                    correctPrediction();
+                }
+                break;
+            case Protocol.PROGRESS:
+                for (int i = 0; i < (message[1] & 0xFF); i++) {
+                    int offset = 2 + i * Protocol.PROGRESS_ENTRY_LENGTH;
+                    listener.progress(message[offset] & 0xFF, message[offset + 1] & 0xFF,
+                        Protocol.readInt(message, offset + 2), Protocol.readShort(message, offset + 6));
+                }
+                break;
+            case Protocol.RACE_OVER:
+                over = true;
+                listener.raceOver(message[1] & 0xFF);
+                break;
+            case Protocol.ERROR:
+                over = true;
+                listener.failed("The server refused the race (error " + (message[1] & 0xFF) + ")");
+                break;
+            case ReplyReader.FAILURE:
+                over = true;
+                listener.failed(ReplyReader.failureReason(message));
+                break;
+            default:
+                // Replies this client never asks for
+                break;
+        }
+    }
+    
+    private void acknowledge(byte[] message) {
+        int count = message[1] & 0xFF;
+        boolean rejected = false;
+        for (int i = 0; i < count && pendingStart < pendingEnd; i++) {
+            int move = pending[pendingStart++];
+            if ((message[2 + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                if (confirmed.move(move) == Protocol.REJECTED) {
+                    // The boards disagree; let the server settle it
+                    requestState();
+                }
+            } else {
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            correctPrediction();
+        }
+    }
+    
+    /**
+     * Rebuilds the predicted board from the confirmed one and the moves still in flight, which the server will
+     * validate against the same board
+     */
+    private void correctPrediction() {
+        predicted.copyFrom(confirmed);
+        for (int i = pendingStart; i < pendingEnd; i++) {
+            predicted.move(pending[i]);
+        }
+        corrections++;
+        byte[] state = new byte[predicted.getMode().getCellCount()];
+        predicted.getState(state, 0);
+        listener.predictionCorrected(state);
+    }
+    
+    /**
+     * @return Whether the race started and is not over, i.e. moves are accepted
+     */
+    public boolean isRunning() {
+        return predicted != null && !over;
+    }
+    
+    public int getPlayerIndex() {
+        return playerIndex;
+    }
+    
+    /**
+     * @return The id spectators ask for to watch this race, or 0 before it started
+     */
+    public int getRaceId() {
+        return raceId;
+    }
+    
+    /**
+     * @return The predicted board, for checks; do not modify
+     */
+    public Session getPredicted() {
+        return predicted;
+    }
+    
+    public Session getConfirmed() {
+        return confirmed;
+    }
+    
+    /**
+     * @return Moves sent but not acknowledged yet
+     */
+    public int getPendingMoveCount() {
+        return pendingEnd - pendingStart;
+    }
+    
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    /**
+     * @return How many times the predicted board was rolled back
+     */
+    public int getCorrectionCount() {
+        return corrections;
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
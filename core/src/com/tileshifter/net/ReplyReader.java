@@ -0,0 +1,71 @@
+package com.tileshifter.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Splits the server's replies on a client's reader thread into one array per message, for the render thread to
+ * handle in order
+ */
+final class ReplyReader {
+    /** Opcode of the messages {@link #failure} makes; the server never sends it */
+    static final int FAILURE = 0;
+    
+    private ReplyReader() {
+    }
+    
+    /**
+     * Reads until the server closes the connection
+     * @throws IOException also for messages with an unknown opcode
+     */
+    static void read(InputStream input, Queue<byte[]> inbox) throws IOException {
+        byte[] buffer = new byte[512];
+        int length = 0;
+        while (true) {
+            int count = input.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                return;
+            }
+            length += count;
+            int start = 0;
+            while (true) {
+                int messageLength = Protocol.replyLength(buffer, start, length - start);
+                if (messageLength < 0) {
+                    throw new IOException("Unknown message " + (buffer[start] & 0xFF));
+                }
+                if (messageLength == 0 || length - start < messageLength) {
+                    if (messageLength > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, messageLength);
+                    }
+                    break;
+                }
+                inbox.add(Arrays.copyOfRange(buffer, start, start + messageLength));
+                start += messageLength;
+            }
+            System.arraycopy(buffer, start, buffer, 0, length - start);
+            length -= start;
+        }
+    }
+    
+    /**
+     * @return A {@link #FAILURE} message carrying the reason
+     */
+    static byte[] failure(String reason) {
+        byte[] bytes = reason.getBytes(StandardCharsets.UTF_8);
+        byte[] message = new byte[1 + bytes.length];
+        message[0] = FAILURE;
+        System.arraycopy(bytes, 0, message, 1, bytes.length);
+        return message;
+    }
+    
+    static String failureReason(byte[] message) {
+        return new String(message, 1, message.length - 1, StandardCharsets.UTF_8);
+    }
+    
+    static String describe(IOException e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package com.tileshifter.net;
+
+import java.util.Random;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * One networked game: the board as a tile id per cell plus a few counters, with the mode shared between
+ * sessions. Moves follow the same rules as {@link com.tileshifter.PuzzleBoard} and the generator boards through
+ * {@link PuzzleMode}, without any tiles or textures, so the server validates moves with it and clients predict
+ * them with it.
+ *
+ * Not thread-safe; a session belongs to one connection.
+ */
+public final class Session {
+    private final int gameMode;
+    private final PuzzleMode mode;
+    private final byte[] state;
+    private int blankCell = -1;
+    private int misplaced;
+    private int moveCount;
+    
+    /**
+     * Starts a game on the board {@link PuzzleMode#shuffle shuffled} from the seed
+     * @param gameMode {@link com.tileshifter.GameMode} ordinal that the mode backs
+     */
+    public Session(int gameMode, PuzzleMode mode, long seed) {
+        this.gameMode = gameMode;
+        this.mode = mode;
+        this.state = new byte[mode.getCellCount()];
+        mode.shuffle(new Random(seed), state, 0);
+        if (mode.hasBlank()) {
+            for (int cell = 0; cell < state.length; cell++) {
+                if ((state[cell] & 0xFF) == state.length - 1) {
+                    blankCell = cell;
+                }
+            }
+        }
+        for (int cell = 0; cell < state.length; cell++) {
+            misplaced += misplacedAt(cell);
+        }
+    }
+    
+    /**
+     * Makes this session a copy of another one of the same mode, without allocating
+     */
+    public void copyFrom(Session other) {
+        if (other.mode != mode) {
+            throw new IllegalArgumentException("Cannot copy a " + other.mode.getName() + " session into a "
+                + mode.getName() + " session");
+        }
+        System.arraycopy(other.state, 0, state, 0, state.length);
+        blankCell = other.blankCell;
+        misplaced = other.misplaced;
+        moveCount = other.moveCount;
+    }
+    
+    /**
+     * Replaces the board, e.g. with the state a server reported
+     */
+    public void setState(byte[] source, int offset, int moveCount) {
+        System.arraycopy(source, offset, state, 0, state.length);
+        misplaced = 0;
+        for (int cell = 0; cell < state.length; cell++) {
+            misplaced += misplacedAt(cell);
+            if (mode.hasBlank() && (state[cell] & 0xFF) == state.length - 1) {
+                blankCell = cell;
+            }
+        }
+        this.moveCount = moveCount;
+    }
+    
+    /**
+     * Validates and applies a move without allocating
+     * @param move Direction the blank moves in for the classic mode, otherwise a generator index
+     * @return {@link Protocol#APPLIED}, {@link Protocol#SOLVED} if the move solved the board, or
+     * {@link Protocol#REJECTED} (board unchanged) for unknown moves, blank moves off the board and any move
+     * after the board is solved
+     */
+    public int move(int move) {
+        if (misplaced == 0) {
+            return Protocol.REJECTED;
+        }
+        if (mode.hasBlank()) {
+            if (move < 0 || move > PuzzleMode.RIGHT) {
+                return Protocol.REJECTED;
+            }
+            int target = mode.getBlankNeighbor(blankCell, move);
+            if (target < 0) {
+                return Protocol.REJECTED;
+            }
+            // Only the blank's cell and the cell the tile leaves change
+            int previous = blankCell;
+            misplaced -= misplacedAt(previous) + misplacedAt(target);
+            blankCell = mode.moveBlank(state, 0, previous, move);
+            misplaced += misplacedAt(previous) + misplacedAt(target);
+        } else {
+            if (move < 0 || move >= mode.getGeneratorCount()) {
+                return Protocol.REJECTED;
+            }
+            int[] cycleCells = mode.getGenerator(move).getCycleCells();
+            for (int cell : cycleCells) {
+                misplaced -= misplacedAt(cell);
+            }
+            mode.apply(state, 0, move);
+            for (int cell : cycleCells) {
+                misplaced += misplacedAt(cell);
+            }
+        }
+        moveCount++;
+        return misplaced == 0 ? Protocol.SOLVED : Protocol.APPLIED;
+    }
+    
+    private int misplacedAt(int cell) {
+        return (state[cell] & 0xFF) != cell ? 1 : 0;
+    }
+    
+    /**
+     * Writes a {@link Protocol#STATE} reply
+     * @return The offset after it
+     */
+    public int writeState(byte[] buffer, int offset) {
+        buffer[offset] = (byte) Protocol.STATE;
+        buffer[offset + 1] = (byte) gameMode;
+        buffer[offset + 2] = (byte) mode.getSize();
+        Protocol.writeInt(buffer, offset + 3, moveCount);
+        System.arraycopy(state, 0, buffer, offset + Protocol.STATE_HEADER_LENGTH, state.length);
+        return offset + Protocol.STATE_HEADER_LENGTH + state.length;
+    }
+    
+    public int getGameMode() {
+        return gameMode;
+    }
+    
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    public int getMoveCount() {
+        return moveCount;
+    }
+    
+    /**
+     * @return Tiles not in their own cell, counting the blank
+     */
+    public int getMisplaced() {
+        return misplaced;
+    }
+    
+    public boolean isSolved() {
+        return misplaced == 0;
+    }
+    
+    /**
+     * Copies the board into a state array (tile id per cell)
+     */
+    public void getState(byte[] target, int offset) {
+        System.arraycopy(state, 0, target, offset, state.length);
+    }
+    
+    /**
+     * @return Whether the board matches a state array (tile id per cell)
+     */
+    public boolean hasState(byte[] other, int offset) {
+        for (int cell = 0; cell < state.length; cell++) {
+            if (state[cell] != other[offset + cell]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
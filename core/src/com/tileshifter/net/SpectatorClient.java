@@ -0,0 +1,191 @@
+package com.tileshifter.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * Watches one player's board in a race on a game server. The server sends the board once, then the player's moves
+ * once per tick, and the whole board again once a second or whenever this client fell behind; the listener gets
+ * each as it comes, on the thread that calls {@link #update}.
+ */
+public final class SpectatorClient implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    
+    /**
+     * Receives the stream on the thread calling {@link #update}
+     */
+    public interface Listener {
+        /**
+         * The whole board, the first time and whenever moves were skipped; the array is the listener's to keep
+         */
+        void boardState(GameMode gameMode, PuzzleMode mode, byte[] state, int moveCount);
+        
+        /**
+         * Moves the player made since the previous frame, in the format of {@link Session#move}
+         * @param moves One byte per move from offset on; only valid during the call
+         */
+        void moves(byte[] moves, int offset, int count);
+        
+        /**
+         * The race is over; no more events follow
+         */
+        void ended();
+        
+        /**
+         * The connection failed or there is no such race; no more events follow
+         */
+        void failed(String reason);
+    }
+    
+    private final String host;
+    private final int port;
+    private final int raceId;
+    private final int player;
+    private final ConcurrentLinkedQueue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private volatile Socket socket;
+    private volatile boolean closed;
+    
+    // Only used on the update thread
+    private GameMode gameMode;
+    private PuzzleMode mode;
+    private boolean ended;
+    private int lastSequence = -1; // -1 until the first keyframe and after a gap
+    private long frames;
+    private long keyframes;
+    private long bytesReceived;
+    
+    /**
+     * @param raceId The race's id as {@link RaceClient#getRaceId()} reports it, or 0 for the race that started last
+     */
+    public SpectatorClient(String host, int port, int raceId, int player) {
+        this.host = host;
+        this.port = port;
+        this.raceId = raceId;
+        this.player = player;
+    }
+    
+    /**
+     * Connects and asks for the stream on a background thread
+     */
+    public void start() {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readMessages();
+            }
+        }, "spectator-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    private void readMessages() {
+        try {
+            Socket connection = new Socket();
+            socket = connection;
+            connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            byte[] request = new byte[Protocol.SPECTATE_LENGTH];
+            Protocol.writeSpectate(request, 0, raceId, player);
+            connection.getOutputStream().write(request);
+            ReplyReader.read(connection.getInputStream(), inbox);
+            if (!closed) {
+                inbox.add(ReplyReader.failure("Server closed the connection"));
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                inbox.add(ReplyReader.failure(ReplyReader.describe(e)));
+            }
+        }
+    }
+    
+    /**
+     * Hands everything received since the last call to the listener
+     */
+    public void update(Listener listener) {
+        byte[] message;
+        while ((message = inbox.poll()) != null) {
+            if (ended) {
+                continue; // The server closes the connection after the end
+            }
+            bytesReceived += message.length;
+            switch (message[0] & 0xFF) {
+                case Protocol.SPECTATE_STATE: {
+                    GameMode frameMode = GameMode.values()[message[1] & 0xFF];
+                    int size = message[2] & 0xFF;
+                    if (mode == null || gameMode != frameMode || mode.getSize() != size) {
+                        gameMode = frameMode;
+                        mode = PuzzleModes.of(frameMode, size);
+                    }
+                    byte[] state = new byte[size * size];
+                    System.arraycopy(message, Protocol.SPECTATE_STATE_HEADER_LENGTH, state, 0, state.length);
+                    lastSequence = Protocol.readInt(message, 3);
+                    frames++;
+                    keyframes++;
+                    listener.boardState(gameMode, mode, state, Protocol.readInt(message, 7));
+                    break;
+                }
+                case Protocol.SPECTATE_MOVES: {
+                    int sequence = Protocol.readInt(message, 1);
+                    if (lastSequence < 0 || sequence != lastSequence + 1) {
+                        // The server sends a keyframe after dropping frames, but be safe: wait for the next one
+                        lastSequence = -1;
+                        break;
+                    }
+                    lastSequence = sequence;
+                    frames++;
+                    listener.moves(message, Protocol.SPECTATE_MOVES_HEADER_LENGTH, Protocol.readShort(message, 5));
+                    break;
+                }
+                case Protocol.SPECTATE_END:
+                    ended = true;
+                    listener.ended();
+                    break;
+                case Protocol.ERROR:
+                    ended = true;
+                    listener.failed("No such race or player");
+                    break;
+                case ReplyReader.FAILURE:
+                    ended = true;
+                    listener.failed(ReplyReader.failureReason(message));
+                    break;
+                default:
+                    // Nothing else is sent to spectators
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * @return Keyframes and move frames handled so far
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+    
+    public long getKeyframeCount() {
+        return keyframes;
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.tileshifter.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.tileshifter.GameMode;
+
+/**
+ * A puzzle pack: the game's images, a thumbnail atlas and pre-generated, graded puzzles with their solutions in
+ * one file, written by {@link PuzzlePackWriter} and memory-mapped, so nothing is read or decoded before it is used
+ *
+ * File layout (big-endian):
+ * <ul>
+ * <li>A {@value #HEADER_BYTES}-byte header: magic, version, image count, puzzle count, daily puzzle count, atlas
+ * width and height, then the offsets of the image table, puzzle table, day index, names, atlas pixels, and the
+ * file length.</li>
+ * <li>Image table, {@value #IMAGE_ENTRY_BYTES} bytes per image: name offset and length, flags, width, height,
+ * pixel offset, and the thumbnail's rectangle in the atlas.</li>
+ * <li>Puzzle table, {@value #PUZZLE_ENTRY_BYTES} bytes per puzzle, sorted by game mode, size, difficulty and day:
+ * game mode, size, difficulty, day, data offset, solution length. The data is the state, a tile id per cell, then
+ * one byte per solution move.</li>
+ * <li>Day index, {@value #DAY_ENTRY_BYTES} bytes per daily puzzle, sorted by game mode, size and day: the sort key
+ * and the puzzle's index.</li>
+ * <li>UTF-8 image names, then the atlas and the images as raw RGB888 pixels, rows top to bottom, then the puzzle
+ * data.</li>
+ * </ul>
+ * Both tables are searched in place, so finding a puzzle by difficulty or day takes O(log n) reads of the mapping.
+ *
+ * All reads are absolute gets on the mapping, so one instance can be shared by threads.
+ */
+public final class PuzzlePack {
+    static final int MAGIC = 0x5453504B; // "TSPK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int IMAGE_ENTRY_BYTES = 32;
+    static final int PUZZLE_ENTRY_BYTES = 16;
+    static final int DAY_ENTRY_BYTES = 12;
+    static final int BYTES_PER_PIXEL = 3;
+    
+    /** Image flag: the image is offered as a puzzle, e.g. unlike the logo */
+    public static final int PUZZLE_IMAGE = 1;
+    /** Day of puzzles that are not a daily puzzle */
+    public static final int NO_DAY = -1;
+    
+    private final ByteBuffer buffer;
+    private final int imageCount;
+    private final int puzzleCount;
+    private final int dayCount;
+    private final int atlasWidth;
+    private final int atlasHeight;
+    private final int imageTable;
+    private final int puzzleTable;
+    private final int dayIndex;
+    private final int atlasPixels;
+    private final String[] names;
+    
+    private PuzzlePack(ByteBuffer buffer, String source) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(source + " is not a puzzle pack");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(source + " has unsupported version " + version);
+        }
+        imageCount = buffer.getInt(8);
+        puzzleCount = buffer.getInt(12);
+        dayCount = buffer.getInt(16);
+        atlasWidth = buffer.getInt(20);
+        atlasHeight = buffer.getInt(24);
+        imageTable = buffer.getInt(28);
+        puzzleTable = buffer.getInt(32);
+        dayIndex = buffer.getInt(36);
+        int namesStart = buffer.getInt(40);
+        atlasPixels = buffer.getInt(44);
+        int length = buffer.getInt(48);
+        if (length != buffer.capacity()) {
+            throw new IOException(source + " is truncated");
+        }
+        if (imageCount < 0 || puzzleCount < 0 || dayCount < 0 || dayCount > puzzleCount
+            || imageTable != HEADER_BYTES
+            || puzzleTable != imageTable + imageCount * IMAGE_ENTRY_BYTES
+            || dayIndex != puzzleTable + puzzleCount * PUZZLE_ENTRY_BYTES
+            || namesStart != dayIndex + dayCount * DAY_ENTRY_BYTES
+            || atlasPixels < namesStart || atlasPixels + atlasWidth * atlasHeight * BYTES_PER_PIXEL > length) {
+            throw new IOException(source + " has an invalid header");
+        }
+        // Names are few and short, and looked up by the screens, so they are decoded up front
+        names = new String[imageCount];
+        for (int i = 0; i < imageCount; i++) {
+            byte[] name = new byte[buffer.getShort(imageEntry(i) + 4) & 0xFFFF];
+            ByteBuffer nameBytes = buffer.duplicate();
+            nameBytes.position(buffer.getInt(imageEntry(i)));
+            nameBytes.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Maps a pack file read-only
+     */
+    public static PuzzlePack open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file.getPath() + " is too large for a puzzle pack");
+            }
+            // The mapping stays valid after the channel is closed
+            return new PuzzlePack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.getPath());
+        }
+    }
+    
+    /**
+     * Reads a pack from a buffer holding the whole file, e.g. where the pack is not a plain file and cannot be
+     * mapped; the buffer must not change afterwards
+     */
+    public static PuzzlePack wrap(ByteBuffer buffer) throws IOException {
+        return new PuzzlePack(buffer.duplicate(), "Buffer");
+    }
+    
+    private int imageEntry(int image) {
+        if (image < 0 || image >= imageCount) {
+            throw new IndexOutOfBoundsException("Image " + image + " of " + imageCount);
+        }
+        return imageTable + image * IMAGE_ENTRY_BYTES;
+    }
+    
+    public int getImageCount() {
+        return imageCount;
+    }
+    
+    public String getImageName(int image) {
+        imageEntry(image);
+        return names[image];
+    }
+    
+    /**
+     * @return The index of the image with the name, or -1
+     */
+    public int findImage(String name) {
+        for (int i = 0; i < imageCount; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public boolean isPuzzleImage(int image) {
+        return (buffer.getShort(imageEntry(image) + 6) & PUZZLE_IMAGE) != 0;
+    }
+    
+    public int getImageWidth(int image) {
+        return buffer.getInt(imageEntry(image) + 8);
+    }
+    
+    public int getImageHeight(int image) {
+        return buffer.getInt(imageEntry(image) + 12);
+    }
+    
+    /**
+     * Copies an image's RGB888 pixels into the target at its position, which is left unchanged
+     */
+    public void readImagePixels(int image, ByteBuffer target) {
+        int entry = imageEntry(image);
+        copy(buffer.getInt(entry + 16), buffer.getInt(entry + 8) * buffer.getInt(entry + 12) * BYTES_PER_PIXEL,
+            target);
+    }
+    
+    public int getAtlasWidth() {
+        return atlasWidth;
+    }
+    
+    public int getAtlasHeight() {
+        return atlasHeight;
+    }
+    
+    /**
+     * Copies the thumbnail atlas' RGB888 pixels into the target at its position, which is left unchanged
+     */
+    public void readAtlasPixels(ByteBuffer target) {
+        copy(atlasPixels, atlasWidth * atlasHeight * BYTES_PER_PIXEL, target);
+    }
+    
+    private void copy(int offset, int length, ByteBuffer target) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.limit(offset + length);
+        int position = target.position();
+        target.put(source);
+        target.position(position);
+    }
+    
+    /**
+     * @return The thumbnail's left edge in the atlas; thumbnails of images that are no puzzles have no area
+     */
+    public int getThumbnailX(int image) {
+        return buffer.getShort(imageEntry(image) + 20) & 0xFFFF;
+    }
+    
+    public int getThumbnailY(int image) {
+        return buffer.getShort(imageEntry(image) + 22) & 0xFFFF;
+    }
+    
+    public int getThumbnailWidth(int image) {
+        return buffer.getShort(imageEntry(image) + 24) & 0xFFFF;
+    }
+    
+    public int getThumbnailHeight(int image) {
+        return buffer.getShort(imageEntry(image) + 26) & 0xFFFF;
+    }
+    
+    public int getPuzzleCount() {
+        return puzzleCount;
+    }
+    
+    private int puzzleEntry(int puzzle) {
+        if (puzzle < 0 || puzzle >= puzzleCount) {
+            throw new IndexOutOfBoundsException("Puzzle " + puzzle + " of " + puzzleCount);
+        }
+        return puzzleTable + puzzle * PUZZLE_ENTRY_BYTES;
+    }
+    
+    /**
+     * Sort key of puzzles and daily puzzles; the day is flipped to unsigned so negative days sort first
+     */
+    static long key(int gameMode, int size, int difficulty, int day) {
+        return (long) gameMode << 56 | (long) size << 48 | (long) difficulty << 32
+            | ((day & 0xFFFFFFFFL) ^ 0x80000000L);
+    }
+    
+    private long puzzleKey(int puzzle) {
+        int entry = puzzleTable + puzzle * PUZZLE_ENTRY_BYTES;
+        return key(buffer.get(entry) & 0xFF, buffer.get(entry + 1) & 0xFF, buffer.getShort(entry + 2) & 0xFFFF,
+            buffer.getInt(entry + 4));
+    }
+    
+    /**
+     * @return The first puzzle whose sort key is at least the given one, or the puzzle count
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = puzzleCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (puzzleKey(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * @return The first puzzle of the mode and size with at least the given difficulty; the puzzles of the mode and
+     * size end at {@link #endOf}, which this returns if none is that hard
+     */
+    public int findByDifficulty(GameMode gameMode, int size, int difficulty) {
+        return lowerBound(key(gameMode.ordinal(), size, Math.max(0, Math.min(difficulty, 0xFFFF)), Integer.MIN_VALUE));
+    }
+    
+    /**
+     * @return The first puzzle of the mode and size; they are sorted by difficulty, easiest first
+     */
+    public int startOf(GameMode gameMode, int size) {
+        return findByDifficulty(gameMode, size, 0);
+    }
+    
+    /**
+     * @return The index after the last puzzle of the mode and size
+     */
+    public int endOf(GameMode gameMode, int size) {
+        return lowerBound(key(gameMode.ordinal(), size + 1, 0, Integer.MIN_VALUE));
+    }
+    
+    /**
+     * @param day Days since 1970-01-01, like {@code LocalDate.toEpochDay()}
+     * @return The daily puzzle of the mode and size on the day, or -1 if the pack has none
+     */
+    public int findByDay(GameMode gameMode, int size, int day) {
+        long key = key(gameMode.ordinal(), size, 0, day);
+        int low = 0;
+        int high = dayCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(dayIndex + middle * DAY_ENTRY_BYTES);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(dayIndex + middle * DAY_ENTRY_BYTES + 8);
+            }
+        }
+        return -1;
+    }
+    
+    public GameMode getGameMode(int puzzle) {
+        return GameMode.values()[buffer.get(puzzleEntry(puzzle)) & 0xFF];
+    }
+    
+    public int getSize(int puzzle) {
+        return buffer.get(puzzleEntry(puzzle) + 1) & 0xFF;
+    }
+    
+    /**
+     * @return The graded difficulty: the optimal solution length where it is known, otherwise the
+     * {@link com.tileshifter.solver.DifficultyEstimator estimated} one
+     */
+    public int getDifficulty(int puzzle) {
+        return buffer.getShort(puzzleEntry(puzzle) + 2) & 0xFFFF;
+    }
+    
+    /**
+     * @return The day the puzzle is the daily puzzle on, or {@link #NO_DAY}
+     */
+    public int getDay(int puzzle) {
+        return buffer.getInt(puzzleEntry(puzzle) + 4);
+    }
+    
+    /**
+     * Copies the puzzle's start state, a tile id per cell, into the target
+     */
+    public void getState(int puzzle, byte[] target, int offset) {
+        int entry = puzzleEntry(puzzle);
+        int size = buffer.get(entry + 1) & 0xFF;
+        int data = buffer.getInt(entry + 8);
+        for (int cell = 0; cell < size * size; cell++) {
+            target[offset + cell] = buffer.get(data + cell);
+        }
+    }
+    
+    public int getSolutionLength(int puzzle) {
+        return buffer.getShort(puzzleEntry(puzzle) + 12) & 0xFFFF;
+    }
+    
+    /**
+     * Copies the solution's moves, in the {@link com.tileshifter.solver.Solver} encoding, into the target
+     * @return The solution's length
+     */
+    public int getSolution(int puzzle, int[] target) {
+        int entry = puzzleEntry(puzzle);
+        int size = buffer.get(entry + 1) & 0xFF;
+        int data = buffer.getInt(entry + 8) + size * size;
+        int length = buffer.getShort(entry + 12) & 0xFFFF;
+        for (int i = 0; i < length; i++) {
+            target[i] = buffer.get(data + i) & 0xFF;
+        }
+        return length;
+    }
+}
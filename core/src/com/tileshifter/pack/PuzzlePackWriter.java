@@ -0,0 +1,295 @@
+package com.tileshifter.pack;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.tileshifter.GameMode;
+
+/**
+ * Collects images and puzzles and writes them as a {@link PuzzlePack}
+ *
+ * Thumbnails are packed into one atlas, in rows of {@link #THUMBNAILS_PER_ROW} cells of
+ * {@link #THUMBNAIL_SIZE} pixels, so the selection screen needs a single texture. Pixels are RGB888 rows top to
+ * bottom, as in a libGDX Pixmap of that format, so the game copies them into a Pixmap without decoding.
+ */
+public final class PuzzlePackWriter {
+    public static final int THUMBNAIL_SIZE = 128;
+    public static final int THUMBNAILS_PER_ROW = 8;
+    /** Tile ids fit a byte, sizes a byte of the sort key */
+    private static final int MAX_SIZE = 16;
+    
+    private static final class Image {
+        final byte[] name;
+        final int flags;
+        final int width;
+        final int height;
+        final byte[] pixels;
+        final int thumbnailWidth;
+        final int thumbnailHeight;
+        final byte[] thumbnail;
+        int thumbnailX;
+        int thumbnailY;
+        
+        Image(byte[] name, int flags, int width, int height, byte[] pixels, int thumbnailWidth, int thumbnailHeight,
+              byte[] thumbnail) {
+            this.name = name;
+            this.flags = flags;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.thumbnailWidth = thumbnailWidth;
+            this.thumbnailHeight = thumbnailHeight;
+            this.thumbnail = thumbnail;
+        }
+    }
+    
+    private static final class Puzzle {
+        final int gameMode;
+        final int size;
+        final int difficulty;
+        final int day;
+        final byte[] state;
+        final byte[] solution;
+        final long key;
+        
+        Puzzle(int gameMode, int size, int difficulty, int day, byte[] state, byte[] solution) {
+            this.gameMode = gameMode;
+            this.size = size;
+            this.difficulty = difficulty;
+            this.day = day;
+            this.state = state;
+            this.solution = solution;
+            key = PuzzlePack.key(gameMode, size, difficulty, day);
+        }
+    }
+    
+    private final List<Image> images = new ArrayList<>();
+    private final List<Puzzle> puzzles = new ArrayList<>();
+    
+    /**
+     * Adds an image that is not offered as a puzzle, such as the logo
+     * @param pixels RGB888, rows top to bottom; kept, not copied
+     */
+    public PuzzlePackWriter addImage(String name, int width, int height, byte[] pixels) {
+        return addImage(name, 0, width, height, pixels, 0, 0, new byte[0]);
+    }
+    
+    /**
+     * Adds an image offered as a puzzle with its thumbnail
+     * @param pixels RGB888, rows top to bottom; kept, not copied
+     * @param thumbnail The same for a thumbnail at most {@link #THUMBNAIL_SIZE} pixels wide and high
+     */
+    public PuzzlePackWriter addPuzzleImage(String name, int width, int height, byte[] pixels, int thumbnailWidth,
+                                           int thumbnailHeight, byte[] thumbnail) {
+        if (thumbnailWidth < 1 || thumbnailHeight < 1 || thumbnailWidth > THUMBNAIL_SIZE
+            || thumbnailHeight > THUMBNAIL_SIZE) {
+            throw new IllegalArgumentException("Thumbnails are 1 to " + THUMBNAIL_SIZE + " pixels wide and high, got "
+                + thumbnailWidth + "x" + thumbnailHeight);
+        }
+        return addImage(name, PuzzlePack.PUZZLE_IMAGE, width, height, pixels, thumbnailWidth, thumbnailHeight,
+            thumbnail);
+    }
+    
+    private PuzzlePackWriter addImage(String name, int flags, int width, int height, byte[] pixels,
+                                      int thumbnailWidth, int thumbnailHeight, byte[] thumbnail) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 0xFFFF) {
+            throw new IllegalArgumentException("Image name too long: " + name);
+        }
+        if (width < 1 || height < 1 || pixels.length != width * height * PuzzlePack.BYTES_PER_PIXEL
+            || thumbnail.length != thumbnailWidth * thumbnailHeight * PuzzlePack.BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Pixels of " + name + " do not match its size");
+        }
+        for (Image image : images) {
+            if (Arrays.equals(image.name, encoded)) {
+                throw new IllegalArgumentException("Duplicate image " + name);
+            }
+        }
+        images.add(new Image(encoded, flags, width, height, pixels, thumbnailWidth, thumbnailHeight, thumbnail));
+        return this;
+    }
+    
+    /**
+     * Adds a puzzle
+     * @param state Tile id per cell; copied
+     * @param solution Moves in the {@link com.tileshifter.solver.Solver} encoding, solutionLength of them
+     * @param difficulty Graded difficulty, 0 to 65535; puzzles are found by it
+     * @param day The day, counted from 1970-01-01, the puzzle is the daily puzzle of its mode and size on, or
+     * {@link PuzzlePack#NO_DAY}
+     */
+    public PuzzlePackWriter addPuzzle(GameMode gameMode, int size, int difficulty, int day, byte[] state,
+                                      int[] solution, int solutionLength) {
+        if (size < 2 || size > MAX_SIZE || state.length < size * size) {
+            throw new IllegalArgumentException("Invalid size " + size + " for a state of " + state.length + " cells");
+        }
+        if (difficulty < 0 || difficulty > 0xFFFF || solutionLength < 0 || solutionLength > 0xFFFF) {
+            throw new IllegalArgumentException("Difficulty and solution length must fit 16 bits");
+        }
+        byte[] moves = new byte[solutionLength];
+        for (int i = 0; i < solutionLength; i++) {
+            if (solution[i] < 0 || solution[i] > 0xFF) {
+                throw new IllegalArgumentException("Move " + solution[i] + " does not fit a byte");
+            }
+            moves[i] = (byte) solution[i];
+        }
+        puzzles.add(new Puzzle(gameMode.ordinal(), size, difficulty, day, Arrays.copyOf(state, size * size),
+            moves));
+        return this;
+    }
+    
+    public void write(File file) throws IOException {
+        List<Puzzle> sorted = new ArrayList<>(puzzles);
+        Collections.sort(sorted, new Comparator<Puzzle>() {
+            @Override
+            public int compare(Puzzle a, Puzzle b) {
+                return Long.compare(a.key, b.key);
+            }
+        });
+        // The day index refers to puzzles by their sorted index
+        List<long[]> days = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            Puzzle puzzle = sorted.get(i);
+            if (puzzle.day != PuzzlePack.NO_DAY) {
+                days.add(new long[] {PuzzlePack.key(puzzle.gameMode, puzzle.size, 0, puzzle.day), i});
+            }
+        }
+        Collections.sort(days, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        for (int i = 1; i < days.size(); i++) {
+            if (days.get(i)[0] == days.get(i - 1)[0]) {
+                Puzzle puzzle = sorted.get((int) days.get(i)[1]);
+                throw new IllegalArgumentException("Two daily puzzles for " + GameMode.values()[puzzle.gameMode]
+                    + " " + puzzle.size + "x" + puzzle.size + " on day " + puzzle.day);
+            }
+        }
+        
+        int puzzleImages = 0;
+        for (Image image : images) {
+            if ((image.flags & PuzzlePack.PUZZLE_IMAGE) != 0) {
+                image.thumbnailX = puzzleImages % THUMBNAILS_PER_ROW * THUMBNAIL_SIZE;
+                image.thumbnailY = puzzleImages / THUMBNAILS_PER_ROW * THUMBNAIL_SIZE;
+                puzzleImages++;
+            }
+        }
+        int atlasWidth = Math.max(1, Math.min(puzzleImages, THUMBNAILS_PER_ROW) * THUMBNAIL_SIZE);
+        int atlasHeight = Math.max(1, (puzzleImages + THUMBNAILS_PER_ROW - 1) / THUMBNAILS_PER_ROW * THUMBNAIL_SIZE);
+        
+        long imageTable = PuzzlePack.HEADER_BYTES;
+        long puzzleTable = imageTable + (long) images.size() * PuzzlePack.IMAGE_ENTRY_BYTES;
+        long dayIndex = puzzleTable + (long) sorted.size() * PuzzlePack.PUZZLE_ENTRY_BYTES;
+        long names = dayIndex + (long) days.size() * PuzzlePack.DAY_ENTRY_BYTES;
+        long atlas = names;
+        for (Image image : images) {
+            atlas += image.name.length;
+        }
+        long offset = atlas + (long) atlasWidth * atlasHeight * PuzzlePack.BYTES_PER_PIXEL;
+        long[] pixelOffsets = new long[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            pixelOffsets[i] = offset;
+            offset += images.get(i).pixels.length;
+        }
+        long[] dataOffsets = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            dataOffsets[i] = offset;
+            offset += sorted.get(i).state.length + sorted.get(i).solution.length;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Puzzle packs are limited to 2 GB, this one would take " + offset
+                + " bytes");
+        }
+        
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                1 << 16))) {
+            output.writeInt(PuzzlePack.MAGIC);
+            output.writeInt(PuzzlePack.VERSION);
+            output.writeInt(images.size());
+            output.writeInt(sorted.size());
+            output.writeInt(days.size());
+            output.writeInt(atlasWidth);
+            output.writeInt(atlasHeight);
+            output.writeInt((int) imageTable);
+            output.writeInt((int) puzzleTable);
+            output.writeInt((int) dayIndex);
+            output.writeInt((int) names);
+            output.writeInt((int) atlas);
+            output.writeInt((int) offset);
+            output.write(new byte[PuzzlePack.HEADER_BYTES - output.size()]);
+            
+            long nameOffset = names;
+            for (int i = 0; i < images.size(); i++) {
+                Image image = images.get(i);
+                output.writeInt((int) nameOffset);
+                output.writeShort(image.name.length);
+                output.writeShort(image.flags);
+                output.writeInt(image.width);
+                output.writeInt(image.height);
+                output.writeInt((int) pixelOffsets[i]);
+                output.writeShort(image.thumbnailX);
+                output.writeShort(image.thumbnailY);
+                output.writeShort(image.thumbnailWidth);
+                output.writeShort(image.thumbnailHeight);
+                output.writeInt(0);
+                nameOffset += image.name.length;
+            }
+            for (int i = 0; i < sorted.size(); i++) {
+                Puzzle puzzle = sorted.get(i);
+                output.writeByte(puzzle.gameMode);
+                output.writeByte(puzzle.size);
+                output.writeShort(puzzle.difficulty);
+                output.writeInt(puzzle.day);
+                output.writeInt((int) dataOffsets[i]);
+                output.writeShort(puzzle.solution.length);
+                output.writeShort(0);
+            }
+            for (long[] day : days) {
+                output.writeLong(day[0]);
+                output.writeInt((int) day[1]);
+            }
+            for (Image image : images) {
+                output.write(image.name);
+            }
+            writeAtlas(output, atlasWidth, atlasHeight);
+            for (Image image : images) {
+                output.write(image.pixels);
+            }
+            for (Puzzle puzzle : sorted) {
+                output.write(puzzle.state);
+                output.write(puzzle.solution);
+            }
+        }
+    }
+    
+    /**
+     * Writes the atlas row by row, copying each thumbnail row into place; cells without a thumbnail stay black
+     */
+    private void writeAtlas(DataOutputStream output, int atlasWidth, int atlasHeight) throws IOException {
+        int rowBytes = atlasWidth * PuzzlePack.BYTES_PER_PIXEL;
+        byte[] row = new byte[rowBytes];
+        for (int y = 0; y < atlasHeight; y++) {
+            Arrays.fill(row, (byte) 0);
+            for (Image image : images) {
+                int thumbnailRow = y - image.thumbnailY;
+                if ((image.flags & PuzzlePack.PUZZLE_IMAGE) != 0 && thumbnailRow >= 0
+                    && thumbnailRow < image.thumbnailHeight) {
+                    int thumbnailBytes = image.thumbnailWidth * PuzzlePack.BYTES_PER_PIXEL;
+                    System.arraycopy(image.thumbnail, thumbnailRow * thumbnailBytes, row,
+                        image.thumbnailX * PuzzlePack.BYTES_PER_PIXEL, thumbnailBytes);
+                }
+            }
+            output.write(row);
+        }
+    }
+}
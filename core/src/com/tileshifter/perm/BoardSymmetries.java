@@ -0,0 +1,347 @@
+package com.tileshifter.perm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The symmetries of a puzzle mode: transforms of a board state that keep its distance from the solved state, so
+ * equivalent states can be stored and searched once
+ *
+ * A transform relabels the board with a cell permutation s taken from the square's rotations and mirrors,
+ * combined with a wrap-around translation: the tile in cell c moves to s(c) and becomes tile s(tile), which
+ * keeps the solved state solved. Inverting transforms also swap the roles of tiles and cells, mapping a state
+ * to the transformed inverse permutation. {@link #analyze} keeps every candidate that maps the mode's moves
+ * onto its moves, or, for inverting transforms, onto their inverses:
+ * - SHIFT: every translation, rotation and mirror, each also inverted (16 * size^2 transforms).
+ * - ROTATE: the quarter turns of the board; a mirror turns clockwise moves into counter-clockwise ones, so it
+ *   only counts combined with inversion (8 transforms).
+ * - CLASSIC ({@link #sliding}): the transpose, the only mirror that keeps the blank's home cell (2 transforms).
+ *
+ * Transform 0 is always the identity. States are tile ids per cell as in
+ * {@link com.tileshifter.PuzzleBoard#getState(byte[])}. Instances are immutable and can be shared by threads.
+ */
+public final class BoardSymmetries {
+    private static final String[] ORIENTATION_NAMES = {
+        "identity", "rotate 90", "rotate 180", "rotate 270", "mirror x", "mirror y", "transpose", "anti-transpose"
+    };
+    /** Linear part of each orientation on (x, y) offsets: {xx, xy, yx, yy} */
+    private static final int[][] ORIENTATION_MATRICES = {
+        {1, 0, 0, 1}, {0, -1, 1, 0}, {-1, 0, 0, -1}, {0, 1, -1, 0},
+        {-1, 0, 0, 1}, {1, 0, 0, -1}, {0, 1, 1, 0}, {0, -1, -1, 0}
+    };
+    /** Blank move directions in the order of PuzzleMode.UP, DOWN, LEFT and RIGHT */
+    private static final int[] DIRECTION_XS = {0, 0, -1, 1};
+    private static final int[] DIRECTION_YS = {-1, 1, 0, 0};
+    
+    private final int size;
+    private final int cells;
+    private final int count;
+    private final String[] names;
+    private final boolean[] inverting;
+    private final boolean hasInverting;
+    private final int[] cellMaps; // [transform * cells + cell] = s(cell)
+    private final int[] inverseCellMaps; // [transform * cells + cell] = s^-1(cell)
+    private final int[] firstSources; // s^-1(0) per transform: where the first cell's tile comes from
+    // Move of the original state for each move of the transformed state, [transform * moves + move]
+    private final int[] originalMoves;
+    private final int[] transformedMoves; // The reverse: [transform * moves + move] of the original state
+    private final int moves;
+    
+    private BoardSymmetries(int size, List<Candidate> transforms, int moves) {
+        this.size = size;
+        this.cells = size * size;
+        this.count = transforms.size();
+        this.moves = moves;
+        names = new String[count];
+        inverting = new boolean[count];
+        cellMaps = new int[count * cells];
+        inverseCellMaps = new int[count * cells];
+        firstSources = new int[count];
+        originalMoves = new int[count * moves];
+        transformedMoves = new int[count * moves];
+        for (int t = 0; t < count; t++) {
+            Candidate candidate = transforms.get(t);
+            names[t] = candidate.name;
+            inverting[t] = candidate.inverting;
+            for (int cell = 0; cell < cells; cell++) {
+                cellMaps[t * cells + cell] = candidate.cellMap[cell];
+                inverseCellMaps[t * cells + candidate.cellMap[cell]] = cell;
+            }
+            firstSources[t] = inverseCellMaps[t * cells];
+            for (int move = 0; move < moves; move++) {
+                originalMoves[t * moves + candidate.movedMoves[move]] = move;
+                transformedMoves[t * moves + move] = candidate.movedMoves[move];
+            }
+        }
+        boolean hasInverting = false;
+        for (boolean transformInverts : inverting) {
+            hasInverting |= transformInverts;
+        }
+        this.hasInverting = hasInverting;
+    }
+    
+    /**
+     * Symmetries of the classic sliding puzzle, whose blank is the last tile with its home in the last cell
+     */
+    public static BoardSymmetries sliding(int size) {
+        int cells = size * size;
+        List<Candidate> valid = new ArrayList<>();
+        for (int orientation = 0; orientation < ORIENTATION_NAMES.length; orientation++) {
+            Candidate candidate = new Candidate(size, orientation, 0, 0, false);
+            if (candidate.cellMap[cells - 1] != cells - 1) {
+                continue;
+            }
+            // Rotations and mirrors keep neighbours neighbours, so blank moves map onto blank moves
+            candidate.movedMoves = new int[DIRECTION_XS.length];
+            int[] matrix = ORIENTATION_MATRICES[orientation];
+            for (int direction = 0; direction < DIRECTION_XS.length; direction++) {
+                int dx = matrix[0] * DIRECTION_XS[direction] + matrix[1] * DIRECTION_YS[direction];
+                int dy = matrix[2] * DIRECTION_XS[direction] + matrix[3] * DIRECTION_YS[direction];
+                for (int mapped = 0; mapped < DIRECTION_XS.length; mapped++) {
+                    if (DIRECTION_XS[mapped] == dx && DIRECTION_YS[mapped] == dy) {
+                        candidate.movedMoves[direction] = mapped;
+                    }
+                }
+            }
+            valid.add(candidate);
+        }
+        return new BoardSymmetries(size, valid, DIRECTION_XS.length);
+    }
+    
+    /**
+     * Finds every rotation, mirror and wrap-around translation, each also inverted, that maps the moves of a
+     * size x size board onto themselves
+     */
+    public static BoardSymmetries analyze(int size, PermutationGenerator[] generators) {
+        Map<Long, Integer> bySignature = new HashMap<>();
+        for (int g = 0; g < generators.length; g++) {
+            bySignature.put(signature(generators[g], null, false), g);
+        }
+        List<Candidate> valid = new ArrayList<>();
+        for (int inverted = 0; inverted < 2; inverted++) {
+            for (int orientation = 0; orientation < ORIENTATION_NAMES.length; orientation++) {
+                for (int dy = 0; dy < size; dy++) {
+                    for (int dx = 0; dx < size; dx++) {
+                        Candidate candidate = new Candidate(size, orientation, dx, dy, inverted == 1);
+                        candidate.movedMoves = new int[generators.length];
+                        boolean symmetric = true;
+                        for (int g = 0; g < generators.length && symmetric; g++) {
+                            Integer mapped = bySignature.get(
+                                signature(generators[g], candidate.cellMap, candidate.inverting));
+                            symmetric = mapped != null
+                                && conjugates(generators[g], candidate, generators[mapped]);
+                            if (symmetric) {
+                                candidate.movedMoves[g] = mapped;
+                            }
+                        }
+                        if (symmetric) {
+                            valid.add(candidate);
+                        }
+                    }
+                }
+            }
+        }
+        return new BoardSymmetries(size, valid, generators.length);
+    }
+    
+    public int getSize() { return size; }
+    
+    /**
+     * @return The number of transforms, including the identity
+     */
+    public int getCount() { return count; }
+    
+    /**
+     * @return A description such as "rotate 90 + shift 1,0 inverted"
+     */
+    public String getName(int transform) { return names[transform]; }
+    
+    /**
+     * @return Whether the transform swaps tiles and cells; only generator modes have such transforms
+     */
+    public boolean isInverting(int transform) { return inverting[transform]; }
+    
+    /**
+     * @return Where the transform moves a cell, which is also the id it gives the tile whose home that cell is
+     */
+    public int mapCell(int transform, int cell) { return cellMaps[transform * cells + cell]; }
+    
+    /**
+     * Writes the transformed state; out must not overlap state
+     */
+    public void apply(int transform, byte[] state, int offset, byte[] out, int outOffset) {
+        int base = transform * cells;
+        if (inverting[transform]) {
+            // out = s * state^-1 * s^-1: the tile whose home is s(c) sits at s(home of the tile in c)
+            for (int cell = 0; cell < cells; cell++) {
+                out[outOffset + cellMaps[base + state[offset + cell]]] = (byte) cellMaps[base + cell];
+            }
+        } else {
+            for (int cell = 0; cell < cells; cell++) {
+                out[outOffset + cellMaps[base + cell]] = (byte) cellMaps[base + state[offset + cell]];
+            }
+        }
+    }
+    
+    /**
+     * Writes the canonical representative of a state's class, the lexicographically smallest transformed state,
+     * to out, which must not overlap state
+     *
+     * @return The transform that maps the state to its representative
+     */
+    public int canonicalize(byte[] state, int offset, byte[] out, int outOffset) {
+        return canonicalize(state, offset, out, outOffset, true);
+    }
+    
+    /**
+     * Like {@link #canonicalize(byte[], int, byte[], int)}, optionally only over the transforms that do not invert.
+     * Those map every position on a solution's path onto the path of the transformed solution, which inverting
+     * transforms, reversing the solution, do not.
+     */
+    public int canonicalize(byte[] state, int offset, byte[] out, int outOffset, boolean withInverting) {
+        if (count == 1) {
+            System.arraycopy(state, offset, out, outOffset, cells);
+            return 0;
+        }
+        // Candidates are compared cell by cell as they are generated; most lose on the first cell or two.
+        // While comparing, out holds the inverse of the state for inverting transforms.
+        if (hasInverting && withInverting) {
+            for (int cell = 0; cell < cells; cell++) {
+                out[outOffset + state[offset + cell]] = (byte) cell;
+            }
+        }
+        int best = 0;
+        int bestFirst = transformedTile(0, state, offset, out, outOffset, 0);
+        for (int transform = 1; transform < count; transform++) {
+            if (inverting[transform] && !withInverting) {
+                continue;
+            }
+            int tile = inverting[transform]
+                ? out[outOffset + firstSources[transform]] : state[offset + firstSources[transform]];
+            int first = cellMaps[transform * cells + tile];
+            if (first != bestFirst) {
+                if (first < bestFirst) {
+                    best = transform;
+                    bestFirst = first;
+                }
+                continue;
+            }
+            for (int cell = 1; cell < cells; cell++) {
+                int candidate = transformedTile(transform, state, offset, out, outOffset, cell);
+                int current = transformedTile(best, state, offset, out, outOffset, cell);
+                if (candidate != current) {
+                    if (candidate < current) {
+                        best = transform;
+                    }
+                    break;
+                }
+            }
+        }
+        apply(best, state, offset, out, outOffset);
+        return best;
+    }
+    
+    /**
+     * @return The move of the transformed state that corresponds to a move of the original state. An inverting
+     * transform also reverses solutions, so the first move of one becomes the last move of the other.
+     */
+    public int toTransformedMove(int transform, int move) {
+        return transformedMoves[transform * moves + move];
+    }
+    
+    /**
+     * @return The move of the original state for a move of the transformed state, see {@link #toTransformedMove}
+     */
+    public int toOriginalMove(int transform, int move) {
+        return originalMoves[transform * moves + move];
+    }
+    
+    /**
+     * Turns a solution of the transformed state into a solution of the original state, in place. Moves are
+     * generator indices, or blank directions for the classic puzzle.
+     */
+    public void toOriginalSolution(int transform, int[] solution, int offset, int length) {
+        int base = transform * moves;
+        for (int i = offset; i < offset + length; i++) {
+            solution[i] = originalMoves[base + solution[i]];
+        }
+        if (inverting[transform]) {
+            // The inverse permutation is solved by the same moves in reverse order
+            for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+                int move = solution[i];
+                solution[i] = solution[j];
+                solution[j] = move;
+            }
+        }
+    }
+    
+    private int transformedTile(int transform, byte[] state, int offset, byte[] inverse, int inverseOffset, int cell) {
+        int base = transform * cells;
+        int source = inverseCellMaps[base + cell];
+        int tile = inverting[transform] ? inverse[inverseOffset + source] : state[offset + source];
+        return cellMaps[base + tile];
+    }
+    
+    /**
+     * @return Whether s * g * s^-1 (s * g^-1 * s^-1 when inverting) equals other
+     */
+    private static boolean conjugates(PermutationGenerator g, Candidate candidate, PermutationGenerator other) {
+        if (g.getMovedCellCount() != other.getMovedCellCount()) {
+            return false;
+        }
+        for (int cell : g.getCycleCells()) {
+            int from = candidate.cellMap[cell];
+            int to = candidate.cellMap[g.getDestination(cell)];
+            if (candidate.inverting ? other.getDestination(to) != from : other.getDestination(from) != to) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Order-independent hash of the moved cells of s * g * s^-1 (or s * g^-1 * s^-1), so conjugates are found
+     * without comparing every pair of generators
+     */
+    private static long signature(PermutationGenerator g, int[] cellMap, boolean inverting) {
+        long signature = 0;
+        for (int cell : g.getCycleCells()) {
+            int from = cellMap != null ? cellMap[cell] : cell;
+            int to = cellMap != null ? cellMap[g.getDestination(cell)] : g.getDestination(cell);
+            long pair = inverting ? ((long) to << 32) | from : ((long) from << 32) | to;
+            long mixed = pair * 0x9E3779B97F4A7C15L;
+            signature += mixed ^ (mixed >>> 29);
+        }
+        return signature;
+    }
+    
+    /**
+     * A rotation or mirror of the board followed by a wrap-around translation
+     */
+    private static final class Candidate {
+        final String name;
+        final boolean inverting;
+        final int[] cellMap;
+        int[] movedMoves; // Index of the move each move maps to
+        
+        Candidate(int size, int orientation, int dx, int dy, boolean inverting) {
+            this.inverting = inverting;
+            this.name = ORIENTATION_NAMES[orientation] + (dx != 0 || dy != 0 ? " + shift " + dx + "," + dy : "")
+                + (inverting ? " inverted" : "");
+            cellMap = new int[size * size];
+            int[] matrix = ORIENTATION_MATRICES[orientation];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    // Orient about the board's centre, doubled to stay in integers
+                    int cx = 2 * x - (size - 1);
+                    int cy = 2 * y - (size - 1);
+                    int ox = (matrix[0] * cx + matrix[1] * cy + size - 1) / 2;
+                    int oy = (matrix[2] * cx + matrix[3] * cy + size - 1) / 2;
+                    cellMap[y * size + x] = ((oy + dy) % size) * size + (ox + dx) % size;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.tileshifter.perm;
+
+/**
+ * A sequence of moves composed into the single permutation of the cells it amounts to
+ *
+ * Appending a generator costs only the cells it moves, and appending another sequence costs one pass over the
+ * cells, however many moves either holds. {@link #power(long)} repeats a sequence by squaring, so a macro
+ * applied a million times takes about 20 compositions. {@link #compile(String)} turns the net permutation back
+ * into a {@link PermutationGenerator}, which a board or state array applies in one pass.
+ *
+ * Sequences are mutable and not thread-safe; {@link #copy()} them to share.
+ */
+public final class MoveSequence {
+    private final int size;
+    private final int[] sources;
+    private PermutationGenerator compiled;
+    
+    /**
+     * Creates the empty sequence for a board of the given size
+     */
+    public MoveSequence(int size) {
+        this.size = size;
+        sources = new int[size * size];
+        for (int cell = 0; cell < sources.length; cell++) {
+            sources[cell] = cell;
+        }
+    }
+    
+    private MoveSequence(int size, int[] sources) {
+        this.size = size;
+        this.sources = sources;
+    }
+    
+    public int getSize() { return size; }
+    
+    /**
+     * @return The cell whose tile ends up in the given cell after the whole sequence
+     */
+    public int getSource(int cell) { return sources[cell]; }
+    
+    /**
+     * @return Whether the sequence leaves every tile where it started
+     */
+    public boolean isIdentity() {
+        for (int cell = 0; cell < sources.length; cell++) {
+            if (sources[cell] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Appends one move
+     * @return this sequence
+     */
+    public MoveSequence then(PermutationGenerator generator) {
+        checkSize(generator.getSize());
+        // Tracking where each cell's tile came from means a move only touches the cells it moves
+        int[] cells = generator.getCycleCells();
+        int start = 0;
+        for (int end : generator.getCycleEnds()) {
+            int carried = sources[cells[end - 1]];
+            for (int i = end - 1; i > start; i--) {
+                sources[cells[i]] = sources[cells[i - 1]];
+            }
+            sources[cells[start]] = carried;
+            start = end;
+        }
+        compiled = null;
+        return this;
+    }
+    
+    /**
+     * Appends a swap of two cells, e.g. a sliding move of the blank
+     * @return this sequence
+     */
+    public MoveSequence thenSwap(int cellA, int cellB) {
+        int source = sources[cellA];
+        sources[cellA] = sources[cellB];
+        sources[cellB] = source;
+        compiled = null;
+        return this;
+    }
+    
+    /**
+     * Appends every move of another sequence
+     * @return this sequence
+     */
+    public MoveSequence then(MoveSequence other) {
+        checkSize(other.size);
+        int[] combined = new int[sources.length];
+        for (int cell = 0; cell < combined.length; cell++) {
+            combined[cell] = sources[other.sources[cell]];
+        }
+        System.arraycopy(combined, 0, sources, 0, combined.length);
+        compiled = null;
+        return this;
+    }
+    
+    /**
+     * @return A new sequence that repeats this one the given number of times
+     */
+    public MoveSequence power(long times) {
+        if (times < 0) {
+            return inverse().power(-times);
+        }
+        MoveSequence result = new MoveSequence(size);
+        MoveSequence square = copy();
+        // Powers of one permutation commute, so the squares can be multiplied in in any order
+        while (times > 0) {
+            if ((times & 1) != 0) {
+                result.then(square);
+            }
+            times >>>= 1;
+            if (times > 0) {
+                square.then(square);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return A new sequence that undoes this one
+     */
+    public MoveSequence inverse() {
+        int[] inverse = new int[sources.length];
+        for (int cell = 0; cell < inverse.length; cell++) {
+            inverse[sources[cell]] = cell;
+        }
+        return new MoveSequence(size, inverse);
+    }
+    
+    public MoveSequence copy() {
+        return new MoveSequence(size, sources.clone());
+    }
+    
+    /**
+     * Compiles the net permutation into cycles. The result is cached until the sequence changes.
+     */
+    public PermutationGenerator compile(String name) {
+        if (compiled == null || !compiled.getName().equals(name)) {
+            int[] destinations = new int[sources.length];
+            for (int cell = 0; cell < destinations.length; cell++) {
+                destinations[sources[cell]] = cell;
+            }
+            compiled = new PermutationGenerator(name, size, destinations);
+        }
+        return compiled;
+    }
+    
+    /**
+     * Applies the whole sequence to a state array (tile id per cell, see
+     * {@link com.tileshifter.PuzzleBoard#getState(byte[])})
+     */
+    public void apply(byte[] state, int offset) {
+        compile("sequence").apply(state, offset);
+    }
+    
+    private void checkSize(int otherSize) {
+        if (otherSize != size) {
+            throw new IllegalArgumentException("Move for a " + otherSize + "x" + otherSize + " board in a "
+                + size + "x" + size + " sequence");
+        }
+    }
+}
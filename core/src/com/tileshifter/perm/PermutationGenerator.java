@@ -0,0 +1,149 @@
+package com.tileshifter.perm;
+
+import java.util.Arrays;
+
+/**
+ * One move of a puzzle mode, expressed as a permutation of the board's cells and compiled into cycles
+ * 
+ * The permutation is given as the destination of the tile in each cell (cell index y * size + x). Cells that do
+ * not move are dropped, and the rest are stored as flat cycle tables: {@link #getCycleCells()} lists every cycle
+ * in tile-movement order (the tile in each cell moves to the next cell of its cycle, and the last one wraps to the
+ * first) and {@link #getCycleEnds()} marks where each cycle ends. The x and y of every listed cell are
+ * precomputed so 2D boards can apply a move without dividing.
+ */
+public final class PermutationGenerator {
+    private final String name;
+    private final int size;
+    private final int[] destinations;
+    private final int[] cycleCells;
+    private final int[] cycleEnds;
+    private final int[] cycleXs;
+    private final int[] cycleYs;
+    
+    /**
+     * @param destinations destinations[cell] is the cell the tile in cell moves to; must be a permutation
+     */
+    public PermutationGenerator(String name, int size, int[] destinations) {
+        int cells = size * size;
+        if (destinations.length != cells) {
+            throw new IllegalArgumentException(name + ": expected " + cells + " destinations, got " + destinations.length);
+        }
+        boolean[] seen = new boolean[cells];
+        for (int destination : destinations) {
+            if (destination < 0 || destination >= cells || seen[destination]) {
+                throw new IllegalArgumentException(name + ": destinations are not a permutation of the cells");
+            }
+            seen[destination] = true;
+        }
+        this.name = name;
+        this.size = size;
+        this.destinations = destinations.clone();
+        
+        int[] cycleCells = new int[cells];
+        int[] cycleEnds = new int[cells / 2];
+        int cellCount = 0;
+        int cycleCount = 0;
+        boolean[] visited = new boolean[cells];
+        for (int start = 0; start < cells; start++) {
+            if (visited[start] || destinations[start] == start) {
+                continue;
+            }
+            for (int cell = start; !visited[cell]; cell = destinations[cell]) {
+                visited[cell] = true;
+                cycleCells[cellCount++] = cell;
+            }
+            cycleEnds[cycleCount++] = cellCount;
+        }
+        this.cycleCells = Arrays.copyOf(cycleCells, cellCount);
+        this.cycleEnds = Arrays.copyOf(cycleEnds, cycleCount);
+        cycleXs = new int[cellCount];
+        cycleYs = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cycleXs[i] = this.cycleCells[i] % size;
+            cycleYs[i] = this.cycleCells[i] / size;
+        }
+    }
+    
+    public String getName() { return name; }
+    public int getSize() { return size; }
+    
+    /**
+     * @return The destination cell of the tile in the given cell
+     */
+    public int getDestination(int cell) { return destinations[cell]; }
+    
+    /** Cells of all cycles back to back; do not modify */
+    public int[] getCycleCells() { return cycleCells; }
+    
+    /** Exclusive end index in {@link #getCycleCells()} of each cycle; do not modify */
+    public int[] getCycleEnds() { return cycleEnds; }
+    
+    /** x of each entry in {@link #getCycleCells()}; do not modify */
+    public int[] getCycleXs() { return cycleXs; }
+    
+    /** y of each entry in {@link #getCycleCells()}; do not modify */
+    public int[] getCycleYs() { return cycleYs; }
+    
+    /**
+     * @return Number of cells whose tile is moved
+     */
+    public int getMovedCellCount() { return cycleCells.length; }
+    
+    /**
+     * @return Whether this move is odd, i.e. an odd number of swaps
+     */
+    public boolean isOdd() {
+        // A cycle of length L is L-1 swaps
+        return ((cycleCells.length - cycleEnds.length) & 1) == 1;
+    }
+    
+    /**
+     * Applies the move to a state array (tile id per cell, see {@link com.tileshifter.PuzzleBoard#getState(byte[])})
+     */
+    public void apply(byte[] state, int offset) {
+        int start = 0;
+        for (int end : cycleEnds) {
+            byte carried = state[offset + cycleCells[end - 1]];
+            for (int i = end - 1; i > start; i--) {
+                state[offset + cycleCells[i]] = state[offset + cycleCells[i - 1]];
+            }
+            state[offset + cycleCells[start]] = carried;
+            start = end;
+        }
+    }
+    
+    /**
+     * Undoes the move on a state array
+     */
+    public void applyInverse(byte[] state, int offset) {
+        int start = 0;
+        for (int end : cycleEnds) {
+            byte carried = state[offset + cycleCells[start]];
+            for (int i = start; i < end - 1; i++) {
+                state[offset + cycleCells[i]] = state[offset + cycleCells[i + 1]];
+            }
+            state[offset + cycleCells[end - 1]] = carried;
+            start = end;
+        }
+    }
+    
+    /**
+     * @return Whether applying this move and then other leaves every tile in place
+     */
+    public boolean isInverseOf(PermutationGenerator other) {
+        if (other.size != size) {
+            return false;
+        }
+        for (int cell = 0; cell < destinations.length; cell++) {
+            if (other.destinations[destinations[cell]] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
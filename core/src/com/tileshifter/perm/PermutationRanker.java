@@ -0,0 +1,228 @@
+package com.tileshifter.perm;
+
+import java.util.Arrays;
+
+/**
+ * Maps permutations and partial permutations to dense integers in lexicographic order and back
+ * 
+ * A ranker for k of n elements ranks sequences of k distinct values from 0 to n-1, read from a byte array.
+ * With k == n these are full permutations (ROTATE and SHIFT boards, where value i at index c means tile i
+ * sits in cell c). With k < n they are partial permutations, e.g. the cells of the k tiles of a pattern.
+ * 
+ * Both directions are a single pass over the k entries. Ranking computes each Lehmer digit with one
+ * popcount of the already-used values; unranking splits the rank into digits using precomputed reciprocals of the radixes, then
+ * takes each digit-th unused value from a nibble list (up to 16 elements) or with a per-byte popcount and a
+ * 256-entry select table. Digit weights are precomputed. Nothing is allocated after
+ * construction and instances are immutable, so one ranker can be shared by many threads.
+ * 
+ * Ranks are longs, so n is limited to 64 and the number of ranks to at most 2^63 - 1 (20! for full permutations).
+ */
+public final class PermutationRanker {
+    public static final int MAX_ELEMENTS = 64;
+    
+    /** SELECT_IN_BYTE[b * 8 + i] is the position of the i-th set bit of byte b */
+    static final byte[] SELECT_IN_BYTE = new byte[256 * 8];
+    
+    /** Values 0 to 15 packed as nibbles; removing nibble i keeps the rest in order */
+    static final long IDENTITY_NIBBLES = 0xFEDCBA9876543210L;
+    
+    /** Digit chunks are kept below 2^CHUNK_BITS so RECIPROCALS give exact quotients (x * error < 2^RECIPROCAL_SHIFT) */
+    private static final int CHUNK_BITS = 24;
+    private static final int RECIPROCAL_SHIFT = 31;
+    
+    /** RECIPROCALS[d] = ceil(2^RECIPROCAL_SHIFT / d), so (x * RECIPROCALS[d]) >>> RECIPROCAL_SHIFT == x / d */
+    private static final long[] RECIPROCALS = new long[MAX_ELEMENTS + 1];
+    
+    static {
+        for (int d = 1; d <= MAX_ELEMENTS; d++) {
+            RECIPROCALS[d] = ((1L << RECIPROCAL_SHIFT) + d - 1) / d;
+        }
+        for (int b = 0; b < 256; b++) {
+            int i = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((b & (1 << bit)) != 0) {
+                    SELECT_IN_BYTE[b * 8 + i++] = (byte) bit;
+                }
+            }
+        }
+    }
+    
+    private final int n;
+    private final int k;
+    private final long[] weights; // weights[i] = (n-1-i)! / (n-k)!, the number of ranks per digit step at index i
+    private final long rankCount;
+    private final int[] chunkStarts; // Digit index where each chunk starts, last chunk first
+    private final long[] chunkWeights; // Product of the radixes of each chunk's digits
+    
+    private PermutationRanker(int n, int k) {
+        if (n < 1 || n > MAX_ELEMENTS || k < 1 || k > n) {
+            throw new IllegalArgumentException("Cannot rank " + k + " of " + n + " elements");
+        }
+        this.n = n;
+        this.k = k;
+        weights = new long[k];
+        long weight = 1;
+        try {
+            for (int i = k - 1; i >= 0; i--) {
+                weights[i] = weight;
+                weight = Math.multiplyExact(weight, n - i);
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Ranks of " + k + " of " + n + " elements do not fit in a long");
+        }
+        rankCount = weight;
+        
+        // Cut the digits, from the last one backwards, into chunks whose radix product stays below 2^CHUNK_BITS
+        int[] starts = new int[k];
+        long[] chunkProducts = new long[k];
+        int chunks = 0;
+        int end = k;
+        while (end > 0) {
+            int start = end;
+            long product = 1;
+            while (start > 0 && product * (n - start + 1) < (1L << CHUNK_BITS)) {
+                start--;
+                product *= n - start;
+            }
+            starts[chunks] = start;
+            chunkProducts[chunks++] = product;
+            end = start;
+        }
+        chunkStarts = Arrays.copyOf(starts, chunks);
+        chunkWeights = Arrays.copyOf(chunkProducts, chunks);
+    }
+    
+    /**
+     * @return A ranker for full permutations of n elements
+     */
+    public static PermutationRanker full(int n) {
+        return new PermutationRanker(n, n);
+    }
+    
+    /**
+     * @return A ranker for sequences of k distinct values out of n
+     */
+    public static PermutationRanker partial(int n, int k) {
+        return new PermutationRanker(n, k);
+    }
+    
+    public int getElementCount() { return n; }
+    public int getLength() { return k; }
+    
+    /**
+     * @return The number of distinct ranks, n! / (n-k)!
+     */
+    public long getRankCount() { return rankCount; }
+    
+    /**
+     * Ranks the k values starting at offset; values are read as unsigned bytes
+     */
+    public long rank(byte[] values, int offset) {
+        long used = 0;
+        long rank = 0;
+        for (int i = 0; i < k; i++) {
+            int value = values[offset + i] & 0xFF;
+            long bit = 1L << value;
+            // Lehmer digit: how many smaller values are still unused
+            int digit = value - Long.bitCount(used & (bit - 1));
+            rank += digit * weights[i];
+            used |= bit;
+        }
+        return rank;
+    }
+    
+    /**
+     * Writes the k values with the given rank starting at offset
+     */
+    public void unrank(long rank, byte[] values, int offset) {
+        decodeDigits(rank, values, offset);
+        if (n <= 16) {
+            // Remaining values as a nibble list: take the digit-th nibble and close the gap
+            long remaining = IDENTITY_NIBBLES;
+            for (int i = 0; i < k; i++) {
+                int shift = values[offset + i] << 2;
+                values[offset + i] = (byte) ((remaining >>> shift) & 0xF);
+                long lowMask = (1L << shift) - 1;
+                remaining = (remaining & lowMask) | ((remaining >>> 4) & ~lowMask);
+            }
+        } else {
+            long free = n == 64 ? -1L : (1L << n) - 1;
+            for (int i = 0; i < k; i++) {
+                int value = selectBit(free, values[offset + i]);
+                values[offset + i] = (byte) value;
+                free &= ~(1L << value);
+            }
+        }
+    }
+    
+    /**
+     * Ranks count sequences stored back to back (k bytes each) starting at values[offset]
+     */
+    public void rankAll(byte[] values, int offset, long[] ranks, int rankOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            ranks[rankOffset + i] = rank(values, offset + i * k);
+        }
+    }
+    
+    /**
+     * Unranks count ranks into sequences stored back to back (k bytes each) starting at values[offset]
+     */
+    public void unrankAll(long[] ranks, int rankOffset, byte[] values, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            unrank(ranks[rankOffset + i], values, offset + i * k);
+        }
+    }
+    
+    /**
+     * Unranks the consecutive ranks first, first+1, ... into sequences stored back to back, as table builders
+     * that walk the whole rank space need
+     */
+    public void unrankRange(long first, byte[] values, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            unrank(first + i, values, offset + i * k);
+        }
+    }
+    
+    /**
+     * Writes the k Lehmer digits of a rank into digits[offset..offset+k); the digit at index i has radix n-i.
+     * One long division per chunk splits the rank into chunks below 2^24, whose digits are then peeled off
+     * with multiplications by precomputed reciprocals instead of divisions.
+     */
+    void decodeDigits(long rank, byte[] digits, int offset) {
+        for (int c = 0; c < chunkStarts.length; c++) {
+            int start = chunkStarts[c];
+            int end = c == 0 ? k : chunkStarts[c - 1];
+            long chunk;
+            if (start == 0) {
+                chunk = rank;
+            } else {
+                long weight = chunkWeights[c];
+                long quotient = rank / weight;
+                chunk = rank - quotient * weight;
+                rank = quotient;
+            }
+            for (int i = end - 1; i >= start; i--) {
+                int radix = n - i;
+                long quotient = (chunk * RECIPROCALS[radix]) >>> RECIPROCAL_SHIFT;
+                digits[offset + i] = (byte) (chunk - quotient * radix);
+                chunk = quotient;
+            }
+        }
+    }
+    
+    /**
+     * @return Position of the index-th (0-based) set bit of mask
+     */
+    static int selectBit(long mask, int index) {
+        int shift = 0;
+        while (true) {
+            int b = (int) (mask >>> shift) & 0xFF;
+            int count = Integer.bitCount(b);
+            if (index < count) {
+                return shift + SELECT_IN_BYTE[b * 8 + index];
+            }
+            index -= count;
+            shift += 8;
+        }
+    }
+}
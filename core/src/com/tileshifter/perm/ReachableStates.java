@@ -0,0 +1,400 @@
+package com.tileshifter.perm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The set of board states a puzzle mode can reach from the solved board, with an O(cells) membership test and
+ * O(cells) uniform sampling
+ *
+ * States are tile ids per cell as in {@link com.tileshifter.PuzzleBoard#getState(byte[])}. For a mode made of
+ * permutation generators the reachable states are the group the generators generate, which {@link #analyze}
+ * characterizes once per mode:
+ * - Cells no generator moves always hold their own tile; the rest are the support.
+ * - Supports of up to {@value #MAX_LISTED_CELLS} cells are enumerated outright ({@link Kind#LISTED}).
+ * - Otherwise, if the generators act 2-transitively on the support and some short word has a power that is a
+ *   p-cycle with p prime and at most support - 3, Jordan's theorem says the group contains every even
+ *   permutation of the support. It then holds every permutation if some generator is odd
+ *   ({@link Kind#SYMMETRIC}), else exactly the even ones ({@link Kind#ALTERNATING}).
+ * - If neither applies the mode is {@link Kind#UNKNOWN}, and callers must fall back to random moves.
+ *
+ * The classic sliding puzzle is {@link Kind#SLIDING}: a state is reachable when its parity, counting the blank,
+ * matches the parity of the blank's distance from its home cell.
+ */
+public final class ReachableStates {
+    /** Largest support that is enumerated rather than proven to be a full symmetric or alternating group */
+    public static final int MAX_LISTED_CELLS = 8;
+    private static final int MAX_LISTED_BOARD_CELLS = 20; // Listed states are full ranks, and 20! fits a long
+    
+    public enum Kind {
+        SYMMETRIC,   // Every permutation of the support
+        ALTERNATING, // Every even permutation of the support
+        LISTED,      // Small group, every member listed
+        SLIDING,     // Classic sliding puzzle with the blank
+        UNKNOWN      // Could not be characterized
+    }
+    
+    private final Kind kind;
+    private final int size;
+    private final int cells;
+    private final int[] support;
+    private final PermutationRanker listedRanker;
+    private final long[] listedRanks; // Sorted
+    
+    private ReachableStates(Kind kind, int size, int[] support, PermutationRanker listedRanker, long[] listedRanks) {
+        this.kind = kind;
+        this.size = size;
+        this.cells = size * size;
+        this.support = support;
+        this.listedRanker = listedRanker;
+        this.listedRanks = listedRanks;
+    }
+    
+    /**
+     * Reachable states of the classic sliding puzzle, whose blank is tile size * size - 1 with home in the last cell
+     */
+    public static ReachableStates sliding(int size) {
+        int[] support = new int[size * size];
+        for (int cell = 0; cell < support.length; cell++) {
+            support[cell] = cell;
+        }
+        return new ReachableStates(Kind.SLIDING, size, support, null, null);
+    }
+    
+    /**
+     * Characterizes the group generated by the given moves of a size x size board
+     */
+    public static ReachableStates analyze(int size, PermutationGenerator[] generators) {
+        int cells = size * size;
+        boolean[] moved = new boolean[cells];
+        int supportSize = 0;
+        for (PermutationGenerator generator : generators) {
+            for (int cell : generator.getCycleCells()) {
+                if (!moved[cell]) {
+                    moved[cell] = true;
+                    supportSize++;
+                }
+            }
+        }
+        int[] support = new int[supportSize];
+        for (int cell = 0, i = 0; cell < cells; cell++) {
+            if (moved[cell]) {
+                support[i++] = cell;
+            }
+        }
+        
+        if (supportSize <= MAX_LISTED_CELLS && cells <= MAX_LISTED_BOARD_CELLS) {
+            PermutationRanker ranker = PermutationRanker.full(cells);
+            return new ReachableStates(Kind.LISTED, size, support, ranker, listGroup(ranker, generators));
+        }
+        
+        int[][] destinations = new int[generators.length][cells];
+        boolean anyOdd = false;
+        for (int g = 0; g < generators.length; g++) {
+            for (int cell = 0; cell < cells; cell++) {
+                destinations[g][cell] = generators[g].getDestination(cell);
+            }
+            anyOdd |= generators[g].isOdd();
+        }
+        if (isTwoTransitive(support, destinations) && hasPrimeCycleWord(supportSize, destinations)) {
+            return new ReachableStates(anyOdd ? Kind.SYMMETRIC : Kind.ALTERNATING, size, support, null, null);
+        }
+        return new ReachableStates(Kind.UNKNOWN, size, support, null, null);
+    }
+    
+    public Kind getKind() { return kind; }
+    public int getSize() { return size; }
+    
+    /**
+     * @return Whether {@link #isReachable} and {@link #sample} are available
+     */
+    public boolean isCharacterized() {
+        return kind != Kind.UNKNOWN;
+    }
+    
+    /**
+     * @return Whether the state can be reached from the solved board; false if it is not a permutation of the tiles
+     * @throws IllegalStateException if the reachable states are {@link Kind#UNKNOWN}
+     */
+    public boolean isReachable(byte[] state, int offset) {
+        switch (kind) {
+            case LISTED:
+                return isPermutation(state, offset)
+                    && Arrays.binarySearch(listedRanks, listedRanker.rank(state, offset)) >= 0;
+            case SLIDING: {
+                if (!isPermutation(state, offset)) {
+                    return false;
+                }
+                int blankCell = indexOfBlank(state, offset);
+                return isOdd(state, offset) == ((blankDistance(blankCell) & 1) == 1);
+            }
+            case SYMMETRIC:
+            case ALTERNATING:
+                if (!isPermutation(state, offset)) {
+                    return false;
+                }
+                if (support.length < cells) {
+                    int s = 0;
+                    for (int cell = 0; cell < cells; cell++) {
+                        if (s < support.length && support[s] == cell) {
+                            s++;
+                        } else if ((state[offset + cell] & 0xFF) != cell) {
+                            return false; // Only the support moves
+                        }
+                    }
+                }
+                return kind == Kind.SYMMETRIC || !isOdd(state, offset);
+            default:
+                throw new IllegalStateException("Reachable states are not characterized");
+        }
+    }
+    
+    /**
+     * Writes a uniformly random reachable state
+     * @throws IllegalStateException if the reachable states are {@link Kind#UNKNOWN}
+     */
+    public void sample(Random random, byte[] state, int offset) {
+        if (kind == Kind.UNKNOWN) {
+            throw new IllegalStateException("Reachable states are not characterized");
+        }
+        if (kind == Kind.LISTED) {
+            listedRanker.unrank(listedRanks[random.nextInt(listedRanks.length)], state, offset);
+            return;
+        }
+        
+        for (int cell = 0; cell < cells; cell++) {
+            state[offset + cell] = (byte) cell;
+        }
+        // Fisher-Yates over the support; every swap of two different cells flips the parity
+        boolean odd = false;
+        for (int i = support.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            if (j != i) {
+                byte tile = state[offset + support[i]];
+                state[offset + support[i]] = state[offset + support[j]];
+                state[offset + support[j]] = tile;
+                odd = !odd;
+            }
+        }
+        
+        // Swapping the tiles of two fixed cells maps the wrong-parity states one to one onto the right-parity ones
+        int swapA = support[0];
+        int swapB = support[1];
+        boolean wantOdd = odd;
+        if (kind == Kind.ALTERNATING) {
+            wantOdd = false;
+        } else if (kind == Kind.SLIDING) {
+            int blankCell = indexOfBlank(state, offset);
+            wantOdd = (blankDistance(blankCell) & 1) == 1;
+            // Leave the blank alone so the swap does not change its distance
+            swapA = blankCell == 0 ? 1 : 0;
+            swapB = blankCell == swapA + 1 ? swapA + 2 : swapA + 1;
+        }
+        if (odd != wantOdd) {
+            byte tile = state[offset + swapA];
+            state[offset + swapA] = state[offset + swapB];
+            state[offset + swapB] = tile;
+        }
+    }
+    
+    private int indexOfBlank(byte[] state, int offset) {
+        for (int cell = 0; cell < cells; cell++) {
+            if ((state[offset + cell] & 0xFF) == cells - 1) { // Tile ids from 128 on are negative bytes
+                return cell;
+            }
+        }
+        return -1;
+    }
+    
+    private int blankDistance(int blankCell) {
+        return (size - 1 - blankCell % size) + (size - 1 - blankCell / size);
+    }
+    
+    private boolean isPermutation(byte[] state, int offset) {
+        boolean[] seen = new boolean[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = state[offset + cell] & 0xFF;
+            if (tile >= cells || seen[tile]) {
+                return false;
+            }
+            seen[tile] = true;
+        }
+        return true;
+    }
+    
+    /**
+     * @return Whether a permutation of the cells is odd, from its cycle count
+     */
+    private boolean isOdd(byte[] state, int offset) {
+        boolean[] visited = new boolean[cells];
+        int cycles = 0;
+        for (int start = 0; start < cells; start++) {
+            if (!visited[start]) {
+                cycles++;
+                for (int cell = start; !visited[cell]; cell = state[offset + cell] & 0xFF) {
+                    visited[cell] = true;
+                }
+            }
+        }
+        return ((cells - cycles) & 1) == 1;
+    }
+    
+    /**
+     * Breadth-first enumeration of a small group, as ranks of the states it reaches
+     */
+    private static long[] listGroup(PermutationRanker ranker, PermutationGenerator[] generators) {
+        int cells = ranker.getLength();
+        byte[] state = new byte[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            state[cell] = (byte) cell;
+        }
+        Set<Long> seen = new HashSet<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        long identity = ranker.rank(state, 0);
+        seen.add(identity);
+        queue.add(identity);
+        while (!queue.isEmpty()) {
+            long rank = queue.poll();
+            for (PermutationGenerator generator : generators) {
+                ranker.unrank(rank, state, 0);
+                generator.apply(state, 0);
+                Long next = ranker.rank(state, 0);
+                if (seen.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        long[] ranks = new long[seen.size()];
+        int i = 0;
+        for (Long rank : seen) {
+            ranks[i++] = rank;
+        }
+        Arrays.sort(ranks);
+        return ranks;
+    }
+    
+    /**
+     * @return Whether the generators can take the first two support cells to any ordered pair of support cells
+     */
+    private static boolean isTwoTransitive(int[] support, int[][] destinations) {
+        int n = support.length;
+        if (n < 2) {
+            return false;
+        }
+        int cells = destinations[0].length;
+        int[] index = new int[cells];
+        for (int i = 0; i < n; i++) {
+            index[support[i]] = i;
+        }
+        boolean[] seen = new boolean[n * n];
+        int[] queue = new int[n * (n - 1)];
+        int head = 0;
+        int tail = 0;
+        seen[1] = true;
+        queue[tail++] = 1; // Pair (0, 1) as a * n + b
+        while (head < tail) {
+            int pair = queue[head++];
+            int a = support[pair / n];
+            int b = support[pair % n];
+            for (int[] destination : destinations) {
+                int next = index[destination[a]] * n + index[destination[b]];
+                if (!seen[next]) {
+                    seen[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail == n * (n - 1);
+    }
+    
+    /**
+     * Looks among the generators, their pairwise products and their commutators for a permutation with exactly one
+     * cycle of some prime length p <= supportSize - 3 and no other cycle length divisible by p; raising it to the
+     * other cycles' common multiple leaves a p-cycle.
+     */
+    private static boolean hasPrimeCycleWord(int supportSize, int[][] destinations) {
+        int cells = destinations[0].length;
+        int[] word = new int[cells];
+        int[] inverseA = new int[cells];
+        int[] inverseB = new int[cells];
+        int[] cycleLengths = new int[cells];
+        boolean[] visited = new boolean[cells];
+        for (int[] generator : destinations) {
+            if (hasPrimeCycle(generator, supportSize, cycleLengths, visited)) {
+                return true;
+            }
+        }
+        for (int[] a : destinations) {
+            invert(a, inverseA);
+            for (int[] b : destinations) {
+                if (a == b) {
+                    continue;
+                }
+                for (int cell = 0; cell < cells; cell++) {
+                    word[cell] = b[a[cell]];
+                }
+                if (hasPrimeCycle(word, supportSize, cycleLengths, visited)) {
+                    return true;
+                }
+                invert(b, inverseB);
+                for (int cell = 0; cell < cells; cell++) {
+                    word[cell] = inverseB[inverseA[b[a[cell]]]];
+                }
+                if (hasPrimeCycle(word, supportSize, cycleLengths, visited)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static void invert(int[] permutation, int[] inverse) {
+        for (int cell = 0; cell < permutation.length; cell++) {
+            inverse[permutation[cell]] = cell;
+        }
+    }
+    
+    private static boolean hasPrimeCycle(int[] permutation, int supportSize, int[] cycleLengths, boolean[] visited) {
+        Arrays.fill(visited, false);
+        int cycleCount = 0;
+        for (int start = 0; start < permutation.length; start++) {
+            if (!visited[start] && permutation[start] != start) {
+                int length = 0;
+                for (int cell = start; !visited[cell]; cell = permutation[cell]) {
+                    visited[cell] = true;
+                    length++;
+                }
+                cycleLengths[cycleCount++] = length;
+            }
+        }
+        for (int i = 0; i < cycleCount; i++) {
+            int p = cycleLengths[i];
+            if (p > supportSize - 3 || !isPrime(p)) {
+                continue;
+            }
+            boolean unique = true;
+            for (int j = 0; j < cycleCount && unique; j++) {
+                unique = j == i || cycleLengths[j] % p != 0;
+            }
+            if (unique) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isPrime(int n) {
+        if (n < 2) {
+            return false;
+        }
+        for (int d = 2; d * d <= n; d++) {
+            if (n % d == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+package com.tileshifter.perm;
+
+/**
+ * Perfect hash for the solvable states of a classic sliding puzzle, numbered 0 to n!/2 - 1
+ * 
+ * A state is a byte array with one entry per cell (index y * size + x) holding the id of the tile in that
+ * cell, where tile id c belongs in cell c and the blank is id n-1 (its goal is the bottom-right cell).
+ * Only half of the n! arrangements can be reached from the goal, so ranking the full permutation would
+ * waste half of every table indexed by rank.
+ * 
+ * The rank is blankCell * (n-1)!/2 plus the rank of the other tiles read in cell order. A move swaps the blank
+ * with a neighbour, flipping both the permutation parity and the parity of the blank's distance from its goal,
+ * so the parity of the other tiles' order is fixed by the blank cell. Their last two tiles therefore follow
+ * from the first n-3 and are not part of the rank.
+ */
+public final class SolvableStateRanker {
+    private final int size;
+    private final int n;
+    private final int blank;
+    private final PermutationRanker prefixRanker; // First n-3 of the n-1 non-blank tiles
+    private final long ranksPerBlankCell;
+    private final byte[] requiredParity; // Parity of the non-blank tiles' order for each blank cell
+    
+    /**
+     * @param size Board width and height, at least 2
+     */
+    public SolvableStateRanker(int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("Board size must be at least 2, got " + size);
+        }
+        this.size = size;
+        n = size * size;
+        blank = n - 1;
+        prefixRanker = n - 3 > 0 ? PermutationRanker.partial(n - 1, n - 3) : null;
+        ranksPerBlankCell = prefixRanker == null ? 1 : prefixRanker.getRankCount();
+        if (ranksPerBlankCell > Long.MAX_VALUE / n) {
+            throw new IllegalArgumentException("Ranks of a " + size + "x" + size + " board do not fit in a long");
+        }
+        
+        requiredParity = new byte[n];
+        for (int cell = 0; cell < n; cell++) {
+            int distance = (size - 1 - cell % size) + (size - 1 - cell / size);
+            // Moving the blank from the end of the sequence to its cell takes n-1-cell transpositions
+            requiredParity[cell] = (byte) ((distance + n - 1 - cell) & 1);
+        }
+    }
+    
+    public int getSize() { return size; }
+    
+    /**
+     * @return The number of solvable states, n!/2
+     */
+    public long getRankCount() { return ranksPerBlankCell * n; }
+    
+    /**
+     * @return Whether the state starting at offset can be reached from the goal
+     */
+    public boolean isSolvable(byte[] state, int offset) {
+        int blankCell = -1;
+        long used = 0;
+        int parity = 0;
+        for (int cell = 0; cell < n; cell++) {
+            int value = state[offset + cell] & 0xFF;
+            if (value == blank) {
+                blankCell = cell;
+                continue;
+            }
+            long bit = 1L << value;
+            parity += value - Long.bitCount(used & (bit - 1));
+            used |= bit;
+        }
+        return (parity & 1) == requiredParity[blankCell];
+    }
+    
+    /**
+     * Ranks a solvable state starting at offset; the result for an unsolvable state is the rank of the
+     * solvable state with its last two non-blank tiles swapped
+     */
+    public long rank(byte[] state, int offset) {
+        int blankCell = -1;
+        long used = 0;
+        long prefixRank = 0;
+        int index = 0;
+        int limit = n - 3;
+        for (int cell = 0; cell < n && (index < limit || blankCell < 0); cell++) {
+            int value = state[offset + cell] & 0xFF;
+            if (value == blank) {
+                blankCell = cell;
+            } else if (index < limit) {
+                long bit = 1L << value;
+                int digit = value - Long.bitCount(used & (bit - 1));
+                prefixRank = prefixRank * (n - 1 - index) + digit;
+                used |= bit;
+                index++;
+            }
+        }
+        return blankCell * ranksPerBlankCell + prefixRank;
+    }
+    
+    /**
+     * Writes the solvable state with the given rank starting at offset
+     */
+    public void unrank(long rank, byte[] state, int offset) {
+        int blankCell = (int) (rank / ranksPerBlankCell);
+        long prefixRank = rank - blankCell * ranksPerBlankCell;
+        
+        // Decode the prefix digits into the tail of the state, which is overwritten last,
+        // then place the tiles front to back with the blank in its cell
+        int prefixLength = n - 3;
+        int digitOffset = offset + 3;
+        if (prefixRanker != null) {
+            prefixRanker.decodeDigits(prefixRank, state, digitOffset);
+        }
+        boolean nibbles = n - 1 <= 16;
+        long remaining = nibbles ? PermutationRanker.IDENTITY_NIBBLES : (1L << (n - 1)) - 1;
+        int parity = 0;
+        int cell = 0;
+        for (int index = 0; index < prefixLength; index++) {
+            int digit = state[digitOffset + index];
+            parity += digit;
+            int value;
+            if (nibbles) {
+                // Take the digit-th remaining tile from the nibble list and close the gap
+                int shift = digit << 2;
+                value = (int) (remaining >>> shift) & 0xF;
+                long lowMask = (1L << shift) - 1;
+                remaining = (remaining & lowMask) | ((remaining >>> 4) & ~lowMask);
+            } else {
+                value = PermutationRanker.selectBit(remaining, digit);
+                remaining &= ~(1L << value);
+            }
+            if (cell == blankCell) {
+                state[offset + cell++] = (byte) blank;
+            }
+            state[offset + cell++] = (byte) value;
+        }
+        
+        // The two remaining tiles go in ascending order unless that gives the wrong parity
+        int low = nibbles ? (int) remaining & 0xF : Long.numberOfTrailingZeros(remaining);
+        int high = nibbles ? (int) (remaining >>> 4) & 0xF : 63 - Long.numberOfLeadingZeros(remaining);
+        if ((parity & 1) != requiredParity[blankCell]) {
+            int swap = low;
+            low = high;
+            high = swap;
+        }
+        for (int i = 0; i < 2; i++) {
+            if (cell == blankCell) {
+                state[offset + cell++] = (byte) blank;
+            }
+            state[offset + cell++] = (byte) (i == 0 ? low : high);
+        }
+        if (cell == blankCell) {
+            state[offset + cell] = (byte) blank;
+        }
+    }
+    
+    /**
+     * Ranks count states stored back to back (n bytes each) starting at state[offset]
+     */
+    public void rankAll(byte[] states, int offset, long[] ranks, int rankOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            ranks[rankOffset + i] = rank(states, offset + i * n);
+        }
+    }
+    
+    /**
+     * Unranks count ranks into states stored back to back (n bytes each) starting at states[offset]
+     */
+    public void unrankAll(long[] ranks, int rankOffset, byte[] states, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            unrank(ranks[rankOffset + i], states, offset + i * n);
+        }
+    }
+    
+    /**
+     * Unranks the consecutive ranks first, first+1, ... into states stored back to back
+     */
+    public void unrankRange(long first, byte[] states, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            unrank(first + i, states, offset + i * n);
+        }
+    }
+}
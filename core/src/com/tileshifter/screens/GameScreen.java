@@ -4,16 +4,34 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer; // New Import
+import java.io.IOException;
+import java.util.Arrays;
 import com.tileshifter.GameMode;
+import com.tileshifter.GeneratorPuzzleBoard;
 import com.tileshifter.PuzzleBoard;
+import com.tileshifter.PuzzleMode;
 import com.tileshifter.RotatePuzzleBoard;
 import com.tileshifter.ShiftPuzzleBoard;
 import com.tileshifter.Tile;
 import com.tileshifter.TileShiftGame;
+import com.tileshifter.assets.GameAssets;
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.leaderboard.Ranking;
+import com.tileshifter.leaderboard.Submission;
+import com.tileshifter.metrics.Phase;
+import com.tileshifter.metrics.PerformanceMonitor;
+import com.tileshifter.net.CoopClient;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.RaceClient;
+import com.tileshifter.net.SpectatorClient;
+import com.tileshifter.pack.PuzzlePack;
+import com.tileshifter.telemetry.TelemetryEvent;
+import com.tileshifter.telemetry.TelemetryRecorder;
 
 /**
  * Main game screen where the puzzle is played
@@ -22,6 +40,7 @@ public class GameScreen implements Screen {
     private TileShiftGame game;
     private GameMode gameMode;
     private PuzzleBoard puzzleBoard;
+    private int boardSize; // Tiles per row and column of the current board
     private Texture puzzleTexture;
     private Texture brandLogo; // To display Mytholore.jpg on instructions screen
     
@@ -37,9 +56,10 @@ public class GameScreen implements Screen {
     private Rectangle[] columnDownButtons;
     private Rectangle[] rowLeftButtons;
     private Rectangle[] rowRightButtons;
+    private int[] columnUpMoves, columnDownMoves, rowLeftMoves, rowRightMoves; // Generator indices by column or row
 
     // Rotate mode UI elements (circular buttons for 2x2 sub-board rotations)
-    private Rectangle[] rotateButtons; // 5 buttons for the 5 sub-boards
+    private Rectangle[] rotateButtons; // One button per sub-board (5 on a 4x4 board)
     private Texture circleButtonTexture; // Texture for circular buttons
     private Texture rotationIconTexture; // New: Texture for rotation icon
 
@@ -67,60 +87,164 @@ public class GameScreen implements Screen {
     private boolean showingFullImage = false;
     private boolean showingInstructions = false;
     
+    // Race against other players on a game server; null for a local game
+    private RaceClient race;
+    private String raceStatus = "Waiting for players...";
+    private int raceIndex = -1;
+    private int[] raceMisplaced; // Per player, from the server's progress messages
+    private int[] raceFlags;
+    
+    // Watching a race player's board; null unless spectating
+    private SpectatorClient spectator;
+    private SpectatorClient.Listener spectatorListener;
+    private boolean spectatorSynced; // Whether the board shows the watched board
+    
+    // Solving one shared board with other players; null unless in a co-op game
+    private CoopClient coop;
+    private CoopClient.Listener coopListener;
+    
+    // Local games: the current puzzle's start and moves, ranked on the game's leaderboard when it is solved
+    private final String imageName;
+    private final byte[] puzzleStart; // Reused by every new puzzle, so resets allocate nothing
+    private boolean puzzleRankable; // False once the puzzle is solved or has too many moves to rank
+    private byte[] puzzleMoves = new byte[256];
+    private int puzzleMoveCount;
+    private long puzzleStartNanos;
+    private String rankText; // Ranks of the last solve, or null
+    private int puzzleCount; // Puzzles loaded so far, so ranks arriving after a reset are dropped
+    
     public GameScreen(TileShiftGame game, String imageName, GameMode gameMode) {
+        this(game, imageName, gameMode, PuzzleBoard.BOARD_SIZE);
+    }
+    
+    public GameScreen(TileShiftGame game, String imageName, GameMode gameMode, int boardSize) {
+        this(game, imageName, gameMode, boardSize, true);
+    }
+    
+    /**
+     * @param localGame false for networked games, whose boards stay solved until the server sends their state
+     */
+    private GameScreen(TileShiftGame game, String imageName, GameMode gameMode, int boardSize, boolean localGame) {
         this.game = game;
+        this.imageName = imageName;
         this.gameMode = gameMode;
+        this.boardSize = boardSize;
+        puzzleStart = new byte[boardSize * boardSize];
         
-        // Load the puzzle image
-        puzzleTexture = new Texture(Gdx.files.internal("assets/images/" + imageName));
-
-        // Load the brand logo for the instructions screen
-        brandLogo = new Texture(Gdx.files.internal("assets/images/Mytholore.jpg"));
+        // The puzzle image, brand logo and button textures are preloaded and shared
+        puzzleTexture = game.assets.getImage(imageName);
+        brandLogo = game.assets.getImage(GameAssets.LOGO_IMAGE); // For the instructions screen
+        solidBackgroundTexture = game.assets.getWhitePixel();
+        circleButtonTexture = game.assets.getCircleButton();
+        rotationIconTexture = game.assets.getRotationIcon();
         
-        // Initialize ShapeRenderer and solidBackgroundTexture
         shapeRenderer = new ShapeRenderer();
-        com.badlogic.gdx.graphics.Pixmap pixmap = new com.badlogic.gdx.graphics.Pixmap(1, 1, com.badlogic.gdx.graphics.Pixmap.Format.RGBA8888);
-        pixmap.setColor(Color.WHITE);
-        pixmap.fill();
-        solidBackgroundTexture = new Texture(pixmap);
-        pixmap.dispose();
 
         // Initialize puzzle board based on game mode
         switch (gameMode) {
             case ROTATE:
-                puzzleBoard = new RotatePuzzleBoard();
+                puzzleBoard = new RotatePuzzleBoard(boardSize);
                 break;
             case SHIFT:
-                puzzleBoard = new ShiftPuzzleBoard();
+                puzzleBoard = new ShiftPuzzleBoard(boardSize);
                 break;
             case CLASSIC:
             default:
-                puzzleBoard = new PuzzleBoard();
+                puzzleBoard = new PuzzleBoard(true, boardSize);
                 break;
         }
-        puzzleBoard.initializeBoard(puzzleTexture);
-        
-        // Create circular button texture for Rotate mode
-        com.badlogic.gdx.graphics.Pixmap circlePixmap = new com.badlogic.gdx.graphics.Pixmap(64, 64, com.badlogic.gdx.graphics.Pixmap.Format.RGBA8888);
-        circlePixmap.setColor(0.7f, 0.7f, 0.7f, 0.9f); // Brighter, more opaque grey
-        circlePixmap.fillCircle(32, 32, 30);
-        circleButtonTexture = new Texture(circlePixmap);
-        circlePixmap.dispose();
-
-        // Create rotation icon texture
-        com.badlogic.gdx.graphics.Pixmap rotationIconPixmap = new com.badlogic.gdx.graphics.Pixmap(32, 32, com.badlogic.gdx.graphics.Pixmap.Format.RGBA8888);
-        rotationIconPixmap.setColor(Color.YELLOW); // Bright yellow for visibility
-        // Draw a simple clockwise arrow
-        rotationIconPixmap.fillTriangle(16, 2, 22, 10, 10, 10); // Arrowhead
-        rotationIconPixmap.fillRectangle(14, 10, 4, 10); // Arrow shaft
-        rotationIconPixmap.fillCircle(16, 24, 6); // Base of arrow
-        rotationIconTexture = new Texture(rotationIconPixmap);
-        rotationIconPixmap.dispose();
+        puzzleBoard.initializeBoard(puzzleTexture, false); // The first puzzle comes from the pool, pack or server
+        if (localGame) {
+            loadNewPuzzle();
+        }
+        puzzleBoard.setTelemetry(game.getTelemetry());
+        
         
         setupUI();
         calculateBoardLayout();
     }
     
+    /**
+     * Puts a new puzzle on the board in O(cells): one from the puzzle pack if it has any for this mode and size,
+     * otherwise a position shuffled in the background by the game's puzzle pool
+     */
+    private void loadNewPuzzle() {
+        if (!loadPackedPuzzle()) {
+            game.puzzlePool.take(gameMode, boardSize, puzzleStart, 0);
+        }
+        puzzleBoard.setState(puzzleStart);
+        puzzleRankable = true;
+        puzzleMoveCount = 0;
+        puzzleStartNanos = System.nanoTime();
+        rankText = null;
+        puzzleCount++;
+    }
+    
+    /**
+     * Reads one of the puzzle pack's pre-generated puzzles for this mode and size into {@link #puzzleStart}
+     * @return false, leaving it as it is, if there is no pack or it has no such puzzles
+     */
+    private boolean loadPackedPuzzle() {
+        PuzzlePack pack = game.assets.getPuzzlePack();
+        if (pack == null) {
+            return false;
+        }
+        int first = pack.startOf(gameMode, boardSize);
+        int end = pack.endOf(gameMode, boardSize);
+        if (first == end) {
+            return false;
+        }
+        pack.getState(MathUtils.random(first, end - 1), puzzleStart, 0);
+        return true;
+    }
+    
+    /**
+     * Races other players on a game server: everyone starts from the same shuffle, and moves are only possible
+     * while the race runs. Moves are shown at once and rolled back if the server rejects them.
+     */
+    public GameScreen(TileShiftGame game, String imageName, GameMode gameMode, String host, int port, int players) {
+        this(game, imageName, gameMode, PuzzleBoard.BOARD_SIZE, false);
+        race = new RaceClient(host, port, gameMode, boardSize, players, new RaceClient.Listener() {
+            @Override
+            public void raceStarted(PuzzleMode mode, byte[] state, int playerIndex, int playerCount) {
+                raceIndex = playerIndex;
+                raceMisplaced = new int[playerCount];
+                raceFlags = new int[playerCount];
+                raceStatus = "Go!";
+                puzzleBoard.setState(state);
+                updateTileRenderPositions();
+            }
+            
+            @Override
+            public void predictionCorrected(byte[] state) {
+                puzzleBoard.setState(state);
+                animateTilesToBoard();
+            }
+            
+            @Override
+            public void progress(int player, int flags, int moveCount, int misplaced) {
+                raceMisplaced[player] = misplaced;
+                raceFlags[player] = flags;
+            }
+            
+            @Override
+            public void raceOver(int winner) {
+                if (winner == raceIndex) {
+                    showWinMessage = true;
+                    raceStatus = "You won the race!";
+                } else {
+                    raceStatus = "Player " + (winner + 1) + " won the race";
+                }
+            }
+            
+            @Override
+            public void failed(String reason) {
+                raceStatus = "Race unavailable: " + reason;
+            }
+        });
+        race.start();
+    }
+    
     private void setupUI() {
         // Common button dimensions for main UI buttons
         float uiButtonWidth = 120; // Increased width for better touch target
@@ -150,12 +274,23 @@ public class GameScreen implements Screen {
         
         // Initialize shift mode buttons (will be positioned in calculateBoardLayout)
         if (gameMode == GameMode.SHIFT) {
-            columnUpButtons = new Rectangle[PuzzleBoard.BOARD_SIZE];
-            columnDownButtons = new Rectangle[PuzzleBoard.BOARD_SIZE];
-            rowLeftButtons = new Rectangle[PuzzleBoard.BOARD_SIZE];
-            rowRightButtons = new Rectangle[PuzzleBoard.BOARD_SIZE];
+            columnUpButtons = new Rectangle[boardSize];
+            columnDownButtons = new Rectangle[boardSize];
+            rowLeftButtons = new Rectangle[boardSize];
+            rowRightButtons = new Rectangle[boardSize];
+            PuzzleMode mode = ((ShiftPuzzleBoard) puzzleBoard).getMode();
+            columnUpMoves = new int[boardSize];
+            columnDownMoves = new int[boardSize];
+            rowLeftMoves = new int[boardSize];
+            rowRightMoves = new int[boardSize];
+            for (int i = 0; i < boardSize; i++) {
+                columnUpMoves[i] = mode.indexOf("column " + i + " up");
+                columnDownMoves[i] = mode.indexOf("column " + i + " down");
+                rowLeftMoves[i] = mode.indexOf("row " + i + " left");
+                rowRightMoves[i] = mode.indexOf("row " + i + " right");
+            }
         } else if (gameMode == GameMode.ROTATE) {
-            rotateButtons = new Rectangle[5]; // 5 sub-boards
+            rotateButtons = new Rectangle[((RotatePuzzleBoard) puzzleBoard).getSubBoardCount()];
         }
     }
     
@@ -171,24 +306,24 @@ public class GameScreen implements Screen {
         }
         
         float maxBoardSize = Math.min(availableWidth, availableHeight);
-        tileSize = maxBoardSize / PuzzleBoard.BOARD_SIZE;
+        tileSize = maxBoardSize / boardSize;
         
         // Center the board
-        float boardSize = tileSize * PuzzleBoard.BOARD_SIZE;
-        boardStartX = (TileShiftGame.VIRTUAL_WIDTH - boardSize) / 2;
-        boardStartY = (TileShiftGame.VIRTUAL_HEIGHT - boardSize) / 2 - 20; // Slightly lower for UI
+        float boardPixelSize = tileSize * boardSize;
+        boardStartX = (TileShiftGame.VIRTUAL_WIDTH - boardPixelSize) / 2;
+        boardStartY = (TileShiftGame.VIRTUAL_HEIGHT - boardPixelSize) / 2 - 20; // Slightly lower for UI
         
         // Position shift mode arrow buttons
         if (gameMode == GameMode.SHIFT) {
             float buttonSize = 30f;
             
             // Column up/down buttons
-            for (int col = 0; col < PuzzleBoard.BOARD_SIZE; col++) {
+            for (int col = 0; col < boardSize; col++) {
                 float centerX = boardStartX + col * tileSize + tileSize / 2 - buttonSize / 2;
                 
                 columnUpButtons[col] = new Rectangle(
                     centerX,
-                    boardStartY + boardSize + 10,
+                    boardStartY + boardPixelSize + 10,
                     buttonSize,
                     buttonSize
                 );
@@ -202,7 +337,7 @@ public class GameScreen implements Screen {
             }
             
             // Row left/right buttons
-            for (int row = 0; row < PuzzleBoard.BOARD_SIZE; row++) {
+            for (int row = 0; row < boardSize; row++) {
                 float centerY = boardStartY + row * tileSize + tileSize / 2 - buttonSize / 2;
                 
                 rowLeftButtons[row] = new Rectangle(
@@ -213,27 +348,20 @@ public class GameScreen implements Screen {
                 );
                 
                 rowRightButtons[row] = new Rectangle(
-                    boardStartX + boardSize + 10,
+                    boardStartX + boardPixelSize + 10,
                     centerY,
                     buttonSize,
                     buttonSize
                 );
             }
         } else if (gameMode == GameMode.ROTATE) {
-            // Define the 5 sub-board starting grid positions (MUST MATCH RotatePuzzleBoard.SUBBOARD_POSITIONS order)
-            int[][] subBoardGridPositions = {
-                {0, 0}, // Index 0: Top-left
-                {0, 2}, // Index 1: Bottom-left
-                {2, 0}, // Index 2: Top-right
-                {2, 2}, // Index 3: Bottom-right
-                {1, 1}  // Index 4: Center
-            };
+            RotatePuzzleBoard rotateBoard = (RotatePuzzleBoard) puzzleBoard;
             
             float buttonSize = 30f; // Made smaller for better visibility
             
-            for (int i = 0; i < subBoardGridPositions.length; i++) {
-                int gridX = subBoardGridPositions[i][0];
-                int gridY = subBoardGridPositions[i][1];
+            for (int i = 0; i < rotateButtons.length; i++) {
+                int gridX = rotateBoard.getSubBoardPosition(i)[0];
+                int gridY = rotateBoard.getSubBoardPosition(i)[1];
 
                 // Calculate center of the 2x2 sub-board
                 float subBoardCenterX = boardStartX + gridX * tileSize + tileSize;
@@ -257,8 +385,8 @@ public class GameScreen implements Screen {
     }
     
     private void updateTileRenderPositions() {
-        for (int y = 0; y < PuzzleBoard.BOARD_SIZE; y++) {
-            for (int x = 0; x < PuzzleBoard.BOARD_SIZE; x++) {
+        for (int y = 0; y < boardSize; y++) {
+            for (int x = 0; x < boardSize; x++) {
                 Tile tile = puzzleBoard.getTile(x, y);
                 if (tile != null) {
                     float renderX = boardStartX + x * tileSize;
@@ -269,13 +397,241 @@ public class GameScreen implements Screen {
         }
     }
     
+    /**
+     * Watches a race player's board: the player's moves are replayed on this board with the usual tile
+     * animations, and the board is only replaced when the server sends the whole of it. The board must have the
+     * watched board's mode and size.
+     */
+    public GameScreen(TileShiftGame game, String imageName, GameMode gameMode, SpectatorClient spectatorClient) {
+        this(game, imageName, gameMode, PuzzleBoard.BOARD_SIZE, false);
+        puzzleBoard.setTelemetry(null); // The moves are not the viewer's
+        spectator = spectatorClient;
+        raceStatus = "Connecting...";
+        spectatorListener = new SpectatorClient.Listener() {
+            @Override
+            public void boardState(GameMode watchedMode, PuzzleMode mode, byte[] state, int moveCount) {
+                if (watchedMode != gameMode || mode.getSize() != boardSize) {
+                    raceStatus = "The race is played in " + watchedMode + " " + mode.getSize() + "x"
+                        + mode.getSize() + " mode";
+                    return;
+                }
+                puzzleBoard.setState(state);
+                if (spectatorSynced) {
+                    animateTilesToBoard();
+                } else {
+                    updateTileRenderPositions();
+                    spectatorSynced = true;
+                }
+                raceStatus = "Watching, " + moveCount + " moves";
+            }
+            
+            @Override
+            public void moves(byte[] moves, int offset, int count) {
+                if (!spectatorSynced) {
+                    return;
+                }
+                for (int i = offset; i < offset + count; i++) {
+                    applyWatchedMove(moves[i] & 0xFF);
+                }
+                animateTilesToBoard();
+            }
+            
+            @Override
+            public void ended() {
+                raceStatus = "The race is over";
+                showWinMessage = puzzleBoard.isWon();
+            }
+            
+            @Override
+            public void failed(String reason) {
+                raceStatus = "Cannot watch: " + reason;
+            }
+        };
+        spectator.start();
+    }
+    
+    /**
+     * Solves one board together with other players on a game server. Own moves are shown at once; the other
+     * players' moves, and own moves the server rejected, only move the tiles of the cells they changed.
+     */
+    public GameScreen(TileShiftGame game, String imageName, GameMode gameMode, CoopClient coopClient) {
+        this(game, imageName, gameMode, PuzzleBoard.BOARD_SIZE, false);
+        coop = coopClient;
+        raceStatus = "Waiting for players...";
+        coopListener = new CoopClient.Listener() {
+            @Override
+            public void started(PuzzleMode mode, byte[] state, int playerIndex, int playerCount) {
+                raceIndex = playerIndex;
+                raceStatus = playerCount == 1 ? "Solving alone" : "Solving with " + (playerCount - 1) + " others";
+                puzzleBoard.setState(state);
+                updateTileRenderPositions();
+            }
+            
+            @Override
+            public void boardChanged(byte[] state, int[] cells, int count) {
+                puzzleBoard.setCells(state, cells, count);
+                animateTilesInCells(cells, count);
+            }
+            
+            @Override
+            public void solved(int player) {
+                showWinMessage = true;
+                raceStatus = player == raceIndex ? "You placed the last tile!" : "Player " + (player + 1)
+                    + " placed the last tile";
+            }
+            
+            @Override
+            public void failed(String reason) {
+                raceStatus = "Co-op game unavailable: " + reason;
+            }
+        };
+        coop.start();
+    }
+    
+    /**
+     * Replays a watched player's move on the board
+     * @param move Direction the blank moves in for the classic mode, otherwise a generator index
+     */
+    private void applyWatchedMove(int move) {
+        if (gameMode == GameMode.CLASSIC) {
+            int x = puzzleBoard.getEmptyX();
+            int y = puzzleBoard.getEmptyY();
+            switch (move) {
+                case PuzzleMode.UP: y--; break;
+                case PuzzleMode.DOWN: y++; break;
+                case PuzzleMode.LEFT: x--; break;
+                case PuzzleMode.RIGHT: x++; break;
+                default: return;
+            }
+            puzzleBoard.moveTile(x, y);
+        } else {
+            ((GeneratorPuzzleBoard) puzzleBoard).applyMove(move);
+        }
+    }
+    
+    /**
+     * Slides every tile from where it is drawn to its current cell, e.g. after a race move was rolled back
+     */
+    private void animateTilesToBoard() {
+        for (int y = 0; y < boardSize; y++) {
+            for (int x = 0; x < boardSize; x++) {
+                Tile tile = puzzleBoard.getTile(x, y);
+                if (tile != null) {
+                    tile.animateToPosition(boardStartX + x * tileSize, boardStartY + y * tileSize);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Slides the tiles of the given cells from where they are drawn to those cells
+     */
+    private void animateTilesInCells(int[] cells, int count) {
+        for (int i = 0; i < count; i++) {
+            int x = cells[i] % boardSize;
+            int y = cells[i] / boardSize;
+            puzzleBoard.getTile(x, y).animateToPosition(boardStartX + x * tileSize, boardStartY + y * tileSize);
+        }
+    }
+    
+    /**
+     * In a race or co-op game, a move is only made if the client accepts it, which it does while the game runs
+     * @param move Direction the blank moves in for the classic mode, otherwise a generator index
+     */
+    private boolean allowMove(int move) {
+        boolean allowed = spectator == null && (race == null || race.move(move)) && (coop == null || coop.move(move));
+        if (allowed && race == null && coop == null && puzzleRankable) {
+            logMove(move);
+        }
+        return allowed;
+    }
+    
+    /**
+     * Local games: adds a move to the log the solve is submitted with
+     */
+    private void logMove(int move) {
+        if (puzzleMoveCount == puzzleMoves.length) {
+            if (puzzleMoveCount == Submission.MAX_MOVES) {
+                puzzleRankable = false; // Too long to rank
+                return;
+            }
+            puzzleMoves = Arrays.copyOf(puzzleMoves, Math.min(puzzleMoveCount * 2, Submission.MAX_MOVES));
+        }
+        puzzleMoves[puzzleMoveCount++] = (byte) move;
+    }
+    
+    /**
+     * Local games: shows the win message and ranks the solve on the game's leaderboard, if it has one. The
+     * leaderboard replays and saves the solve on the game's leaderboard thread; the ranks are shown when it is done.
+     */
+    private void puzzleSolved() {
+        puzzleRankable = false;
+        showWinMessage = true;
+        winMessageTimer = 0f;
+        final Leaderboard leaderboard = game.getLeaderboard();
+        if (leaderboard == null) {
+            return;
+        }
+        long millis = (System.nanoTime() - puzzleStartNanos) / 1000000L;
+        final Submission submission = new Submission(imageName, gameMode, boardSize, game.getPlayerName(),
+            (int) Math.min(millis, Integer.MAX_VALUE), System.currentTimeMillis(),
+            Arrays.copyOf(puzzleStart, puzzleStart.length),
+            Arrays.copyOf(puzzleMoves, puzzleMoveCount));
+        final int solvedPuzzle = puzzleCount;
+        game.runOnLeaderboardThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int entry = leaderboard.submit(submission);
+                    if (entry == Leaderboard.REJECTED) {
+                        Gdx.app.error("GameScreen", "The leaderboard rejected the solve");
+                        return;
+                    }
+                    final String ranks = "#" + (leaderboard.getRank(imageName, gameMode, boardSize, Ranking.TIME,
+                        entry) + 1) + " by time, #" + (leaderboard.getRank(imageName, gameMode, boardSize,
+                        Ranking.MOVES, entry) + 1) + " by moves of "
+                        + leaderboard.getEntryCount(imageName, gameMode, boardSize, Ranking.TIME);
+                    Gdx.app.postRunnable(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (puzzleCount == solvedPuzzle) {
+                                rankText = ranks;
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    Gdx.app.error("GameScreen", "Could not save the solve to the leaderboard", e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Classic mode: allows sliding the tile at a cell into the blank
+     */
+    private boolean allowTileMove(int gridX, int gridY) {
+        if (spectator != null) {
+            return false;
+        }
+        // The blank moves onto the clicked tile
+        int dx = gridX - puzzleBoard.getEmptyX();
+        int dy = gridY - puzzleBoard.getEmptyY();
+        int direction = dx == 0 && dy == -1 ? PuzzleMode.UP : dx == 0 && dy == 1 ? PuzzleMode.DOWN
+            : dy == 0 && dx == -1 ? PuzzleMode.LEFT : dy == 0 && dx == 1 ? PuzzleMode.RIGHT : -1;
+        return direction >= 0 && allowMove(direction);
+    }
+    
     @Override
     public void show() {
         // Called when this screen becomes the current screen
+        recordScreenEvent(TelemetryEvent.SCREEN_SHOW, gameMode.ordinal() * 256 + boardSize);
     }
     
     @Override
     public void render(float delta) {
+        PerformanceMonitor monitor = game.performanceMonitor;
+        long phaseStart = monitor.phaseStart();
+        
         // Update press animation timer
         if (pressedButton != null) {
             pressTimer += delta;
@@ -284,8 +640,27 @@ public class GameScreen implements Screen {
                 pressTimer = 0f;
             }
         }
+        monitor.phaseEnd(Phase.ANIMATION, phaseStart);
+        
+        // Advance tile animations
+        phaseStart = monitor.phaseStart();
+        puzzleBoard.update(delta);
+        if (race != null) {
+            race.update(); // Sends queued moves and handles the server's replies
+        }
+        if (spectator != null) {
+            spectator.update(spectatorListener);
+        }
+        if (coop != null) {
+            coop.update(coopListener);
+        }
+        if (puzzleRankable && puzzleMoveCount > 0 && puzzleBoard.isWon()) {
+            puzzleSolved();
+        }
+        monitor.phaseEnd(Phase.UPDATE, phaseStart);
 
         // Update hovered button
+        phaseStart = monitor.phaseStart();
         Vector3 mouseCoords = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0);
         game.viewport.unproject(mouseCoords);
         float mouseX = mouseCoords.x;
@@ -301,8 +676,10 @@ public class GameScreen implements Screen {
         } else if (instructionsButton.contains(mouseX, mouseY)) {
             hoveredButton = instructionsButton;
         }
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
 
         // Clear screen
+        phaseStart = monitor.phaseStart();
         Gdx.gl.glClearColor(0.1f, 0.1f, 0.2f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
@@ -340,6 +717,10 @@ public class GameScreen implements Screen {
             drawRotateButtons();
         }
         
+        if (race != null || spectator != null || coop != null) {
+            drawRaceStatus();
+        }
+        
         // Draw win message if needed
         if (showWinMessage) {
             drawWinMessage();
@@ -354,13 +735,16 @@ public class GameScreen implements Screen {
         } else if (showingInstructions) {
             drawInstructionsOverlay();
         }
+        monitor.phaseEnd(Phase.RENDER, phaseStart);
         
         // Handle input (only if no overlay is active)
+        phaseStart = monitor.phaseStart();
         if (!showingFullImage && !showingInstructions) {
             handleInput();
         } else {
             handleOverlayInput(); // New input handler for overlays
         }
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
     }
     
     private void drawButton(Rectangle button, String text) {
@@ -460,8 +844,8 @@ public class GameScreen implements Screen {
 
     private void drawPuzzleBoard() {
         // Draw all tiles without unnecessary borders
-        for (int y = 0; y < PuzzleBoard.BOARD_SIZE; y++) {
-            for (int x = 0; x < PuzzleBoard.BOARD_SIZE; x++) {
+        for (int y = 0; y < boardSize; y++) {
+            for (int x = 0; x < boardSize; x++) {
                 Tile tile = puzzleBoard.getTile(x, y);
                 
                 if (tile != null && !tile.isEmpty()) {
@@ -490,21 +874,47 @@ public class GameScreen implements Screen {
         
         game.font.draw(game.batch, winText, winTextX, winTextY);
         game.font.draw(game.batch, subText, subTextX, subTextY);
+        if (rankText != null) {
+            subTextY -= 30;
+            com.badlogic.gdx.graphics.g2d.GlyphLayout rankLayout = new com.badlogic.gdx.graphics.g2d.GlyphLayout(game.font, rankText);
+            game.font.draw(game.batch, rankText, winMessageArea.x + winMessageArea.width / 2 - rankLayout.width / 2, subTextY);
+        }
         
         if (winMessageTimer > 2f) {
             game.font.draw(game.batch, "Click Reset for new game", subTextX - 20, subTextY - 30);
         }
     }
     
+    private void drawRaceStatus() {
+        float textY = boardStartY - 50;
+        game.font.draw(game.batch, raceStatus, BOARD_PADDING, textY);
+        if (raceMisplaced == null) {
+            return;
+        }
+        StringBuilder players = new StringBuilder();
+        for (int i = 0; i < raceMisplaced.length; i++) {
+            players.append(i == raceIndex ? "You" : "P" + (i + 1)).append(": ");
+            if ((raceFlags[i] & Protocol.FINISHED) != 0) {
+                players.append("done");
+            } else if ((raceFlags[i] & Protocol.LEFT) != 0) {
+                players.append("left");
+            } else {
+                players.append(raceMisplaced[i]).append(" off");
+            }
+            players.append("   ");
+        }
+        game.font.draw(game.batch, players, BOARD_PADDING, textY - 25);
+    }
+    
     private void drawShiftButtons() {
         // Draw column up/down buttons
-        for (int col = 0; col < PuzzleBoard.BOARD_SIZE; col++) {
+        for (int col = 0; col < boardSize; col++) {
             drawButton(columnUpButtons[col], "^");
             drawButton(columnDownButtons[col], "v");
         }
         
         // Draw row left/right buttons
-        for (int row = 0; row < PuzzleBoard.BOARD_SIZE; row++) {
+        for (int row = 0; row < boardSize; row++) {
             drawButton(rowLeftButtons[row], "<");
             drawButton(rowRightButtons[row], ">");
         }
@@ -547,12 +957,13 @@ public class GameScreen implements Screen {
                 return;
             }
             
-            if (resetButton.contains(touchX, touchY)) {
+            if (resetButton.contains(touchX, touchY) && race == null && spectator == null && coop == null) { // Networked games keep their board
                 pressedButton = resetButton; // Set pressed button for animation
                 Gdx.app.postRunnable(new Runnable() {
                     @Override
                     public void run() {
-                        puzzleBoard.reset();
+                        loadNewPuzzle();
+                        recordScreenEvent(TelemetryEvent.RESET, 0);
                         showWinMessage = false;
                         winMessageTimer = 0f;
                         updateTileRenderPositions();
@@ -568,6 +979,7 @@ public class GameScreen implements Screen {
                     @Override
                     public void run() {
                         showingFullImage = true;
+                        recordScreenEvent(TelemetryEvent.SHOW_IMAGE, 0);
                     }
                 });
                 return;
@@ -580,6 +992,7 @@ public class GameScreen implements Screen {
                     @Override
                     public void run() {
                         showingInstructions = true;
+                        recordScreenEvent(TelemetryEvent.SHOW_INSTRUCTIONS, 0);
                     }
                 });
                 return;
@@ -608,6 +1021,7 @@ public class GameScreen implements Screen {
         if (Gdx.input.justTouched()) {
             showingFullImage = false; // Dismiss full image on any touch
             showingInstructions = false; // Dismiss instructions on any touch
+            recordScreenEvent(TelemetryEvent.CLOSE_OVERLAY, 0);
         }
     }
     
@@ -615,37 +1029,53 @@ public class GameScreen implements Screen {
         ShiftPuzzleBoard shiftBoard = (ShiftPuzzleBoard) puzzleBoard;
         
         // Check column up buttons
-        for (int col = 0; col < PuzzleBoard.BOARD_SIZE; col++) {
+        for (int col = 0; col < boardSize; col++) {
             if (columnUpButtons[col].contains(touchX, touchY)) {
+                if (!allowMove(columnUpMoves[col])) {
+                    return true;
+                }
                 shiftBoard.shiftColumnUp(col);
                 updateTileRenderPositions();
+                game.performanceMonitor.recordMove();
                 return true;
             }
         }
         
         // Check column down buttons
-        for (int col = 0; col < PuzzleBoard.BOARD_SIZE; col++) {
+        for (int col = 0; col < boardSize; col++) {
             if (columnDownButtons[col].contains(touchX, touchY)) {
+                if (!allowMove(columnDownMoves[col])) {
+                    return true;
+                }
                 shiftBoard.shiftColumnDown(col);
                 updateTileRenderPositions();
+                game.performanceMonitor.recordMove();
                 return true;
             }
         }
         
         // Check row left buttons
-        for (int row = 0; row < PuzzleBoard.BOARD_SIZE; row++) {
+        for (int row = 0; row < boardSize; row++) {
             if (rowLeftButtons[row].contains(touchX, touchY)) {
+                if (!allowMove(rowLeftMoves[row])) {
+                    return true;
+                }
                 shiftBoard.shiftRowLeft(row);
                 updateTileRenderPositions();
+                game.performanceMonitor.recordMove();
                 return true;
             }
         }
         
         // Check row right buttons
-        for (int row = 0; row < PuzzleBoard.BOARD_SIZE; row++) {
+        for (int row = 0; row < boardSize; row++) {
             if (rowRightButtons[row].contains(touchX, touchY)) {
+                if (!allowMove(rowRightMoves[row])) {
+                    return true;
+                }
                 shiftBoard.shiftRowRight(row);
                 updateTileRenderPositions();
+                game.performanceMonitor.recordMove();
                 return true;
             }
         }
@@ -658,8 +1088,12 @@ public class GameScreen implements Screen {
 
         for (int i = 0; i < rotateButtons.length; i++) {
             if (rotateButtons[i].contains(touchX, touchY)) {
+                if (!allowMove(i)) {
+                    return true;
+                }
                 rotateBoard.rotateSubBoard(i);
                 updateTileRenderPositions();
+                game.performanceMonitor.recordMove();
                 return true;
             }
         }
@@ -668,17 +1102,18 @@ public class GameScreen implements Screen {
     
     private void handleTileClick(float touchX, float touchY) {
         // Convert touch coordinates to grid coordinates
-        if (touchX >= boardStartX && touchX < boardStartX + tileSize * PuzzleBoard.BOARD_SIZE &&
-            touchY >= boardStartY && touchY < boardStartY + tileSize * PuzzleBoard.BOARD_SIZE) {
+        if (touchX >= boardStartX && touchX < boardStartX + tileSize * boardSize &&
+            touchY >= boardStartY && touchY < boardStartY + tileSize * boardSize) {
             
             int gridX = (int) ((touchX - boardStartX) / tileSize);
             int gridY = (int) ((touchY - boardStartY) / tileSize);
             
             if (gameMode == GameMode.CLASSIC) { // Only classic mode uses tile sliding
                 // Classic mode: attempt to move the tile
-                if (puzzleBoard.moveTile(gridX, gridY)) {
+                if (allowTileMove(gridX, gridY) && puzzleBoard.moveTile(gridX, gridY)) {
                     // Tile moved successfully, update all tile render positions
                     updateTileRenderPositions();
+                    game.performanceMonitor.recordMove();
                 }
             }
         }
@@ -704,28 +1139,39 @@ public class GameScreen implements Screen {
     @Override
     public void hide() {
         // Called when this screen is no longer the current screen
+        recordScreenEvent(TelemetryEvent.SCREEN_HIDE, gameMode.ordinal() * 256 + boardSize);
+        if (race != null) {
+            race.close(); // Leaving the screen leaves the race
+        }
+        if (spectator != null) {
+            spectator.close();
+        }
+        if (coop != null) {
+            coop.close();
+        }
+    }
+    
+    private void recordScreenEvent(TelemetryEvent event, int argument) {
+        TelemetryRecorder telemetry = game.getTelemetry();
+        if (telemetry != null) {
+            telemetry.record(event, argument, false);
+        }
     }
     
     @Override
     public void dispose() {
-        // Dispose of resources
-        if (puzzleTexture != null) {
-            puzzleTexture.dispose();
-        }
-        if (brandLogo != null) {
-            brandLogo.dispose();
-        }
-        if (circleButtonTexture != null) {
-            circleButtonTexture.dispose();
+        // Dispose of resources; textures belong to game.assets
+        if (shapeRenderer != null) {
+            shapeRenderer.dispose();
         }
-        if (rotationIconTexture != null) {
-            rotationIconTexture.dispose();
+        if (race != null) {
+            race.close();
         }
-        if (solidBackgroundTexture != null) {
-            solidBackgroundTexture.dispose();
+        if (spectator != null) {
+            spectator.close();
         }
-        if (shapeRenderer != null) {
-            shapeRenderer.dispose();
+        if (coop != null) {
+            coop.close();
         }
     }
 
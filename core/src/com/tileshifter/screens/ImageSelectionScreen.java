@@ -2,16 +2,20 @@ package com.tileshifter.screens;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
-import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer; // New Import
-import com.badlogic.gdx.graphics.Color; // New Import
 import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleBoard;
 import com.tileshifter.TileShiftGame;
+import com.tileshifter.metrics.Phase;
+import com.tileshifter.metrics.PerformanceMonitor;
+import com.tileshifter.net.CoopClient;
+import com.tileshifter.net.SpectatorClient;
 
 /**
  * Screen for selecting puzzle images after choosing a game mode
@@ -20,7 +24,7 @@ public class ImageSelectionScreen implements Screen {
     private TileShiftGame game;
     private GameMode gameMode;
     private Array<String> imageFiles;
-    private Array<Texture> thumbnails;
+    private Array<TextureRegion> thumbnails;
     private Array<Rectangle> imageButtons;
     private Rectangle backButton;
 
@@ -41,43 +45,30 @@ public class ImageSelectionScreen implements Screen {
         this.game = game;
         this.gameMode = gameMode;
 
-        // Initialize ShapeRenderer and solidBackgroundTexture
+        // Initialize ShapeRenderer; the background texture is shared
         shapeRenderer = new ShapeRenderer();
-        com.badlogic.gdx.graphics.Pixmap pixmap = new com.badlogic.gdx.graphics.Pixmap(1, 1, com.badlogic.gdx.graphics.Pixmap.Format.RGBA8888);
-        pixmap.setColor(Color.WHITE);
-        pixmap.fill();
-        solidBackgroundTexture = new Texture(pixmap);
-        pixmap.dispose();
+        solidBackgroundTexture = game.assets.getWhitePixel();
 
         loadImageFiles();
         createThumbnails();
         setupButtons();
+        
+        // Shuffle positions for this mode in the background while the player picks an image
+        game.puzzlePool.prepare(gameMode, PuzzleBoard.BOARD_SIZE);
     }
     
     private void loadImageFiles() {
-        imageFiles = new Array<>();
-        
-        // Get all JPG files from assets/images
-        FileHandle imagesDir = Gdx.files.internal("assets/images");
-        System.out.println("Images directory path: " + imagesDir.file().getAbsolutePath());
-        if (imagesDir.exists()) {
-            for (FileHandle file : imagesDir.list()) {
-                if ((file.extension().equalsIgnoreCase("jpg") || 
-                     file.extension().equalsIgnoreCase("jpeg")) && 
-                    !file.name().equalsIgnoreCase("Mytholore.jpg")) { // Exclude Mytholore.jpg
-                    imageFiles.add(file.name());
-                }
-            }
-        }
+        // Puzzle images found in the puzzle pack or assets/images when the game started
+        imageFiles = new Array<>(game.assets.getPuzzleImageNames());
     }
     
     private void createThumbnails() {
         thumbnails = new Array<>();
         
+        // Thumbnails come from the puzzle pack's atlas, or are the full images scaled down when drawn
         for (String filename : imageFiles) {
             try {
-                Texture texture = new Texture(Gdx.files.internal("assets/images/" + filename));
-                thumbnails.add(texture);
+                thumbnails.add(game.assets.getThumbnail(filename));
             } catch (Exception e) {
                 Gdx.app.error("ImageSelectionScreen", "Failed to load image: " + filename + " (Full path: " + Gdx.files.internal("assets/images/" + filename).path() + ")", e);
             }
@@ -117,6 +108,9 @@ public class ImageSelectionScreen implements Screen {
     
     @Override
     public void render(float delta) {
+        PerformanceMonitor monitor = game.performanceMonitor;
+        long phaseStart = monitor.phaseStart();
+        
         // Update press animation timer
         if (pressedButton != null) {
             pressTimer += delta;
@@ -125,8 +119,10 @@ public class ImageSelectionScreen implements Screen {
                 pressTimer = 0f;
             }
         }
+        monitor.phaseEnd(Phase.ANIMATION, phaseStart);
 
         // Update hovered button
+        phaseStart = monitor.phaseStart();
         Vector3 mouseCoords = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0);
         game.viewport.unproject(mouseCoords);
         float mouseX = mouseCoords.x;
@@ -136,8 +132,10 @@ public class ImageSelectionScreen implements Screen {
         if (backButton.contains(mouseX, mouseY)) {
             hoveredButton = backButton;
         }
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
 
         // Clear screen
+        phaseStart = monitor.phaseStart();
         Gdx.gl.glClearColor(0.2f, 0.2f, 0.3f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
@@ -165,11 +163,11 @@ public class ImageSelectionScreen implements Screen {
         
         // Draw thumbnails
         for (int i = 0; i < thumbnails.size; i++) {
-            Texture thumbnail = thumbnails.get(i);
+            TextureRegion thumbnail = thumbnails.get(i);
             Rectangle button = imageButtons.get(i);
             
             // Calculate aspect ratio to maintain proportions
-            float aspectRatio = (float) thumbnail.getWidth() / thumbnail.getHeight();
+            float aspectRatio = (float) thumbnail.getRegionWidth() / thumbnail.getRegionHeight();
             float drawWidth, drawHeight;
             
             if (aspectRatio > 1) {
@@ -188,9 +186,12 @@ public class ImageSelectionScreen implements Screen {
         }
         
         game.batch.end();
+        monitor.phaseEnd(Phase.RENDER, phaseStart);
         
         // Handle input
+        phaseStart = monitor.phaseStart();
         handleInput();
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
     }
     
     private void drawBackButton(Rectangle button, String text) {
@@ -303,7 +304,20 @@ public class ImageSelectionScreen implements Screen {
                 if (button.contains(touchX, touchY)) {
                     // Start game with selected image and mode
                     String selectedImage = imageFiles.get(i);
-                    game.setScreen(new GameScreen(game, selectedImage, gameMode));
+                    if (game.isSpectating()) {
+                        SpectatorClient spectator = new SpectatorClient(game.getRaceHost(), game.getRacePort(),
+                            game.getSpectateRaceId(), game.getSpectatePlayer());
+                        game.setScreen(new GameScreen(game, selectedImage, gameMode, spectator));
+                    } else if (game.getRaceHost() != null && game.isCoop()) {
+                        game.setScreen(new GameScreen(game, selectedImage, gameMode, new CoopClient(
+                            game.getRaceHost(), game.getRacePort(), gameMode, PuzzleBoard.BOARD_SIZE,
+                            game.getRacePlayers())));
+                    } else if (game.getRaceHost() != null) {
+                        game.setScreen(new GameScreen(game, selectedImage, gameMode, game.getRaceHost(),
+                            game.getRacePort(), game.getRacePlayers()));
+                    } else {
+                        game.setScreen(new GameScreen(game, selectedImage, gameMode));
+                    }
                     break;
                 }
             }
@@ -332,13 +346,7 @@ public class ImageSelectionScreen implements Screen {
     
     @Override
     public void dispose() {
-        // Dispose of resources
-        for (Texture thumbnail : thumbnails) {
-            thumbnail.dispose();
-        }
-        if (solidBackgroundTexture != null) {
-            solidBackgroundTexture.dispose();
-        }
+        // Dispose of resources; thumbnails and the background texture belong to game.assets
         if (shapeRenderer != null) {
             shapeRenderer.dispose();
         }
@@ -9,6 +9,8 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer; // New Import
 import com.tileshifter.GameMode;
 import com.tileshifter.TileShiftGame;
+import com.tileshifter.metrics.Phase;
+import com.tileshifter.metrics.PerformanceMonitor;
 
 /**
  * Screen for selecting the game mode before choosing an image
@@ -36,12 +38,8 @@ public class ModeSelectionScreen implements Screen {
     public ModeSelectionScreen(TileShiftGame game) {
         this.game = game;
 
-        // Create 1x1 white pixel for drawing solid backgrounds
-        com.badlogic.gdx.graphics.Pixmap pixmap = new com.badlogic.gdx.graphics.Pixmap(1, 1, com.badlogic.gdx.graphics.Pixmap.Format.RGBA8888);
-        pixmap.setColor(com.badlogic.gdx.graphics.Color.WHITE);
-        pixmap.fill();
-        solidBackgroundTexture = new Texture(pixmap);
-        pixmap.dispose();
+        // Shared 1x1 white pixel for drawing solid backgrounds
+        solidBackgroundTexture = game.assets.getWhitePixel();
 
         shapeRenderer = new ShapeRenderer(); // Initialize ShapeRenderer
 
@@ -84,6 +82,9 @@ public class ModeSelectionScreen implements Screen {
     
     @Override
     public void render(float delta) {
+        PerformanceMonitor monitor = game.performanceMonitor;
+        long phaseStart = monitor.phaseStart();
+        
         // Update press animation timer
         if (pressedButton != null) {
             pressTimer += delta;
@@ -92,8 +93,10 @@ public class ModeSelectionScreen implements Screen {
                 pressTimer = 0f;
             }
         }
+        monitor.phaseEnd(Phase.ANIMATION, phaseStart);
 
         // Update hovered button
+        phaseStart = monitor.phaseStart();
         Vector3 mouseCoords = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0);
         game.viewport.unproject(mouseCoords);
         float mouseX = mouseCoords.x;
@@ -107,8 +110,10 @@ public class ModeSelectionScreen implements Screen {
         } else if (shiftButton.contains(mouseX, mouseY)) {
             hoveredButton = shiftButton;
         }
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
 
         // Clear screen
+        phaseStart = monitor.phaseStart();
         Gdx.gl.glClearColor(0.2f, 0.2f, 0.3f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
         
@@ -145,9 +150,12 @@ public class ModeSelectionScreen implements Screen {
         drawButtonText(shiftButton, "Shift", "Shift rows and columns");
         
         game.batch.end();
+        monitor.phaseEnd(Phase.RENDER, phaseStart);
         
         // Handle input
+        phaseStart = monitor.phaseStart();
         handleInput();
+        monitor.phaseEnd(Phase.INPUT, phaseStart);
     }
     
     private void drawModeButton(Rectangle button, String title, String description) {
@@ -304,10 +312,7 @@ public class ModeSelectionScreen implements Screen {
     
     @Override
     public void dispose() {
-        // Dispose of resources
-        if (solidBackgroundTexture != null) {
-            solidBackgroundTexture.dispose();
-        }
+        // Dispose of resources; the background texture belongs to game.assets
         if (shapeRenderer != null) {
             shapeRenderer.dispose();
         }
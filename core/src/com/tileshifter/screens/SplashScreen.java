@@ -0,0 +1,110 @@
+package com.tileshifter.screens;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.tileshifter.TileShiftGame;
+import com.tileshifter.assets.GameAssets;
+import com.tileshifter.metrics.Phase;
+import com.tileshifter.metrics.PerformanceMonitor;
+
+/**
+ * First screen shown on start while {@link GameAssets} loads in the background
+ * Needs no assets of its own: it draws a progress bar, and the logo once that has been uploaded
+ */
+public class SplashScreen implements Screen {
+    private TileShiftGame game;
+    private ShapeRenderer shapeRenderer;
+    private boolean finished = false; // Set once the switch to the menu has been posted
+    
+    private static final float BAR_WIDTH = 400f;
+    private static final float BAR_HEIGHT = 12f;
+    private static final float LOGO_SIZE = 200f;
+    
+    public SplashScreen(TileShiftGame game) {
+        this.game = game;
+        shapeRenderer = new ShapeRenderer();
+    }
+    
+    @Override
+    public void show() {
+        // Called when this screen becomes the current screen
+    }
+    
+    @Override
+    public void render(float delta) {
+        PerformanceMonitor monitor = game.performanceMonitor;
+        
+        // Upload a few decoded assets per frame so the splash keeps animating
+        long phaseStart = monitor.phaseStart();
+        boolean loaded = game.assets.update();
+        monitor.phaseEnd(Phase.UPDATE, phaseStart);
+        
+        phaseStart = monitor.phaseStart();
+        Gdx.gl.glClearColor(0.1f, 0.1f, 0.2f, 1);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        
+        float centerX = TileShiftGame.VIRTUAL_WIDTH / 2f;
+        float centerY = TileShiftGame.VIRTUAL_HEIGHT / 2f;
+        
+        Texture logo = game.assets.getLogoIfLoaded();
+        if (logo != null) {
+            game.batch.setProjectionMatrix(game.camera.combined);
+            game.batch.begin();
+            game.batch.draw(logo, centerX - LOGO_SIZE / 2, centerY - LOGO_SIZE / 2 + 40, LOGO_SIZE, LOGO_SIZE);
+            game.batch.end();
+        }
+        
+        float barX = centerX - BAR_WIDTH / 2;
+        float barY = centerY - LOGO_SIZE / 2 - 20;
+        shapeRenderer.setProjectionMatrix(game.camera.combined);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        shapeRenderer.setColor(0.25f, 0.25f, 0.35f, 1f);
+        shapeRenderer.rect(barX, barY, BAR_WIDTH, BAR_HEIGHT);
+        shapeRenderer.setColor(0.4f, 0.7f, 1f, 1f);
+        shapeRenderer.rect(barX, barY, BAR_WIDTH * game.assets.getProgress(), BAR_HEIGHT);
+        shapeRenderer.end();
+        monitor.phaseEnd(Phase.RENDER, phaseStart);
+        
+        if (loaded && !finished) {
+            finished = true;
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    game.onAssetsLoaded();
+                    dispose();
+                }
+            });
+        }
+    }
+    
+    @Override
+    public void resize(int width, int height) {
+        // Handled by TileShiftGame's resize method
+    }
+    
+    @Override
+    public void pause() {
+        // Handle pause
+    }
+    
+    @Override
+    public void resume() {
+        // Handle resume
+    }
+    
+    @Override
+    public void hide() {
+        // Called when this screen is no longer the current screen
+    }
+    
+    @Override
+    public void dispose() {
+        if (shapeRenderer != null) {
+            shapeRenderer.dispose();
+            shapeRenderer = null;
+        }
+    }
+}
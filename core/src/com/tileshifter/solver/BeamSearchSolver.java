@@ -0,0 +1,561 @@
+package com.tileshifter.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.perm.MoveSequence;
+import com.tileshifter.perm.PermutationGenerator;
+
+/**
+ * Finds short, not necessarily optimal, solutions for generator modes (ROTATE, SHIFT and their variants) on boards
+ * too large for {@link IdaStarSolver}
+ *
+ * Beam search: each step expands every state of the beam and keeps the beamWidth children the
+ * {@link DifficultyEstimator} lower bound (with {@link DifficultyEstimator#distanceSum} breaking ties) likes best,
+ * skipping states seen in the last few steps. Close to the goal, a state is also expanded by the commutators
+ * a b a' b' of overlapping moves, which cycle a few tiles and leave the rest in place. Without them the beam gets
+ * close and stalls: the last few tiles can only be fixed through states that look much worse. Finally, turns of
+ * the same move are merged across moves that commute with it.
+ *
+ * Each step is expanded on several threads. States are kept as tile-id bytes, one after another in a byte array
+ * per step, and candidates as a packed key, a hash and a parent-and-move index, so no objects are made per state.
+ * The solution is read back through the parent indices of each step.
+ *
+ * After each search the beam is doubled and the search repeated, pruned by the best length so far, until the time
+ * budget or node limit runs out or the solution is as short as the lower bound. The best solution found is kept.
+ * {@link #getLowerBound()} and {@link #getQuality()} tell how far from optimal it can be at most.
+ */
+public final class BeamSearchSolver implements Solver {
+    private static final int MAX_LENGTH = 10000;
+    private static final int MAX_WIDTH = 1 << 14;
+    private static final int MAX_THREADS = 64;
+    private static final int TIE_BITS = 12; // Distance sum below the lower bound in a candidate's score
+    private static final int INDEX_BITS = 32; // Expander (8 bits) and candidate (24 bits) below the score in a key
+    /** Steps a new state is checked against, enough to catch a sub-board turned full circle */
+    private static final int HISTORY = 8;
+    /** Commutators are tried from states whose bound is at most this fraction of the start's */
+    private static final int COMMUTATOR_SHARE = 5;
+    
+    private final PuzzleMode mode;
+    private final DifficultyEstimator estimator;
+    private final int cells;
+    // The mode's generators, then the commutators; each with its generator indices
+    private final PermutationGenerator[] moves;
+    private final int[][] moveSequences;
+    private final int[] undoMoves; // The move that undoes each of the mode's generators, or -1
+    private final int[] orders; // Turns of each generator that make a full circle, or 0 if more than 64
+    private final boolean[] commute; // Whether two generators move disjoint cells, [a * generatorCount + b]
+    private int beamWidth = 256;
+    private long timeBudgetMillis = 1000;
+    private int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+    
+    private int[] solution = new int[0];
+    private int solutionLength = -1;
+    private int lowerBound;
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private volatile boolean stopped;
+    
+    // Per search: the current step's states, their lengths and bounds, and per step each state's parent * moves + move
+    private byte[] layer;
+    private byte[] nextLayer;
+    private int[] lengths;
+    private int[] nextLengths;
+    private int[] bounds;
+    private int[] nextBounds;
+    private final List<int[]> origins = new ArrayList<>();
+    private long[][] history; // Hashes of the last HISTORY steps, [step % HISTORY][index]
+    private final int[] historyCounts = new int[HISTORY];
+    private long[] seen; // Open addressing over the hashes in history and of the next step; 0 is empty
+    private Expander[] expanders;
+    private ExecutorService pool;
+    
+    public BeamSearchSolver(PuzzleMode mode, DifficultyEstimator estimator) {
+        if (mode.hasBlank()) {
+            throw new IllegalArgumentException("Beam search is for generator modes, not " + mode.getName());
+        }
+        this.mode = mode;
+        this.estimator = estimator;
+        this.cells = mode.getCellCount();
+        
+        int generatorCount = mode.getGeneratorCount();
+        List<int[]> sequences = new ArrayList<>();
+        int[][] inverses = new int[generatorCount][];
+        undoMoves = new int[generatorCount];
+        orders = new int[generatorCount];
+        for (int g = 0; g < generatorCount; g++) {
+            sequences.add(new int[] {g});
+            orders[g] = order(g);
+            undoMoves[g] = mode.getInverse(g);
+            if (undoMoves[g] >= 0) {
+                inverses[g] = new int[] {undoMoves[g]};
+            } else if (orders[g] > 0) {
+                inverses[g] = new int[orders[g] - 1];
+                Arrays.fill(inverses[g], g);
+            }
+        }
+        commute = new boolean[generatorCount * generatorCount];
+        for (int a = 0; a < generatorCount; a++) {
+            for (int b = 0; b < generatorCount; b++) {
+                commute[a * generatorCount + b] = !overlap(a, b);
+            }
+        }
+        for (int a = 0; a < generatorCount; a++) {
+            for (int b = 0; b < generatorCount; b++) {
+                if (inverses[a] == null || inverses[b] == null || a == b || b == undoMoves[a]
+                        || commute[a * generatorCount + b]) {
+                    continue;
+                }
+                int[] sequence = new int[2 + inverses[a].length + inverses[b].length];
+                sequence[0] = a;
+                sequence[1] = b;
+                System.arraycopy(inverses[a], 0, sequence, 2, inverses[a].length);
+                System.arraycopy(inverses[b], 0, sequence, 2 + inverses[a].length, inverses[b].length);
+                if (!mode.sequence(sequence, 0, sequence.length).isIdentity()) {
+                    sequences.add(sequence);
+                }
+            }
+        }
+        moveSequences = sequences.toArray(new int[0][]);
+        moves = new PermutationGenerator[moveSequences.length];
+        for (int m = 0; m < moves.length; m++) {
+            moves[m] = mode.sequence(moveSequences[m], 0, moveSequences[m].length).compile("move " + m);
+        }
+    }
+    
+    /**
+     * @return Turns of a generator that bring every tile back, or 0 if it takes more than 64
+     */
+    private int order(int generator) {
+        MoveSequence sequence = new MoveSequence(mode.getSize());
+        for (int order = 1; order <= 64; order++) {
+            sequence.then(mode.getGenerator(generator));
+            if (sequence.isIdentity()) {
+                return order;
+            }
+        }
+        return 0;
+    }
+    
+    private boolean overlap(int a, int b) {
+        boolean[] moved = new boolean[cells];
+        for (int cell : mode.getGenerator(a).getCycleCells()) {
+            moved[cell] = true;
+        }
+        for (int cell : mode.getGenerator(b).getCycleCells()) {
+            if (moved[cell]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Sets the beam of the first search; later searches double it while time remains
+     */
+    public BeamSearchSolver setBeamWidth(int beamWidth) {
+        if (beamWidth < 1 || beamWidth > MAX_WIDTH) {
+            throw new IllegalArgumentException("Beam width must be between 1 and " + MAX_WIDTH + ": " + beamWidth);
+        }
+        this.beamWidth = beamWidth;
+        return this;
+    }
+    
+    /**
+     * Sets how long {@link #solve} may run; it returns -1 if not even the first search finishes in time
+     */
+    public BeamSearchSolver setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+        return this;
+    }
+    
+    public BeamSearchSolver setThreads(int threads) {
+        this.threads = Math.max(1, Math.min(threads, MAX_THREADS));
+        return this;
+    }
+    
+    @Override
+    public String getName() {
+        return "Beam";
+    }
+    
+    @Override
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    @Override
+    public boolean isOptimal() {
+        return false;
+    }
+    
+    /**
+     * @return The length of the shortest solution found within the time budget and nodeLimit, or -1
+     */
+    @Override
+    public int solve(byte[] state, int offset, long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        solutionLength = -1;
+        stopped = false;
+        deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+        byte[] start = Arrays.copyOfRange(state, offset, offset + cells);
+        lowerBound = estimator.lowerBound(start, 0);
+        if (lowerBound == 0) {
+            solutionLength = 0;
+            return 0;
+        }
+        
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "beam-search-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            int maxWidth = Math.max(beamWidth, MAX_WIDTH);
+            for (int width = beamWidth; ; width = Math.min(width * 2, maxWidth)) {
+                search(start, width, solutionLength >= 0 ? solutionLength : MAX_LENGTH + 1);
+                if (stopped || solutionLength == lowerBound || width == maxWidth) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool = null;
+        }
+        return solutionLength;
+    }
+    
+    @Override
+    public int[] getSolution() {
+        return solution;
+    }
+    
+    @Override
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+    
+    @Override
+    public long getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * @return The {@link DifficultyEstimator} lower bound of the last state solved; no solution is shorter
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+    
+    /**
+     * @return The last solution's length over the lower bound (1 means it is optimal), or 0 if none was found
+     */
+    public float getQuality() {
+        if (solutionLength < 0) {
+            return 0;
+        }
+        return lowerBound > 0 ? (float) solutionLength / lowerBound : 1;
+    }
+    
+    /**
+     * One beam search, keeping the solution if it is shorter than limit
+     */
+    private void search(byte[] start, int width, int limit) {
+        ensureCapacity(width);
+        origins.clear();
+        System.arraycopy(start, 0, layer, 0, cells);
+        lengths[0] = 0;
+        bounds[0] = lowerBound;
+        int count = 1;
+        Arrays.fill(historyCounts, 0);
+        history[0][0] = hash(start, 0);
+        historyCounts[0] = 1;
+        
+        for (int step = 0; count > 0; step++) {
+            // Expand slices of the beam in parallel
+            int slice = (count + expanders.length - 1) / expanders.length;
+            List<Expander> tasks = new ArrayList<>();
+            for (int i = 0; i < expanders.length && i * slice < count; i++) {
+                expanders[i].prepare(step, i * slice, Math.min(count, (i + 1) * slice), limit);
+                tasks.add(expanders[i]);
+            }
+            try {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Beam search failed", e.getCause());
+            }
+            int candidates = 0;
+            Expander solved = null;
+            for (Expander expander : tasks) {
+                nodes += expander.count;
+                candidates += expander.count;
+                if (expander.goal >= 0 && (solved == null || expander.goalLength < solved.goalLength)) {
+                    solved = expander;
+                }
+            }
+            if (solved != null) {
+                readSolution(step, solved.goal, solved.goalLength);
+                return;
+            }
+            if (stopped || nodes > nodeLimit || System.nanoTime() > deadline) {
+                stopped = true;
+                return;
+            }
+            
+            // Keep the best width candidates not seen in the last few steps
+            long[] keys = new long[candidates];
+            int n = 0;
+            for (int t = 0; t < tasks.size(); t++) {
+                Expander expander = tasks.get(t);
+                for (int i = 0; i < expander.count; i++) {
+                    keys[n++] = (expander.keys[i] & (-1L << INDEX_BITS)) | ((long) t << 24) | i;
+                }
+            }
+            Arrays.sort(keys);
+            Arrays.fill(seen, 0);
+            for (int h = 0; h < HISTORY; h++) {
+                for (int i = 0; i < historyCounts[h]; i++) {
+                    addSeen(history[h][i]);
+                }
+            }
+            long[] stepHashes = history[(step + 1) % HISTORY];
+            int[] stepOrigins = new int[Math.min(width, candidates)];
+            int next = 0;
+            for (int k = 0; k < n && next < width; k++) {
+                Expander expander = tasks.get((int) (keys[k] >>> 24) & 0xFF);
+                int i = (int) keys[k] & 0xFFFFFF;
+                if (!addSeen(expander.hashes[i])) {
+                    continue;
+                }
+                int origin = expander.parents[i];
+                int parent = origin / moves.length;
+                int move = origin % moves.length;
+                System.arraycopy(layer, parent * cells, nextLayer, next * cells, cells);
+                moves[move].apply(nextLayer, next * cells);
+                nextLengths[next] = lengths[parent] + moveSequences[move].length;
+                nextBounds[next] = (int) (keys[k] >>> (INDEX_BITS + TIE_BITS));
+                stepHashes[next] = expander.hashes[i];
+                stepOrigins[next++] = origin;
+            }
+            historyCounts[(step + 1) % HISTORY] = next;
+            origins.add(stepOrigins);
+            byte[] swap = layer;
+            layer = nextLayer;
+            nextLayer = swap;
+            int[] swapLengths = lengths;
+            lengths = nextLengths;
+            nextLengths = swapLengths;
+            int[] swapBounds = bounds;
+            bounds = nextBounds;
+            nextBounds = swapBounds;
+            count = next;
+        }
+    }
+    
+    /**
+     * Follows the parent indices back from a goal found expanding the given step
+     */
+    private void readSolution(int step, int goalOrigin, int length) {
+        if (solution.length < length) {
+            solution = new int[length];
+        }
+        int end = length;
+        int origin = goalOrigin;
+        for (int s = step; s >= 0; s--) {
+            int[] sequence = moveSequences[origin % moves.length];
+            end -= sequence.length;
+            System.arraycopy(sequence, 0, solution, end, sequence.length);
+            if (s > 0) {
+                origin = origins.get(s - 1)[origin / moves.length];
+            }
+        }
+        solutionLength = simplify(solution, length);
+    }
+    
+    /**
+     * Shortens a solution in place: turns of the same move are brought together past moves that commute with it,
+     * and each run is replaced by the fewest turns with the same effect. Commutators laid end to end often undo
+     * each other's last and first moves.
+     *
+     * @return The new length
+     */
+    private int simplify(int[] solution, int length) {
+        int generatorCount = mode.getGeneratorCount();
+        int[] generators = new int[length];
+        int[] turns = new int[length];
+        int runs = 0;
+        for (int i = 0; i < length; i++) {
+            int move = solution[i];
+            int turn = 1;
+            if (undoMoves[move] >= 0 && undoMoves[move] < move) {
+                move = undoMoves[move]; // A move and its inverse count as turns of the lower index
+                turn = -1;
+            }
+            int run = runs - 1;
+            while (run >= 0 && generators[run] != move && commute[generators[run] * generatorCount + move]) {
+                run--;
+            }
+            if (run >= 0 && generators[run] == move && orders[move] > 0) {
+                turns[run] = Math.floorMod(turns[run] + turn, orders[move]);
+                if (turns[run] == 0) {
+                    System.arraycopy(generators, run + 1, generators, run, runs - run - 1);
+                    System.arraycopy(turns, run + 1, turns, run, runs - run - 1);
+                    runs--;
+                }
+            } else {
+                generators[runs] = move;
+                turns[runs++] = turn;
+            }
+        }
+        int simplified = 0;
+        for (int run = 0; run < runs; run++) {
+            int move = generators[run];
+            int count = turns[run];
+            if (count < 0 || (undoMoves[move] >= 0 && orders[move] > 0 && count > orders[move] - count)) {
+                count = count < 0 ? -count : orders[move] - count;
+                move = undoMoves[move];
+            }
+            for (int i = 0; i < count; i++) {
+                solution[simplified++] = move;
+            }
+        }
+        return simplified;
+    }
+    
+    private void ensureCapacity(int width) {
+        if (layer == null || layer.length < width * cells) {
+            layer = new byte[width * cells];
+            nextLayer = new byte[width * cells];
+            lengths = new int[width];
+            nextLengths = new int[width];
+            bounds = new int[width];
+            nextBounds = new int[width];
+            history = new long[HISTORY][width];
+            seen = new long[Integer.highestOneBit(width * (HISTORY + 1)) * 4];
+        }
+        if (expanders == null || expanders.length != threads) {
+            expanders = new Expander[threads];
+            for (int i = 0; i < threads; i++) {
+                expanders[i] = new Expander();
+            }
+        }
+    }
+    
+    /**
+     * @return Whether the hash was not in the table yet
+     */
+    private boolean addSeen(long hash) {
+        int mask = seen.length - 1;
+        for (int slot = (int) (hash ^ (hash >>> 32)) & mask; ; slot = (slot + 1) & mask) {
+            if (seen[slot] == hash) {
+                return false;
+            }
+            if (seen[slot] == 0) {
+                seen[slot] = hash;
+                return true;
+            }
+        }
+    }
+    
+    private long hash(byte[] state, int offset) {
+        long hash = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            hash = (hash + state[offset + cell]) * 0x9E3779B97F4A7C15L;
+        }
+        hash ^= hash >>> 29;
+        return hash != 0 ? hash : 1;
+    }
+    
+    /**
+     * Expands a slice of the beam into scored candidates
+     */
+    private final class Expander implements Callable<Void> {
+        final byte[] child = new byte[cells];
+        long[] keys = new long[0];
+        long[] hashes = new long[0];
+        int[] parents = new int[0];
+        int count;
+        int goal;
+        int goalLength;
+        private int step;
+        private int from;
+        private int to;
+        private int limit;
+        
+        void prepare(int step, int from, int to, int limit) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            int capacity = (to - from) * moves.length;
+            if (keys.length < capacity) {
+                keys = new long[capacity];
+                hashes = new long[capacity];
+                parents = new int[capacity];
+            }
+        }
+        
+        @Override
+        public Void call() {
+            count = 0;
+            goal = -1;
+            for (int index = from; index < to; index++) {
+                if ((index & 15) == 0 && (stopped || System.nanoTime() > deadline)) {
+                    stopped = true;
+                    return null;
+                }
+                int previous = step > 0 ? origins.get(step - 1)[index] % moves.length : -1;
+                int undo = previous >= 0 && previous < undoMoves.length ? undoMoves[previous] : -1;
+                // Far from the goal, the mode's moves make progress and commutators only make solutions longer
+                int moveCount = bounds[index] * COMMUTATOR_SHARE <= lowerBound ? moves.length : undoMoves.length;
+                for (int move = 0; move < moveCount; move++) {
+                    int length = lengths[index] + moveSequences[move].length;
+                    if (move == undo || length >= limit) {
+                        continue;
+                    }
+                    System.arraycopy(layer, index * cells, child, 0, cells);
+                    moves[move].apply(child, 0);
+                    int bound = estimator.lowerBound(child, 0);
+                    if (bound == 0) {
+                        if (goal < 0 || length < goalLength) {
+                            goal = index * moves.length + move;
+                            goalLength = length;
+                        }
+                        continue;
+                    }
+                    if (length + bound >= limit) {
+                        continue; // Cannot beat the best solution so far
+                    }
+                    int tie = Math.min(estimator.distanceSum(child, 0), (1 << TIE_BITS) - 1);
+                    keys[count] = ((long) bound << TIE_BITS | tie) << INDEX_BITS;
+                    hashes[count] = hash(child, 0);
+                    parents[count] = index * moves.length + move;
+                    count++;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.tileshifter.solver;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * Puts a {@link SolutionCache} in front of another solver
+ *
+ * A position is solved by following the cached next moves for as long as every position on the way is cached with
+ * a distance below the previous one's (equal to its distance minus one for optimal entries), one lookup per move;
+ * the solver only searches from where the cache runs out, and every position on the path it finds is stored. Solutions are only taken from optimal entries when the solver is optimal,
+ * so caching never makes a solver's solutions longer.
+ */
+public final class CachingSolver implements Solver {
+    private final Solver solver;
+    private final SolutionCache cache;
+    private final PuzzleMode mode;
+    private final byte[] work;
+    private int[] solution = new int[256];
+    private int solutionLength = -1;
+    private int cachedMoves;
+    private long nodes;
+    
+    public CachingSolver(Solver solver, SolutionCache cache) {
+        if (solver.getMode().getSize() != cache.getMode().getSize()
+            || !solver.getMode().getName().equals(cache.getMode().getName())) {
+            throw new IllegalArgumentException("The cache is for " + cache.getMode().getName() + ", not "
+                + solver.getMode().getName());
+        }
+        this.solver = solver;
+        this.cache = cache;
+        this.mode = solver.getMode();
+        work = new byte[mode.getCellCount()];
+    }
+    
+    @Override
+    public String getName() {
+        return solver.getName() + " (cached)";
+    }
+    
+    @Override
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    @Override
+    public boolean isOptimal() {
+        return solver.isOptimal();
+    }
+    
+    @Override
+    public int solve(byte[] state, int offset, long nodeLimit) {
+        System.arraycopy(state, offset, work, 0, work.length);
+        int blankCell = mode.hasBlank() ? blankCell(work) : -1;
+        solutionLength = 0;
+        nodes = 0;
+        
+        int expected = -1;
+        while (!mode.isSolved(work, 0)) {
+            int entry = cache.lookup(work, 0);
+            if (entry == SolutionCache.MISS || solver.isOptimal() && !SolutionCache.isOptimal(entry)
+                || expected >= 0 && SolutionCache.getDistance(entry) > expected) {
+                break;
+            }
+            int move = SolutionCache.getNextMove(entry);
+            if (mode.hasBlank()) {
+                blankCell = mode.moveBlank(work, 0, blankCell, move);
+            } else {
+                mode.apply(work, 0, move);
+            }
+            append(move);
+            expected = SolutionCache.getDistance(entry) - 1;
+        }
+        cachedMoves = solutionLength;
+        if (mode.isSolved(work, 0)) {
+            return solutionLength;
+        }
+        
+        int length = solver.solve(work, 0, nodeLimit);
+        nodes = solver.getNodeCount();
+        if (length < 0) {
+            solutionLength = -1;
+            return -1;
+        }
+        int[] moves = solver.getSolution();
+        for (int i = 0; i < length; i++) {
+            if (length - i <= SolutionCache.MAX_DISTANCE) {
+                cache.store(work, 0, length - i, moves[i], solver.isOptimal());
+            }
+            if (mode.hasBlank()) {
+                blankCell = mode.moveBlank(work, 0, blankCell, moves[i]);
+            } else {
+                mode.apply(work, 0, moves[i]);
+            }
+            append(moves[i]);
+        }
+        return solutionLength;
+    }
+    
+    @Override
+    public int[] getSolution() {
+        return solution;
+    }
+    
+    @Override
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+    
+    /**
+     * @return States searched by the wrapped solver in the last call; 0 if the cache had the whole solution
+     */
+    @Override
+    public long getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * @return Moves of the last solution that came from the cache
+     */
+    public int getCachedMoveCount() {
+        return cachedMoves;
+    }
+    
+    public SolutionCache getCache() {
+        return cache;
+    }
+    
+    private void append(int move) {
+        if (solutionLength == solution.length) {
+            solution = java.util.Arrays.copyOf(solution, solution.length * 2);
+        }
+        solution[solutionLength++] = move;
+    }
+    
+    private int blankCell(byte[] state) {
+        int blank = state.length - 1;
+        for (int cell = 0; cell < state.length; cell++) {
+            if ((state[cell] & 0xFF) == blank) {
+                return cell;
+            }
+        }
+        throw new IllegalArgumentException("The state has no blank");
+    }
+}
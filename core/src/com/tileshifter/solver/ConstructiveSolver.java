@@ -0,0 +1,415 @@
+package com.tileshifter.solver;
+
+import java.util.Arrays;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * Solves classic sliding boards of any size the way people do: the top row, then the left column, then the
+ * same again on the smaller board that is left, until a 2x2 block remains whose tiles are cycled into place
+ *
+ * Tiles are placed one at a time along a shortest path that avoids finished cells. Before each step of the tile,
+ * the blank is routed to the cell ahead of it by breadth-first search around the tile. The last two tiles of a
+ * line cannot be placed this way without disturbing the first, so both are brought into the 2x3 block at the end
+ * of the line and turned into place by a search over that block's 216 arrangements of the blank and the two
+ * tiles. Finally, moves that undo the previous move are cancelled.
+ *
+ * Work is polynomial (a random 32x32 board takes about 15 ms); solutions are far from optimal. The board is
+ * kept as an int array of tile ids, so sizes are not limited to byte-sized states:
+ * {@link #solve(int[], int)} takes any size, and the {@link Solver} entry point takes byte states up to 16x16.
+ */
+public final class ConstructiveSolver implements Solver {
+    private final PuzzleMode mode;
+    private final int size;
+    private final int cells;
+    private final int[] tiles;     // Tile id per cell
+    private final int[] positions; // Cell per tile id
+    private final boolean[] locked;
+    // Breadth-first search scratch: cells visited in the current search carry its stamp
+    private final int[] visited;
+    private final int[] parents;
+    private final int[] queue;
+    private final int[] path;
+    private int stamp;
+    private int blankCell;
+    private int[] solution = new int[256];
+    private int solutionLength = -1;
+    private long nodes;
+    
+    public ConstructiveSolver(PuzzleMode mode) {
+        if (!mode.hasBlank() || mode.getSize() < 2) {
+            throw new IllegalArgumentException("The constructive solver needs a classic board, not " + mode.getName());
+        }
+        this.mode = mode;
+        this.size = mode.getSize();
+        this.cells = size * size;
+        tiles = new int[cells];
+        positions = new int[cells];
+        locked = new boolean[cells];
+        visited = new int[cells];
+        parents = new int[cells];
+        queue = new int[cells];
+        path = new int[cells];
+    }
+    
+    @Override
+    public String getName() {
+        return "Constructive";
+    }
+    
+    @Override
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    @Override
+    public boolean isOptimal() {
+        return false;
+    }
+    
+    /**
+     * Solves a state with tile ids read as unsigned bytes, so boards up to 16x16; the node limit is not needed
+     */
+    @Override
+    public int solve(byte[] state, int offset, long nodeLimit) {
+        int[] values = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            values[cell] = state[offset + cell] & 0xFF;
+        }
+        return solve(values, 0);
+    }
+    
+    /**
+     * @return The length of the solution, or -1 if the state is not a reachable arrangement of the tiles
+     */
+    public int solve(int[] state, int offset) {
+        solutionLength = -1;
+        nodes = 0;
+        Arrays.fill(positions, -1);
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = state[offset + cell];
+            if (tile < 0 || tile >= cells || positions[tile] >= 0) {
+                return -1;
+            }
+            tiles[cell] = tile;
+            positions[tile] = cell;
+        }
+        if (!isSolvable()) {
+            return -1;
+        }
+        blankCell = positions[cells - 1];
+        Arrays.fill(locked, false);
+        solutionLength = 0;
+        
+        int left = 0;
+        int top = 0;
+        while (size - left > 2 || size - top > 2) {
+            if (size - top >= size - left) {
+                solveLine(top * size + left, 1, size, size - left);
+                top++;
+            } else {
+                solveLine(top * size + left, size, 1, size - top);
+                left++;
+            }
+        }
+        solveLastBlock();
+        cancelInverses();
+        return solutionLength;
+    }
+    
+    @Override
+    public int[] getSolution() {
+        return solution;
+    }
+    
+    @Override
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+    
+    /**
+     * @return Cells visited while routing the blank and the tiles
+     */
+    @Override
+    public long getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * Places the tiles of a row (step 1) or column (step size) and locks them
+     *
+     * @param first First cell of the line
+     * @param step Offset between cells of the line
+     * @param across Offset to the neighbouring cell off the line, into the unsolved part of the board
+     * @param length Cells in the line
+     */
+    private void solveLine(int first, int step, int across, int length) {
+        for (int i = 0; i < length - 2; i++) {
+            int cell = first + i * step;
+            moveTile(cell, cell);
+            locked[cell] = true;
+        }
+        int near = first + (length - 2) * step;
+        int far = near + step;
+        if (tiles[near] == near && tiles[far] == far) {
+            locked[near] = true;
+            locked[far] = true;
+            return;
+        }
+        // Bring both tiles and the blank into the 2x3 block at the end of the line, then finish by search
+        int[] block = {near, far, near + across, far + across, near + 2 * across, far + 2 * across};
+        moveTile(far, near);
+        locked[near] = true;
+        moveTileInto(near, near + across, block);
+        locked[near] = false;
+        locked[positions[near]] = true;
+        locked[positions[far]] = true;
+        for (int i = block.length - 1; i >= 0 && indexOf(block, blankCell) < 0; i--) {
+            if (!locked[block[i]] && findPath(blankCell, block[i]) >= 0) {
+                moveBlank(block[i]);
+            }
+        }
+        locked[positions[near]] = false;
+        locked[positions[far]] = false;
+        solveBlock(block, near, far);
+        locked[near] = true;
+        locked[far] = true;
+    }
+    
+    /**
+     * Breadth-first search over the blank's moves inside a 2x3 block for the one that brings tiles nearTile and
+     * farTile to the first two cells of the block, treating the other tiles as interchangeable. With three of them,
+     * every arrangement of the blank and the two tiles is reachable.
+     */
+    private void solveBlock(int[] block, int nearTile, int farTile) {
+        int n = block.length;
+        int states = n * n * n;
+        int[] previous = new int[states];
+        Arrays.fill(previous, -1);
+        int[] open = new int[states];
+        int start = (indexOf(block, blankCell) * n + indexOf(block, positions[nearTile])) * n
+            + indexOf(block, positions[farTile]);
+        previous[start] = start;
+        open[0] = start;
+        int head = 0;
+        int tail = 1;
+        int goal = -1;
+        while (head < tail) {
+            int state = open[head++];
+            nodes++;
+            int blank = state / (n * n);
+            int nearIndex = state / n % n;
+            int farIndex = state % n;
+            if (nearIndex == 0 && farIndex == 1) {
+                goal = state;
+                break;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = indexOf(block, mode.getBlankNeighbor(block[blank], direction));
+                if (next < 0) {
+                    continue;
+                }
+                int moved = (next * n + (nearIndex == next ? blank : nearIndex)) * n
+                    + (farIndex == next ? blank : farIndex);
+                if (previous[moved] < 0) {
+                    previous[moved] = state;
+                    open[tail++] = moved;
+                }
+            }
+        }
+        if (goal < 0) {
+            throw new IllegalStateException("Block did not solve");
+        }
+        int length = 0;
+        for (int state = goal; state != start; state = previous[state]) {
+            open[length++] = block[state / (n * n)];
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            slideBlank(open[i]);
+        }
+    }
+    
+    private static int indexOf(int[] cells, int cell) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Cycles the blank around the remaining 2x2 block at the bottom right until it is solved
+     */
+    private void solveLastBlock() {
+        int topLeft = cells - 2 - size;
+        int[] cycle = {topLeft, topLeft + 1, topLeft + 1 + size, topLeft + size}; // Clockwise
+        int index = 0;
+        while (cycle[index] != blankCell) {
+            index++;
+        }
+        // Solvable states are solved within one turn of the blank in one of the two directions
+        for (int turn = 0; turn < 12 && !isBlockSolved(cycle); turn++) {
+            index = (index + 1) & 3;
+            slideBlank(cycle[index]);
+        }
+        if (!isBlockSolved(cycle)) {
+            throw new IllegalStateException("Last block did not solve");
+        }
+    }
+    
+    private boolean isBlockSolved(int[] block) {
+        for (int cell : block) {
+            if (tiles[cell] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Moves the tile with the given id to target along a shortest path over unlocked cells
+     */
+    private void moveTile(int tile, int target) {
+        moveTileInto(tile, target, null);
+    }
+    
+    /**
+     * Like {@link #moveTile}, but stops as soon as the tile is on one of the stop cells
+     */
+    private void moveTileInto(int tile, int target, int[] stops) {
+        int from = positions[tile];
+        int steps = findPath(from, target);
+        if (steps < 0) {
+            throw new IllegalStateException("No path for tile " + tile + " to cell " + target);
+        }
+        // findPath leaves the cells in path[0..steps) from the target back towards the tile
+        int[] route = Arrays.copyOf(path, steps);
+        for (int i = steps - 1; i >= 0; i--) {
+            if (stops != null && indexOf(stops, positions[tile]) >= 0) {
+                return;
+            }
+            locked[positions[tile]] = true; // The blank must go around the tile
+            moveBlank(route[i]);
+            locked[positions[tile]] = false;
+            slideBlank(positions[tile]);
+        }
+    }
+    
+    /**
+     * Routes the blank to a cell over unlocked cells
+     */
+    private void moveBlank(int target) {
+        int steps = findPath(blankCell, target);
+        if (steps < 0) {
+            throw new IllegalStateException("No path for the blank to cell " + target);
+        }
+        for (int i = steps - 1; i >= 0; i--) {
+            slideBlank(path[i]);
+        }
+    }
+    
+    /**
+     * Breadth-first search over unlocked cells
+     *
+     * @return The number of steps, with the cells of the path from the target backwards in path, or -1
+     */
+    private int findPath(int from, int target) {
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited[from] = stamp;
+        while (head < tail) {
+            int cell = queue[head++];
+            nodes++;
+            if (cell == target) {
+                int steps = 0;
+                for (int c = target; c != from; c = parents[c]) {
+                    path[steps++] = c;
+                }
+                return steps;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = mode.getBlankNeighbor(cell, direction);
+                if (next >= 0 && visited[next] != stamp && !locked[next]) {
+                    visited[next] = stamp;
+                    parents[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Moves the blank to a neighbouring cell and records the move
+     */
+    private void slideBlank(int target) {
+        int direction;
+        if (target == blankCell - size) {
+            direction = PuzzleMode.UP;
+        } else if (target == blankCell + size) {
+            direction = PuzzleMode.DOWN;
+        } else if (target == blankCell - 1) {
+            direction = PuzzleMode.LEFT;
+        } else {
+            direction = PuzzleMode.RIGHT;
+        }
+        int tile = tiles[target];
+        tiles[blankCell] = tile;
+        positions[tile] = blankCell;
+        tiles[target] = cells - 1;
+        positions[cells - 1] = target;
+        blankCell = target;
+        
+        if (solutionLength == solution.length) {
+            solution = Arrays.copyOf(solution, solution.length * 2);
+        }
+        solution[solutionLength++] = direction;
+    }
+    
+    /**
+     * Removes every move that directly undoes the one before it, repeatedly
+     */
+    private void cancelInverses() {
+        int kept = 0;
+        for (int i = 0; i < solutionLength; i++) {
+            int move = solution[i];
+            if (kept > 0 && solution[kept - 1] == (move ^ 1)) {
+                kept--; // UP/DOWN and LEFT/RIGHT undo each other
+            } else {
+                solution[kept++] = move;
+            }
+        }
+        solutionLength = kept;
+    }
+    
+    /**
+     * A state is solvable when its permutation parity matches the parity of the blank's distance from home
+     */
+    private boolean isSolvable() {
+        if (++stamp == 0) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
+        }
+        int transpositions = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (visited[cell] == stamp) {
+                continue;
+            }
+            int length = 0;
+            for (int c = cell; visited[c] != stamp; c = tiles[c]) {
+                visited[c] = stamp;
+                length++;
+            }
+            transpositions += length - 1;
+        }
+        int blank = positions[cells - 1];
+        int distance = (size - 1 - blank % size) + (size - 1 - blank / size);
+        return (transpositions & 1) == (distance & 1);
+    }
+}
@@ -0,0 +1,363 @@
+package com.tileshifter.solver;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.perm.BoardSymmetries;
+import com.tileshifter.perm.PermutationGenerator;
+import java.util.Arrays;
+
+/**
+ * Estimates how many moves a board state needs, in microseconds and without solving it
+ *
+ * {@link #lowerBound} is an admissible heuristic (it never overestimates the optimal solution length):
+ * - Modes with a blank: the larger of Manhattan distance plus linear conflicts and, up to 4x4, walking distance,
+ *   and the sum of any additive {@link PatternDatabase}s given for disjoint tile sets. The databases are also
+ *   looked up through each symmetry of the board (the transpose for CLASSIC), and the largest sum counts.
+ * - Generator modes: tile distances under both the plain and the wrap-around (toroidal) grid metric, divided by
+ *   the most distance one move can remove. Modes whose moves are all horizontal or vertical, like SHIFT, bound
+ *   the two axes separately and add them.
+ *
+ * {@link #estimateMoves} maps the lower bound to an expected optimal length with a linear fit per mode and size,
+ * measured by the calibration benchmark against exact solution lengths. Uncalibrated modes report the bound.
+ * States are tile ids per cell as in {@link com.tileshifter.PuzzleBoard#getState(byte[])}.
+ * Estimators hold no per-call state and can be shared between threads.
+ */
+public final class DifficultyEstimator {
+    /** Fitted {mode name, size, slope, intercept}; regenerate with the difficulty calibration benchmark */
+    private static final Object[][] CALIBRATIONS = {
+        {"Classic", 3, 0.752f, 9.925f},
+        {"Shift", 3, 0.398f, 4.216f},
+        {"Classic", 4, 1.256f, 0.909f},
+        {"Shift", 4, 1.175f, -0.160f},
+        {"Rotate", 4, 1.742f, 1.740f},
+    };
+    private static final int MAX_CONFLICT_TABLE_SIZE = 5;
+    private static final byte[][] CONFLICT_TABLES = new byte[MAX_CONFLICT_TABLE_SIZE + 1][];
+    
+    private final PuzzleMode mode;
+    private final int size;
+    private final int cells;
+    private final boolean hasBlank;
+    private final WalkingDistanceTable walkingDistance;
+    private final PatternDatabase[][] patternDatabases; // [symmetry][database]
+    // Cells of every row (lines 0 to size - 1) and column (lines size to 2 * size - 1), [line * size + i]
+    private final int[] lineCells;
+    // Position along the line a tile belongs to in its goal row (or column), or -1 if it is not that line's tile
+    private final int[] goalPositions; // [line * cells + tile]
+    // Linear conflicts by line contents, and each tile's share of a line's key, [(line * size + i) * cells + tile]
+    private final byte[] conflictTable;
+    private final int[] lineKeyParts;
+    // Per metric (0 plain, 1 toroidal): tile distances along each axis, [cell * cells + tile]
+    private final byte[][] horizontal = new byte[2][];
+    private final byte[][] vertical = new byte[2][];
+    // Per metric: most distance one move removes, along each axis and in total
+    private final int[] maxHorizontalGain = new int[2];
+    private final int[] maxVerticalGain = new int[2];
+    private final int[] maxGain = new int[2];
+    private boolean axisMoves = true;
+    private final float slope;
+    private final float intercept;
+    
+    public DifficultyEstimator(PuzzleMode mode) {
+        this(mode, new PatternDatabase[0]);
+    }
+    
+    /**
+     * @param patternDatabases Databases for disjoint tile sets of a mode with a blank, e.g. a 6-6-6-6 split of 5x5
+     */
+    public DifficultyEstimator(PuzzleMode mode, PatternDatabase... patternDatabases) {
+        boolean[] covered = new boolean[mode.getCellCount()];
+        for (PatternDatabase database : patternDatabases) {
+            if (!database.supports(mode)) {
+                throw new IllegalArgumentException("Pattern database for size " + database.getSize()
+                    + " does not fit " + mode.getName() + " " + mode.getSize() + "x" + mode.getSize());
+            }
+            for (byte tile : database.getTiles()) {
+                if (covered[tile]) {
+                    throw new IllegalArgumentException("Pattern databases share tile " + tile);
+                }
+                covered[tile] = true;
+            }
+        }
+        BoardSymmetries symmetries = mode.getSymmetries();
+        this.patternDatabases = new PatternDatabase[patternDatabases.length > 0 ? symmetries.getCount() : 0][];
+        for (int transform = 0; transform < this.patternDatabases.length; transform++) {
+            this.patternDatabases[transform] = new PatternDatabase[patternDatabases.length];
+            for (int i = 0; i < patternDatabases.length; i++) {
+                this.patternDatabases[transform][i] = transform == 0
+                    ? patternDatabases[i] : patternDatabases[i].transformed(symmetries, transform);
+            }
+        }
+        this.mode = mode;
+        this.size = mode.getSize();
+        this.cells = size * size;
+        this.hasBlank = mode.hasBlank();
+        this.walkingDistance = hasBlank ? WalkingDistanceTable.forSize(size) : null;
+        
+        lineCells = new int[2 * size * size];
+        goalPositions = new int[2 * size * cells];
+        Arrays.fill(goalPositions, -1);
+        for (int line = 0; line < size; line++) {
+            for (int i = 0; i < size; i++) {
+                lineCells[line * size + i] = line * size + i;
+                lineCells[(size + line) * size + i] = i * size + line;
+                if (!hasBlank || line * size + i != cells - 1) {
+                    goalPositions[line * cells + line * size + i] = i;
+                }
+                if (!hasBlank || i * size + line != cells - 1) {
+                    goalPositions[(size + line) * cells + i * size + line] = i;
+                }
+            }
+        }
+        conflictTable = hasBlank ? conflictTable(size) : null;
+        lineKeyParts = new int[conflictTable != null ? 2 * size * size * cells : 0];
+        if (conflictTable != null) {
+            for (int line = 0; line < 2 * size; line++) {
+                for (int i = 0; i < size; i++) {
+                    for (int tile = 0; tile < cells; tile++) {
+                        lineKeyParts[(line * size + i) * cells + tile] =
+                            (goalPositions[line * cells + tile] + 1) << (3 * i);
+                    }
+                }
+            }
+        }
+        
+        for (int metric = 0; metric < 2; metric++) {
+            horizontal[metric] = new byte[cells * cells];
+            vertical[metric] = new byte[cells * cells];
+            for (int cell = 0; cell < cells; cell++) {
+                for (int tile = 0; tile < cells; tile++) {
+                    horizontal[metric][cell * cells + tile] = (byte) axisDistance(cell % size, tile % size, metric);
+                    vertical[metric][cell * cells + tile] = (byte) axisDistance(cell / size, tile / size, metric);
+                }
+            }
+        }
+        for (int g = 0; g < mode.getGeneratorCount(); g++) {
+            PermutationGenerator generator = mode.getGenerator(g);
+            int[] moved = generator.getCycleCells();
+            boolean movesHorizontally = false;
+            boolean movesVertically = false;
+            for (int metric = 0; metric < 2; metric++) {
+                int gainH = 0;
+                int gainV = 0;
+                for (int cell : moved) {
+                    // A tile's distance changes by at most how far it moves
+                    int destination = generator.getDestination(cell);
+                    gainH += axisDistance(cell % size, destination % size, metric);
+                    gainV += axisDistance(cell / size, destination / size, metric);
+                }
+                maxHorizontalGain[metric] = Math.max(maxHorizontalGain[metric], gainH);
+                maxVerticalGain[metric] = Math.max(maxVerticalGain[metric], gainV);
+                maxGain[metric] = Math.max(maxGain[metric], gainH + gainV);
+                movesHorizontally |= gainH > 0;
+                movesVertically |= gainV > 0;
+            }
+            axisMoves &= !(movesHorizontally && movesVertically);
+        }
+        
+        float slope = 1;
+        float intercept = 0;
+        for (Object[] calibration : CALIBRATIONS) {
+            if (calibration[0].equals(mode.getName()) && (Integer) calibration[1] == size) {
+                slope = (Float) calibration[2];
+                intercept = (Float) calibration[3];
+            }
+        }
+        this.slope = slope;
+        this.intercept = intercept;
+    }
+    
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    /**
+     * @return Whether {@link #estimateMoves} uses a fit measured for this mode and size
+     */
+    public boolean isCalibrated() {
+        return slope != 1 || intercept != 0;
+    }
+    
+    /**
+     * @return A number of moves no solution of the state can be shorter than; 0 for the solved state
+     */
+    public int lowerBound(byte[] state, int offset) {
+        return hasBlank ? slidingBound(state, offset) : generatorBound(state, offset);
+    }
+    
+    /**
+     * @return Expected optimal solution length of the state
+     */
+    public float estimateMoves(byte[] state, int offset) {
+        int bound = lowerBound(state, offset);
+        if (bound == 0) {
+            return 0;
+        }
+        return Math.max(bound, slope * bound + intercept);
+    }
+    
+    /**
+     * @return Manhattan distance of the tiles other than the blank
+     */
+    public int manhattanDistance(byte[] state, int offset) {
+        int distance = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = state[offset + cell] & 0xFF;
+            if (!hasBlank || tile != cells - 1) {
+                distance += horizontal[0][cell * cells + tile] + vertical[0][cell * cells + tile];
+            }
+        }
+        return distance;
+    }
+    
+    private int slidingBound(byte[] state, int offset) {
+        int bound = manhattanDistance(state, offset) + 2 * linearConflicts(state, offset);
+        if (walkingDistance != null) {
+            bound = Math.max(bound, walkingDistance.distance(state, offset));
+        }
+        for (PatternDatabase[] databases : patternDatabases) {
+            int patterns = 0;
+            for (PatternDatabase database : databases) {
+                patterns += database.distance(state, offset);
+            }
+            bound = Math.max(bound, patterns);
+        }
+        return bound;
+    }
+    
+    /**
+     * Tiles in their goal row (or column) but in the wrong order must leave the line and come back, two moves
+     * beyond their Manhattan distance each. The fewest such tiles is the line length minus its longest run of
+     * tiles already in order.
+     */
+    private int linearConflicts(byte[] state, int offset) {
+        int conflicts = 0;
+        if (conflictTable != null) {
+            for (int line = 0; line < 2 * size; line++) {
+                int key = 0;
+                for (int i = 0, index = line * size * cells; i < size; i++, index += cells) {
+                    key += lineKeyParts[index + state[offset + lineCells[line * size + i]]];
+                }
+                conflicts += conflictTable[key];
+            }
+            return conflicts;
+        }
+        
+        int[] goals = new int[size];
+        for (int line = 0; line < 2 * size; line++) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int goal = goalPositions[line * cells + (state[offset + lineCells[line * size + i]] & 0xFF)];
+                if (goal >= 0) {
+                    goals[count++] = goal;
+                }
+            }
+            conflicts += lineConflicts(goals, count);
+        }
+        return conflicts;
+    }
+    
+    /**
+     * @return count minus the longest increasing run of the goal positions, by patience sorting
+     */
+    private static int lineConflicts(int[] goals, int count) {
+        int[] tails = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            while (low < length && tails[low] < goals[i]) {
+                low++;
+            }
+            tails[low] = goals[i];
+            if (low == length) {
+                length++;
+            }
+        }
+        return count - length;
+    }
+    
+    /**
+     * Conflicts of every line of the given size, indexed by its goal positions plus one at 3 bits per cell.
+     * Looking lines up avoids the data-dependent branches of computing them, which cost more than the rest
+     * of the bound together.
+     */
+    private static synchronized byte[] conflictTable(int size) {
+        if (size > MAX_CONFLICT_TABLE_SIZE) {
+            return null;
+        }
+        if (CONFLICT_TABLES[size] == null) {
+            byte[] table = new byte[1 << (3 * size)];
+            int[] goals = new int[size];
+            for (int key = 0; key < table.length; key++) {
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    int code = (key >>> (3 * i)) & 7;
+                    if (code > 0) {
+                        goals[count++] = code - 1;
+                    }
+                }
+                table[key] = (byte) lineConflicts(goals, count);
+            }
+            CONFLICT_TABLES[size] = table;
+        }
+        return CONFLICT_TABLES[size];
+    }
+    
+    /**
+     * @return The tile distance sum the lower bound is made from: Manhattan distance for modes with a blank, else
+     * the plain or wrap-around distance, whichever gives the larger bound. Finer than the bound, so it can rank
+     * states the bound cannot tell apart.
+     */
+    public int distanceSum(byte[] state, int offset) {
+        if (hasBlank) {
+            return manhattanDistance(state, offset);
+        }
+        return (int) generatorBounds(state, offset);
+    }
+    
+    private int generatorBound(byte[] state, int offset) {
+        return (int) (generatorBounds(state, offset) >>> 32);
+    }
+    
+    /**
+     * @return The bound in the high 32 bits and the distance sum of the metric that gave it in the low bits
+     */
+    private long generatorBounds(byte[] state, int offset) {
+        int bound = 0;
+        int sum = 0;
+        for (int metric = 0; metric < 2; metric++) {
+            byte[] h = horizontal[metric];
+            byte[] v = vertical[metric];
+            int distanceH = 0;
+            int distanceV = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                int index = cell * cells + (state[offset + cell] & 0xFF);
+                distanceH += h[index];
+                distanceV += v[index];
+            }
+            int metricBound;
+            if (axisMoves) {
+                metricBound = divideRoundingUp(distanceH, maxHorizontalGain[metric])
+                    + divideRoundingUp(distanceV, maxVerticalGain[metric]);
+            } else {
+                metricBound = divideRoundingUp(distanceH + distanceV, maxGain[metric]);
+            }
+            if (metric == 0 || metricBound > bound) {
+                bound = metricBound;
+                sum = distanceH + distanceV;
+            }
+        }
+        return (long) bound << 32 | sum;
+    }
+    
+    private static int divideRoundingUp(int distance, int gain) {
+        if (distance == 0) {
+            return 0;
+        }
+        return gain == 0 ? Integer.MAX_VALUE / 4 : (distance + gain - 1) / gain;
+    }
+    
+    private int axisDistance(int from, int to, int metric) {
+        int distance = Math.abs(from - to);
+        return metric == 0 ? distance : Math.min(distance, size - distance);
+    }
+}
@@ -0,0 +1,147 @@
+package com.tileshifter.solver;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * Finds optimal solutions by iterative-deepening A* with a {@link DifficultyEstimator} lower bound
+ *
+ * Meant for small boards and short scrambles, e.g. to calibrate estimates against exact solution lengths; the
+ * node limit keeps hard states from running away.
+ */
+public final class IdaStarSolver implements Solver {
+    private static final int FOUND = -1;
+    private static final int MAX_DEPTH = 255;
+    
+    private final PuzzleMode mode;
+    private final DifficultyEstimator estimator;
+    private final int cells;
+    private final byte[] state;
+    private final int[] path = new int[MAX_DEPTH];
+    private int solutionLength = -1;
+    private long nodes;
+    private long nodeLimit;
+    
+    public IdaStarSolver(PuzzleMode mode, DifficultyEstimator estimator) {
+        this.mode = mode;
+        this.estimator = estimator;
+        this.cells = mode.getCellCount();
+        this.state = new byte[cells];
+    }
+    
+    @Override
+    public String getName() {
+        return "IDA*";
+    }
+    
+    @Override
+    public PuzzleMode getMode() {
+        return mode;
+    }
+    
+    @Override
+    public boolean isOptimal() {
+        return true;
+    }
+    
+    /**
+     * @return The optimal solution length, or -1 if more than nodeLimit states had to be searched
+     */
+    @Override
+    public int solve(byte[] start, int offset, long nodeLimit) {
+        System.arraycopy(start, offset, state, 0, cells);
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        solutionLength = -1;
+        int blankCell = -1;
+        if (mode.hasBlank()) {
+            for (int cell = 0; cell < cells; cell++) {
+                if ((state[cell] & 0xFF) == cells - 1) {
+                    blankCell = cell;
+                }
+            }
+        }
+        
+        int threshold = estimator.lowerBound(state, 0);
+        while (threshold <= MAX_DEPTH) {
+            int next = search(0, threshold, blankCell, -1);
+            if (next == FOUND) {
+                return solutionLength;
+            }
+            if (next == Integer.MAX_VALUE || nodes > nodeLimit) {
+                return -1;
+            }
+            threshold = next;
+        }
+        return -1;
+    }
+    
+    @Override
+    public int[] getSolution() {
+        return path;
+    }
+    
+    @Override
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+    
+    @Override
+    public long getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * @return FOUND, or the smallest f-value above the threshold
+     */
+    private int search(int depth, int threshold, int blankCell, int previousMove) {
+        nodes++;
+        int bound = estimator.lowerBound(state, 0);
+        if (bound == 0) {
+            solutionLength = depth;
+            return FOUND;
+        }
+        int f = depth + bound;
+        if (f > threshold) {
+            return f;
+        }
+        if (nodes > nodeLimit || depth == MAX_DEPTH) {
+            return Integer.MAX_VALUE;
+        }
+        
+        int minimum = Integer.MAX_VALUE;
+        if (mode.hasBlank()) {
+            for (int direction = 0; direction < 4; direction++) {
+                if (previousMove >= 0 && direction == (previousMove ^ 1)) {
+                    continue; // UP/DOWN and LEFT/RIGHT undo each other
+                }
+                int target = mode.moveBlank(state, 0, blankCell, direction);
+                if (target < 0) {
+                    continue;
+                }
+                path[depth] = direction;
+                int result = search(depth + 1, threshold, target, direction);
+                mode.moveBlank(state, 0, target, direction ^ 1);
+                if (result == FOUND) {
+                    return FOUND;
+                }
+                minimum = Math.min(minimum, result);
+            }
+        } else {
+            int undo = previousMove >= 0 ? mode.getInverse(previousMove) : -1;
+            for (int move = 0; move < mode.getGeneratorCount(); move++) {
+                if (move == undo) {
+                    continue;
+                }
+                mode.apply(state, 0, move);
+                path[depth] = move;
+                int result = search(depth + 1, threshold, blankCell, move);
+                mode.getGenerator(move).applyInverse(state, 0);
+                if (result == FOUND) {
+                    return FOUND;
+                }
+                minimum = Math.min(minimum, result);
+            }
+        }
+        return minimum;
+    }
+}
@@ -0,0 +1,229 @@
+package com.tileshifter.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.perm.BoardSymmetries;
+
+/**
+ * An additive pattern database for the classic sliding puzzle, memory-mapped from a file written by
+ * {@link PatternDatabaseBuilder}
+ *
+ * For every placement of the pattern's tiles it stores the fewest moves of those tiles needed to bring them home,
+ * counting only moves of pattern tiles. Databases over disjoint tile sets can therefore be added together and
+ * still never overestimate the solution length.
+ *
+ * File layout (big-endian): magic, version, board size, tile count, entry count, the tile ids, padding up to
+ * {@value #HEADER_BYTES} bytes, then one 4-bit entry per placement, two per byte with the even entry in the low
+ * nibble. Placements are numbered by {@link com.tileshifter.perm.PermutationRanker#partial} rank of the cells of
+ * the pattern tiles, in tile order. An entry is half the distance's excess over the Manhattan distance of the
+ * pattern tiles (the excess is always even), saturated at 15, so the whole range fits in 4 bits.
+ *
+ * {@link #transformed} looks a database up through a symmetry of the board instead, e.g. a database for the top
+ * rows serves the left columns through the transpose, so each pattern needs to be built and stored once.
+ *
+ * Lookups allocate nothing and read the mapping with absolute gets, so one instance can be shared by threads.
+ */
+public final class PatternDatabase {
+    static final int MAGIC = 0x54535044; // "TSPD"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    /** Tile cells are packed 6 bits each into a long while ranking */
+    static final int MAX_TILES = 10;
+    static final int MAX_CELLS = 64;
+    private static final int CHUNK_BITS = 30; // Mappings are split into 1 GB buffers
+    
+    private final int size;
+    private final int cells;
+    private final byte[] tiles;
+    private final long entryCount;
+    private final ByteBuffer[] chunks;
+    private final byte[] patternIndex; // [tile], or -1 for tiles outside the pattern
+    private final byte[] homeDistances; // Manhattan distance of each tile in each cell, [cell * cells + tile]
+    private final int[] cellMap; // Cell each cell is looked up as
+    private final long[] weights;
+    
+    private PatternDatabase(int size, byte[] tiles, long entryCount, ByteBuffer[] chunks) {
+        this(size, tiles, entryCount, chunks, null, 0);
+    }
+    
+    private PatternDatabase(int size, byte[] tiles, long entryCount, ByteBuffer[] chunks, BoardSymmetries symmetries,
+                            int transform) {
+        this.size = size;
+        this.cells = size * size;
+        this.entryCount = entryCount;
+        this.chunks = chunks;
+        
+        cellMap = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            cellMap[cell] = symmetries != null ? symmetries.mapCell(transform, cell) : cell;
+        }
+        // A tile t of the state is tile cellMap[t] of the transformed state that the database is built for
+        patternIndex = new byte[cells];
+        java.util.Arrays.fill(patternIndex, (byte) -1);
+        this.tiles = new byte[tiles.length];
+        for (int tile = 0; tile < cells; tile++) {
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] == cellMap[tile]) {
+                    patternIndex[tile] = (byte) i;
+                    this.tiles[i] = (byte) tile;
+                }
+            }
+        }
+        byte[] distances = homeDistances(size);
+        homeDistances = new byte[cells * cells];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int tile = 0; tile < cells; tile++) {
+                homeDistances[cell * cells + tile] = distances[cellMap[cell] * cells + cellMap[tile]];
+            }
+        }
+        weights = new long[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            long weight = 1;
+            for (int value = cells - tiles.length + 1; value <= cells - 1 - i; value++) {
+                weight *= value;
+            }
+            weights[i] = weight;
+        }
+    }
+    
+    /**
+     * Maps a database file read-only
+     */
+    public static PatternDatabase open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()));
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a pattern database");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file.getPath() + " has unsupported version " + version);
+            }
+            int size = header.getInt();
+            int tileCount = header.getInt();
+            long entryCount = header.getLong();
+            if (size < 2 || size * size > MAX_CELLS || tileCount < 1 || tileCount > MAX_TILES) {
+                throw new IOException(file.getPath() + " has an invalid header");
+            }
+            byte[] tiles = new byte[tileCount];
+            header.get(tiles);
+            if (entryCount != placementCount(size * size, tileCount)) {
+                throw new IOException(file.getPath() + " has an invalid header");
+            }
+            
+            long dataBytes = (entryCount + 1) / 2;
+            if (channel.size() != HEADER_BYTES + dataBytes) {
+                throw new IOException(file.getPath() + " is truncated");
+            }
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((dataBytes - 1) >>> CHUNK_BITS) + 1];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c << CHUNK_BITS;
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + start,
+                    Math.min(1L << CHUNK_BITS, dataBytes - start));
+                chunks[c] = chunk;
+            }
+            // The mappings stay valid after the channel is closed
+            return new PatternDatabase(size, tiles, entryCount, chunks);
+        }
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * @return The tiles this database covers, as the state passed to {@link #distance} numbers them
+     */
+    public byte[] getTiles() {
+        return tiles.clone();
+    }
+    
+    public long getEntryCount() {
+        return entryCount;
+    }
+    
+    /**
+     * @return Whether the database was built for this mode: the classic sliding puzzle of the same size
+     */
+    public boolean supports(PuzzleMode mode) {
+        return mode.hasBlank() && mode.getSize() == size;
+    }
+    
+    /**
+     * @return A view that looks up the stored database with the state transformed by one of the board's
+     * symmetries, sharing the mapping
+     * @throws IllegalArgumentException for inverting transforms, which the classic puzzle does not have
+     */
+    public PatternDatabase transformed(BoardSymmetries symmetries, int transform) {
+        if (symmetries.getSize() != size || symmetries.isInverting(transform)) {
+            throw new IllegalArgumentException("Cannot look up " + size + "x" + size + " pattern databases through "
+                + symmetries.getName(transform));
+        }
+        byte[] databaseTiles = new byte[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            databaseTiles[i] = (byte) cellMap[tiles[i]];
+        }
+        return new PatternDatabase(size, databaseTiles, entryCount, chunks, symmetries, transform);
+    }
+    
+    /**
+     * @return Fewest moves of the pattern tiles needed to bring them home (tile id per cell, blank is the last id)
+     */
+    public int distance(byte[] state, int offset) {
+        long placement = 0;
+        int manhattan = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int tile = state[offset + cell];
+            int index = patternIndex[tile];
+            if (index >= 0) {
+                placement |= (long) cellMap[cell] << (6 * index);
+                manhattan += homeDistances[cell * cells + tile];
+            }
+        }
+        long used = 0;
+        long rank = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int cell = (int) (placement >>> (6 * i)) & 63;
+            long bit = 1L << cell;
+            rank += (cell - Long.bitCount(used & (bit - 1))) * weights[i];
+            used |= bit;
+        }
+        return manhattan + 2 * entry(rank);
+    }
+    
+    private int entry(long rank) {
+        long byteIndex = rank >>> 1;
+        int packed = chunks[(int) (byteIndex >>> CHUNK_BITS)].get((int) (byteIndex & ((1L << CHUNK_BITS) - 1)));
+        return (rank & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF;
+    }
+    
+    /**
+     * @return cells! / (cells - tileCount)!, the number of placements of tileCount tiles
+     */
+    static long placementCount(int cells, int tileCount) {
+        long count = 1;
+        for (int i = 0; i < tileCount; i++) {
+            count *= cells - i;
+        }
+        return count;
+    }
+    
+    static byte[] homeDistances(int size) {
+        int cells = size * size;
+        byte[] distances = new byte[cells * cells];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int tile = 0; tile < cells; tile++) {
+                distances[cell * cells + tile] =
+                    (byte) (Math.abs(cell % size - tile % size) + Math.abs(cell / size - tile / size));
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,724 @@
+package com.tileshifter.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.perm.PermutationRanker;
+
+/**
+ * Builds a {@link PatternDatabase} by breadth-first search with the frontier on disk, so pattern databases larger
+ * than the heap (such as 6-tile patterns of the 5x5 board) can be built
+ *
+ * The search runs over the cells of the pattern tiles plus the blank, ranked with
+ * {@link PermutationRanker#partial}. A move costs 1 if it slides a pattern tile and nothing otherwise, so every
+ * level (states at the same cost) is first seeded from the previous level and then closed under free blank moves.
+ * Each step expands a sorted level file on several threads into sorted runs that fit the memory budget, then
+ * merges the runs, dropping duplicates and every state already in the previous two levels. Level files are
+ * sorted ranks stored as variable-length deltas.
+ *
+ * The only large in-memory structure is the table of the fewest moves per placement of the pattern tiles, one
+ * byte per placement, which is written out as 4-bit entries at the end. Completed levels are recorded in a
+ * progress file in the work directory: building again with the same directory resumes after the last completed
+ * level, and an interrupted level is simply redone.
+ */
+public final class PatternDatabaseBuilder {
+    /**
+     * Receives progress as levels complete
+     */
+    public interface Listener {
+        void levelCompleted(int level, long states, long totalStates);
+    }
+    
+    private static final int CHUNK_STATES = 1 << 14; // States a worker takes from the input at a time
+    private static final int MAX_FAN_IN = 64;
+    private static final int MAX_PARTS = 8; // Closure deltas kept apart before they are merged into one
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+    private static final long RESERVED_BYTES = 32L << 20; // I/O buffers and everything else
+    private static final int TABLE_CHUNK_BITS = 30;
+    private static final int UNSEEN = 0xFF;
+    private static final String PROGRESS_FILE = "progress.properties";
+    
+    private final PuzzleMode mode;
+    private final byte[] tiles;
+    private final File workDirectory;
+    private final int cells;
+    private final int blankIndex; // The blank's cell follows the tile cells
+    private final PermutationRanker stateRanker;
+    private final long blankRadix; // State rank = placement rank * blankRadix + blank digit
+    private final long placementCount;
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Listener listener;
+    
+    private byte[][] table;
+    private long[][] buffers; // Sort buffer per worker, grown up to the budget and kept between passes
+    private int fileCounter;
+    
+    /**
+     * @param tiles Ids of the pattern's tiles, not including the blank
+     */
+    public PatternDatabaseBuilder(PuzzleMode mode, int[] tiles, File workDirectory) {
+        if (!mode.hasBlank()) {
+            throw new IllegalArgumentException("Pattern databases need a mode with a blank, not " + mode.getName());
+        }
+        this.mode = mode;
+        this.cells = mode.getCellCount();
+        if (cells > PatternDatabase.MAX_CELLS || tiles.length < 1 || tiles.length > PatternDatabase.MAX_TILES) {
+            throw new IllegalArgumentException("Patterns have 1 to " + PatternDatabase.MAX_TILES
+                + " tiles on boards of at most " + PatternDatabase.MAX_CELLS + " cells");
+        }
+        this.tiles = new byte[tiles.length];
+        boolean[] seen = new boolean[cells];
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] < 0 || tiles[i] >= cells - 1 || seen[tiles[i]]) {
+                throw new IllegalArgumentException("Pattern tiles must be distinct ids other than the blank: "
+                    + Arrays.toString(tiles));
+            }
+            seen[tiles[i]] = true;
+            this.tiles[i] = (byte) tiles[i];
+        }
+        this.workDirectory = workDirectory;
+        this.blankIndex = tiles.length;
+        this.stateRanker = PermutationRanker.partial(cells, tiles.length + 1);
+        this.blankRadix = cells - tiles.length;
+        this.placementCount = PatternDatabase.placementCount(cells, tiles.length);
+    }
+    
+    /**
+     * Limits the table and the sort buffers to about this many bytes; defaults to three quarters of the heap
+     */
+    public PatternDatabaseBuilder setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+        return this;
+    }
+    
+    public PatternDatabaseBuilder setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.threads = threads;
+        return this;
+    }
+    
+    public PatternDatabaseBuilder setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+    
+    /**
+     * Builds the database into output, resuming from the work directory if it holds an interrupted build of the
+     * same pattern, and removes the work files when done
+     */
+    public void build(File output) throws IOException {
+        long bufferBytes = (memoryBudget - placementCount - RESERVED_BYTES) / threads;
+        if (bufferBytes < 8L * 4 * CHUNK_STATES) {
+            throw new IllegalArgumentException("A memory budget of " + (memoryBudget >> 20) + " MB cannot hold the "
+                + (placementCount >> 20) + " MB table and sort buffers for " + threads + " threads");
+        }
+        int bufferStates = (int) Math.min(bufferBytes / 8, Integer.MAX_VALUE - 8);
+        if (!workDirectory.isDirectory() && !workDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + workDirectory.getPath());
+        }
+        
+        buffers = new long[threads][];
+        table = new byte[(int) ((placementCount - 1) >>> TABLE_CHUNK_BITS) + 1][];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = new byte[(int) Math.min(1L << TABLE_CHUNK_BITS, placementCount - ((long) c << TABLE_CHUNK_BITS))];
+            Arrays.fill(table[c], (byte) UNSEEN);
+        }
+        int level = resume();
+        long totalStates = 0;
+        for (int done = 0; done <= level; done++) {
+            totalStates += recordLevel(done);
+        }
+        if (level < 0) {
+            File goal = newWorkFile("delta");
+            try (RunWriter writer = new RunWriter(goal)) {
+                writer.write(goalRank());
+            }
+            long states = completeLevel(0, goal, 1, bufferStates);
+            totalStates += states;
+            level = 0;
+            if (listener != null) {
+                listener.levelCompleted(level, states, totalStates);
+            }
+        }
+        while (true) {
+            File seeds = newWorkFile("delta");
+            List<File> runs = expand(levelFile(level), true, bufferStates);
+            List<File> excluded = new ArrayList<>();
+            excluded.add(levelFile(level));
+            if (level > 0) {
+                excluded.add(levelFile(level - 1));
+            }
+            long count = merge(runs, excluded, seeds);
+            delete(runs);
+            if (count == 0) {
+                delete(seeds);
+                break;
+            }
+            if (level + 1 >= UNSEEN) {
+                throw new IllegalStateException("Pattern needs more than " + (UNSEEN - 1) + " moves");
+            }
+            long states = completeLevel(level + 1, seeds, count, bufferStates);
+            totalStates += states;
+            level++;
+            if (listener != null) {
+                listener.levelCompleted(level, states, totalStates);
+            }
+        }
+        writeDatabase(output);
+        for (int done = 0; done <= level; done++) {
+            delete(levelFile(done));
+        }
+        delete(new File(workDirectory, PROGRESS_FILE));
+        workDirectory.delete(); // Only if nothing else was left in it
+        table = null;
+        buffers = null;
+    }
+    
+    /**
+     * Closes a level's seed states under free blank moves, writes the level file, records it and saves progress
+     *
+     * @return The number of states in the level
+     */
+    private long completeLevel(int level, File seeds, long seedCount, int bufferStates) throws IOException {
+        List<File> parts = new ArrayList<>();
+        File delta = seeds;
+        long count = seedCount;
+        while (count > 0) {
+            parts.add(delta);
+            List<File> runs = expand(delta, false, bufferStates);
+            delta = newWorkFile("delta");
+            count = merge(runs, parts, delta);
+            delete(runs);
+            if (parts.size() >= MAX_PARTS) {
+                File merged = newWorkFile("delta");
+                merge(parts, new ArrayList<File>(), merged);
+                delete(parts);
+                parts.clear();
+                parts.add(merged);
+            }
+        }
+        delete(delta);
+        
+        File temp = newWorkFile("pending");
+        long states = merge(parts, new ArrayList<File>(), temp);
+        delete(parts);
+        rename(temp, levelFile(level));
+        recordLevel(level);
+        
+        Properties progress = new Properties();
+        progress.setProperty("size", Integer.toString(mode.getSize()));
+        progress.setProperty("tiles", Arrays.toString(tiles));
+        progress.setProperty("level", Integer.toString(level));
+        File progressTemp = newWorkFile("progress");
+        try (OutputStream out = new FileOutputStream(progressTemp)) {
+            progress.store(out, "Pattern database build; delete this directory to start over");
+        }
+        rename(progressTemp, new File(workDirectory, PROGRESS_FILE));
+        return states;
+    }
+    
+    /**
+     * @return The last completed level of an earlier build in the work directory, or -1 to start from scratch
+     */
+    private int resume() throws IOException {
+        File progressFile = new File(workDirectory, PROGRESS_FILE);
+        int level = -1;
+        if (progressFile.isFile()) {
+            Properties progress = new Properties();
+            try (InputStream in = new FileInputStream(progressFile)) {
+                progress.load(in);
+            }
+            if (!Integer.toString(mode.getSize()).equals(progress.getProperty("size"))
+                || !Arrays.toString(tiles).equals(progress.getProperty("tiles"))) {
+                throw new IllegalArgumentException(workDirectory.getPath() + " holds a build of another pattern: "
+                    + progress.getProperty("tiles") + " on size " + progress.getProperty("size"));
+            }
+            level = Integer.parseInt(progress.getProperty("level"));
+        }
+        // Remove runs, deltas and levels of an interrupted step
+        File[] files = workDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                boolean completedLevel = name.startsWith("level-") && name.endsWith(".dat")
+                    && Integer.parseInt(name.substring(6, name.length() - 4)) <= level;
+                if (!completedLevel && !name.equals(PROGRESS_FILE) && name.endsWith(".dat")) {
+                    delete(file);
+                }
+            }
+        }
+        return level;
+    }
+    
+    private long goalRank() {
+        byte[] state = new byte[blankIndex + 1];
+        for (int i = 0; i < blankIndex; i++) {
+            state[i] = tiles[i];
+        }
+        state[blankIndex] = (byte) (cells - 1);
+        return stateRanker.rank(state, 0);
+    }
+    
+    /**
+     * Sets the table entry of every placement first reached in this level
+     *
+     * @return The number of states in the level
+     */
+    private long recordLevel(int level) throws IOException {
+        long states = 0;
+        try (RunReader reader = new RunReader(levelFile(level))) {
+            while (reader.hasNext()) {
+                long placement = reader.next() / blankRadix;
+                byte[] chunk = table[(int) (placement >>> TABLE_CHUNK_BITS)];
+                int index = (int) (placement & ((1L << TABLE_CHUNK_BITS) - 1));
+                if ((chunk[index] & 0xFF) == UNSEEN) {
+                    chunk[index] = (byte) level;
+                }
+                states++;
+            }
+        }
+        return states;
+    }
+    
+    /**
+     * Expands every state of a sorted file into sorted, duplicate-free run files
+     *
+     * @param costOne Whether to follow the moves that slide a pattern tile, or the free ones
+     */
+    private List<File> expand(final File input, final boolean costOne, final int bufferStates) throws IOException {
+        final List<File> runs = new ArrayList<>();
+        final Exception[] failure = new Exception[1];
+        final RunReader reader = new RunReader(input);
+        try {
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int worker = t;
+                workers[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            expandWorker(worker, reader, costOne, bufferStates, runs);
+                        } catch (IOException | RuntimeException e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                        }
+                    }
+                }, "pattern-database-" + t);
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while expanding " + input.getName(), e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] != null) {
+            throw (RuntimeException) failure[0];
+        }
+        return runs;
+    }
+    
+    private void expandWorker(int worker, RunReader reader, boolean costOne, int bufferStates, List<File> runs)
+            throws IOException {
+        long[] chunk = new long[CHUNK_STATES];
+        long[] buffer = buffers[worker];
+        if (buffer == null) {
+            buffer = new long[Math.min(bufferStates, 4 * CHUNK_STATES)];
+        }
+        byte[] state = new byte[blankIndex + 1];
+        int buffered = 0;
+        while (true) {
+            int count;
+            synchronized (reader) {
+                count = reader.read(chunk);
+            }
+            if (count == 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffered + 4 > buffer.length) {
+                    if (buffer.length < bufferStates) {
+                        buffer = Arrays.copyOf(buffer, (int) Math.min(bufferStates, 2L * buffer.length));
+                    } else {
+                        writeRun(buffer, buffered, runs);
+                        buffered = 0;
+                    }
+                }
+                stateRanker.unrank(chunk[i], state, 0);
+                int blank = state[blankIndex];
+                for (int direction = 0; direction < 4; direction++) {
+                    int target = mode.getBlankNeighbor(blank, direction);
+                    if (target < 0) {
+                        continue;
+                    }
+                    int moved = -1;
+                    for (int tile = 0; tile < blankIndex; tile++) {
+                        if (state[tile] == target) {
+                            moved = tile;
+                        }
+                    }
+                    if ((moved >= 0) != costOne) {
+                        continue;
+                    }
+                    state[blankIndex] = (byte) target;
+                    if (moved >= 0) {
+                        state[moved] = (byte) blank;
+                    }
+                    buffer[buffered++] = stateRanker.rank(state, 0);
+                    state[blankIndex] = (byte) blank;
+                    if (moved >= 0) {
+                        state[moved] = (byte) target;
+                    }
+                }
+            }
+        }
+        if (buffered > 0) {
+            writeRun(buffer, buffered, runs);
+        }
+        buffers[worker] = buffer;
+    }
+    
+    private void writeRun(long[] buffer, int count, List<File> runs) throws IOException {
+        Arrays.sort(buffer, 0, count);
+        File run;
+        synchronized (this) {
+            run = newWorkFile("run");
+        }
+        try (RunWriter writer = new RunWriter(run)) {
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || buffer[i] != buffer[i - 1]) {
+                    writer.write(buffer[i]);
+                }
+            }
+        }
+        synchronized (runs) {
+            runs.add(run);
+        }
+    }
+    
+    /**
+     * Merges sorted files into one without duplicates, leaving out every state found in the excluded files
+     *
+     * @return The number of states written
+     */
+    private long merge(List<File> inputs, List<File> excluded, File output) throws IOException {
+        List<File> sources = new ArrayList<>(inputs);
+        List<File> intermediates = new ArrayList<>();
+        while (sources.size() > MAX_FAN_IN) {
+            File merged = newWorkFile("run");
+            intermediates.add(merged);
+            List<File> group = new ArrayList<>(sources.subList(0, MAX_FAN_IN));
+            merge(group, new ArrayList<File>(), merged);
+            sources.subList(0, MAX_FAN_IN).clear();
+            sources.add(merged);
+        }
+        long count = 0;
+        try (MergedRuns in = new MergedRuns(sources);
+             MergedRuns out = new MergedRuns(excluded);
+             RunWriter writer = new RunWriter(output)) {
+            while (in.hasNext()) {
+                long value = in.next();
+                while (out.hasNext() && out.peek() < value) {
+                    out.next();
+                }
+                if (!out.hasNext() || out.peek() != value) {
+                    writer.write(value);
+                    count++;
+                }
+            }
+        }
+        delete(intermediates);
+        return count;
+    }
+    
+    private void writeDatabase(File output) throws IOException {
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(output.getPath() + ".tmp");
+        int tileCount = tiles.length;
+        PermutationRanker placementRanker = PermutationRanker.partial(cells, tileCount);
+        byte[] homeDistances = PatternDatabase.homeDistances(mode.getSize());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), IO_BUFFER_BYTES))) {
+            out.writeInt(PatternDatabase.MAGIC);
+            out.writeInt(PatternDatabase.VERSION);
+            out.writeInt(mode.getSize());
+            out.writeInt(tileCount);
+            out.writeLong(placementCount);
+            out.write(tiles);
+            out.write(new byte[PatternDatabase.HEADER_BYTES - 24 - tileCount]);
+            
+            byte[] placements = new byte[CHUNK_STATES * tileCount];
+            int packed = 0;
+            for (long first = 0; first < placementCount; first += CHUNK_STATES) {
+                int count = (int) Math.min(CHUNK_STATES, placementCount - first);
+                placementRanker.unrankRange(first, placements, 0, count);
+                for (int i = 0; i < count; i++) {
+                    long placement = first + i;
+                    int moves = table[(int) (placement >>> TABLE_CHUNK_BITS)]
+                        [(int) (placement & ((1L << TABLE_CHUNK_BITS) - 1))] & 0xFF;
+                    int manhattan = 0;
+                    for (int tile = 0; tile < tileCount; tile++) {
+                        manhattan += homeDistances[placements[i * tileCount + tile] * cells + tiles[tile]];
+                    }
+                    int excess = moves - manhattan;
+                    if (moves == UNSEEN || excess < 0 || (excess & 1) != 0) {
+                        throw new IllegalStateException("Placement " + placement + " was not reached correctly");
+                    }
+                    int entry = Math.min(15, excess / 2);
+                    if ((placement & 1) == 0) {
+                        packed = entry;
+                    } else {
+                        out.write(packed | entry << 4);
+                    }
+                }
+            }
+            if ((placementCount & 1) != 0) {
+                out.write(packed);
+            }
+        }
+        rename(temp, output);
+    }
+    
+    private File levelFile(int level) {
+        return new File(workDirectory, String.format(java.util.Locale.ROOT, "level-%03d.dat", level));
+    }
+    
+    private File newWorkFile(String kind) {
+        return new File(workDirectory, kind + "-" + fileCounter++ + ".dat");
+    }
+    
+    private static void rename(File from, File to) throws IOException {
+        // renameTo does not replace an existing file on every platform
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("Cannot rename " + from.getPath() + " to " + to.getPath());
+            }
+        }
+    }
+    
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file.getPath());
+        }
+    }
+    
+    private static void delete(List<File> files) throws IOException {
+        for (File file : files) {
+            delete(file);
+        }
+    }
+    
+    /**
+     * Writes strictly increasing ranks as variable-length deltas, 7 bits per byte
+     */
+    private static final class RunWriter implements AutoCloseable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[IO_BUFFER_BYTES];
+        private int length;
+        private long previous;
+        
+        RunWriter(File file) throws IOException {
+            out = new FileOutputStream(file);
+        }
+        
+        void write(long value) throws IOException {
+            if (length > buffer.length - 10) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            long delta = value - previous;
+            previous = value;
+            while ((delta & ~0x7FL) != 0) {
+                buffer[length++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            buffer[length++] = (byte) delta;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                out.write(buffer, 0, length);
+            } finally {
+                out.close();
+            }
+        }
+    }
+    
+    /**
+     * Reads a file written by {@link RunWriter}
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[IO_BUFFER_BYTES];
+        private int position;
+        private int length;
+        private long previous;
+        
+        RunReader(File file) throws IOException {
+            in = new FileInputStream(file);
+        }
+        
+        boolean hasNext() throws IOException {
+            if (position == length) {
+                length = Math.max(0, in.read(buffer));
+                position = 0;
+            }
+            return position < length;
+        }
+        
+        long next() throws IOException {
+            long delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (!hasNext()) {
+                    throw new IOException("Truncated run file");
+                }
+                int b = buffer[position++];
+                delta |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            previous += delta;
+            return previous;
+        }
+        
+        /**
+         * @return How many values were read into values, 0 at the end of the file
+         */
+        int read(long[] values) throws IOException {
+            int count = 0;
+            while (count < values.length && hasNext()) {
+                values[count++] = next();
+            }
+            return count;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    /**
+     * The sorted union of several sorted files, without duplicates, by a binary heap of readers
+     */
+    private static final class MergedRuns implements AutoCloseable {
+        private final RunReader[] readers;
+        private final long[] heads;
+        private final int[] heap; // Reader indices ordered by their head
+        private int heapSize;
+        
+        MergedRuns(List<File> files) throws IOException {
+            readers = new RunReader[files.size()];
+            heads = new long[files.size()];
+            heap = new int[files.size()];
+            try {
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i] = new RunReader(files.get(i));
+                    if (readers[i].hasNext()) {
+                        heads[i] = readers[i].next();
+                        heap[heapSize++] = i;
+                        siftUp(heapSize - 1);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+        
+        boolean hasNext() {
+            return heapSize > 0;
+        }
+        
+        long peek() {
+            return heads[heap[0]];
+        }
+        
+        long next() throws IOException {
+            long value = peek();
+            // Advance every reader whose head is this value
+            while (heapSize > 0 && heads[heap[0]] == value) {
+                int reader = heap[0];
+                if (readers[reader].hasNext()) {
+                    heads[reader] = readers[reader].next();
+                } else {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(0);
+            }
+            return value;
+        }
+        
+        private void siftUp(int index) {
+            int reader = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heads[heap[parent]] <= heads[reader]) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = reader;
+        }
+        
+        private void siftDown(int index) {
+            if (heapSize == 0) {
+                return;
+            }
+            int reader = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heads[heap[child + 1]] < heads[heap[child]]) {
+                    child++;
+                }
+                if (heads[heap[child]] >= heads[reader]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = reader;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.tileshifter.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.perm.BoardSymmetries;
+
+/**
+ * Solution lengths and next moves of solved positions of one {@link PuzzleMode}, in a memory-mapped file that
+ * persists between runs
+ *
+ * Positions are stored once per symmetry class, under the canonical state of {@link BoardSymmetries#canonicalize}
+ * over the transforms that do not invert: those map a solution's path onto the transformed solution's path, so the
+ * position after a cached next move is cached too. An entry holds the length of a solution, whether it is optimal,
+ * and the canonical solution's first move.
+ *
+ * File layout (big-endian): magic, version, board size, mode name hash, move count, slot bytes, slot count, padding
+ * up to {@value #HEADER_BYTES} bytes, then an open-addressing table of slots: check (8 bytes), distance (2), next
+ * move (1), flags (1), the canonical state (a byte per cell), padding to a multiple of 8. The check
+ * hashes the state and the rest of the entry, is never 0 for a used slot, and rejects torn entries after a crash.
+ * A state is looked up in the {@value #PROBE_SLOTS} slots from its home slot on; a store into a full window evicts
+ * by CLOCK: the first slot not looked up since the hand last passed it, clearing reference bits on the way.
+ *
+ * Lookups are safe alongside each other and one store at a time (stores are serialized by a lock): they read the
+ * mapping optimistically under a {@link StampedLock} and only take its read lock if a store got in the way.
+ * Reference bits are kept on the heap, so lookups never write to the file.
+ */
+public final class SolutionCache {
+    static final int MAGIC = 0x54535343; // "TSSC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int PROBE_SLOTS = 16;
+    /** {@link #lookup} result for positions not in the cache */
+    public static final int MISS = -1;
+    public static final int MAX_DISTANCE = 0xFFFF;
+    private static final int MAX_CELLS = 128; // Symmetries read tile ids as signed bytes
+    private static final int MAX_MOVES = 0xFF;
+    private static final int FLAG_OPTIMAL = 1;
+    private static final int SLOT_STATE = 12;
+    
+    private final PuzzleMode mode;
+    private final BoardSymmetries symmetries;
+    private final int cells;
+    private final int slotBytes;
+    private final int mask;
+    private final ByteBuffer table;
+    private final byte[] references; // CLOCK reference bit per slot; racy writes only affect eviction order
+    private final StampedLock lock = new StampedLock();
+    private final ThreadLocal<byte[]> canonical;
+    private int clockHand; // Guarded by the write lock
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    private SolutionCache(PuzzleMode mode, int slotCount, ByteBuffer table) {
+        this.mode = mode;
+        this.symmetries = mode.getSymmetries();
+        this.cells = mode.getCellCount();
+        this.slotBytes = slotBytes(cells);
+        this.mask = slotCount - 1;
+        this.table = table;
+        references = new byte[slotCount];
+        final int cellCount = cells;
+        canonical = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[cellCount];
+            }
+        };
+    }
+    
+    /**
+     * Maps a cache file read-write, creating it with the given number of slots (rounded up to a power of two) if it
+     * does not exist; an existing file keeps its own slot count
+     * @throws IOException if the file is not a solution cache for this mode and size
+     */
+    public static SolutionCache open(File file, PuzzleMode mode, int slotCount) throws IOException {
+        if (mode.getCellCount() > MAX_CELLS || moveCount(mode) > MAX_MOVES + 1) {
+            throw new IllegalArgumentException(mode.getName() + " " + mode.getSize() + "x" + mode.getSize()
+                + " is too large for a solution cache");
+        }
+        int slotBytes = slotBytes(mode.getCellCount());
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = output.getChannel();
+            if (channel.size() == 0) {
+                int slots = Integer.highestOneBit(Math.max(PROBE_SLOTS, slotCount - 1)) << 1;
+                if ((long) slots * slotBytes > Integer.MAX_VALUE - HEADER_BYTES) {
+                    throw new IllegalArgumentException(slotCount + " slots do not fit in one 2 GB mapping");
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putInt(mode.getSize()).putInt(mode.getName().hashCode())
+                    .putInt(moveCount(mode)).putInt(slotBytes).putInt(slots);
+                header.clear();
+                channel.write(header, 0);
+                output.setLength(HEADER_BYTES + (long) slots * slotBytes); // Zeroed, so every slot starts empty
+            }
+            
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()));
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a solution cache");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file.getPath() + " has unsupported version " + version);
+            }
+            if (header.getInt() != mode.getSize() || header.getInt() != mode.getName().hashCode()
+                || header.getInt() != moveCount(mode)) {
+                throw new IOException(file.getPath() + " is a solution cache for another mode or size");
+            }
+            int fileSlotBytes = header.getInt();
+            int slots = header.getInt();
+            if (fileSlotBytes != slotBytes || slots < PROBE_SLOTS || Integer.bitCount(slots) != 1
+                || (long) slots * slotBytes > Integer.MAX_VALUE - HEADER_BYTES) {
+                throw new IOException(file.getPath() + " has an invalid header");
+            }
+            if (channel.size() != HEADER_BYTES + (long) slots * slotBytes) {
+                throw new IOException(file.getPath() + " is truncated");
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES,
+                (long) slots * slotBytes);
+            return new SolutionCache(mode, slots, table);
+        }
+    }
+    
+    /**
+     * @return An entry for {@link #getDistance}, {@link #getNextMove} and {@link #isOptimal}, or {@link #MISS}
+     */
+    public int lookup(byte[] state, int offset) {
+        byte[] key = canonical.get();
+        int transform = symmetries.canonicalize(state, offset, key, 0, false);
+        long hash = hash(key);
+        
+        long stamp = lock.tryOptimisticRead();
+        int slot = find(key, hash);
+        long payload = slot >= 0 ? payload(slot) : 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slot = find(key, hash);
+                payload = slot >= 0 ? payload(slot) : 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (slot < 0) {
+            misses.incrementAndGet();
+            return MISS;
+        }
+        hits.incrementAndGet();
+        references[slot] = 1;
+        
+        int distance = (int) (payload & 0xFFFF);
+        int move = distance == 0 ? 0 : symmetries.toOriginalMove(transform, (int) (payload >>> 16 & 0xFF));
+        int optimal = (payload >>> 24 & FLAG_OPTIMAL) != 0 ? 1 : 0;
+        return distance << 9 | move << 1 | optimal;
+    }
+    
+    /**
+     * Stores the length and first move of a solution of a state. An existing entry is only replaced by a shorter
+     * solution, or by an optimal one if it was not optimal.
+     */
+    public void store(byte[] state, int offset, int distance, int nextMove, boolean optimal) {
+        if (distance < 0 || distance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance out of range: " + distance);
+        }
+        byte[] key = canonical.get();
+        int transform = symmetries.canonicalize(state, offset, key, 0, false);
+        int move = distance == 0 ? 0 : symmetries.toTransformedMove(transform, nextMove);
+        long payload = distance | (long) move << 16 | (long) (optimal ? FLAG_OPTIMAL : 0) << 24;
+        long hash = hash(key);
+        
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                long existing = payload(slot);
+                boolean existingOptimal = (existing >>> 24 & FLAG_OPTIMAL) != 0;
+                if (existingOptimal && !optimal
+                    || existingOptimal == optimal && (existing & 0xFFFF) <= distance) {
+                    return;
+                }
+            } else {
+                slot = freeSlot(hash);
+            }
+            write(slot, key, hash, payload);
+            stores.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Writes changed pages to the file; they are also written back by the OS eventually, e.g. at exit
+     */
+    public void flush() {
+        if (table instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) table).force();
+        }
+    }
+    
+    /** @return The distance of a {@link #lookup} entry: the length of the best solution stored */
+    public static int getDistance(int entry) { return entry >>> 9; }
+    /** @return The first move of the entry's solution for the looked up state (0 when it is solved) */
+    public static int getNextMove(int entry) { return entry >>> 1 & 0xFF; }
+    /** @return Whether the entry's solution is known to be as short as possible */
+    public static boolean isOptimal(int entry) { return (entry & 1) != 0; }
+    
+    public PuzzleMode getMode() { return mode; }
+    public int getSlotCount() { return mask + 1; }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getStoreCount() { return stores.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    
+    /**
+     * @return The slot holding a canonical state, or -1. May read a slot mid-store; callers validate the stamp.
+     */
+    private int find(byte[] key, long hash) {
+        int home = (int) hash & mask;
+        for (int i = 0; i < PROBE_SLOTS; i++) {
+            int slot = (home + i) & mask;
+            int base = slot * slotBytes;
+            long check = table.getLong(base);
+            if (check == 0) {
+                return -1; // Slots are never emptied, so the state is not further along
+            }
+            if (check == check(hash, payload(slot)) && sameState(base, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return The first empty slot in a state's window, or one evicted by CLOCK
+     */
+    private int freeSlot(long hash) {
+        int home = (int) hash & mask;
+        for (int i = 0; i < PROBE_SLOTS; i++) {
+            int slot = (home + i) & mask;
+            if (table.getLong(slot * slotBytes) == 0) {
+                return slot;
+            }
+        }
+        evictions.incrementAndGet();
+        // The hand goes round the window, so entries that are looked up again get a second chance
+        for (int i = 0; i < 2 * PROBE_SLOTS; i++) {
+            int slot = (home + (clockHand++ & (PROBE_SLOTS - 1))) & mask;
+            if (references[slot] == 0) {
+                return slot;
+            }
+            references[slot] = 0;
+        }
+        return home;
+    }
+    
+    private void write(int slot, byte[] key, long hash, long payload) {
+        int base = slot * slotBytes;
+        table.putShort(base + 8, (short) payload);
+        table.put(base + 10, (byte) (payload >>> 16));
+        table.put(base + 11, (byte) (payload >>> 24));
+        for (int cell = 0; cell < cells; cell++) {
+            table.put(base + SLOT_STATE + cell, key[cell]);
+        }
+        table.putLong(base, check(hash, payload));
+        references[slot] = 0;
+    }
+    
+    /**
+     * @return Distance in bits 0-15, next move in 16-23, flags in 24-31
+     */
+    private long payload(int slot) {
+        int base = slot * slotBytes;
+        return (table.getShort(base + 8) & 0xFFFFL) | (table.get(base + 10) & 0xFFL) << 16
+            | (table.get(base + 11) & 0xFFL) << 24;
+    }
+    
+    private boolean sameState(int base, byte[] key) {
+        for (int cell = 0; cell < cells; cell++) {
+            if (table.get(base + SLOT_STATE + cell) != key[cell]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static long check(long hash, long payload) {
+        long check = mix(hash ^ payload * 0x9E3779B97F4A7C15L);
+        return check == 0 ? 1 : check;
+    }
+    
+    private static long hash(byte[] state) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte tile : state) {
+            hash = (hash ^ (tile & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+    
+    /**
+     * The 64-bit finalizer of MurmurHash3, so every bit of the input affects the home slot
+     */
+    private static long mix(long value) {
+        value = (value ^ value >>> 33) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ value >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return value ^ value >>> 33;
+    }
+    
+    private static int slotBytes(int cells) {
+        return (SLOT_STATE + cells + 7) & ~7;
+    }
+    
+    private static int moveCount(PuzzleMode mode) {
+        return mode.hasBlank() ? 4 : mode.getGeneratorCount();
+    }
+}
@@ -0,0 +1,38 @@
+package com.tileshifter.solver;
+
+import com.tileshifter.PuzzleMode;
+
+/**
+ * A solver for the states of one {@link PuzzleMode}
+ * 
+ * States are tile ids per cell as in {@link com.tileshifter.PuzzleBoard#getState(byte[])}. A solution is a list of
+ * moves: generator indices for generator modes, {@link PuzzleMode#UP}/DOWN/LEFT/RIGHT blank directions for modes
+ * with a blank. Solvers keep search state between calls and are not thread-safe.
+ */
+public interface Solver {
+    String getName();
+    
+    PuzzleMode getMode();
+    
+    /**
+     * @return The length of the solution found, or -1 if none was found within nodeLimit searched states
+     */
+    int solve(byte[] state, int offset, long nodeLimit);
+    
+    /**
+     * @return Moves of the last solution; only the first {@link #getSolutionLength()} entries are valid
+     */
+    int[] getSolution();
+    
+    int getSolutionLength();
+    
+    /**
+     * @return States searched by the last call to {@link #solve}
+     */
+    long getNodeCount();
+    
+    /**
+     * @return Whether the solutions found are always as short as possible
+     */
+    boolean isOptimal();
+}
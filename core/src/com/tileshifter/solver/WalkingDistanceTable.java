@@ -0,0 +1,161 @@
+package com.tileshifter.solver;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Walking distance for the classic sliding puzzle: the exact number of blank moves needed if tiles only had to
+ * reach their goal row, ignoring their column
+ *
+ * A walking-distance state is how many tiles of each goal row sit in each row, plus the blank's row. All such
+ * states are found once by breadth-first search from the goal; the same table serves columns, because the goal
+ * is symmetric under transposition. Only sizes up to {@value #MAX_SIZE} are tabulated (4x4 has 24964 states).
+ * Every state of a valid board is in the table, so lookups never miss.
+ */
+final class WalkingDistanceTable {
+    static final int MAX_SIZE = 4;
+    private static final int BITS = 3; // Counts go up to 4
+    private static final WalkingDistanceTable[] TABLES = new WalkingDistanceTable[MAX_SIZE + 1];
+    
+    private final int size;
+    private final int blankShift;
+    private final int stateCount;
+    // Open-addressing hash of every state to its distance; lookups cost one or two probes
+    private final long[] keys;
+    private final byte[] distances;
+    private final int hashShift;
+    // Key contributions of each tile in each cell, [cell * cells + tile]
+    private final long[] rowKeyParts;
+    private final long[] columnKeyParts;
+    
+    static synchronized WalkingDistanceTable forSize(int size) {
+        if (size < 2 || size > MAX_SIZE) {
+            return null;
+        }
+        if (TABLES[size] == null) {
+            TABLES[size] = new WalkingDistanceTable(size);
+        }
+        return TABLES[size];
+    }
+    
+    private WalkingDistanceTable(int size) {
+        this.size = size;
+        this.blankShift = size * size * BITS;
+        
+        int[] counts = new int[size * size];
+        for (int row = 0; row < size; row++) {
+            counts[row * size + row] = row == size - 1 ? size - 1 : size;
+        }
+        long goal = encode(counts, size - 1);
+        Map<Long, Integer> found = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        found.put(goal, 0);
+        queue.add(goal);
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+            int distance = found.get(key);
+            int blankRow = decode(key, counts);
+            for (int step = -1; step <= 1; step += 2) {
+                int fromRow = blankRow + step;
+                if (fromRow < 0 || fromRow >= size) {
+                    continue;
+                }
+                // One tile of any goal row slides from the neighbouring row into the blank's row
+                for (int goalRow = 0; goalRow < size; goalRow++) {
+                    if (counts[fromRow * size + goalRow] == 0) {
+                        continue;
+                    }
+                    counts[fromRow * size + goalRow]--;
+                    counts[blankRow * size + goalRow]++;
+                    long next = encode(counts, fromRow);
+                    counts[fromRow * size + goalRow]++;
+                    counts[blankRow * size + goalRow]--;
+                    if (!found.containsKey(next)) {
+                        found.put(next, distance + 1);
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+        
+        stateCount = found.size();
+        int hashBits = 32 - Integer.numberOfLeadingZeros(stateCount * 2);
+        hashShift = 64 - hashBits;
+        keys = new long[1 << hashBits];
+        distances = new byte[1 << hashBits];
+        Arrays.fill(keys, -1);
+        for (Map.Entry<Long, Integer> entry : found.entrySet()) {
+            int slot = slot(entry.getKey());
+            while (keys[slot] != -1) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = entry.getKey();
+            distances[slot] = (byte) (int) entry.getValue();
+        }
+        
+        int cells = size * size;
+        rowKeyParts = new long[cells * cells];
+        columnKeyParts = new long[cells * cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int x = cell % size;
+            int y = cell / size;
+            for (int tile = 0; tile < cells; tile++) {
+                if (tile == cells - 1) {
+                    rowKeyParts[cell * cells + tile] = (long) y << blankShift;
+                    columnKeyParts[cell * cells + tile] = (long) x << blankShift;
+                } else {
+                    rowKeyParts[cell * cells + tile] = 1L << (BITS * (y * size + tile / size));
+                    columnKeyParts[cell * cells + tile] = 1L << (BITS * (x * size + tile % size));
+                }
+            }
+        }
+    }
+    
+    int getStateCount() {
+        return stateCount;
+    }
+    
+    /**
+     * @return Vertical plus horizontal walking distance of a state (tile id per cell, blank is the last id)
+     */
+    int distance(byte[] state, int offset) {
+        int cells = size * size;
+        long rowKey = 0;
+        long columnKey = 0;
+        for (int cell = 0, index = 0; cell < cells; cell++, index += cells) {
+            int tile = state[offset + cell];
+            rowKey += rowKeyParts[index + tile];
+            columnKey += columnKeyParts[index + tile];
+        }
+        return lookup(rowKey) + lookup(columnKey);
+    }
+    
+    private int lookup(long key) {
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return distances[slot];
+    }
+    
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> hashShift);
+    }
+    
+    private long encode(int[] counts, int blankRow) {
+        long key = (long) blankRow << blankShift;
+        for (int i = 0; i < counts.length; i++) {
+            key |= (long) counts[i] << (BITS * i);
+        }
+        return key;
+    }
+    
+    private int decode(long key, int[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = (int) (key >>> (BITS * i)) & ((1 << BITS) - 1);
+        }
+        return (int) (key >>> blankShift);
+    }
+}
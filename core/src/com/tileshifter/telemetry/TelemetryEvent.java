@@ -0,0 +1,40 @@
+package com.tileshifter.telemetry;
+
+/**
+ * Kinds of events captured by the telemetry recorder
+ * The ordinal is written to telemetry files, so new kinds must only be appended
+ */
+public enum TelemetryEvent {
+    TILE_SLIDE,         // Classic move; argument is the grid cell (y * size + x) of the moved tile
+    SHIFT_COLUMN_UP,    // Argument is the column index
+    SHIFT_COLUMN_DOWN,  // Argument is the column index
+    SHIFT_ROW_LEFT,     // Argument is the row index
+    SHIFT_ROW_RIGHT,    // Argument is the row index
+    ROTATE_SUB_BOARD,   // Argument is the sub-board index
+    SCREEN_SHOW,        // Game screen shown; argument is mode ordinal * 256 + board size
+    SCREEN_HIDE,        // Game screen hidden; argument is mode ordinal * 256 + board size
+    RESET,              // New shuffle requested
+    SHOW_IMAGE,         // Full image overlay opened
+    SHOW_INSTRUCTIONS,  // Instructions overlay opened
+    CLOSE_OVERLAY,      // Overlay dismissed
+    WIN,                // Puzzle solved
+    GENERATOR_MOVE;     // Move of a generator-defined mode; argument is the generator index
+    
+    private static final TelemetryEvent[] VALUES = values();
+    
+    public static TelemetryEvent fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+    
+    public boolean isMove() {
+        return ordinal() <= ROTATE_SUB_BOARD.ordinal() || this == GENERATOR_MOVE;
+    }
+    
+    /**
+     * @return Whether the player caused the event on the game screen: a move, a button or an overlay, or the
+     * screen appearing, which the first move is timed from. Hiding the screen and winning are not inputs.
+     */
+    public boolean isInput() {
+        return this != SCREEN_HIDE && this != WIN;
+    }
+}
@@ -0,0 +1,208 @@
+package com.tileshifter.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Records move and screen events into a preallocated ring buffer and flushes them to compressed files
+ * 
+ * The render thread is the only producer: {@link #record} writes primitives into parallel arrays and publishes
+ * the slot with an ordered store, so it never locks or allocates. A background thread drains published events
+ * in batches into gzip files in the output directory. If the flusher falls behind and the buffer is full,
+ * new events are dropped and counted rather than blocking the game.
+ * 
+ * File format (gzip compressed, big-endian): magic "TSTL", version int, session start epoch millis long,
+ * then records of {@link #RECORD_BYTES} bytes: time since session start in nanos (long), event ordinal (byte),
+ * argument (int), micros since the previous input event (int, see {@link TelemetryEvent#isInput()}), frame time
+ * in micros (int), flags (byte). Version 1 files held the micros since the previous event of any kind.
+ */
+public class TelemetryRecorder {
+    public static final int FILE_MAGIC = 0x5453544C; // "TSTL"
+    public static final int FILE_VERSION = 2;
+    public static final int RECORD_BYTES = 8 + 1 + 4 + 4 + 4 + 1;
+    public static final int FLAG_ANIMATING = 1;
+    
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+    private static final int EVENTS_PER_FILE = 1 << 16;
+    
+    private final int capacity;
+    private final int mask;
+    private final long[] times;
+    private final byte[] events;
+    private final int[] arguments;
+    private final int[] sinceInputMicros;
+    private final int[] frameMicros;
+    private final byte[] flags;
+    
+    // Next slot to write (owned by the producer) and next slot to read (owned by the flusher)
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    
+    // Producer-side state, only touched on the render thread
+    private final long sessionStartNanos;
+    private long previousInputNanos;
+    private int currentFrameMicros;
+    
+    private final File outputDirectory;
+    private final long sessionStartMillis;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    
+    // Flusher-side state
+    private DataOutputStream output;
+    private int fileIndex;
+    private int eventsInFile;
+    
+    /**
+     * @param outputDirectory Directory for telemetry files; created if missing
+     * @param capacity Ring buffer size in events, rounded up to a power of two
+     */
+    public TelemetryRecorder(File outputDirectory, int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        times = new long[this.capacity];
+        events = new byte[this.capacity];
+        arguments = new int[this.capacity];
+        sinceInputMicros = new int[this.capacity];
+        frameMicros = new int[this.capacity];
+        flags = new byte[this.capacity];
+        
+        this.outputDirectory = outputDirectory;
+        outputDirectory.mkdirs();
+        sessionStartMillis = System.currentTimeMillis();
+        sessionStartNanos = System.nanoTime();
+        previousInputNanos = sessionStartNanos;
+        
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "telemetry-flusher");
+        flusher.setDaemon(true);
+        flusher.setPriority(Thread.MIN_PRIORITY);
+        flusher.start();
+    }
+    
+    /**
+     * Sets the frame time attached to events recorded during the current frame; render thread only
+     */
+    public void setFrameTime(float deltaSeconds) {
+        currentFrameMicros = (int) (deltaSeconds * 1000000f);
+    }
+    
+    /**
+     * Records an event; render thread only. Never blocks or allocates.
+     */
+    public void record(TelemetryEvent event, int argument, boolean animating) {
+        long now = System.nanoTime();
+        long sinceInputNanos = now - previousInputNanos;
+        if (event.isInput()) {
+            previousInputNanos = now; // Even if the event is dropped, the player still acted
+        }
+        long sequence = writeSequence.get();
+        if (sequence - readSequence.get() >= capacity) {
+            droppedEvents.incrementAndGet();
+            return;
+        }
+        int slot = (int) sequence & mask;
+        times[slot] = now - sessionStartNanos;
+        events[slot] = (byte) event.ordinal();
+        arguments[slot] = argument;
+        sinceInputMicros[slot] = (int) Math.min(Integer.MAX_VALUE, sinceInputNanos / 1000);
+        frameMicros[slot] = currentFrameMicros;
+        flags[slot] = animating ? (byte) FLAG_ANIMATING : 0;
+        // Ordered store: the flusher sees the slot contents once it sees the new sequence
+        writeSequence.lazySet(sequence + 1);
+    }
+    
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+    
+    /**
+     * Stops the flusher after writing all pending events and closes the current file
+     */
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void flushLoop() {
+        while (running) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                // Woken up by close(); drain and exit
+            }
+            drain();
+        }
+        drain();
+        closeFile();
+    }
+    
+    private void drain() {
+        long read = readSequence.get();
+        long published = writeSequence.get();
+        if (read == published) {
+            return;
+        }
+        try {
+            for (; read < published; read++) {
+                if (output == null || eventsInFile >= EVENTS_PER_FILE) {
+                    openNextFile();
+                }
+                int slot = (int) read & mask;
+                output.writeLong(times[slot]);
+                output.writeByte(events[slot]);
+                output.writeInt(arguments[slot]);
+                output.writeInt(sinceInputMicros[slot]);
+                output.writeInt(frameMicros[slot]);
+                output.writeByte(flags[slot]);
+                eventsInFile++;
+            }
+            output.flush();
+        } catch (IOException e) {
+            // Telemetry must never take the game down; skip what could not be written
+            Gdx.app.error("TelemetryRecorder", "Telemetry write failed", e);
+            closeFile();
+        }
+        readSequence.lazySet(published);
+    }
+    
+    private void openNextFile() throws IOException {
+        closeFile();
+        File file = new File(outputDirectory,
+            String.format("telemetry-%d-%04d.bin.gz", sessionStartMillis, fileIndex++));
+        output = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(new FileOutputStream(file), 8192, true)));
+        output.writeInt(FILE_MAGIC);
+        output.writeInt(FILE_VERSION);
+        output.writeLong(sessionStartMillis);
+        eventsInFile = 0;
+    }
+    
+    private void closeFile() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                Gdx.app.error("TelemetryRecorder", "Telemetry close failed", e);
+            }
+            output = null;
+        }
+    }
+}
@@ -3,11 +3,36 @@ package com.tileshifter;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
 import com.badlogic.gdx.Files.FileType; // Import FileType
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.leaderboard.Submission;
+import com.tileshifter.metrics.FileMetricsSink;
+import com.tileshifter.metrics.JmxMetricsSink;
+import com.tileshifter.metrics.JvmRuntimeSampler;
+import com.tileshifter.server.GameServer;
+import com.tileshifter.telemetry.TelemetryRecorder;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import javax.management.JMException;
 
 /**
  * Desktop launcher for the Tile Shifter puzzle game
+ * 
+ * System properties:
+ *   tileshifter.overlay=true       show the performance overlay on start (toggle with F3)
+ *   tileshifter.metricsFile=path   write the latest performance snapshot to a JSON file once per second
+ *   tileshifter.telemetryDir=path  record player moves to compressed files in this directory
+ *   tileshifter.race=host:port     race other players on a game server instead of playing locally
+ *   tileshifter.race=local         host a game server on port 7070 in this process and race on it
+ *   tileshifter.racePlayers=n      players per race (default 2)
+ *   tileshifter.spectate=id/player with tileshifter.race: watch a player's board in a race (id 0: the latest)
+ *   tileshifter.coop=true          with tileshifter.race: solve one shared board with the other players
+ *   tileshifter.leaderboard=path   rank local solves in this file (default ~/.tileshifter/leaderboard.log)
  */
 public class DesktopLauncher {
+    private static final int TELEMETRY_BUFFER_EVENTS = 8192;
+    private static final int LOCAL_RACE_PORT = 7070;
+    
     public static void main(String[] arg) {
         Lwjgl3ApplicationConfiguration config = new Lwjgl3ApplicationConfiguration();
         config.setForegroundFPS(60);
@@ -16,6 +41,80 @@ public class DesktopLauncher {
         config.setResizable(true);
         config.setWindowIcon(FileType.Internal, "assets/images/Mytholore.jpg"); // Corrected icon path
         
-        new Lwjgl3Application(new TileShiftGame(), config);
+        TileShiftGame game = new TileShiftGame();
+        setUpMetrics(game);
+        setUpRace(game);
+        setUpLeaderboard(game);
+        
+        new Lwjgl3Application(game, config);
+    }
+    
+    private static void setUpMetrics(TileShiftGame game) {
+        game.performanceMonitor.setRuntimeSampler(new JvmRuntimeSampler());
+        
+        JmxMetricsSink jmxSink = new JmxMetricsSink();
+        try {
+            jmxSink.register();
+            game.performanceMonitor.addSink(jmxSink);
+        } catch (JMException e) {
+            System.err.println("Performance metrics are not available over JMX: " + e.getMessage());
+        }
+        
+        String metricsFile = System.getProperty("tileshifter.metricsFile");
+        if (metricsFile != null) {
+            game.performanceMonitor.addSink(new FileMetricsSink(new File(metricsFile)));
+        }
+        game.setPerformanceOverlayVisible(Boolean.getBoolean("tileshifter.overlay"));
+        
+        String telemetryDir = System.getProperty("tileshifter.telemetryDir");
+        if (telemetryDir != null) {
+            game.setTelemetry(new TelemetryRecorder(new File(telemetryDir), TELEMETRY_BUFFER_EVENTS));
+        }
+    }
+    
+    private static void setUpLeaderboard(TileShiftGame game) {
+        String path = System.getProperty("tileshifter.leaderboard",
+            new File(System.getProperty("user.home"), ".tileshifter/leaderboard.log").getPath());
+        try {
+            // Every solve is ranked; a crash may lose the last few, so they are not synced one by one
+            game.setLeaderboard(Leaderboard.open(new File(path), false, false),
+                Submission.fitPlayerName(System.getProperty("user.name", "")));
+        } catch (IOException e) {
+            System.err.println("Leaderboard not available, solves are not ranked: " + e.getMessage());
+        }
+    }
+    
+    private static void setUpRace(TileShiftGame game) {
+        String race = System.getProperty("tileshifter.race");
+        if (race == null) {
+            return;
+        }
+        int players = Integer.getInteger("tileshifter.racePlayers", 2);
+        if (race.equals("local")) {
+            try {
+                // Daemon threads only, so the server goes away with the window
+                new GameServer(new InetSocketAddress("127.0.0.1", LOCAL_RACE_PORT)).start();
+            } catch (IOException e) {
+                System.err.println("Could not start a local game server, playing locally: " + e.getMessage());
+                return;
+            }
+            race = "127.0.0.1:" + LOCAL_RACE_PORT;
+        }
+        int colon = race.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("tileshifter.race must be host:port or local, got " + race);
+        }
+        game.setRaceServer(race.substring(0, colon), Integer.parseInt(race.substring(colon + 1)), players);
+        game.setCoop(Boolean.getBoolean("tileshifter.coop"));
+        
+        String spectate = System.getProperty("tileshifter.spectate");
+        if (spectate != null) {
+            int slash = spectate.indexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("tileshifter.spectate must be raceId/player, got " + spectate);
+            }
+            game.setSpectating(Integer.parseInt(spectate.substring(0, slash)),
+                Integer.parseInt(spectate.substring(slash + 1)));
+        }
     }
 }
@@ -0,0 +1,76 @@
+package com.tileshifter.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the latest metrics snapshot through the platform MBean server
+ * Attributes read as zero until the first snapshot is published
+ */
+public class JmxMetricsSink implements MetricsSink, PerformanceMXBean {
+    public static final String OBJECT_NAME = "com.tileshifter:type=Performance";
+    
+    private volatile MetricsSnapshot snapshot;
+    
+    /**
+     * Registers the sink with the platform MBean server
+     * @throws JMException if the name is already taken or registration fails
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+    
+    @Override
+    public void publish(MetricsSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    @Override
+    public long getTimestampMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getTimestampMillis(); }
+    @Override
+    public String getScreenName() { MetricsSnapshot s = snapshot; return s == null ? "" : s.getScreenName(); }
+    @Override
+    public int getFramesPerSecond() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getFramesPerSecond(); }
+    @Override
+    public float getFrameTimeAvgMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getFrameTimeAvgMillis(); }
+    @Override
+    public float getFrameTimeMaxMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getFrameTimeMaxMillis(); }
+    @Override
+    public int[] getFrameTimeHistogram() { MetricsSnapshot s = snapshot; return s == null ? new int[0] : s.getFrameTimeHistogram(); }
+    @Override
+    public float getRenderCallsPerFrame() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getRenderCallsPerFrame(); }
+    @Override
+    public float getDrawCallsPerFrame() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getDrawCallsPerFrame(); }
+    @Override
+    public float getTextureBindsPerFrame() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getTextureBindsPerFrame(); }
+    @Override
+    public long getGcCount() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getGcCount(); }
+    @Override
+    public long getGcTimeMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getGcTimeMillis(); }
+    @Override
+    public long getHeapBytes() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getHeapBytes(); }
+    @Override
+    public long getNativeBytes() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getNativeBytes(); }
+    @Override
+    public float getMovesPerSecond() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getMovesPerSecond(); }
+    @Override
+    public float getInputMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPhaseMillis(Phase.INPUT); }
+    @Override
+    public float getUpdateMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPhaseMillis(Phase.UPDATE); }
+    @Override
+    public float getRenderMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPhaseMillis(Phase.RENDER); }
+    @Override
+    public float getAnimationMillis() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPhaseMillis(Phase.ANIMATION); }
+    @Override
+    public int getPoolReady() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPoolReady(); }
+    @Override
+    public int getPoolTarget() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPoolTarget(); }
+    @Override
+    public int getPoolTakes() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPoolTakes(); }
+    @Override
+    public int getPoolMisses() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPoolMisses(); }
+    @Override
+    public float getPoolGeneratedPerSecond() { MetricsSnapshot s = snapshot; return s == null ? 0 : s.getPoolGeneratedPerSecond(); }
+}
@@ -0,0 +1,49 @@
+package com.tileshifter.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+/**
+ * Runtime sampler backed by the JVM's management beans: collector counts and times, heap,
+ * and native memory (non-heap pools plus direct and mapped buffers, which hold pixmap and vertex data)
+ */
+public class JvmRuntimeSampler implements RuntimeSampler {
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<BufferPoolMXBean> bufferPools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    
+    @Override
+    public long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+    
+    @Override
+    public long getGcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+    
+    @Override
+    public long getHeapBytes() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+    
+    @Override
+    public long getNativeBytes() {
+        long used = memory.getNonHeapMemoryUsage().getUsed();
+        for (BufferPoolMXBean pool : bufferPools) {
+            used += Math.max(0, pool.getMemoryUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,30 @@
+package com.tileshifter.metrics;
+
+/**
+ * JMX view of the latest performance snapshot, registered as com.tileshifter:type=Performance
+ */
+public interface PerformanceMXBean {
+    long getTimestampMillis();
+    String getScreenName();
+    int getFramesPerSecond();
+    float getFrameTimeAvgMillis();
+    float getFrameTimeMaxMillis();
+    int[] getFrameTimeHistogram();
+    float getRenderCallsPerFrame();
+    float getDrawCallsPerFrame();
+    float getTextureBindsPerFrame();
+    long getGcCount();
+    long getGcTimeMillis();
+    long getHeapBytes();
+    long getNativeBytes();
+    float getMovesPerSecond();
+    float getInputMillis();
+    float getUpdateMillis();
+    float getRenderMillis();
+    float getAnimationMillis();
+    int getPoolReady();
+    int getPoolTarget();
+    int getPoolTakes();
+    int getPoolMisses();
+    float getPoolGeneratedPerSecond();
+}
@@ -0,0 +1,86 @@
+package com.tileshifter.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline export of telemetry files written by {@link TelemetryRecorder} into a single CSV file
+ * 
+ * Usage: TelemetryExport <telemetry directory> <output csv>
+ */
+public class TelemetryExport {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TelemetryExport <telemetry directory> <output csv>");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            System.err.println("Not a directory: " + directory);
+            System.exit(1);
+        }
+        // File names carry the session start and a sequence number, so name order is recording order
+        Arrays.sort(files);
+        
+        File outputFile = new File(args[1]);
+        if (outputFile.getParentFile() != null) {
+            outputFile.getParentFile().mkdirs();
+        }
+        int exported = 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputFile))) {
+            out.println("session_start_ms,time_ns,event,argument,since_input_us,frame_us,animating");
+            for (File file : files) {
+                if (file.getName().startsWith("telemetry-") && file.getName().endsWith(".bin.gz")) {
+                    exported += export(file, out);
+                }
+            }
+        }
+        System.out.println("Exported " + exported + " events to " + outputFile);
+    }
+    
+    private static int export(File file, PrintWriter out) throws IOException {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != TelemetryRecorder.FILE_MAGIC) {
+                System.err.println("Skipping " + file + ": not a telemetry file");
+                return 0;
+            }
+            int version = in.readInt();
+            if (version != TelemetryRecorder.FILE_VERSION) {
+                System.err.println("Skipping " + file + ": unsupported version " + version);
+                return 0;
+            }
+            long sessionStart = in.readLong();
+            while (true) {
+                long time;
+                try {
+                    time = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                TelemetryEvent event = TelemetryEvent.fromOrdinal(in.readByte());
+                int argument = in.readInt();
+                int sinceInput = in.readInt();
+                int frame = in.readInt();
+                boolean animating = (in.readByte() & TelemetryRecorder.FLAG_ANIMATING) != 0;
+                out.println(sessionStart + "," + time + "," + event + "," + argument + ","
+                    + sinceInput + "," + frame + "," + animating);
+                count++;
+            }
+        } catch (EOFException e) {
+            // A file cut off mid-record (game killed during a flush); keep what was complete
+            System.err.println("Truncated telemetry file " + file);
+        }
+        return count;
+    }
+}
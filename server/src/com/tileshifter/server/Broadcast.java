@@ -0,0 +1,139 @@
+package com.tileshifter.server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+
+/**
+ * One race player's board as spectators see it. The tick thread replays the moves the player made since the last
+ * tick on a copy of the board and encodes them once into a {@link Frame}, which every spectator then gets without
+ * copying. Keyframes (the whole board) go out once a second for spectators that joined late, and to any spectator
+ * that fell behind, encoded at most once per tick however many spectators need one.
+ */
+final class Broadcast {
+    /** Ticks between keyframes: one a second */
+    static final int KEYFRAME_TICKS = 1000 / GameServer.TICK_MILLIS;
+    /** Most moves in one frame; a tick with more sends a keyframe instead */
+    private static final int MAX_FRAME_MOVES = 4096;
+    
+    private final Session board;
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+    private int tick; // Only used on the tick thread
+    private int sequence; // Ticks with moves
+    private volatile long frames; // Written by the tick thread only
+    private boolean ended;
+    
+    /**
+     * @param board The player's board as it started; only used by the tick thread from now on
+     */
+    Broadcast(Session board) {
+        this.board = board;
+    }
+    
+    /**
+     * @return false if the stream already ended
+     */
+    synchronized boolean subscribe(Spectator spectator) {
+        if (ended) {
+            return false;
+        }
+        spectators.add(spectator);
+        return true;
+    }
+    
+    void unsubscribe(Spectator spectator) {
+        spectators.remove(spectator);
+    }
+    
+    int getSpectatorCount() {
+        return spectators.size();
+    }
+    
+    /**
+     * Applies the player's moves since the last tick and sends them to every spectator
+     * @param moves The moves the server accepted, one byte each
+     */
+    void tick(byte[] moves, int count) {
+        tick++;
+        for (int i = 0; i < count; i++) {
+            board.move(moves[i] & 0xFF);
+        }
+        if (count > 0) {
+            sequence++;
+        }
+        if (spectators.isEmpty()) {
+            return;
+        }
+        Frame keyframe = null;
+        Frame frame = null;
+        if (tick % KEYFRAME_TICKS == 0 || count > MAX_FRAME_MOVES) {
+            keyframe = encodeKeyframe();
+            frame = keyframe;
+        } else if (count > 0) {
+            frame = encodeMoves(moves, count);
+        }
+        for (Spectator spectator : spectators) {
+            if (!spectator.offer(frame)) {
+                if (keyframe == null) {
+                    keyframe = encodeKeyframe();
+                }
+                spectator.offer(keyframe);
+            }
+        }
+    }
+    
+    /**
+     * Tells every spectator that the stream ended, after the frames they still have queued
+     */
+    synchronized void end() {
+        ended = true;
+        byte[] buffer = new byte[WebSocket.MAX_HEADER_LENGTH + 1];
+        buffer[WebSocket.MAX_HEADER_LENGTH] = (byte) Protocol.SPECTATE_END;
+        Frame last = new Frame(buffer, WebSocket.MAX_HEADER_LENGTH, 1, false);
+        Frame keyframe = null;
+        for (Spectator spectator : spectators) {
+            if (!spectator.offer(last)) {
+                if (keyframe == null) {
+                    keyframe = encodeKeyframe();
+                }
+                spectator.offer(keyframe);
+                spectator.offer(last);
+            }
+            spectator.end();
+        }
+    }
+    
+    private Frame encodeMoves(byte[] moves, int count) {
+        int offset = WebSocket.MAX_HEADER_LENGTH;
+        byte[] buffer = new byte[offset + Protocol.SPECTATE_MOVES_HEADER_LENGTH + count];
+        buffer[offset] = (byte) Protocol.SPECTATE_MOVES;
+        Protocol.writeInt(buffer, offset + 1, sequence);
+        Protocol.writeShort(buffer, offset + 5, count);
+        System.arraycopy(moves, 0, buffer, offset + Protocol.SPECTATE_MOVES_HEADER_LENGTH, count);
+        frames++;
+        return new Frame(buffer, offset, Protocol.SPECTATE_MOVES_HEADER_LENGTH + count, false);
+    }
+    
+    private Frame encodeKeyframe() {
+        int offset = WebSocket.MAX_HEADER_LENGTH;
+        int cells = board.getMode().getCellCount();
+        byte[] buffer = new byte[offset + Protocol.SPECTATE_STATE_HEADER_LENGTH + cells];
+        buffer[offset] = (byte) Protocol.SPECTATE_STATE;
+        buffer[offset + 1] = (byte) board.getGameMode();
+        buffer[offset + 2] = (byte) board.getMode().getSize();
+        Protocol.writeInt(buffer, offset + 3, sequence);
+        Protocol.writeInt(buffer, offset + 7, board.getMoveCount());
+        board.getState(buffer, offset + Protocol.SPECTATE_STATE_HEADER_LENGTH);
+        frames++;
+        return new Frame(buffer, offset, Protocol.SPECTATE_STATE_HEADER_LENGTH + cells, true);
+    }
+    
+    /**
+     * @return Frames encoded so far, each shared by all spectators at the time
+     */
+    long getFrameCount() {
+        return frames;
+    }
+}
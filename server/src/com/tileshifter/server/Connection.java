@@ -0,0 +1,592 @@
+package com.tileshifter.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.leaderboard.Ranking;
+import com.tileshifter.leaderboard.Submission;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+
+/**
+ * One client connection, served by blocking reads on its own (virtual) thread. Requests are handled in the order
+ * they arrive and all replies to the requests of one read go out in a single write, so clients that pipeline
+ * moves get batched replies. Apart from the session, a connection holds two small buffers.
+ *
+ * In a race, moves are acknowledged with one {@link Protocol#MOVES_ACK} per read instead of a reply each. Other
+ * threads write to the connection with {@link #send}, e.g. race progress; a lock rather than synchronized keeps
+ * virtual threads from pinning their carrier while they block on the socket.
+ *
+ * In a co-op game the moves of a read are submitted to the shared board together and not acknowledged; the
+ * game's tick tells every player, this one included, the order they were applied in.
+ *
+ * A {@link Protocol#SPECTATE} request turns the connection around: from then on its thread only writes the frames
+ * of the {@link Broadcast} it watches, until the race ends or the spectator goes away.
+ *
+ * If the server has a leaderboard, a {@link Protocol#NEW_GAME} game is shuffled from a seed the server picks and
+ * keeps that seed and its applied moves, and the solving move of a named player submits them, before its reply is
+ * sent.
+ */
+final class Connection implements Runnable {
+    private static final int IN_BUFFER = 64;
+    private static final int OUT_BUFFER = 320; // Fits the largest state reply
+    private static final int OUT_START = WebSocket.MAX_HEADER_LENGTH; // Room for the frame header
+    
+    private final GameServer server;
+    private final Socket socket;
+    private final byte[] in = new byte[IN_BUFFER];
+    private final byte[] out = new byte[OUT_START + OUT_BUFFER];
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int inStart;
+    private int inEnd;
+    private int outEnd = OUT_START;
+    private InputStream input;
+    private volatile OutputStream output; // Also used by senders on other threads
+    private volatile WebSocket webSocket; // Null for plain TCP
+    private Session session;
+    private boolean counted; // Whether the server counts this connection as a session
+    
+    private Race race;
+    private int raceIndex = -1; // -1 until the race starts
+    private byte[] ackBits; // Allocated on joining a race
+    private int ackCount;
+    private byte[] acceptedMoves; // Moves of the current batch the race accepted, for spectators
+    private int acceptedCount;
+    private CoopGame coop;
+    private int coopIndex = -1; // -1 until the game starts
+    private byte[] coopMoves; // Moves of the current batch; allocated on joining a co-op game
+    private int coopMoveCount;
+    private boolean spectating;
+    private volatile Spectator spectator; // Set while spectating, so close() can stop it
+    
+    private String playerName; // Null until SET_NAME
+    private boolean logging; // Whether the game is logged for the leaderboard
+    private long gameSeed;
+    private byte[] gameMoves;
+    private int gameMoveCount;
+    private long gameStartNanos;
+    
+    Connection(GameServer server, Socket socket) {
+        this.server = server;
+        this.socket = socket;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            input = socket.getInputStream();
+            output = socket.getOutputStream();
+            int first = input.read();
+            if (first < 0) {
+                return;
+            }
+            if (first == 'G') {
+                // No opcode starts with 'G', so this is an HTTP upgrade
+                webSocket = WebSocket.accept(first, input, output);
+                if (webSocket == null) {
+                    return;
+                }
+            } else {
+                in[inEnd++] = (byte) first;
+            }
+            while (process()) {
+                flush();
+                if (!fill()) {
+                    break;
+                }
+            }
+            flush();
+        } catch (IOException e) {
+            // The client went away; nothing to tell anyone
+        } finally {
+            close();
+            server.connectionClosed(this);
+        }
+    }
+    
+    private boolean fill() throws IOException {
+        if (inStart == inEnd) {
+            inStart = 0;
+            inEnd = 0;
+        } else if (inStart > 0) {
+            // Keep the start of a partially received request
+            System.arraycopy(in, inStart, in, 0, inEnd - inStart);
+            inEnd -= inStart;
+            inStart = 0;
+        }
+        int count = webSocket != null
+            ? webSocket.read(input, output, in, inEnd, in.length - inEnd)
+            : input.read(in, inEnd, in.length - inEnd);
+        if (count < 0) {
+            return false;
+        }
+        inEnd += count;
+        return true;
+    }
+    
+    /**
+     * Handles every complete request in the input buffer
+     * @return false if the connection should close
+     */
+    private boolean process() throws IOException {
+        if (race != null && raceIndex < 0 && race.isStarted()) {
+            raceIndex = race.indexOf(this);
+            session = race.getSession(raceIndex);
+        }
+        if (coop != null && coopIndex < 0 && coop.isStarted()) {
+            coopIndex = coop.indexOf(this);
+        }
+        boolean moved = false;
+        while (inStart < inEnd) {
+            int opcode = in[inStart] & 0xFF;
+            int length = Protocol.requestLength(opcode);
+            if (length < 0) {
+                writeError(Protocol.BAD_REQUEST);
+                return false;
+            }
+            if (inEnd - inStart < length) {
+                break;
+            }
+            if (opcode == Protocol.MOVE || length == 1 && opcode >= Protocol.SHORT_MOVE) {
+                move(opcode == Protocol.MOVE ? in[inStart + 1] & 0xFF : opcode - Protocol.SHORT_MOVE);
+                moved = true;
+            } else {
+                handle(opcode, inStart);
+                if (spectating) {
+                    return false;
+                }
+            }
+            inStart += length;
+        }
+        if (ackCount > 0) {
+            writeAcks();
+        }
+        if (moved && raceIndex >= 0) {
+            reportProgress();
+        }
+        if (coopMoveCount > 0) {
+            submitCoopMoves();
+        }
+        return true;
+    }
+    
+    private void submitCoopMoves() {
+        int applied = coop.submit(coopIndex, coopMoves, coopMoveCount);
+        for (int i = 0; i < coopMoveCount; i++) { // Only the totals matter to the statistics
+            server.moveHandled(i < applied ? Protocol.APPLIED : Protocol.REJECTED);
+        }
+        coopMoveCount = 0;
+    }
+    
+    private void reportProgress() {
+        race.reportProgress(raceIndex, session, acceptedMoves, acceptedCount);
+        acceptedCount = 0;
+    }
+    
+    private void move(int move) throws IOException {
+        if (coop != null) {
+            // Moves before the start cannot have been predicted on the shared board, so they are dropped
+            if (coopIndex >= 0) {
+                coopMoves[coopMoveCount++] = (byte) move;
+                if (coopMoveCount == coopMoves.length) {
+                    submitCoopMoves();
+                }
+            }
+            return;
+        }
+        if (race != null) {
+            boolean applied = raceIndex >= 0 && !race.isOver() && session.move(move) != Protocol.REJECTED;
+            server.moveHandled(applied ? Protocol.APPLIED : Protocol.REJECTED);
+            if (applied) {
+                ackBits[ackCount >>> 3] |= 1 << (ackCount & 7);
+                acceptedMoves[acceptedCount++] = (byte) move;
+            }
+            if (++ackCount == Protocol.MAX_ACKED_MOVES) {
+                writeAcks();
+                if (acceptedCount > 0) {
+                    reportProgress();
+                }
+            }
+            return;
+        }
+        if (session == null) {
+            writeError(Protocol.NO_GAME);
+            return;
+        }
+        int result = session.move(move);
+        server.moveHandled(result);
+        if (result != Protocol.REJECTED && logging) {
+            logMove(move, result);
+        }
+        reserve(2);
+        out[outEnd++] = (byte) Protocol.MOVED;
+        out[outEnd++] = (byte) result;
+    }
+    
+    private void logMove(int move, int result) {
+        if (gameMoveCount == gameMoves.length) {
+            if (gameMoveCount == Submission.MAX_MOVES) {
+                logging = false; // Too long to rank
+                return;
+            }
+            gameMoves = Arrays.copyOf(gameMoves, Math.min(gameMoveCount * 2, Submission.MAX_MOVES));
+        }
+        gameMoves[gameMoveCount++] = (byte) move;
+        if (result == Protocol.SOLVED) {
+            Leaderboard leaderboard = server.getLeaderboard();
+            if (leaderboard != null && playerName != null) {
+                long millis = (System.nanoTime() - gameStartNanos) / 1000000;
+                Submission submission = new Submission("", GameMode.values()[session.getGameMode()],
+                    session.getMode().getSize(), playerName, (int) Math.min(millis, Integer.MAX_VALUE),
+                    System.currentTimeMillis(), gameSeed, Arrays.copyOf(gameMoves, gameMoveCount));
+                try {
+                    leaderboard.submit(submission);
+                } catch (IOException e) {
+                    System.err.println("Leaderboard submission failed: " + e);
+                }
+            }
+            logging = false;
+        }
+    }
+    
+    private void writeAcks() throws IOException {
+        int bytes = (ackCount + 7) / 8;
+        reserve(2 + bytes);
+        out[outEnd++] = (byte) Protocol.MOVES_ACK;
+        out[outEnd++] = (byte) ackCount;
+        System.arraycopy(ackBits, 0, out, outEnd, bytes);
+        outEnd += bytes;
+        for (int i = 0; i < bytes; i++) {
+            ackBits[i] = 0;
+        }
+        ackCount = 0;
+    }
+    
+    private void handle(int opcode, int offset) throws IOException {
+        switch (opcode) {
+            case Protocol.NEW_GAME: {
+                int mode = in[offset + 1] & 0xFF;
+                int size = in[offset + 2] & 0xFF;
+                if (!ServerModes.supports(mode, size)) {
+                    writeError(Protocol.BAD_MODE);
+                    break;
+                }
+                leaveRace();
+                countGame();
+                logging = server.getLeaderboard() != null;
+                gameSeed = logging ? server.newSeed() : Protocol.readLong(in, offset + 3);
+                session = new Session(mode, ServerModes.get(mode, size), gameSeed);
+                startLog();
+                writeState();
+                break;
+            }
+            case Protocol.JOIN_RACE: {
+                int mode = in[offset + 1] & 0xFF;
+                int size = in[offset + 2] & 0xFF;
+                int players = in[offset + 3] & 0xFF;
+                if (!RaceLobby.supports(mode, size, players)) {
+                    writeError(Protocol.BAD_MODE);
+                    break;
+                }
+                leaveRace();
+                countGame();
+                session = null;
+                ackBits = new byte[(Protocol.MAX_ACKED_MOVES + 7) / 8];
+                acceptedMoves = new byte[Protocol.MAX_ACKED_MOVES];
+                // Flush first: the race may start right away, and its start message must follow earlier replies
+                flush();
+                race = server.getLobby().join(this, mode, size, players);
+                if (race.isStarted()) {
+                    raceIndex = race.indexOf(this);
+                    session = race.getSession(raceIndex);
+                }
+                break;
+            }
+            case Protocol.JOIN_COOP: {
+                int mode = in[offset + 1] & 0xFF;
+                int size = in[offset + 2] & 0xFF;
+                int players = in[offset + 3] & 0xFF;
+                if (!RaceLobby.supports(mode, size, players)) {
+                    writeError(Protocol.BAD_MODE);
+                    break;
+                }
+                leaveRace();
+                countGame();
+                session = null;
+                coopMoves = new byte[Protocol.MAX_ACKED_MOVES];
+                // Flush first: the game may start right away, and its start message must follow earlier replies
+                flush();
+                coop = server.getLobby().joinCoop(this, mode, size, players);
+                if (coop.isStarted()) {
+                    coopIndex = coop.indexOf(this);
+                }
+                break;
+            }
+            case Protocol.SPECTATE: {
+                Broadcast broadcast = server.getLobby().findBroadcast(Protocol.readInt(in, offset + 1),
+                    in[offset + 5] & 0xFF);
+                Spectator watcher = new Spectator();
+                if (broadcast == null || !broadcast.subscribe(watcher)) {
+                    writeError(Protocol.NO_GAME);
+                    break;
+                }
+                leaveRace();
+                session = null;
+                flush();
+                spectating = true;
+                spectator = watcher;
+                server.spectatorJoined();
+                try {
+                    spectate(watcher);
+                } finally {
+                    broadcast.unsubscribe(watcher);
+                    server.spectatorLeft();
+                }
+                break;
+            }
+            case Protocol.GET_STATE:
+                if (session == null) {
+                    writeError(Protocol.NO_GAME);
+                } else {
+                    writeState();
+                }
+                break;
+            case Protocol.PING:
+                reserve(1);
+                out[outEnd++] = (byte) Protocol.PONG;
+                break;
+            case Protocol.SET_NAME: {
+                String name = Protocol.readName(in, offset + 1).trim();
+                playerName = name.isEmpty() ? null : Submission.fitPlayerName(name);
+                break;
+            }
+            case Protocol.GET_LEADERBOARD:
+                writeLeaderboard(offset);
+                break;
+            case Protocol.GET_RANK:
+                writeRank(offset);
+                break;
+            default:
+                throw new IllegalStateException("Unhandled opcode " + opcode);
+        }
+    }
+    
+    /**
+     * Writes the spectator's frames as they come, until the stream ends
+     */
+    private void spectate(Spectator spectator) throws IOException {
+        try {
+            Frame frame;
+            while ((frame = spectator.take()) != null) {
+                int start = webSocket != null ? frame.webSocketStart : frame.offset;
+                writeLock.lock();
+                try {
+                    output.write(frame.buffer, start, frame.offset + frame.length - start);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The server is closing
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Starts logging the new session's game for the leaderboard, if the server has one
+     */
+    private void startLog() {
+        if (!logging) {
+            return;
+        }
+        if (gameMoves == null) {
+            gameMoves = new byte[64];
+        }
+        gameMoveCount = 0;
+        gameStartNanos = System.nanoTime();
+    }
+    
+    private void writeLeaderboard(int offset) throws IOException {
+        Leaderboard leaderboard = server.getLeaderboard();
+        int mode = in[offset + 1] & 0xFF;
+        int size = in[offset + 2] & 0xFF;
+        int ranking = in[offset + 3] & 0xFF;
+        if (leaderboard == null) {
+            writeError(Protocol.NO_LEADERBOARD);
+            return;
+        }
+        if (!ServerModes.supports(mode, size) || ranking >= Ranking.values().length) {
+            writeError(Protocol.BAD_MODE);
+            return;
+        }
+        GameMode gameMode = GameMode.values()[mode];
+        Ranking rankBy = Ranking.fromOrdinal(ranking);
+        int fromRank = Math.max(0, Protocol.readInt(in, offset + 4));
+        int[] entries = new int[Math.min(in[offset + 8] & 0xFF, Protocol.MAX_LEADERBOARD_ENTRIES)];
+        int total = leaderboard.getEntryCount("", gameMode, size, rankBy);
+        int count = leaderboard.getTop("", gameMode, size, rankBy, fromRank, entries, entries.length);
+        reserve(Protocol.LEADERBOARD_HEADER_LENGTH + count * Protocol.LEADERBOARD_ENTRY_LENGTH);
+        out[outEnd] = (byte) Protocol.LEADERBOARD;
+        out[outEnd + 1] = (byte) mode;
+        out[outEnd + 2] = (byte) size;
+        out[outEnd + 3] = (byte) ranking;
+        Protocol.writeInt(out, outEnd + 4, total);
+        Protocol.writeInt(out, outEnd + 8, fromRank);
+        out[outEnd + 12] = (byte) count;
+        outEnd += Protocol.LEADERBOARD_HEADER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            Protocol.writeInt(out, outEnd, leaderboard.getMillis(entries[i]));
+            Protocol.writeInt(out, outEnd + 4, leaderboard.getMoves(entries[i]));
+            Protocol.writeName(out, outEnd + 8, leaderboard.getPlayer(entries[i]));
+            outEnd += Protocol.LEADERBOARD_ENTRY_LENGTH;
+        }
+    }
+    
+    private void writeRank(int offset) throws IOException {
+        Leaderboard leaderboard = server.getLeaderboard();
+        int mode = in[offset + 1] & 0xFF;
+        int size = in[offset + 2] & 0xFF;
+        int ranking = in[offset + 3] & 0xFF;
+        if (leaderboard == null || playerName == null) {
+            writeError(Protocol.NO_LEADERBOARD);
+            return;
+        }
+        if (!ServerModes.supports(mode, size) || ranking >= Ranking.values().length) {
+            writeError(Protocol.BAD_MODE);
+            return;
+        }
+        GameMode gameMode = GameMode.values()[mode];
+        Ranking rankBy = Ranking.fromOrdinal(ranking);
+        int best = leaderboard.getBestEntry("", gameMode, size, rankBy, playerName);
+        reserve(Protocol.RANK_LENGTH);
+        out[outEnd] = (byte) Protocol.RANK;
+        out[outEnd + 1] = (byte) ranking;
+        Protocol.writeInt(out, outEnd + 2, best < 0 ? -1 : leaderboard.getRank("", gameMode, size, rankBy, best));
+        Protocol.writeInt(out, outEnd + 6, leaderboard.getEntryCount("", gameMode, size, rankBy));
+        Protocol.writeInt(out, outEnd + 10, best < 0 ? 0 : leaderboard.getMillis(best));
+        Protocol.writeInt(out, outEnd + 14, best < 0 ? 0 : leaderboard.getMoves(best));
+        outEnd += Protocol.RANK_LENGTH;
+    }
+    
+    private void writeState() throws IOException {
+        int size = session.getMode().getSize();
+        reserve(Protocol.STATE_HEADER_LENGTH + size * size);
+        outEnd = session.writeState(out, outEnd);
+    }
+    
+    private void writeError(int code) throws IOException {
+        reserve(2);
+        out[outEnd++] = (byte) Protocol.ERROR;
+        out[outEnd++] = (byte) code;
+    }
+    
+    private void reserve(int length) throws IOException {
+        if (outEnd + length > out.length) {
+            flush();
+        }
+    }
+    
+    private void flush() throws IOException {
+        if (outEnd == OUT_START) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            write(out, OUT_START, outEnd - OUT_START);
+        } finally {
+            writeLock.unlock();
+        }
+        outEnd = OUT_START;
+    }
+    
+    /**
+     * Writes a message from another thread, e.g. race progress
+     * @param offset Start of the message, with {@link WebSocket#MAX_HEADER_LENGTH} bytes free before it
+     */
+    void send(byte[] buffer, int offset, int length) {
+        writeLock.lock();
+        try {
+            write(buffer, offset, length);
+        } catch (IOException e) {
+            // The connection's own thread notices too and cleans up
+            close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private void write(byte[] buffer, int offset, int length) throws IOException {
+        int start = webSocket != null ? WebSocket.writeHeader(buffer, offset, length) : offset;
+        output.write(buffer, start, offset + length - start);
+    }
+    
+    /**
+     * Leaves the race or co-op game the connection is in, if any
+     */
+    private void leaveRace() {
+        if (coop != null) {
+            if (coopIndex >= 0) {
+                coop.leave(coopIndex);
+            } else {
+                server.getLobby().leaveWaiting(coop, this);
+            }
+            coop = null;
+            coopIndex = -1;
+            coopMoves = null;
+            coopMoveCount = 0;
+        }
+        if (race == null) {
+            return;
+        }
+        if (raceIndex >= 0) {
+            race.leave(raceIndex);
+        } else {
+            server.getLobby().leaveWaiting(race, this);
+        }
+        race = null;
+        raceIndex = -1;
+        ackBits = null;
+        ackCount = 0;
+        acceptedMoves = null;
+        acceptedCount = 0;
+    }
+    
+    private void countGame() {
+        if (!counted) {
+            counted = true;
+            server.sessionStarted();
+        }
+    }
+    
+    /**
+     * @return Whether the connection started a game or joined a race or co-op game
+     */
+    boolean hasGame() {
+        return counted;
+    }
+    
+    void close() {
+        Spectator watcher = spectator;
+        if (watcher != null) {
+            watcher.end();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+    
+    /**
+     * Called by the server once the connection's thread is done with it
+     */
+    void closed() {
+        leaveRace();
+    }
+}
@@ -0,0 +1,197 @@
+package com.tileshifter.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+
+/**
+ * Players solving one shared board together. Each player's connection thread submits its moves once per batch;
+ * the board applies them in the order the batches arrive, which puts every move of every player in one total
+ * order, and logs each with its player. {@link #tick()} sends the moves logged since the last tick as one
+ * {@link Protocol#COOP_MOVES} message, the same bytes to every player, so all clients replay the same moves in the
+ * same order on the same board.
+ */
+final class CoopGame {
+    /** Most moves per message, so a frame stays within a WebSocket frame */
+    private static final int MAX_FRAME_MOVES = 4096;
+    
+    private final int id;
+    private final int gameMode;
+    private final PuzzleMode mode;
+    private final int playerCount;
+    private final List<Connection> waiting = new ArrayList<>();
+    private volatile Connection[] players; // Set once full; index is the player's index
+    private Session board;
+    private final boolean[] left;
+    private byte[] log = new byte[2 * Protocol.MAX_ACKED_MOVES]; // Player and move per entry since the last tick
+    private byte[] tickLog = new byte[log.length]; // Swapped with log on each tick
+    private int logLength;
+    private int sequence; // Moves applied before the next message's first; only used on the tick thread
+    private byte[] message = new byte[WebSocket.MAX_HEADER_LENGTH + Protocol.COOP_MOVES_HEADER_LENGTH];
+    private volatile boolean solved;
+    
+    CoopGame(int id, int gameMode, PuzzleMode mode, int playerCount) {
+        this.id = id;
+        this.gameMode = gameMode;
+        this.mode = mode;
+        this.playerCount = playerCount;
+        left = new boolean[playerCount];
+    }
+    
+    /**
+     * @return Whether the game is now full and should be {@link #start started}
+     */
+    synchronized boolean add(Connection connection) {
+        waiting.add(connection);
+        return waiting.size() == playerCount;
+    }
+    
+    /**
+     * Removes a player who left before the start
+     */
+    synchronized void remove(Connection connection) {
+        waiting.remove(connection);
+    }
+    
+    synchronized boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+    
+    /**
+     * Shuffles the shared board from the seed and tells each player its index, with the same
+     * {@link Protocol#RACE_START} message a race uses
+     */
+    void start(long seed) {
+        Connection[] order;
+        synchronized (this) {
+            order = waiting.toArray(new Connection[playerCount]);
+            board = new Session(gameMode, mode, seed);
+            players = order;
+        }
+        byte[] start = new byte[WebSocket.MAX_HEADER_LENGTH + Protocol.RACE_START_LENGTH];
+        int offset = WebSocket.MAX_HEADER_LENGTH;
+        start[offset] = (byte) Protocol.RACE_START;
+        start[offset + 1] = (byte) gameMode;
+        start[offset + 2] = (byte) mode.getSize();
+        Protocol.writeLong(start, offset + 3, seed);
+        start[offset + 12] = (byte) playerCount;
+        Protocol.writeInt(start, offset + 13, id);
+        for (int i = 0; i < playerCount; i++) {
+            start[offset + 11] = (byte) i;
+            order[i].send(start, offset, Protocol.RACE_START_LENGTH);
+        }
+    }
+    
+    boolean isStarted() {
+        return players != null;
+    }
+    
+    /**
+     * @return The player's index, or -1 before the start
+     */
+    int indexOf(Connection connection) {
+        Connection[] order = players;
+        if (order != null) {
+            for (int i = 0; i < order.length; i++) {
+                if (order[i] == connection) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Applies a player's batch of moves to the shared board, after any moves submitted before it. Moves after the
+     * board is solved, and classic moves that no longer fit where the blank now is, are rejected and logged as such.
+     * @return How many of the moves were applied
+     */
+    synchronized int submit(int index, byte[] moves, int count) {
+        if (logLength + 2 * count > log.length) {
+            log = Arrays.copyOf(log, Math.max(2 * log.length, logLength + 2 * count));
+        }
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i] & 0xFF;
+            boolean accepted = board.move(move) != Protocol.REJECTED;
+            log[logLength++] = (byte) (accepted ? index : index | Protocol.COOP_REJECTED);
+            log[logLength++] = (byte) move;
+            if (accepted) {
+                applied++;
+            }
+        }
+        solved = board.isSolved();
+        return applied;
+    }
+    
+    synchronized void leave(int index) {
+        left[index] = true;
+    }
+    
+    private boolean allLeft() {
+        for (int i = 0; i < playerCount; i++) {
+            if (!left[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Sends the moves logged since the last tick to every player
+     * @return false once the solved board was sent, or everyone left
+     */
+    boolean tick() {
+        // Whether the board was solved before the swap, so the solving move is in the log sent now
+        boolean over = solved;
+        byte[] entries;
+        int length;
+        synchronized (this) {
+            if (allLeft()) {
+                return false;
+            }
+            entries = log;
+            log = tickLog;
+            tickLog = entries;
+            length = logLength;
+            logLength = 0;
+        }
+        Connection[] order = players;
+        for (int start = 0; start < length; start += 2 * MAX_FRAME_MOVES) {
+            int count = Math.min(length - start, 2 * MAX_FRAME_MOVES) / 2;
+            int messageLength = encode(entries, start, count);
+            for (Connection player : order) {
+                player.send(message, WebSocket.MAX_HEADER_LENGTH, messageLength);
+            }
+        }
+        return !over;
+    }
+    
+    /**
+     * Writes a {@link Protocol#COOP_MOVES} message after the room for a WebSocket header and advances the
+     * sequence past its applied moves
+     * @return The message's length
+     */
+    private int encode(byte[] entries, int start, int count) {
+        int length = Protocol.COOP_MOVES_HEADER_LENGTH + count * Protocol.COOP_ENTRY_LENGTH;
+        if (WebSocket.MAX_HEADER_LENGTH + length > message.length) {
+            message = new byte[WebSocket.MAX_HEADER_LENGTH + length];
+        }
+        int offset = WebSocket.MAX_HEADER_LENGTH;
+        message[offset] = (byte) Protocol.COOP_MOVES;
+        Protocol.writeInt(message, offset + 1, sequence);
+        Protocol.writeShort(message, offset + 5, count);
+        System.arraycopy(entries, start, message, offset + Protocol.COOP_MOVES_HEADER_LENGTH,
+            count * Protocol.COOP_ENTRY_LENGTH);
+        for (int i = 0; i < count; i++) {
+            if ((entries[start + 2 * i] & Protocol.COOP_REJECTED) == 0) {
+                sequence++;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,24 @@
+package com.tileshifter.server;
+
+/**
+ * An encoded message that is written to many connections as is. The WebSocket frame header is written in front of
+ * it once, so neither plain TCP nor WebSocket connections copy or modify the bytes when sending it.
+ */
+final class Frame {
+    final byte[] buffer;
+    final int offset;
+    final int length;
+    final int webSocketStart;
+    final boolean keyframe;
+    
+    /**
+     * @param offset Start of the message, with {@link WebSocket#MAX_HEADER_LENGTH} bytes free before it
+     */
+    Frame(byte[] buffer, int offset, int length, boolean keyframe) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.keyframe = keyframe;
+        webSocketStart = WebSocket.writeHeader(buffer, offset, length);
+    }
+}
@@ -0,0 +1,257 @@
+package com.tileshifter.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tileshifter.leaderboard.Leaderboard;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+
+/**
+ * Hosts puzzle sessions for remote clients over plain TCP or WebSocket on one port, without any graphics.
+ * Each connection is served on its own thread from {@link VirtualThreads}, so idle connections only cost their
+ * socket, a parked virtual thread and the few hundred bytes of their {@link Session}. See {@link Protocol} for
+ * the messages.
+ *
+ * Players can also join races (see {@link Protocol#JOIN_RACE}); a tick thread sends the progress of every running
+ * race every {@value #TICK_MILLIS} ms, and streams each player's moves to the spectators watching that player's
+ * board (see {@link Protocol#SPECTATE}). Co-op games (see {@link Protocol#JOIN_COOP}) share one board between their
+ * players, and the same tick sends each game's moves to all of its players in the order they were applied.
+ *
+ * With a {@link Leaderboard} set, named players' solves of their own games are ranked (see
+ * {@link Protocol#SET_NAME}); the server only submits to it and answers queries, and does not close it. Games are
+ * then shuffled from seeds the server picks rather than the client's, so players cannot choose easy boards or
+ * solve them ahead of time.
+ */
+public final class GameServer implements Closeable {
+    private static final int BACKLOG = 4096;
+    /** How often race progress is sent */
+    public static final int TICK_MILLIS = 50;
+    
+    private final InetSocketAddress address;
+    private final Set<Connection> connections =
+        Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicInteger spectatorCount = new AtomicInteger();
+    private final LongAdder moveCount = new LongAdder();
+    private final LongAdder rejectedMoveCount = new LongAdder();
+    private final RaceLobby lobby = new RaceLobby();
+    private final SecureRandom seeds = new SecureRandom();
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private ScheduledExecutorService ticker;
+    private volatile boolean closed;
+    private volatile int sendBufferSize; // 0 for the system default
+    private volatile Leaderboard leaderboard; // Null if solves are not ranked
+    
+    /**
+     * @param address Where to listen; port 0 picks a free port, see {@link #getPort()}
+     */
+    public GameServer(InetSocketAddress address) {
+        this.address = address;
+    }
+    
+    /**
+     * Sets the socket send buffer of connections accepted from now on. Small buffers bound the kernel memory of
+     * many spectators and let a stalled spectator fall behind, and be sent keyframes, sooner.
+     * @param bytes Buffer size, or 0 for the system default
+     */
+    public void setSendBufferSize(int bytes) {
+        sendBufferSize = bytes;
+    }
+    
+    /**
+     * Sets the leaderboard solves are submitted to and leaderboard requests are answered from
+     * @param leaderboard Leaderboard with best-per-player rankings, or null for none
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+    
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    /**
+     * @return A seed for a ranked game that clients cannot predict
+     */
+    long newSeed() {
+        return seeds.nextLong();
+    }
+    
+    /**
+     * Binds the port and starts accepting connections on a background thread
+     * @throws IllegalStateException if the server was already started
+     */
+    public synchronized GameServer start() throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, BACKLOG);
+        executor = VirtualThreads.newThreadPerTaskExecutor("game-connection-");
+        
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "game-server-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        
+        ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "game-server-tick");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lobby.tick();
+                } catch (RuntimeException e) {
+                    // Keep ticking the other races; an exception would cancel the schedule
+                    e.printStackTrace();
+                }
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+    
+    private void acceptConnections() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // Replies are single small writes
+                if (sendBufferSize > 0) {
+                    socket.setSendBufferSize(sendBufferSize);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    // Usually out of file descriptors; keep serving the connections we have
+                    System.err.println("Game server could not accept a connection: " + e.getMessage());
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            Connection connection = new Connection(this, socket);
+            connections.add(connection);
+            try {
+                executor.execute(connection);
+            } catch (RejectedExecutionException e) {
+                // Closed in the meantime
+                connections.remove(connection);
+                connection.close();
+            }
+        }
+    }
+    
+    void sessionStarted() {
+        sessionCount.incrementAndGet();
+    }
+    
+    void spectatorJoined() {
+        spectatorCount.incrementAndGet();
+    }
+    
+    void spectatorLeft() {
+        spectatorCount.decrementAndGet();
+    }
+    
+    void moveHandled(int result) {
+        if (result == Protocol.REJECTED) {
+            rejectedMoveCount.increment();
+        } else {
+            moveCount.increment();
+        }
+    }
+    
+    void connectionClosed(Connection connection) {
+        connection.closed();
+        if (connections.remove(connection) && connection.hasGame()) {
+            sessionCount.decrementAndGet();
+        }
+    }
+    
+    RaceLobby getLobby() {
+        return lobby;
+    }
+    
+    /**
+     * @return The port the server listens on, e.g. after binding port 0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    public int getConnectionCount() {
+        return connections.size();
+    }
+    
+    /**
+     * @return Open connections that have started a game
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+    
+    /**
+     * @return Connections watching a race
+     */
+    public int getSpectatorCount() {
+        return spectatorCount.get();
+    }
+    
+    /**
+     * @return Moves applied since the server started
+     */
+    public long getMoveCount() {
+        return moveCount.sum();
+    }
+    
+    public long getRejectedMoveCount() {
+        return rejectedMoveCount.sum();
+    }
+    
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed || serverSocket == null) {
+            return;
+        }
+        closed = true;
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        executor.shutdown();
+        ticker.shutdown();
+    }
+}
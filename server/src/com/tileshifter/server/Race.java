@@ -0,0 +1,248 @@
+package com.tileshifter.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.net.Protocol;
+import com.tileshifter.net.Session;
+
+/**
+ * Players racing on identically shuffled boards. Each player's connection thread validates its own moves on its
+ * own {@link Session} and reports its progress and accepted moves once per batch; {@link #tick()} encodes the
+ * progress that changed since the last tick into one message and writes the same buffer to every player, and
+ * passes each player's moves on to its {@link Broadcast} for spectators.
+ */
+final class Race {
+    private final int id;
+    private final int gameMode;
+    private final PuzzleMode mode;
+    private final int playerCount;
+    private final List<Connection> waiting = new ArrayList<>();
+    private volatile Connection[] players; // Set once full; index is the player's index
+    private Session[] sessions;
+    private final int[] moveCounts;
+    private final int[] misplaced;
+    private final int[] flags;
+    private final boolean[] changed;
+    private byte[][] moveLogs; // Moves accepted since the last tick, per player
+    private byte[][] tickLogs; // Swapped with moveLogs on each tick
+    private final int[] moveLogLengths;
+    private final int[] tickLogLengths;
+    private Broadcast[] broadcasts;
+    private final byte[] message;
+    private volatile int winner = -1;
+    private boolean overSent;
+    
+    Race(int id, int gameMode, PuzzleMode mode, int playerCount) {
+        this.id = id;
+        this.gameMode = gameMode;
+        this.mode = mode;
+        this.playerCount = playerCount;
+        moveCounts = new int[playerCount];
+        misplaced = new int[playerCount];
+        flags = new int[playerCount];
+        changed = new boolean[playerCount];
+        moveLogs = new byte[playerCount][Protocol.MAX_ACKED_MOVES];
+        tickLogs = new byte[playerCount][Protocol.MAX_ACKED_MOVES];
+        moveLogLengths = new int[playerCount];
+        tickLogLengths = new int[playerCount];
+        message = new byte[WebSocket.MAX_HEADER_LENGTH + 2 + playerCount * Protocol.PROGRESS_ENTRY_LENGTH + 2];
+    }
+    
+    /**
+     * @return Whether the race is now full and should be {@link #start started}
+     */
+    synchronized boolean add(Connection connection) {
+        waiting.add(connection);
+        return waiting.size() == playerCount;
+    }
+    
+    /**
+     * Removes a player who left before the start
+     */
+    synchronized void remove(Connection connection) {
+        waiting.remove(connection);
+    }
+    
+    synchronized boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+    
+    /**
+     * Shuffles every board from the seed and tells each player its index
+     */
+    void start(long seed) {
+        Connection[] order;
+        synchronized (this) {
+            order = waiting.toArray(new Connection[playerCount]);
+            sessions = new Session[playerCount];
+            broadcasts = new Broadcast[playerCount];
+            for (int i = 0; i < playerCount; i++) {
+                sessions[i] = new Session(gameMode, mode, seed);
+                misplaced[i] = sessions[i].getMisplaced();
+                broadcasts[i] = new Broadcast(new Session(gameMode, mode, seed));
+            }
+            players = order;
+        }
+        byte[] start = new byte[WebSocket.MAX_HEADER_LENGTH + Protocol.RACE_START_LENGTH];
+        int offset = WebSocket.MAX_HEADER_LENGTH;
+        start[offset] = (byte) Protocol.RACE_START;
+        start[offset + 1] = (byte) gameMode;
+        start[offset + 2] = (byte) mode.getSize();
+        Protocol.writeLong(start, offset + 3, seed);
+        start[offset + 12] = (byte) playerCount;
+        Protocol.writeInt(start, offset + 13, id);
+        for (int i = 0; i < playerCount; i++) {
+            start[offset + 11] = (byte) i;
+            order[i].send(start, offset, Protocol.RACE_START_LENGTH);
+        }
+    }
+    
+    int getId() {
+        return id;
+    }
+    
+    boolean isStarted() {
+        return players != null;
+    }
+    
+    /**
+     * @return The player's index, or -1 before the start
+     */
+    int indexOf(Connection connection) {
+        Connection[] order = players;
+        if (order != null) {
+            for (int i = 0; i < order.length; i++) {
+                if (order[i] == connection) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    synchronized Session getSession(int index) {
+        return sessions[index];
+    }
+    
+    /**
+     * @return The player's board for spectators, or null if there is no such player
+     */
+    synchronized Broadcast getBroadcast(int index) {
+        return broadcasts != null && index >= 0 && index < playerCount ? broadcasts[index] : null;
+    }
+    
+    boolean isOver() {
+        return winner >= 0;
+    }
+    
+    /**
+     * Records a player's progress after a batch of moves; the first player to solve the board wins
+     * @param moves The moves of the batch that were accepted, one byte each
+     */
+    synchronized void reportProgress(int index, Session session, byte[] moves, int count) {
+        int length = moveLogLengths[index];
+        if (length + count > moveLogs[index].length) {
+            moveLogs[index] = Arrays.copyOf(moveLogs[index], Math.max(2 * moveLogs[index].length, length + count));
+        }
+        System.arraycopy(moves, 0, moveLogs[index], length, count);
+        moveLogLengths[index] = length + count;
+        moveCounts[index] = session.getMoveCount();
+        misplaced[index] = session.getMisplaced();
+        if (session.isSolved()) {
+            flags[index] |= Protocol.FINISHED;
+            if (winner < 0) {
+                winner = index;
+            }
+        }
+        changed[index] = true;
+    }
+    
+    synchronized void leave(int index) {
+        flags[index] |= Protocol.LEFT;
+        changed[index] = true;
+    }
+    
+    private boolean allLeft() {
+        for (int i = 0; i < playerCount; i++) {
+            if ((flags[i] & Protocol.LEFT) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Sends the progress that changed since the last tick, and the result once there is a winner, and streams each
+     * player's moves to its spectators
+     * @return false once the race is over and everyone was told, or everyone left; the spectators' streams end then
+     */
+    boolean tick() {
+        boolean running = sendProgress();
+        byte[][] logs;
+        synchronized (this) {
+            // Swap the logs so the players can go on logging while the broadcasts replay the previous ones
+            logs = moveLogs;
+            moveLogs = tickLogs;
+            tickLogs = logs;
+            System.arraycopy(moveLogLengths, 0, tickLogLengths, 0, playerCount);
+            Arrays.fill(moveLogLengths, 0);
+        }
+        for (int i = 0; i < playerCount; i++) {
+            broadcasts[i].tick(logs[i], tickLogLengths[i]);
+            if (!running) {
+                broadcasts[i].end();
+            }
+        }
+        return running;
+    }
+    
+    private boolean sendProgress() {
+        Connection[] order = players;
+        int length;
+        synchronized (this) {
+            if (overSent) {
+                return false;
+            }
+            int offset = WebSocket.MAX_HEADER_LENGTH;
+            int entries = 0;
+            int end = offset + 2;
+            for (int i = 0; i < playerCount; i++) {
+                if (changed[i]) {
+                    message[end] = (byte) i;
+                    message[end + 1] = (byte) flags[i];
+                    Protocol.writeInt(message, end + 2, moveCounts[i]);
+                    Protocol.writeShort(message, end + 6, misplaced[i]);
+                    end += Protocol.PROGRESS_ENTRY_LENGTH;
+                    changed[i] = false;
+                    entries++;
+                }
+            }
+            if (entries > 0) {
+                message[offset] = (byte) Protocol.PROGRESS;
+                message[offset + 1] = (byte) entries;
+            } else {
+                end = offset;
+            }
+            if (winner >= 0) {
+                message[end] = (byte) Protocol.RACE_OVER;
+                message[end + 1] = (byte) winner;
+                end += 2;
+                overSent = true;
+            }
+            length = end - offset;
+            if (length == 0 && allLeft()) {
+                return false;
+            }
+        }
+        if (length > 0) {
+            // Every player gets the same bytes; the tick thread is the only writer of the message
+            for (Connection player : order) {
+                player.send(message, WebSocket.MAX_HEADER_LENGTH, length);
+            }
+        }
+        return true;
+    }
+}
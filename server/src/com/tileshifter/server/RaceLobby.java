@@ -0,0 +1,137 @@
+package com.tileshifter.server;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups players asking for the same mode, size and player count into races or co-op games, ticks the running
+ * ones and finds races for spectators by id
+ */
+final class RaceLobby {
+    static final int MAX_PLAYERS = 8;
+    
+    private final Map<Integer, Race> waiting = new HashMap<>();
+    private final List<Race> running = new CopyOnWriteArrayList<>();
+    private final Map<Integer, CoopGame> waitingCoop = new HashMap<>();
+    private final List<CoopGame> runningCoop = new CopyOnWriteArrayList<>();
+    private final SecureRandom seeds = new SecureRandom();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile Race latest; // Started last, for spectators asking for race 0
+    
+    static boolean supports(int mode, int size, int players) {
+        return ServerModes.supports(mode, size) && players >= 1 && players <= MAX_PLAYERS;
+    }
+    
+    /**
+     * Adds a player to the waiting race for its mode, size and player count, starting the race once it is full
+     */
+    Race join(Connection connection, int mode, int size, int players) {
+        Race race;
+        boolean full;
+        synchronized (waiting) {
+            Integer key = (mode << 16) | (size << 8) | players;
+            race = waiting.get(key);
+            if (race == null) {
+                race = new Race(nextId.getAndIncrement(), mode, ServerModes.get(mode, size), players);
+                waiting.put(key, race);
+            }
+            full = race.add(connection);
+            if (full) {
+                waiting.remove(key);
+                running.add(race);
+            }
+        }
+        if (full) {
+            race.start(seeds.nextLong());
+            latest = race;
+        }
+        return race;
+    }
+    
+    /**
+     * Adds a player to the waiting co-op game for its mode, size and player count, starting the game once it is
+     * full
+     */
+    CoopGame joinCoop(Connection connection, int mode, int size, int players) {
+        CoopGame game;
+        boolean full;
+        synchronized (waiting) {
+            Integer key = (mode << 16) | (size << 8) | players;
+            game = waitingCoop.get(key);
+            if (game == null) {
+                game = new CoopGame(nextId.getAndIncrement(), mode, ServerModes.get(mode, size), players);
+                waitingCoop.put(key, game);
+            }
+            full = game.add(connection);
+            if (full) {
+                waitingCoop.remove(key);
+                runningCoop.add(game);
+            }
+        }
+        if (full) {
+            game.start(seeds.nextLong());
+        }
+        return game;
+    }
+    
+    /**
+     * Takes a player out of a race that has not started yet
+     */
+    void leaveWaiting(Race race, Connection connection) {
+        synchronized (waiting) {
+            race.remove(connection);
+            if (race.isEmpty()) {
+                waiting.values().remove(race);
+            }
+        }
+    }
+    
+    /**
+     * Takes a player out of a co-op game that has not started yet
+     */
+    void leaveWaiting(CoopGame game, Connection connection) {
+        synchronized (waiting) {
+            game.remove(connection);
+            if (game.isEmpty()) {
+                waitingCoop.values().remove(game);
+            }
+        }
+    }
+    
+    /**
+     * @param raceId A race's id, or 0 for the race that started last
+     * @return The player's board in a running race, or null if there is no such race or player
+     */
+    Broadcast findBroadcast(int raceId, int player) {
+        if (raceId == 0) {
+            Race race = latest;
+            return race != null && running.contains(race) ? race.getBroadcast(player) : null;
+        }
+        for (Race race : running) {
+            if (race.getId() == raceId) {
+                return race.getBroadcast(player);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Sends every running race's progress and every co-op game's moves, dropping the games that are over
+     */
+    void tick() {
+        for (Race race : running) {
+            if (race.isStarted() && !race.tick()) {
+                running.remove(race);
+            }
+        }
+        for (CoopGame game : runningCoop) {
+            if (game.isStarted() && !game.tick()) {
+                runningCoop.remove(game);
+            }
+        }
+    }
+}
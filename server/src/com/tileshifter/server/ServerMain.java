@@ -0,0 +1,56 @@
+package com.tileshifter.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+import com.tileshifter.leaderboard.Leaderboard;
+
+/**
+ * Runs a {@link GameServer} until the process is stopped, printing connection and move counts every ten seconds
+ *
+ * Usage: ServerMain [--host 127.0.0.1] [--port 7070] [--leaderboard file]
+ *
+ * With --leaderboard, named players' solves are ranked in that log file, keeping each player's best, and every
+ * submission is synced to disk before it is ranked.
+ */
+public class ServerMain {
+    private static final long REPORT_MILLIS = 10000;
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "127.0.0.1";
+        int port = 7070;
+        String leaderboardPath = null;
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--host": host = args[i + 1]; break;
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--leaderboard": leaderboardPath = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        
+        GameServer server = new GameServer(new InetSocketAddress(host, port));
+        if (leaderboardPath != null) {
+            Leaderboard leaderboard = Leaderboard.open(new File(leaderboardPath), true, true);
+            server.setLeaderboard(leaderboard);
+            System.out.println(String.format(Locale.ROOT, "Leaderboard %s: %,d solves%s", leaderboardPath,
+                leaderboard.getRecoveredCount(), leaderboard.getDroppedBytes() > 0
+                    ? ", dropped a damaged tail of " + leaderboard.getDroppedBytes() + " bytes" : ""));
+        }
+        server.start();
+        System.out.println("Game server listening on " + host + ":" + server.getPort()
+            + (VirtualThreads.isAvailable() ? " with virtual threads" : " with platform threads"));
+        long lastMoves = 0;
+        while (true) {
+            Thread.sleep(REPORT_MILLIS);
+            long moves = server.getMoveCount();
+            System.out.println(String.format(Locale.ROOT,
+                "%,d connections, %,d sessions, %,d spectators, %,.0f moves/s, %,d rejected",
+                server.getConnectionCount(), server.getSessionCount(), server.getSpectatorCount(),
+                (moves - lastMoves) * 1000.0 / REPORT_MILLIS, server.getRejectedMoveCount()));
+            lastMoves = moves;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.tileshifter.server;
+
+import com.tileshifter.GameMode;
+import com.tileshifter.PuzzleMode;
+import com.tileshifter.PuzzleModes;
+
+/**
+ * The puzzle modes sessions can be started in, built on first use and shared by every session of the same mode
+ * and size. Sizes follow the boards: classic and shift boards from 2x2, rotate boards even sizes from 4x4.
+ */
+public final class ServerModes {
+    public static final int MIN_SIZE = 2;
+    /** Byte states hold tile ids up to 255 */
+    public static final int MAX_SIZE = 16;
+    
+    private static final GameMode[] GAME_MODES = GameMode.values();
+    private static final PuzzleMode[][] MODES = new PuzzleMode[GAME_MODES.length][MAX_SIZE + 1];
+    
+    private ServerModes() {
+    }
+    
+    /**
+     * @return Whether sessions can be started with the given mode ordinal and size
+     */
+    public static boolean supports(int mode, int size) {
+        if (mode < 0 || mode >= MODES.length || size < MIN_SIZE || size > MAX_SIZE) {
+            return false;
+        }
+        return GAME_MODES[mode] != GameMode.ROTATE || (size >= 4 && size % 2 == 0);
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the mode and size are not {@link #supports supported}
+     */
+    public static PuzzleMode get(int mode, int size) {
+        if (!supports(mode, size)) {
+            throw new IllegalArgumentException("Unsupported mode " + mode + " at size " + size);
+        }
+        synchronized (MODES) {
+            PuzzleMode puzzleMode = MODES[mode][size];
+            if (puzzleMode == null) {
+                puzzleMode = PuzzleModes.of(GAME_MODES[mode], size);
+                MODES[mode][size] = puzzleMode;
+            }
+            return puzzleMode;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tileshifter.server;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A spectator's queue of frames, filled by the tick thread and drained by the spectator's connection thread. The
+ * queue is short: a spectator that falls behind has its frames dropped and gets the next keyframe instead, so one
+ * slow connection never holds up the tick or the other spectators.
+ */
+final class Spectator {
+    private static final int QUEUE_FRAMES = 16;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Frame[] queue = new Frame[QUEUE_FRAMES];
+    private int head;
+    private int count;
+    private boolean needsKeyframe = true; // Until the first keyframe, and again after falling behind
+    private boolean ended;
+    private int drops;
+    
+    /**
+     * Queues a frame; a keyframe replaces everything still queued
+     * @param frame The tick's frame, or null if nothing changed
+     * @return false if the spectator needs a keyframe instead, because it just started or fell behind
+     */
+    boolean offer(Frame frame) {
+        lock.lock();
+        try {
+            if (frame != null && frame.keyframe) {
+                clear();
+                needsKeyframe = false;
+            } else if (needsKeyframe) {
+                return false;
+            } else if (frame == null) {
+                return true;
+            } else if (count == QUEUE_FRAMES) {
+                clear();
+                needsKeyframe = true;
+                drops++;
+                return false;
+            }
+            queue[(head + count) % QUEUE_FRAMES] = frame;
+            count++;
+            ready.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void clear() {
+        for (int i = 0; i < QUEUE_FRAMES; i++) {
+            queue[i] = null;
+        }
+        head = 0;
+        count = 0;
+    }
+    
+    /**
+     * Lets the spectator drain what is queued and then stop
+     */
+    void end() {
+        lock.lock();
+        try {
+            ended = true;
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Waits for the next frame
+     * @return null once the stream ended and every queued frame was taken
+     */
+    Frame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (ended) {
+                    return null;
+                }
+                ready.await();
+            }
+            Frame frame = queue[head];
+            queue[head] = null;
+            head = (head + 1) % QUEUE_FRAMES;
+            count--;
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return How many times the spectator fell behind and was sent a keyframe instead
+     */
+    int getDrops() {
+        lock.lock();
+        try {
+            return drops;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.tileshifter.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts a thread per task: virtual threads on Java 21 and later, looked up reflectively so the module still
+ * builds for Java 8, and daemon platform threads otherwise. Blocking socket code then scales to as many idle
+ * connections as memory allows on a current JDK, and still works, for fewer of them, on an old one.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+    
+    /**
+     * @return Whether {@link #newThreadPerTaskExecutor} creates virtual threads on this JVM
+     */
+    public static boolean isAvailable() {
+        return virtualThreadFactory("probe-") != null;
+    }
+    
+    /**
+     * @param namePrefix Threads are named with this prefix and a counter
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final String namePrefix) {
+        ThreadFactory factory = virtualThreadFactory(namePrefix);
+        if (factory != null) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                // Fall through to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not there before Java 19, and a preview feature that throws when disabled in 19 and 20
+            return null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.tileshifter.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+
+import com.tileshifter.net.Protocol;
+
+/**
+ * The parts of RFC 6455 the server needs: the upgrade handshake, and binary frames read as one byte stream so
+ * that {@link Protocol} messages may span frames. Only allocated for connections that upgrade; plain TCP
+ * connections carry the same messages without it.
+ */
+final class WebSocket {
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_HANDSHAKE_BYTES = 8192;
+    /** Longest frame header the server writes: payloads of up to 64 KB */
+    static final int MAX_HEADER_LENGTH = 4;
+    
+    private static final int CONTINUATION = 0x0, BINARY = 0x2, CLOSE = 0x8, PING = 0x9, PONG = 0xA;
+    private static final int PROTOCOL_ERROR = 1002, UNSUPPORTED_DATA = 1003, TOO_BIG = 1009;
+    
+    private final byte[] header = new byte[8];
+    private final byte[] mask = new byte[4];
+    private long frameRemaining;
+    private int maskIndex;
+    
+    private WebSocket() {
+    }
+    
+    /**
+     * Reads the rest of an HTTP upgrade request whose first byte was already read, and answers it
+     * @return The connection's frame state, or null if the request was not a WebSocket upgrade (answered with
+     * 400 Bad Request)
+     */
+    static WebSocket accept(int firstByte, InputStream input, OutputStream output) throws IOException {
+        StringBuilder request = new StringBuilder().append((char) firstByte);
+        while (request.length() < 4 || !request.substring(request.length() - 4).equals("\r\n\r\n")) {
+            int next = input.read();
+            if (next < 0 || request.length() >= MAX_HANDSHAKE_BYTES) {
+                return null;
+            }
+            request.append((char) next);
+        }
+        
+        String key = null;
+        boolean upgrade = false;
+        String[] lines = request.toString().split("\r\n");
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colon + 1).trim();
+            if (name.equals("sec-websocket-key")) {
+                key = value;
+            } else if (name.equals("upgrade")) {
+                upgrade = value.equalsIgnoreCase("websocket");
+            }
+        }
+        if (!lines[0].startsWith("GET ") || !upgrade || key == null) {
+            output.write("HTTP/1.1 400 Bad Request\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            return null;
+        }
+        
+        String response = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        output.write(response.getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+        return new WebSocket();
+    }
+    
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every Java platform", e);
+        }
+    }
+    
+    /**
+     * Reads unmasked payload bytes of the binary message stream, answering pings and closes on the way
+     * @return How many bytes were read (at least one), or -1 once the connection should close
+     */
+    int read(InputStream input, OutputStream output, byte[] buffer, int offset, int length) throws IOException {
+        while (frameRemaining == 0) {
+            if (!readFrameHeader(input, output)) {
+                return -1;
+            }
+        }
+        int count = input.read(buffer, offset, (int) Math.min(length, frameRemaining));
+        if (count < 0) {
+            return -1;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            buffer[i] ^= mask[maskIndex++ & 3];
+        }
+        frameRemaining -= count;
+        return count;
+    }
+    
+    private boolean readFrameHeader(InputStream input, OutputStream output) throws IOException {
+        if (!readFully(input, header, 2)) {
+            return false;
+        }
+        int opcode = header[0] & 0x0F;
+        boolean masked = (header[1] & 0x80) != 0;
+        long length = header[1] & 0x7F;
+        if (length == 126) {
+            if (!readFully(input, header, 2)) {
+                return false;
+            }
+            length = (header[0] & 0xFF) << 8 | header[1] & 0xFF;
+        } else if (length == 127) {
+            if (!readFully(input, header, 8)) {
+                return false;
+            }
+            length = Protocol.readLong(header, 0);
+        }
+        if (!masked) {
+            // Clients must mask every frame
+            close(output, PROTOCOL_ERROR);
+            return false;
+        }
+        if (!readFully(input, mask, 4)) {
+            return false;
+        }
+        maskIndex = 0;
+        
+        if (opcode == BINARY || opcode == CONTINUATION) {
+            frameRemaining = length;
+            return true;
+        }
+        if (opcode == CLOSE || opcode == PING || opcode == PONG) {
+            if (length > 125) {
+                close(output, TOO_BIG);
+                return false;
+            }
+            byte[] payload = new byte[(int) length];
+            if (!readFully(input, payload, payload.length)) {
+                return false;
+            }
+            if (opcode == PING) {
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+                byte[] pong = new byte[2 + payload.length];
+                pong[0] = (byte) (0x80 | PONG);
+                pong[1] = (byte) payload.length;
+                System.arraycopy(payload, 0, pong, 2, payload.length);
+                output.write(pong);
+            } else if (opcode == CLOSE) {
+                close(output, 1000);
+                return false;
+            }
+            return true;
+        }
+        // Text frames carry no protocol messages
+        close(output, UNSUPPORTED_DATA);
+        return false;
+    }
+    
+    private static boolean readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        for (int offset = 0; offset < length; ) {
+            int count = input.read(buffer, offset, length - offset);
+            if (count < 0) {
+                return false;
+            }
+            offset += count;
+        }
+        return true;
+    }
+    
+    private static void close(OutputStream output, int code) throws IOException {
+        output.write(new byte[] {(byte) (0x80 | CLOSE), 2, (byte) (code >>> 8), (byte) code});
+        output.flush();
+    }
+    
+    /**
+     * Writes the header of an unmasked binary frame into the bytes right before its payload
+     * @param offset Start of the payload, at least {@link #MAX_HEADER_LENGTH}
+     * @param length Payload length, at most 65535
+     * @return Start of the frame
+     */
+    static int writeHeader(byte[] buffer, int offset, int length) {
+        if (length <= 125) {
+            buffer[offset - 2] = (byte) (0x80 | BINARY);
+            buffer[offset - 1] = (byte) length;
+            return offset - 2;
+        }
+        buffer[offset - 4] = (byte) (0x80 | BINARY);
+        buffer[offset - 3] = 126;
+        buffer[offset - 2] = (byte) (length >>> 8);
+        buffer[offset - 1] = (byte) length;
+        return offset - 4;
+    }
+}